@@ -241,7 +241,9 @@ public class MainActivity extends FragmentActivity
             }
             mContentView.setBackgroundColor(ContextCompat.getColor(getApplicationContext(),
                     R.color.background_default_ambient));
-            mMessenger.setUpdatesEnabled(false);
+            if (mLocationRepository != null) {
+                mLocationRepository.setAmbient(true);
+            }
             // Will be executed when ambient mode is entered
             // Reduce colors to black and white
             // disable anti aliasing getPaint().setAntiAlias(false)
@@ -261,7 +263,9 @@ public class MainActivity extends FragmentActivity
             }
             mContentView.setBackgroundColor(ContextCompat.getColor(getApplicationContext(),
                     R.color.background_default));
-            mMessenger.setUpdatesEnabled(true);
+            if (mLocationRepository != null) {
+                mLocationRepository.setAmbient(false);
+            }
             // Will be executed when ambient mode is exited
             // restore normal state
         }
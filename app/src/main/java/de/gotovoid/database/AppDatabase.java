@@ -6,6 +6,7 @@ import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.res.AssetManager;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
@@ -21,25 +22,56 @@ import java.util.List;
 import de.gotovoid.database.access.CalibratedPressureDao;
 import de.gotovoid.database.access.RecordingDao;
 import de.gotovoid.database.access.RecordingEntryDao;
+import de.gotovoid.database.access.RecordingRollupDao;
 import de.gotovoid.database.model.CalibratedAltitude;
+import de.gotovoid.database.model.RecordingRollup;
 import de.gotovoid.database.model.RecordingWithEntries;
 import de.gotovoid.domain.model.GPXParser;
 import de.gotovoid.database.model.Recording;
 import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.domain.model.track.RollupPyramid;
 
 /**
  * {@link RoomDatabase} for the {@link Application}.
  * <p>
  * Created by DJ on 24/12/17.
  */
-@Database(entities = {CalibratedAltitude.class, Recording.class, RecordingEntry.class},
-        version = 1,
+@Database(entities = {CalibratedAltitude.class,
+        Recording.class,
+        RecordingEntry.class,
+        RecordingRollup.class},
+        version = 2,
         exportSchema = false)
 @TypeConverters({Recording.Type.Converter.class})
 public abstract class AppDatabase extends RoomDatabase {
     private static final String TAG = AppDatabase.class.getSimpleName();
     private static AppDatabase sInstance;
 
+    /**
+     * {@link Migration} adding the {@link RecordingRollup} table.
+     * The {@link RecordingRollup}s of existing recordings are built from their
+     * {@link RecordingEntry}s when they are displayed the first time.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `recording_rollup` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`recording_id` INTEGER NOT NULL, "
+                    + "`level` INTEGER NOT NULL, "
+                    + "`start_time` INTEGER NOT NULL, "
+                    + "`count` INTEGER NOT NULL, "
+                    + "`min_altitude` INTEGER NOT NULL, "
+                    + "`max_altitude` INTEGER NOT NULL, "
+                    + "`avg_altitude` REAL NOT NULL, "
+                    + "`distance` REAL NOT NULL, "
+                    + "FOREIGN KEY(`recording_id`) REFERENCES `recording`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE)");
+            database.execSQL("CREATE UNIQUE INDEX `rollup_index` "
+                    + "ON `recording_rollup` (`recording_id`, `level`, `start_time`)");
+        }
+    };
+
     /**
      * Return the {@link AppDatabase} bound to the {@link Application#getApplicationContext()}.
      *
@@ -62,6 +94,7 @@ public abstract class AppDatabase extends RoomDatabase {
     private static AppDatabase build(final Application application) {
         return Room.databaseBuilder(application.getApplicationContext(),
                 AppDatabase.class, "app_database")
+                .addMigrations(MIGRATION_1_2)
                 // prepopulate the database
                 .addCallback(new Callback() {
                     @Override
@@ -111,6 +144,9 @@ public abstract class AppDatabase extends RoomDatabase {
                                     }
                                     getDatabaseInstance(application).getRecordingEntryDao()
                                             .addAll(recording.getEntries());
+                                    getDatabaseInstance(application).getRecordingRollupDao()
+                                            .addOrReplace(RollupPyramid.build(id,
+                                                    recording.getEntries().iterator()));
                                 }
                                 return null;
                             }
@@ -142,4 +178,11 @@ public abstract class AppDatabase extends RoomDatabase {
      */
     public abstract RecordingEntryDao getRecordingEntryDao();
 
+    /**
+     * Returns the {@link RecordingRollupDao} to access the {@link RecordingRollup} table.
+     *
+     * @return the {@link RecordingRollupDao}
+     */
+    public abstract RecordingRollupDao getRecordingRollupDao();
+
 }
@@ -29,4 +29,32 @@ public interface RecordingEntryDao extends GenericDao<RecordingEntry> {
 
     @Query("SELECT * FROM recording_entry WHERE recording_id = :recordingId")
     LiveData<List<RecordingEntry>> observeTrackEntries(final long recordingId);
+
+    /**
+     * Returns the number of {@link RecordingEntry}s of a
+     * {@link de.gotovoid.database.model.Recording}.
+     *
+     * @param recordingId id of the {@link de.gotovoid.database.model.Recording}
+     * @return the number of {@link RecordingEntry}s
+     */
+    @Query("SELECT COUNT(*) FROM recording_entry WHERE recording_id = :recordingId")
+    int getTrackEntryCount(final long recordingId);
+
+    /**
+     * Returns a page of the {@link RecordingEntry}s of a {@link de.gotovoid.database.model.Recording}
+     * ordered by id.
+     * Uses the last id of the previous page instead of an offset, so the cost of fetching a page
+     * does not depend on its position in the recording.
+     *
+     * @param recordingId id of the {@link de.gotovoid.database.model.Recording}
+     * @param lastId      id of the last {@link RecordingEntry} of the previous page
+     * @param limit       maximum number of {@link RecordingEntry}s in the page
+     * @return the page of {@link RecordingEntry}s
+     * @see RecordingEntryIterator
+     */
+    @Query("SELECT * FROM recording_entry WHERE recording_id = :recordingId AND id > :lastId "
+            + "ORDER BY id LIMIT :limit")
+    List<RecordingEntry> getTrackEntriesPage(final long recordingId,
+                                             final long lastId,
+                                             final int limit);
 }
@@ -0,0 +1,112 @@
+package de.gotovoid.database.access;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.gotovoid.database.model.Recording;
+import de.gotovoid.database.model.RecordingEntry;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * {@link Iterator} over the {@link RecordingEntry}s of a {@link Recording}.
+ * Loads the {@link RecordingEntry}s page by page from the {@link RecordingEntryDao}, so long
+ * recordings can be processed without keeping all {@link RecordingEntry}s in memory.
+ * Accesses the database, so it must not be used on the main thread.
+ */
+@WorkerThread
+public class RecordingEntryIterator implements Iterator<RecordingEntry> {
+    /**
+     * Default number of {@link RecordingEntry}s per page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    /**
+     * The {@link RecordingEntryDao} to load the pages from.
+     */
+    private final RecordingEntryDao mDao;
+    /**
+     * Id of the {@link Recording}.
+     */
+    private final long mRecordingId;
+    /**
+     * Number of {@link RecordingEntry}s per page.
+     */
+    private final int mPageSize;
+    /**
+     * The current page.
+     */
+    private List<RecordingEntry> mPage;
+    /**
+     * Position in the current page.
+     */
+    private int mPosition;
+    /**
+     * Id of the last {@link RecordingEntry} returned.
+     */
+    private long mLastId = -1;
+    /**
+     * True if the last page was loaded.
+     */
+    private boolean mIsLastPage;
+
+    /**
+     * Constructor taking the {@link RecordingEntryDao} and the id of the {@link Recording}.
+     *
+     * @param dao         the {@link RecordingEntryDao}
+     * @param recordingId id of the {@link Recording}
+     */
+    public RecordingEntryIterator(@NonNull final RecordingEntryDao dao,
+                                  final long recordingId) {
+        this(dao, recordingId, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Constructor taking the {@link RecordingEntryDao}, the id of the {@link Recording} and the
+     * number of {@link RecordingEntry}s per page.
+     *
+     * @param dao         the {@link RecordingEntryDao}
+     * @param recordingId id of the {@link Recording}
+     * @param pageSize    number of {@link RecordingEntry}s per page
+     */
+    public RecordingEntryIterator(@NonNull final RecordingEntryDao dao,
+                                  final long recordingId,
+                                  final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size of [" + pageSize
+                    + "] must be at least 1");
+        }
+        mDao = dao;
+        mRecordingId = recordingId;
+        mPageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mPage != null && mPosition < mPage.size()) {
+            return true;
+        }
+        if (mIsLastPage) {
+            return false;
+        }
+        mPage = mDao.getTrackEntriesPage(mRecordingId, mLastId, mPageSize);
+        mPosition = 0;
+        mIsLastPage = mPage == null || mPage.size() < mPageSize;
+        return mPage != null && !mPage.isEmpty();
+    }
+
+    @Override
+    public RecordingEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final RecordingEntry entry = mPage.get(mPosition++);
+        mLastId = entry.getId();
+        return entry;
+    }
+}
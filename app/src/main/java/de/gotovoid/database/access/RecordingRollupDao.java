@@ -0,0 +1,71 @@
+package de.gotovoid.database.access;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+import de.gotovoid.database.model.RecordingRollup;
+
+/**
+ * {@link Dao} for the {@link RecordingRollup}.
+ * Defines access methods to the {@link RecordingRollup} table of a
+ * {@link android.arch.persistence.room.RoomDatabase}.
+ * <p>
+ * Created by DJ on 19/10/26.
+ */
+@Dao
+public interface RecordingRollupDao extends GenericDao<RecordingRollup> {
+    /**
+     * Adds the given {@link RecordingRollup}s and replaces existing buckets with the same
+     * recording, level and start time.
+     *
+     * @param rollups the {@link RecordingRollup}s
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void addOrReplace(final Collection<RecordingRollup> rollups);
+
+    /**
+     * Returns all {@link RecordingRollup}s of a recording for the given level ordered by time.
+     *
+     * @param recordingId id of the recording
+     * @param level       the level
+     * @return the {@link RecordingRollup}s
+     */
+    @Query("SELECT * FROM recording_rollup WHERE recording_id = :recordingId AND level = :level "
+            + "ORDER BY start_time")
+    List<RecordingRollup> getRollups(final long recordingId, final int level);
+
+    /**
+     * Returns the {@link RecordingRollup}s of a recording for the given level starting within
+     * the given time range ordered by time.
+     *
+     * @param recordingId id of the recording
+     * @param level       the level
+     * @param startTime   start of the time range in milliseconds, inclusive
+     * @param endTime     end of the time range in milliseconds, exclusive
+     * @return the {@link RecordingRollup}s
+     */
+    @Query("SELECT * FROM recording_rollup WHERE recording_id = :recordingId AND level = :level "
+            + "AND start_time >= :startTime AND start_time < :endTime ORDER BY start_time")
+    List<RecordingRollup> getRollups(final long recordingId,
+                                     final int level,
+                                     final long startTime,
+                                     final long endTime);
+
+    /**
+     * Returns all {@link RecordingRollup}s of a recording for the given level ordered by time
+     * as observable.
+     *
+     * @param recordingId id of the recording
+     * @param level       the level
+     * @return the {@link RecordingRollup}s
+     */
+    @Query("SELECT * FROM recording_rollup WHERE recording_id = :recordingId AND level = :level "
+            + "ORDER BY start_time")
+    LiveData<List<RecordingRollup>> observeRollups(final long recordingId, final int level);
+}
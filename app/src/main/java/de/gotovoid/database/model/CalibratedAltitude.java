@@ -76,4 +76,16 @@ public class CalibratedAltitude {
         return (int) (44330 * (1 - Math.pow((pressure / mPressure), 1 / 5.255))) + mAltitude;
     }
 
+    /**
+     * Calculates the pressure in hPa at the given altitude. This is the inverse of
+     * {@link #calculateHeight(float)}.
+     *
+     * @param altitude altitude in meters
+     * @return pressure
+     */
+    @Ignore
+    public float calculatePressure(final double altitude) {
+        return (float) (mPressure * Math.pow(1 - (altitude - mAltitude) / 44330, 5.255));
+    }
+
 }
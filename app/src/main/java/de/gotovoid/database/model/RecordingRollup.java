@@ -0,0 +1,191 @@
+package de.gotovoid.database.model;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * Object representing the aggregated {@link RecordingEntry}s of a {@link Recording} within a
+ * time bucket.
+ * The buckets of a {@link Recording} exist in several levels of different bucket duration, so
+ * charts can load the level fitting their resolution instead of all {@link RecordingEntry}s.
+ * <p>
+ * Created by DJ on 19/10/26.
+ *
+ * @see de.gotovoid.domain.model.track.RollupPyramid
+ */
+@Entity(tableName = "recording_rollup",
+        indices = {@Index(value = {"recording_id", "level", "start_time"},
+                name = "rollup_index",
+                unique = true)},
+        foreignKeys = @ForeignKey(entity = Recording.class,
+                parentColumns = "id",
+                childColumns = "recording_id",
+                onDelete = ForeignKey.CASCADE))
+public class RecordingRollup {
+    @ColumnInfo(name = "id")
+    @PrimaryKey(autoGenerate = true)
+    private long mId;
+    @ColumnInfo(name = "recording_id")
+    private long mRecordingId;
+    @ColumnInfo(name = "level")
+    private int mLevel;
+    @ColumnInfo(name = "start_time")
+    private long mStartTime;
+    @ColumnInfo(name = "count")
+    private int mCount;
+    @ColumnInfo(name = "min_altitude")
+    private int mMinAltitude;
+    @ColumnInfo(name = "max_altitude")
+    private int mMaxAltitude;
+    @ColumnInfo(name = "avg_altitude")
+    private double mAvgAltitude;
+    @ColumnInfo(name = "distance")
+    private double mDistance;
+
+    /**
+     * Default Constructor.
+     *
+     * @param recordingId id of the {@link Recording}
+     * @param level       level of the bucket
+     * @param startTime   start time of the bucket
+     * @param count       number of {@link RecordingEntry}s in the bucket
+     * @param minAltitude minimal altitude
+     * @param maxAltitude maximal altitude
+     * @param avgAltitude average altitude
+     * @param distance    distance covered within the bucket
+     */
+    public RecordingRollup(final long recordingId,
+                           final int level,
+                           final long startTime,
+                           final int count,
+                           final int minAltitude,
+                           final int maxAltitude,
+                           final double avgAltitude,
+                           final double distance) {
+        mRecordingId = recordingId;
+        mLevel = level;
+        mStartTime = startTime;
+        mCount = count;
+        mMinAltitude = minAltitude;
+        mMaxAltitude = maxAltitude;
+        mAvgAltitude = avgAltitude;
+        mDistance = distance;
+    }
+
+    /**
+     * Set the primary key for the {@link RecordingRollup}.
+     *
+     * @param primaryKey the primary key
+     */
+    public void setId(final long primaryKey) {
+        mId = primaryKey;
+    }
+
+    /**
+     * Returns the unique id of this {@link RecordingRollup}.
+     *
+     * @return the unique id
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Returns the {@link Recording} id.
+     *
+     * @return the {@link Recording} id
+     */
+    public long getRecordingId() {
+        return mRecordingId;
+    }
+
+    /**
+     * Returns the level of the bucket, higher levels have longer durations.
+     *
+     * @return the level
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Returns the start time of the bucket.
+     *
+     * @return start time in milliseconds
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Returns the number of {@link RecordingEntry}s aggregated in the bucket.
+     *
+     * @return number of {@link RecordingEntry}s
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the minimal altitude in meters.
+     *
+     * @return minimal altitude in meters
+     */
+    public int getMinAltitude() {
+        return mMinAltitude;
+    }
+
+    /**
+     * Returns the maximal altitude in meters.
+     *
+     * @return maximal altitude in meters
+     */
+    public int getMaxAltitude() {
+        return mMaxAltitude;
+    }
+
+    /**
+     * Returns the average altitude in meters.
+     *
+     * @return average altitude in meters
+     */
+    public double getAvgAltitude() {
+        return mAvgAltitude;
+    }
+
+    /**
+     * Returns the distance covered within the bucket in meters.
+     *
+     * @return distance in meters
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("RecordingRollup{");
+        builder.append("recordingId: ");
+        builder.append(mRecordingId);
+        builder.append(", level: ");
+        builder.append(mLevel);
+        builder.append(", startTime: ");
+        builder.append(mStartTime);
+        builder.append(", count: ");
+        builder.append(mCount);
+        builder.append(", altitude: [");
+        builder.append(mMinAltitude);
+        builder.append(", ");
+        builder.append(mAvgAltitude);
+        builder.append(", ");
+        builder.append(mMaxAltitude);
+        builder.append("], distance: ");
+        builder.append(mDistance);
+        builder.append('}');
+        return builder.toString();
+    }
+}
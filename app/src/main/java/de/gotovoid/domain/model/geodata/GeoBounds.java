@@ -193,6 +193,26 @@ public class GeoBounds {
         return new RelativePosition(coordinate);
     }
 
+    /**
+     * Returns the relative position of the given latitude within the {@link GeoBounds}.
+     *
+     * @param latitude the latitude
+     * @return relative latitude, between 0 and 1 if within bounds
+     */
+    public double getRelativeLatitude(final double latitude) {
+        return (latitude - mLatMin) / getLatDegreesDistance();
+    }
+
+    /**
+     * Returns the relative position of the given longitude within the {@link GeoBounds}.
+     *
+     * @param longitude the longitude
+     * @return relative longitude, between 0 and 1 if within bounds
+     */
+    public double getRelativeLongitude(final double longitude) {
+        return (longitude - mLngMin) / getLngDegreesDistance();
+    }
+
     /**
      * Defines the relative position of a {@link GeoCoordinate} within the {@link GeoBounds}.
      */
@@ -216,8 +236,8 @@ public class GeoBounds {
          * @param longitude the longitude
          */
         private RelativePosition(final double latitude, final double longitude) {
-            mLatitude = (latitude - mLatMin) / getLatDegreesDistance();
-            mLongitude = (longitude - mLngMin) / getLngDegreesDistance();
+            mLatitude = getRelativeLatitude(latitude);
+            mLongitude = getRelativeLongitude(longitude);
         }
 
         /**
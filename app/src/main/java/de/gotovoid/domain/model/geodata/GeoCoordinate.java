@@ -87,15 +87,29 @@ public class GeoCoordinate {
         if (other == null) {
             return 0;
         }
-        double distanceLat = Math.toRadians(other.mLatitude - mLatitude);
-        double distanceLng = Math.toRadians(other.mLongitude - mLongitude);
-        double lat1 = Math.toRadians(mLatitude);
-        double lat2 = Math.toRadians(other.mLatitude);
+        return computeDistance(mLatitude, mLongitude, other.mLatitude, other.mLongitude);
+    }
 
-        double a = Math.pow(Math.sin(distanceLat / 2), 2)
-                + Math.pow(Math.sin(distanceLng / 2), 2) * Math.cos(lat1) * Math.cos(lat2);
-        double c = 2 * Math.asin(Math.sqrt(a));
-        return EARTH_RADIUS * c;
+    /**
+     * Computes the Haversine distance between two points in meters, without creating
+     * {@link GeoCoordinate} instances.
+     * https://rosettacode.org/wiki/Haversine_formula
+     *
+     * @param lat1 latitude of the first point
+     * @param lng1 longitude of the first point
+     * @param lat2 latitude of the second point
+     * @param lng2 longitude of the second point
+     * @return Haversine distance in meters
+     */
+    public static double computeDistance(final double lat1,
+                                         final double lng1,
+                                         final double lat2,
+                                         final double lng2) {
+        final double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        final double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        final double a = sinLat * sinLat + sinLng * sinLng
+                * Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2));
+        return EARTH_RADIUS * 2 * Math.asin(Math.sqrt(a));
     }
 
     @Override
@@ -240,6 +240,31 @@ public class GeoData {
             return null;
         }
 
+        /**
+         * Returns the position on the x axis in pixels for the given longitude.
+         * Does not allocate, so it can be used for animations.
+         *
+         * @param longitude the longitude
+         * @return x axis position
+         */
+        public float getXPos(final double longitude) {
+            return (float) (mBounds.getStartX()
+                    + mGeoBounds.getRelativeLongitude(longitude) * mBounds.getPixelWidth());
+        }
+
+        /**
+         * Returns the position on the y axis in pixels for the given latitude.
+         * Does not allocate, so it can be used for animations.
+         *
+         * @param latitude the latitude
+         * @return y axis position
+         */
+        public float getYPos(final double latitude) {
+            return mBounds.getStartY() + mBounds.getPixelHeight()
+                    - (float) (mGeoBounds.getRelativeLatitude(latitude)
+                    * mBounds.getPixelHeight());
+        }
+
         /**
          * Returns the length in pixels for the given {@link UnitValue<DistanceUnit>}.
          *
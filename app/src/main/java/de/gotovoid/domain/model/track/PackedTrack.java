@@ -0,0 +1,226 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.domain.model.geodata.GeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Compact representation of a track.
+ * Stores the data of a {@link List} of {@link RecordingEntry}s in primitive arrays, so
+ * track analysis can iterate over the data without boxing or object dereferencing.
+ * Additionally stores the cumulative distance along the track in meters.
+ * New points can be appended, so the {@link PackedTrack} can also be used while recording.
+ */
+public class PackedTrack {
+    /**
+     * Initial capacity of the arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    /**
+     * Time stamps of the points in milliseconds.
+     */
+    private long[] mTimeStamps;
+    /**
+     * Latitudes of the points.
+     */
+    private double[] mLatitudes;
+    /**
+     * Longitudes of the points.
+     */
+    private double[] mLongitudes;
+    /**
+     * Altitudes of the points in meters.
+     */
+    private int[] mAltitudes;
+    /**
+     * Cumulative distance from the first point in meters.
+     */
+    private double[] mDistances;
+    /**
+     * Number of points stored.
+     */
+    private int mSize;
+
+    /**
+     * Creates an empty {@link PackedTrack}.
+     */
+    public PackedTrack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty {@link PackedTrack} with the given initial capacity.
+     *
+     * @param capacity the initial capacity
+     */
+    public PackedTrack(final int capacity) {
+        final int size = Math.max(capacity, 1);
+        mTimeStamps = new long[size];
+        mLatitudes = new double[size];
+        mLongitudes = new double[size];
+        mAltitudes = new int[size];
+        mDistances = new double[size];
+    }
+
+    /**
+     * Creates a new {@link PackedTrack} from the given {@link List} of {@link RecordingEntry}s.
+     *
+     * @param entries the {@link RecordingEntry}s
+     * @return the {@link PackedTrack}
+     */
+    @NonNull
+    public static PackedTrack fromEntries(@NonNull final List<RecordingEntry> entries) {
+        if (entries == null) {
+            return new PackedTrack();
+        }
+        final PackedTrack track = new PackedTrack(entries.size());
+        for (RecordingEntry entry : entries) {
+            track.add(entry);
+        }
+        return track;
+    }
+
+    /**
+     * Append the given {@link RecordingEntry}.
+     *
+     * @param entry the {@link RecordingEntry}
+     */
+    public void add(@NonNull final RecordingEntry entry) {
+        add(entry.getTimeStamp(),
+                entry.getLatitude(),
+                entry.getLongitude(),
+                entry.getAltitude());
+    }
+
+    /**
+     * Append a point to the track.
+     *
+     * @param timeStamp time stamp in milliseconds
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @param altitude  the altitude in meters
+     */
+    public void add(final long timeStamp,
+                    final double latitude,
+                    final double longitude,
+                    final int altitude) {
+        if (mSize == mTimeStamps.length) {
+            grow();
+        }
+        mTimeStamps[mSize] = timeStamp;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mAltitudes[mSize] = altitude;
+        if (mSize == 0) {
+            mDistances[mSize] = 0;
+        } else {
+            mDistances[mSize] = mDistances[mSize - 1]
+                    + GeoCoordinate.computeDistance(mLatitudes[mSize - 1],
+                    mLongitudes[mSize - 1],
+                    latitude,
+                    longitude);
+        }
+        mSize++;
+    }
+
+    /**
+     * Double the capacity of the arrays.
+     */
+    private void grow() {
+        final int capacity = mTimeStamps.length * 2;
+        mTimeStamps = Arrays.copyOf(mTimeStamps, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mAltitudes = Arrays.copyOf(mAltitudes, capacity);
+        mDistances = Arrays.copyOf(mDistances, capacity);
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns true if the track does not contain any points.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the time stamp of the point at the given index.
+     *
+     * @param index index of the point
+     * @return the time stamp in milliseconds
+     */
+    public long getTimeStamp(final int index) {
+        return mTimeStamps[index];
+    }
+
+    /**
+     * Returns the latitude of the point at the given index.
+     *
+     * @param index index of the point
+     * @return the latitude
+     */
+    public double getLatitude(final int index) {
+        return mLatitudes[index];
+    }
+
+    /**
+     * Returns the longitude of the point at the given index.
+     *
+     * @param index index of the point
+     * @return the longitude
+     */
+    public double getLongitude(final int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Returns the altitude of the point at the given index.
+     *
+     * @param index index of the point
+     * @return the altitude in meters
+     */
+    public int getAltitude(final int index) {
+        return mAltitudes[index];
+    }
+
+    /**
+     * Returns the distance along the track from the first point to the point at the given
+     * index.
+     *
+     * @param index index of the point
+     * @return the distance in meters
+     */
+    public double getDistance(final int index) {
+        return mDistances[index];
+    }
+
+    /**
+     * Returns the total length of the track in meters.
+     *
+     * @return the length in meters
+     */
+    public double getTotalDistance() {
+        if (mSize == 0) {
+            return 0;
+        }
+        return mDistances[mSize - 1];
+    }
+}
@@ -0,0 +1,483 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.gotovoid.database.model.RecordingRollup;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Reduces the altitudes of a {@link PackedTrack} to a fixed number of pixel columns using
+ * M4 decimation.
+ * Every column stores the first, last, minimal and maximal altitude of the points falling into
+ * it, which is enough to draw the same line chart as with all points.
+ * New points of a growing {@link PackedTrack} are appended by {@link #update()}. When the track
+ * grows beyond the last column, neighbouring columns are merged pairwise and the column size
+ * doubles, so the existing columns never need to be computed from the points again.
+ * <p>
+ * The columns can also be computed from the {@link RecordingRollup}s of one level of the
+ * {@link RollupPyramid} of a recording, so the chart only needs about one stored bucket per
+ * column instead of all points. A {@link RecordingRollup} provides its average altitude as
+ * first and last altitude.
+ */
+public class ProfileDecimator {
+    /**
+     * Number of floats per column needed by {@link #fillLines(float[], float, float, float, float)}.
+     */
+    public static final int FLOATS_PER_COLUMN = 8;
+
+    /**
+     * The values to use for the horizontal axis.
+     */
+    public enum Axis {
+        /**
+         * Time stamp of the points.
+         */
+        TIME,
+        /**
+         * Distance along the track.
+         */
+        DISTANCE
+    }
+
+    /**
+     * The {@link PackedTrack} to decimate, null if the {@link RecordingRollup}s are used.
+     */
+    private final PackedTrack mTrack;
+    /**
+     * The {@link RecordingRollup}s of one level ordered by time, null if the
+     * {@link PackedTrack} is used.
+     */
+    private final List<RecordingRollup> mRollups;
+    /**
+     * The {@link Axis} to use for the horizontal axis.
+     */
+    private final Axis mAxis;
+    /**
+     * Number of columns.
+     */
+    private int mWidth;
+    /**
+     * Size of a column in axis units.
+     */
+    private double mColumnSize;
+    /**
+     * Axis value of the first point.
+     */
+    private double mOrigin;
+    /**
+     * Number of points of the {@link PackedTrack} already added to the columns.
+     */
+    private int mProcessed;
+    /**
+     * Number of columns in use, the last one may still change.
+     */
+    private int mColumns;
+    /**
+     * Number of points per column.
+     */
+    private int[] mCounts;
+    /**
+     * Altitude of the first point per column.
+     */
+    private float[] mFirst;
+    /**
+     * Altitude of the last point per column.
+     */
+    private float[] mLast;
+    /**
+     * Minimal altitude per column.
+     */
+    private float[] mMin;
+    /**
+     * Maximal altitude per column.
+     */
+    private float[] mMax;
+    /**
+     * Minimal altitude of the whole track.
+     */
+    private float mMinAltitude;
+    /**
+     * Maximal altitude of the whole track.
+     */
+    private float mMaxAltitude;
+
+    /**
+     * Constructor taking the {@link PackedTrack} and the {@link Axis}.
+     *
+     * @param track the {@link PackedTrack}
+     * @param axis  the {@link Axis}
+     */
+    public ProfileDecimator(@NonNull final PackedTrack track, @NonNull final Axis axis) {
+        mTrack = track;
+        mRollups = null;
+        mAxis = axis;
+    }
+
+    /**
+     * Constructor taking the {@link RecordingRollup}s of one level ordered by time.
+     * The horizontal axis is the time.
+     *
+     * @param rollups the {@link RecordingRollup}s
+     */
+    public ProfileDecimator(@NonNull final List<RecordingRollup> rollups) {
+        mTrack = null;
+        mRollups = rollups;
+        mAxis = Axis.TIME;
+    }
+
+    /**
+     * Returns the {@link PackedTrack}.
+     *
+     * @return the {@link PackedTrack}, null if the {@link RecordingRollup}s are used
+     */
+    @Nullable
+    public PackedTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Returns the {@link RecordingRollup}s.
+     *
+     * @return the {@link RecordingRollup}s, null if the {@link PackedTrack} is used
+     */
+    @Nullable
+    public List<RecordingRollup> getRollups() {
+        return mRollups;
+    }
+
+    /**
+     * Set the number of columns and compute them from all points of the {@link PackedTrack}
+     * or from all {@link RecordingRollup}s.
+     * The column size is chosen so the current track fills all columns.
+     *
+     * @param width number of columns
+     */
+    public void setWidth(final int width) {
+        mWidth = Math.max(width, 1);
+        mCounts = new int[mWidth];
+        mFirst = new float[mWidth];
+        mLast = new float[mWidth];
+        mMin = new float[mWidth];
+        mMax = new float[mWidth];
+        mColumns = 0;
+        mProcessed = 0;
+        mMinAltitude = Float.MAX_VALUE;
+        mMaxAltitude = -Float.MAX_VALUE;
+        if (mRollups != null) {
+            addRollups();
+            return;
+        }
+        if (mTrack.isEmpty()) {
+            mColumnSize = 0;
+        } else {
+            mOrigin = getValue(0);
+            final double range = getValue(mTrack.size() - 1) - mOrigin;
+            // Slightly larger, so the last point still falls into the last column.
+            mColumnSize = range / mWidth * 1.000001;
+        }
+        update();
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return number of columns
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the number of columns in use.
+     *
+     * @return number of used columns
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Returns the size of a column in axis units.
+     *
+     * @return column size in milliseconds or meters
+     */
+    public double getColumnSize() {
+        return mColumnSize;
+    }
+
+    /**
+     * Returns the minimal altitude of the track.
+     *
+     * @return minimal altitude in meters
+     */
+    public float getMinAltitude() {
+        return mMinAltitude;
+    }
+
+    /**
+     * Returns the maximal altitude of the track.
+     *
+     * @return maximal altitude in meters
+     */
+    public float getMaxAltitude() {
+        return mMaxAltitude;
+    }
+
+    /**
+     * Returns the number of points in the given column.
+     *
+     * @param column the column
+     * @return number of points
+     */
+    public int getCount(final int column) {
+        return mCounts[column];
+    }
+
+    /**
+     * Returns the altitude of the first point in the given column.
+     *
+     * @param column the column
+     * @return altitude in meters
+     */
+    public float getFirst(final int column) {
+        return mFirst[column];
+    }
+
+    /**
+     * Returns the altitude of the last point in the given column.
+     *
+     * @param column the column
+     * @return altitude in meters
+     */
+    public float getLast(final int column) {
+        return mLast[column];
+    }
+
+    /**
+     * Returns the minimal altitude in the given column.
+     *
+     * @param column the column
+     * @return altitude in meters
+     */
+    public float getMin(final int column) {
+        return mMin[column];
+    }
+
+    /**
+     * Returns the maximal altitude in the given column.
+     *
+     * @param column the column
+     * @return altitude in meters
+     */
+    public float getMax(final int column) {
+        return mMax[column];
+    }
+
+    /**
+     * Add the points appended to the {@link PackedTrack} since the last call.
+     * Must be called after {@link #setWidth(int)}.
+     *
+     * @return true if points were added, always false for {@link RecordingRollup}s
+     */
+    public boolean update() {
+        if (mTrack == null || mCounts == null || mProcessed == mTrack.size()) {
+            return false;
+        }
+        if (mProcessed == 0) {
+            mOrigin = getValue(0);
+        }
+        for (int i = mProcessed; i < mTrack.size(); i++) {
+            final double offset = Math.max(0, getValue(i) - mOrigin);
+            if (mColumnSize <= 0) {
+                // All points so far have the same axis value, start with the offset of the
+                // first point differing.
+                if (offset > 0) {
+                    mColumnSize = offset / mWidth * 2;
+                }
+            }
+            int column = mColumnSize <= 0 ? 0 : (int) (offset / mColumnSize);
+            while (column >= mWidth) {
+                mergeColumns();
+                column = (int) (offset / mColumnSize);
+            }
+            add(column, mTrack.getAltitude(i));
+        }
+        mProcessed = mTrack.size();
+        return true;
+    }
+
+    /**
+     * Write the lines to draw the decimated profile into the given array in the format used by
+     * {@link android.graphics.Canvas#drawLines(float[], int, int, android.graphics.Paint)}.
+     * Each column adds a vertical line from its minimum to its maximum and a line connecting
+     * it to the previous column. Does not allocate.
+     *
+     * @param lines  array to write to, needs {@link #FLOATS_PER_COLUMN} floats per column
+     * @param left   left position of the chart in pixels
+     * @param top    top position of the chart in pixels
+     * @param width  width of the chart in pixels
+     * @param height height of the chart in pixels
+     * @return number of floats written
+     */
+    public int fillLines(@NonNull final float[] lines,
+                         final float left,
+                         final float top,
+                         final float width,
+                         final float height) {
+        if (mColumns == 0) {
+            return 0;
+        }
+        final float range = Math.max(mMaxAltitude - mMinAltitude, 1);
+        final float scale = height / range;
+        final float bottom = top + height;
+        final float columnWidth = width / mWidth;
+        int count = 0;
+        float prevX = 0;
+        float prevY = 0;
+        boolean hasPrevious = false;
+        for (int column = 0; column < mColumns; column++) {
+            if (mCounts[column] == 0) {
+                continue;
+            }
+            final float x = left + (column + 0.5f) * columnWidth;
+            if (hasPrevious) {
+                lines[count++] = prevX;
+                lines[count++] = prevY;
+                lines[count++] = x;
+                lines[count++] = bottom - (mFirst[column] - mMinAltitude) * scale;
+            }
+            lines[count++] = x;
+            lines[count++] = bottom - (mMin[column] - mMinAltitude) * scale;
+            lines[count++] = x;
+            lines[count++] = bottom - (mMax[column] - mMinAltitude) * scale;
+            prevX = x;
+            prevY = bottom - (mLast[column] - mMinAltitude) * scale;
+            hasPrevious = true;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the axis value of the point with the given index.
+     *
+     * @param index index of the point
+     * @return the axis value
+     */
+    private double getValue(final int index) {
+        if (mAxis == Axis.TIME) {
+            return mTrack.getTimeStamp(index);
+        }
+        return mTrack.getDistance(index);
+    }
+
+    /**
+     * Compute the columns from the {@link RecordingRollup}s.
+     * The buckets of the last {@link RecordingRollup} end at the last column.
+     */
+    private void addRollups() {
+        if (mRollups.isEmpty()) {
+            mColumnSize = 0;
+            return;
+        }
+        final RecordingRollup last = mRollups.get(mRollups.size() - 1);
+        mOrigin = mRollups.get(0).getStartTime();
+        final double range = last.getStartTime()
+                + RollupPyramid.LEVEL_DURATIONS[last.getLevel()] - mOrigin;
+        mColumnSize = range / mWidth;
+        for (RecordingRollup rollup : mRollups) {
+            final float average = (float) rollup.getAvgAltitude();
+            add(Math.min((int) ((rollup.getStartTime() - mOrigin) / mColumnSize), mWidth - 1),
+                    average,
+                    average,
+                    rollup.getMinAltitude(),
+                    rollup.getMaxAltitude(),
+                    rollup.getCount());
+        }
+    }
+
+    /**
+     * Add an altitude to the given column.
+     *
+     * @param column   the column
+     * @param altitude altitude in meters
+     */
+    private void add(final int column, final float altitude) {
+        add(column, altitude, altitude, altitude, altitude, 1);
+    }
+
+    /**
+     * Add the altitudes of consecutive points to the given column.
+     *
+     * @param column the column
+     * @param first  altitude of the first point in meters
+     * @param last   altitude of the last point in meters
+     * @param min    minimal altitude in meters
+     * @param max    maximal altitude in meters
+     * @param count  number of points
+     */
+    private void add(final int column,
+                     final float first,
+                     final float last,
+                     final float min,
+                     final float max,
+                     final int count) {
+        if (mCounts[column] == 0) {
+            mFirst[column] = first;
+            mMin[column] = min;
+            mMax[column] = max;
+        } else {
+            mMin[column] = Math.min(mMin[column], min);
+            mMax[column] = Math.max(mMax[column], max);
+        }
+        mLast[column] = last;
+        mCounts[column] += count;
+        mColumns = Math.max(mColumns, column + 1);
+        mMinAltitude = Math.min(mMinAltitude, min);
+        mMaxAltitude = Math.max(mMaxAltitude, max);
+    }
+
+    /**
+     * Merge neighbouring columns pairwise and double the column size.
+     * The first and last values of a merged column are taken from the non empty columns.
+     */
+    private void mergeColumns() {
+        final int columns = (mColumns + 1) / 2;
+        for (int column = 0; column < columns; column++) {
+            final int left = column * 2;
+            final int right = left + 1;
+            final boolean hasLeft = mCounts[left] > 0;
+            final boolean hasRight = right < mColumns && mCounts[right] > 0;
+            if (hasLeft && hasRight) {
+                mFirst[column] = mFirst[left];
+                mLast[column] = mLast[right];
+                mMin[column] = Math.min(mMin[left], mMin[right]);
+                mMax[column] = Math.max(mMax[left], mMax[right]);
+                mCounts[column] = mCounts[left] + mCounts[right];
+            } else if (hasLeft) {
+                mFirst[column] = mFirst[left];
+                mLast[column] = mLast[left];
+                mMin[column] = mMin[left];
+                mMax[column] = mMax[left];
+                mCounts[column] = mCounts[left];
+            } else if (hasRight) {
+                mFirst[column] = mFirst[right];
+                mLast[column] = mLast[right];
+                mMin[column] = mMin[right];
+                mMax[column] = mMax[right];
+                mCounts[column] = mCounts[right];
+            } else {
+                mCounts[column] = 0;
+            }
+        }
+        Arrays.fill(mCounts, columns, mWidth, 0);
+        mColumns = columns;
+        mColumnSize *= 2;
+    }
+}
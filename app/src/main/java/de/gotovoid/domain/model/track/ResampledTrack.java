@@ -0,0 +1,226 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Track with samples on a uniform time grid.
+ * Sample i belongs to the time {@link #getStartTime()} + i * {@link #getPeriod()}.
+ * Samples which were interpolated over a gap in the original track are marked and can be
+ * checked using {@link #isGap(int)}.
+ * Created by the {@link TrackResampler}.
+ */
+public class ResampledTrack {
+    /**
+     * Initial capacity of the arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    /**
+     * Time stamp of the first sample in milliseconds.
+     */
+    private final long mStartTime;
+    /**
+     * Time between two samples in milliseconds.
+     */
+    private final long mPeriod;
+    /**
+     * Latitudes of the samples.
+     */
+    private double[] mLatitudes;
+    /**
+     * Longitudes of the samples.
+     */
+    private double[] mLongitudes;
+    /**
+     * Altitudes of the samples in meters.
+     */
+    private double[] mAltitudes;
+    /**
+     * True for samples lying in a gap of the original track.
+     */
+    private boolean[] mGaps;
+    /**
+     * Number of samples stored.
+     */
+    private int mSize;
+    /**
+     * Number of samples lying in a gap.
+     */
+    private int mGapCount;
+
+    /**
+     * Constructor taking the time of the first sample and the period.
+     *
+     * @param startTime time stamp of the first sample in milliseconds
+     * @param period    time between two samples in milliseconds
+     */
+    ResampledTrack(final long startTime, final long period) {
+        mStartTime = startTime;
+        mPeriod = period;
+        mLatitudes = new double[DEFAULT_CAPACITY];
+        mLongitudes = new double[DEFAULT_CAPACITY];
+        mAltitudes = new double[DEFAULT_CAPACITY];
+        mGaps = new boolean[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Append a sample.
+     *
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @param altitude  the altitude in meters
+     * @param isGap     true if the sample lies in a gap
+     */
+    void add(final double latitude,
+             final double longitude,
+             final double altitude,
+             final boolean isGap) {
+        if (mSize == mLatitudes.length) {
+            final int capacity = mSize * 2;
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mAltitudes = Arrays.copyOf(mAltitudes, capacity);
+            mGaps = Arrays.copyOf(mGaps, capacity);
+        }
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mAltitudes[mSize] = altitude;
+        mGaps[mSize] = isGap;
+        if (isGap) {
+            mGapCount++;
+        }
+        mSize++;
+    }
+
+    /**
+     * Returns the time stamp of the first sample.
+     *
+     * @return time stamp in milliseconds
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Returns the time between two samples.
+     *
+     * @return period in milliseconds
+     */
+    public long getPeriod() {
+        return mPeriod;
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return number of samples
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of samples lying in a gap of the original track.
+     *
+     * @return number of gap samples
+     */
+    public int getGapCount() {
+        return mGapCount;
+    }
+
+    /**
+     * Returns the time stamp of the sample at the given index.
+     *
+     * @param index index of the sample
+     * @return time stamp in milliseconds
+     */
+    public long getTime(final int index) {
+        return mStartTime + index * mPeriod;
+    }
+
+    /**
+     * Returns the latitude of the sample at the given index.
+     *
+     * @param index index of the sample
+     * @return the latitude
+     */
+    public double getLatitude(final int index) {
+        return mLatitudes[index];
+    }
+
+    /**
+     * Returns the longitude of the sample at the given index.
+     *
+     * @param index index of the sample
+     * @return the longitude
+     */
+    public double getLongitude(final int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Returns the altitude of the sample at the given index.
+     *
+     * @param index index of the sample
+     * @return altitude in meters
+     */
+    public double getAltitude(final int index) {
+        return mAltitudes[index];
+    }
+
+    /**
+     * Returns true if the sample at the given index lies in a gap of the original track.
+     * The values of gap samples are interpolated between the fixes surrounding the gap.
+     *
+     * @param index index of the sample
+     * @return true if in a gap
+     */
+    public boolean isGap(final int index) {
+        return mGaps[index];
+    }
+
+    /**
+     * Returns a copy of the latitudes with one entry per sample.
+     *
+     * @return the latitudes
+     */
+    @NonNull
+    public double[] getLatitudes() {
+        return Arrays.copyOf(mLatitudes, mSize);
+    }
+
+    /**
+     * Returns a copy of the longitudes with one entry per sample.
+     *
+     * @return the longitudes
+     */
+    @NonNull
+    public double[] getLongitudes() {
+        return Arrays.copyOf(mLongitudes, mSize);
+    }
+
+    /**
+     * Returns a copy of the altitudes with one entry per sample.
+     *
+     * @return the altitudes in meters
+     */
+    @NonNull
+    public double[] getAltitudes() {
+        return Arrays.copyOf(mAltitudes, mSize);
+    }
+
+    /**
+     * Returns a copy of the gap mask with one entry per sample.
+     *
+     * @return the gap mask
+     */
+    @NonNull
+    public boolean[] getGaps() {
+        return Arrays.copyOf(mGaps, mSize);
+    }
+}
@@ -0,0 +1,247 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.geodata.GeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Builds the {@link RecordingRollup}s of a recording incrementally.
+ * The {@link RecordingEntry}s are aggregated into time buckets for every level in
+ * {@link #LEVEL_DURATIONS}. The buckets are aligned to multiples of their duration.
+ * A bucket is completed as soon as a {@link RecordingEntry} after its end is added, completed
+ * buckets are returned by {@link #add(RecordingEntry)} so they can be persisted.
+ * The {@link RecordingEntry}s need to be added in ascending time order.
+ */
+public class RollupPyramid {
+    /**
+     * Duration of the buckets in milliseconds for each level.
+     */
+    public static final long[] LEVEL_DURATIONS = {1000, 10000, 60000, 600000};
+
+    /**
+     * Id of the recording.
+     */
+    private final long mRecordingId;
+    /**
+     * The open bucket for each level, null if there is none.
+     */
+    private final Bucket[] mBuckets = new Bucket[LEVEL_DURATIONS.length];
+    /**
+     * True if a {@link RecordingEntry} was added.
+     */
+    private boolean mHasPrevious;
+    /**
+     * Latitude of the previous {@link RecordingEntry}.
+     */
+    private double mPrevLatitude;
+    /**
+     * Longitude of the previous {@link RecordingEntry}.
+     */
+    private double mPrevLongitude;
+
+    /**
+     * Constructor taking the id of the recording.
+     *
+     * @param recordingId id of the recording
+     */
+    public RollupPyramid(final long recordingId) {
+        mRecordingId = recordingId;
+    }
+
+    /**
+     * Build all {@link RecordingRollup}s for the given {@link RecordingEntry}s.
+     *
+     * @param recordingId id of the recording
+     * @param entries     the {@link RecordingEntry}s in ascending time order
+     * @return the {@link RecordingRollup}s
+     */
+    @NonNull
+    public static List<RecordingRollup> build(final long recordingId,
+                                              @NonNull final Iterator<RecordingEntry> entries) {
+        final RollupPyramid pyramid = new RollupPyramid(recordingId);
+        final List<RecordingRollup> rollups = new ArrayList<>();
+        while (entries.hasNext()) {
+            rollups.addAll(pyramid.add(entries.next()));
+        }
+        rollups.addAll(pyramid.flush());
+        return rollups;
+    }
+
+    /**
+     * Returns the coarsest level that still provides at least one bucket per pixel.
+     *
+     * @param duration visible duration in milliseconds
+     * @param pixels   number of pixels available to show the duration
+     * @return the level
+     */
+    public static int getLevel(final long duration, final int pixels) {
+        final long pixelDuration = duration / Math.max(pixels, 1);
+        int level = 0;
+        for (int i = 1; i < LEVEL_DURATIONS.length; i++) {
+            if (LEVEL_DURATIONS[i] <= pixelDuration) {
+                level = i;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the id of the recording.
+     *
+     * @return id of the recording
+     */
+    public long getRecordingId() {
+        return mRecordingId;
+    }
+
+    /**
+     * Add the given {@link RecordingEntry} to the open buckets.
+     *
+     * @param entry the {@link RecordingEntry}
+     * @return the {@link RecordingRollup}s of the buckets completed by the entry
+     */
+    @NonNull
+    public List<RecordingRollup> add(@NonNull final RecordingEntry entry) {
+        return add(entry.getTimeStamp(),
+                entry.getLatitude(),
+                entry.getLongitude(),
+                entry.getAltitude());
+    }
+
+    /**
+     * Add a point to the open buckets.
+     *
+     * @param timeStamp time stamp in milliseconds
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @param altitude  the altitude in meters
+     * @return the {@link RecordingRollup}s of the buckets completed by the point
+     */
+    @NonNull
+    public List<RecordingRollup> add(final long timeStamp,
+                                     final double latitude,
+                                     final double longitude,
+                                     final int altitude) {
+        final double distance;
+        if (mHasPrevious) {
+            distance = GeoCoordinate.computeDistance(mPrevLatitude, mPrevLongitude,
+                    latitude, longitude);
+        } else {
+            distance = 0;
+        }
+        mHasPrevious = true;
+        mPrevLatitude = latitude;
+        mPrevLongitude = longitude;
+
+        final List<RecordingRollup> completed = new ArrayList<>();
+        for (int level = 0; level < LEVEL_DURATIONS.length; level++) {
+            final long startTime = timeStamp - timeStamp % LEVEL_DURATIONS[level];
+            Bucket bucket = mBuckets[level];
+            if (bucket != null && bucket.mStartTime != startTime) {
+                completed.add(bucket.toRollup(mRecordingId, level));
+                bucket = null;
+            }
+            if (bucket == null) {
+                bucket = new Bucket(startTime);
+                mBuckets[level] = bucket;
+            }
+            bucket.add(altitude, distance);
+        }
+        return completed;
+    }
+
+    /**
+     * Returns the {@link RecordingRollup}s of the open buckets without completing them.
+     * They can be persisted to show an unfinished recording and will be replaced once completed.
+     *
+     * @return the {@link RecordingRollup}s of the open buckets
+     */
+    @NonNull
+    public List<RecordingRollup> getOpen() {
+        final List<RecordingRollup> open = new ArrayList<>();
+        for (int level = 0; level < LEVEL_DURATIONS.length; level++) {
+            if (mBuckets[level] != null) {
+                open.add(mBuckets[level].toRollup(mRecordingId, level));
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Complete all open buckets.
+     * Should be called when the recording ends.
+     *
+     * @return the {@link RecordingRollup}s of the completed buckets
+     */
+    @NonNull
+    public List<RecordingRollup> flush() {
+        final List<RecordingRollup> completed = getOpen();
+        for (int level = 0; level < LEVEL_DURATIONS.length; level++) {
+            mBuckets[level] = null;
+        }
+        return completed;
+    }
+
+    /**
+     * Aggregate of a single time bucket.
+     */
+    private static class Bucket {
+        private final long mStartTime;
+        private int mCount;
+        private int mMinAltitude = Integer.MAX_VALUE;
+        private int mMaxAltitude = Integer.MIN_VALUE;
+        private long mSumAltitude;
+        private double mDistance;
+
+        /**
+         * Constructor taking the start time.
+         *
+         * @param startTime start time of the bucket in milliseconds
+         */
+        private Bucket(final long startTime) {
+            mStartTime = startTime;
+        }
+
+        /**
+         * Add a value to the bucket.
+         *
+         * @param altitude altitude in meters
+         * @param distance distance to the previous point in meters
+         */
+        private void add(final int altitude, final double distance) {
+            mCount++;
+            mMinAltitude = Math.min(mMinAltitude, altitude);
+            mMaxAltitude = Math.max(mMaxAltitude, altitude);
+            mSumAltitude += altitude;
+            mDistance += distance;
+        }
+
+        /**
+         * Create the {@link RecordingRollup} for this bucket.
+         *
+         * @param recordingId id of the recording
+         * @param level       level of the bucket
+         * @return the {@link RecordingRollup}
+         */
+        private RecordingRollup toRollup(final long recordingId, final int level) {
+            return new RecordingRollup(recordingId,
+                    level,
+                    mStartTime,
+                    mCount,
+                    mMinAltitude,
+                    mMaxAltitude,
+                    (double) mSumAltitude / mCount,
+                    mDistance);
+        }
+    }
+}
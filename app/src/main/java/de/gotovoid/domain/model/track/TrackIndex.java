@@ -0,0 +1,458 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+import de.gotovoid.domain.model.geodata.GeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Spatial index over the segments of a {@link PackedTrack}.
+ * The segments are projected onto a local plane and sorted into a uniform grid, so the
+ * segment closest to a position can be found by only looking at the grid cells around the
+ * position instead of scanning the whole track.
+ * The index is immutable and should be built once per recording.
+ */
+public class TrackIndex {
+    /**
+     * Maximum number of grid cells per segment, limits the memory used by the grid.
+     */
+    private static final int MAX_CELLS_PER_SEGMENT = 4;
+    /**
+     * The indexed {@link PackedTrack}.
+     */
+    private final PackedTrack mTrack;
+    /**
+     * Latitude of the projection origin.
+     */
+    private final double mOriginLat;
+    /**
+     * Longitude of the projection origin.
+     */
+    private final double mOriginLng;
+    /**
+     * Meters per degree latitude.
+     */
+    private final double mMetersPerLat;
+    /**
+     * Meters per degree longitude at the origin latitude.
+     */
+    private final double mMetersPerLng;
+    /**
+     * Projected x positions of the track points in meters.
+     */
+    private final double[] mX;
+    /**
+     * Projected y positions of the track points in meters.
+     */
+    private final double[] mY;
+    /**
+     * Minimal projected x value of the grid.
+     */
+    private final double mMinX;
+    /**
+     * Minimal projected y value of the grid.
+     */
+    private final double mMinY;
+    /**
+     * Edge length of a grid cell in meters.
+     */
+    private final double mCellSize;
+    /**
+     * Number of grid columns.
+     */
+    private final int mColumns;
+    /**
+     * Number of grid rows.
+     */
+    private final int mRows;
+    /**
+     * Start offsets of the cells in {@link #mCellSegments}, has one more entry than cells.
+     */
+    private final int[] mCellStart;
+    /**
+     * Segment indices sorted by cell.
+     */
+    private final int[] mCellSegments;
+
+    /**
+     * Builds the index for the given {@link PackedTrack}.
+     * The {@link PackedTrack} must not be modified afterwards, appended points are not indexed.
+     *
+     * @param track the {@link PackedTrack} to index
+     */
+    public TrackIndex(@NonNull final PackedTrack track) {
+        mTrack = track;
+        final int size = track.size();
+        mX = new double[size];
+        mY = new double[size];
+
+        // Use the center of the track as projection origin.
+        double latMin = GeoCoordinate.LAT_MAX;
+        double latMax = GeoCoordinate.LAT_MIN;
+        double lngMin = GeoCoordinate.LNG_MAX;
+        double lngMax = GeoCoordinate.LNG_MIN;
+        for (int i = 0; i < size; i++) {
+            latMin = Math.min(latMin, track.getLatitude(i));
+            latMax = Math.max(latMax, track.getLatitude(i));
+            lngMin = Math.min(lngMin, track.getLongitude(i));
+            lngMax = Math.max(lngMax, track.getLongitude(i));
+        }
+        if (size == 0) {
+            mOriginLat = 0;
+            mOriginLng = 0;
+        } else {
+            mOriginLat = (latMin + latMax) / 2;
+            mOriginLng = (lngMin + lngMax) / 2;
+        }
+        mMetersPerLat = Math.toRadians(GeoCoordinate.EARTH_RADIUS);
+        mMetersPerLng = mMetersPerLat * Math.cos(Math.toRadians(mOriginLat));
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        double totalLength = 0;
+        for (int i = 0; i < size; i++) {
+            mX[i] = projectX(track.getLongitude(i));
+            mY[i] = projectY(track.getLatitude(i));
+            minX = Math.min(minX, mX[i]);
+            minY = Math.min(minY, mY[i]);
+            maxX = Math.max(maxX, mX[i]);
+            maxY = Math.max(maxY, mY[i]);
+            if (i > 0) {
+                totalLength += Math.hypot(mX[i] - mX[i - 1], mY[i] - mY[i - 1]);
+            }
+        }
+        final int segments = Math.max(size - 1, 0);
+        if (segments == 0) {
+            mMinX = 0;
+            mMinY = 0;
+            mCellSize = 1;
+            mColumns = 1;
+            mRows = 1;
+            mCellStart = new int[2];
+            mCellSegments = new int[0];
+            return;
+        }
+        mMinX = minX;
+        mMinY = minY;
+        final double width = Math.max(maxX - minX, 1);
+        final double height = Math.max(maxY - minY, 1);
+
+        /*
+        A cell should be about as large as an average segment, but the grid must not have
+        considerably more cells than segments.
+         */
+        double cellSize = Math.max(totalLength / segments, 1);
+        final double maxCells = (double) MAX_CELLS_PER_SEGMENT * segments;
+        if ((width / cellSize + 1) * (height / cellSize + 1) > maxCells) {
+            cellSize = Math.max(cellSize, Math.sqrt(width * height / maxCells));
+            while ((width / cellSize + 1) * (height / cellSize + 1) > maxCells) {
+                cellSize *= 1.25;
+            }
+        }
+        mCellSize = cellSize;
+        mColumns = (int) (width / cellSize) + 1;
+        mRows = (int) (height / cellSize) + 1;
+
+        // Count the segments per cell, then fill the cells.
+        final int cells = mColumns * mRows;
+        mCellStart = new int[cells + 1];
+        for (int segment = 0; segment < segments; segment++) {
+            final int colStart = getColumn(Math.min(mX[segment], mX[segment + 1]));
+            final int colEnd = getColumn(Math.max(mX[segment], mX[segment + 1]));
+            final int rowStart = getRow(Math.min(mY[segment], mY[segment + 1]));
+            final int rowEnd = getRow(Math.max(mY[segment], mY[segment + 1]));
+            for (int row = rowStart; row <= rowEnd; row++) {
+                for (int col = colStart; col <= colEnd; col++) {
+                    mCellStart[row * mColumns + col + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            mCellStart[cell + 1] += mCellStart[cell];
+        }
+        mCellSegments = new int[mCellStart[cells]];
+        final int[] fill = new int[cells];
+        for (int segment = 0; segment < segments; segment++) {
+            final int colStart = getColumn(Math.min(mX[segment], mX[segment + 1]));
+            final int colEnd = getColumn(Math.max(mX[segment], mX[segment + 1]));
+            final int rowStart = getRow(Math.min(mY[segment], mY[segment + 1]));
+            final int rowEnd = getRow(Math.max(mY[segment], mY[segment + 1]));
+            for (int row = rowStart; row <= rowEnd; row++) {
+                for (int col = colStart; col <= colEnd; col++) {
+                    final int cell = row * mColumns + col;
+                    mCellSegments[mCellStart[cell] + fill[cell]++] = segment;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed {@link PackedTrack}.
+     *
+     * @return the {@link PackedTrack}
+     */
+    @NonNull
+    public PackedTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Project the longitude onto the x axis of the local plane.
+     *
+     * @param longitude the longitude
+     * @return x position in meters
+     */
+    private double projectX(final double longitude) {
+        return (longitude - mOriginLng) * mMetersPerLng;
+    }
+
+    /**
+     * Project the latitude onto the y axis of the local plane.
+     *
+     * @param latitude the latitude
+     * @return y position in meters
+     */
+    private double projectY(final double latitude) {
+        return (latitude - mOriginLat) * mMetersPerLat;
+    }
+
+    /**
+     * Returns the grid column for the given x position, clamped to the grid.
+     *
+     * @param x x position in meters
+     * @return the column
+     */
+    private int getColumn(final double x) {
+        final int column = (int) Math.floor((x - mMinX) / mCellSize);
+        return Math.max(0, Math.min(mColumns - 1, column));
+    }
+
+    /**
+     * Returns the grid row for the given y position, clamped to the grid.
+     *
+     * @param y y position in meters
+     * @return the row
+     */
+    private int getRow(final double y) {
+        final int row = (int) Math.floor((y - mMinY) / mCellSize);
+        return Math.max(0, Math.min(mRows - 1, row));
+    }
+
+    /**
+     * Find the closest track segment to the given {@link ExtendedGeoCoordinate}.
+     *
+     * @param coordinate the {@link ExtendedGeoCoordinate}
+     * @return the {@link Match} or null if the track has less than two points
+     */
+    @Nullable
+    public Match findNearest(@NonNull final ExtendedGeoCoordinate coordinate) {
+        return findNearest(coordinate.getLatitude(), coordinate.getLongitude());
+    }
+
+    /**
+     * Find the closest track segment to the given position.
+     * Searches the grid in rings around the cell of the position and stops as soon as
+     * no unvisited cell can contain a closer segment.
+     *
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @return the {@link Match} or null if the track has less than two points
+     */
+    @Nullable
+    public Match findNearest(final double latitude, final double longitude) {
+        if (mCellSegments.length == 0) {
+            return null;
+        }
+        final double x = projectX(longitude);
+        final double y = projectY(latitude);
+        final int column = getColumn(x);
+        final int row = getRow(y);
+        final int maxRadius = Math.max(Math.max(column, mColumns - 1 - column),
+                Math.max(row, mRows - 1 - row));
+
+        int bestSegment = -1;
+        double bestDistance = Double.MAX_VALUE;
+        double bestFraction = 0;
+        for (int radius = 0; radius <= maxRadius; radius++) {
+            final int rowStart = Math.max(0, row - radius);
+            final int rowEnd = Math.min(mRows - 1, row + radius);
+            for (int r = rowStart; r <= rowEnd; r++) {
+                final boolean isEdgeRow = r == row - radius || r == row + radius;
+                // Only visit the cells on the ring, the inner cells were already visited.
+                final int step = isEdgeRow ? 1 : 2 * radius;
+                for (int c = column - radius; c <= column + radius; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= mColumns) {
+                        continue;
+                    }
+                    final int cell = r * mColumns + c;
+                    for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+                        final int segment = mCellSegments[i];
+                        final double fraction = projectOnSegment(segment, x, y);
+                        final double px = mX[segment] + fraction
+                                * (mX[segment + 1] - mX[segment]);
+                        final double py = mY[segment] + fraction
+                                * (mY[segment + 1] - mY[segment]);
+                        final double distance = Math.hypot(x - px, y - py);
+                        if (distance < bestDistance
+                                || (distance == bestDistance && segment < bestSegment)) {
+                            bestDistance = distance;
+                            bestSegment = segment;
+                            bestFraction = fraction;
+                        }
+                    }
+                }
+            }
+            // Cells outside the current ring are at least radius cells away.
+            if (bestSegment >= 0 && bestDistance <= radius * mCellSize) {
+                break;
+            }
+        }
+        return new Match(bestSegment, bestFraction, bestDistance);
+    }
+
+    /**
+     * Project the given position onto the segment and return the fraction of the segment
+     * at the projected position.
+     *
+     * @param segment index of the segment
+     * @param x       x position in meters
+     * @param y       y position in meters
+     * @return fraction between 0 and 1
+     */
+    private double projectOnSegment(final int segment, final double x, final double y) {
+        final double dx = mX[segment + 1] - mX[segment];
+        final double dy = mY[segment + 1] - mY[segment];
+        final double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        final double fraction = ((x - mX[segment]) * dx + (y - mY[segment]) * dy)
+                / lengthSquared;
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    /**
+     * Result of a nearest segment query.
+     */
+    public class Match {
+        /**
+         * Index of the segment, the segment starts at the point with the same index.
+         */
+        private final int mSegment;
+        /**
+         * Position on the segment between 0 and 1.
+         */
+        private final double mFraction;
+        /**
+         * Distance to the track in meters.
+         */
+        private final double mDistance;
+
+        /**
+         * Constructor taking the segment, the position on the segment and distance.
+         *
+         * @param segment  index of the segment
+         * @param fraction position on the segment
+         * @param distance distance to the track in meters
+         */
+        private Match(final int segment, final double fraction, final double distance) {
+            mSegment = segment;
+            mFraction = fraction;
+            mDistance = distance;
+        }
+
+        /**
+         * Returns the index of the closest segment.
+         * The segment leads from the point with this index to the next point.
+         *
+         * @return index of the segment
+         */
+        public int getSegment() {
+            return mSegment;
+        }
+
+        /**
+         * Returns the position of the closest point on the segment between 0 and 1.
+         *
+         * @return the position on the segment
+         */
+        public double getFraction() {
+            return mFraction;
+        }
+
+        /**
+         * Returns the distance off the track in meters.
+         *
+         * @return the distance in meters
+         */
+        public double getDistance() {
+            return mDistance;
+        }
+
+        /**
+         * Returns the distance along the track from the first point to the closest point
+         * on the track in meters.
+         *
+         * @return the distance along the track in meters
+         */
+        public double getProgress() {
+            final double start = mTrack.getDistance(mSegment);
+            final double end = mTrack.getDistance(mSegment + 1);
+            return start + mFraction * (end - start);
+        }
+
+        /**
+         * Returns the progress along the track as a value between 0 and 1.
+         *
+         * @return the relative progress
+         */
+        public double getRelativeProgress() {
+            final double total = mTrack.getTotalDistance();
+            if (total == 0) {
+                return 0;
+            }
+            return getProgress() / total;
+        }
+
+        /**
+         * Returns the latitude of the closest point on the track.
+         *
+         * @return the latitude
+         */
+        public double getLatitude() {
+            return mTrack.getLatitude(mSegment) + mFraction
+                    * (mTrack.getLatitude(mSegment + 1) - mTrack.getLatitude(mSegment));
+        }
+
+        /**
+         * Returns the longitude of the closest point on the track.
+         *
+         * @return the longitude
+         */
+        public double getLongitude() {
+            return mTrack.getLongitude(mSegment) + mFraction
+                    * (mTrack.getLongitude(mSegment + 1) - mTrack.getLongitude(mSegment));
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(getClass().getSimpleName());
+            builder.append("{segment: ");
+            builder.append(mSegment);
+            builder.append(", fraction: ");
+            builder.append(mFraction);
+            builder.append(", distance: ");
+            builder.append(mDistance);
+            builder.append('}');
+            return builder.toString();
+        }
+    }
+}
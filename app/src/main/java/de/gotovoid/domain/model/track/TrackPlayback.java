@@ -0,0 +1,270 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Provides the state of a {@link PackedTrack} at any point in time.
+ * The point preceding a time stamp is found by binary search over the time stamps of the
+ * {@link PackedTrack}, the values between two points are interpolated linearly.
+ * Results are written into a reusable {@link Sample}, so the playback can be driven from
+ * an animation without allocating objects per frame.
+ */
+public class TrackPlayback {
+    /**
+     * The {@link PackedTrack} to play back.
+     */
+    private final PackedTrack mTrack;
+
+    /**
+     * Constructor taking the {@link PackedTrack}.
+     * The time stamps of the {@link PackedTrack} need to be in ascending order.
+     *
+     * @param track the {@link PackedTrack}
+     */
+    public TrackPlayback(@NonNull final PackedTrack track) {
+        mTrack = track;
+    }
+
+    /**
+     * Returns the {@link PackedTrack}.
+     *
+     * @return the {@link PackedTrack}
+     */
+    @NonNull
+    public PackedTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Returns true if the track contains points to play back.
+     *
+     * @return true if the track is not empty
+     */
+    public boolean canPlay() {
+        return !mTrack.isEmpty();
+    }
+
+    /**
+     * Returns the time stamp of the first point.
+     *
+     * @return time stamp in milliseconds
+     */
+    public long getStartTime() {
+        if (mTrack.isEmpty()) {
+            return 0;
+        }
+        return mTrack.getTimeStamp(0);
+    }
+
+    /**
+     * Returns the time stamp of the last point.
+     *
+     * @return time stamp in milliseconds
+     */
+    public long getEndTime() {
+        if (mTrack.isEmpty()) {
+            return 0;
+        }
+        return mTrack.getTimeStamp(mTrack.size() - 1);
+    }
+
+    /**
+     * Returns the duration of the track.
+     *
+     * @return duration in milliseconds
+     */
+    public long getDuration() {
+        return getEndTime() - getStartTime();
+    }
+
+    /**
+     * Returns the index of the last point with a time stamp lower or equal to the given time.
+     * Returns 0 for times before the start of the track.
+     *
+     * @param time time stamp in milliseconds
+     * @return index of the point
+     */
+    public int getIndex(final long time) {
+        int low = 0;
+        int high = mTrack.size() - 1;
+        while (low < high) {
+            // Round up, so the search always terminates.
+            final int mid = (low + high + 1) >>> 1;
+            if (mTrack.getTimeStamp(mid) <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compute the state of the track at the given time and write it into the given
+     * {@link Sample}.
+     * Times outside of the track are clamped to the first or last point.
+     *
+     * @param time   time stamp in milliseconds
+     * @param sample the {@link Sample} to write to
+     * @return true if the {@link Sample} was written, false if the track is empty
+     */
+    public boolean getSample(final long time, @NonNull final Sample sample) {
+        if (mTrack.isEmpty()) {
+            return false;
+        }
+        final int last = mTrack.size() - 1;
+        final long clamped = Math.max(getStartTime(), Math.min(getEndTime(), time));
+        final int index = Math.min(getIndex(clamped), Math.max(last - 1, 0));
+        sample.mTime = clamped;
+        sample.mIndex = index;
+        if (index == last) {
+            // Only a single point available.
+            sample.mLatitude = mTrack.getLatitude(index);
+            sample.mLongitude = mTrack.getLongitude(index);
+            sample.mAltitude = mTrack.getAltitude(index);
+            sample.mDistance = mTrack.getDistance(index);
+            sample.mSpeed = 0;
+            return true;
+        }
+        final int next = index + 1;
+        final long duration = mTrack.getTimeStamp(next) - mTrack.getTimeStamp(index);
+        final double fraction;
+        if (duration <= 0) {
+            fraction = 0;
+        } else {
+            fraction = (double) (clamped - mTrack.getTimeStamp(index)) / duration;
+        }
+        sample.mLatitude = interpolate(mTrack.getLatitude(index),
+                mTrack.getLatitude(next), fraction);
+        sample.mLongitude = interpolate(mTrack.getLongitude(index),
+                mTrack.getLongitude(next), fraction);
+        sample.mAltitude = interpolate(mTrack.getAltitude(index),
+                mTrack.getAltitude(next), fraction);
+        final double segmentLength = mTrack.getDistance(next) - mTrack.getDistance(index);
+        sample.mDistance = mTrack.getDistance(index) + fraction * segmentLength;
+        if (duration <= 0) {
+            sample.mSpeed = 0;
+        } else {
+            sample.mSpeed = segmentLength * 1000 / duration;
+        }
+        return true;
+    }
+
+    /**
+     * Linear interpolation between two values.
+     *
+     * @param start    the start value
+     * @param end      the end value
+     * @param fraction position between start and end between 0 and 1
+     * @return the interpolated value
+     */
+    private static double interpolate(final double start,
+                                      final double end,
+                                      final double fraction) {
+        return start + (end - start) * fraction;
+    }
+
+    /**
+     * State of a track at a point in time.
+     * The {@link Sample} is mutable, so it can be reused for consecutive calls to
+     * {@link #getSample(long, Sample)}.
+     */
+    public static class Sample {
+        private long mTime;
+        private int mIndex;
+        private double mLatitude;
+        private double mLongitude;
+        private double mAltitude;
+        private double mDistance;
+        private double mSpeed;
+
+        /**
+         * Returns the time stamp of the {@link Sample}.
+         *
+         * @return time stamp in milliseconds
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * Returns the index of the point preceding the {@link Sample}.
+         *
+         * @return index of the point
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        /**
+         * Returns the latitude.
+         *
+         * @return the latitude
+         */
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        /**
+         * Returns the longitude.
+         *
+         * @return the longitude
+         */
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        /**
+         * Returns the altitude.
+         *
+         * @return altitude in meters
+         */
+        public double getAltitude() {
+            return mAltitude;
+        }
+
+        /**
+         * Returns the distance along the track from the first point.
+         *
+         * @return distance in meters
+         */
+        public double getDistance() {
+            return mDistance;
+        }
+
+        /**
+         * Returns the speed on the current segment.
+         *
+         * @return speed in meters per second
+         */
+        public double getSpeed() {
+            return mSpeed;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            builder.append("Sample{");
+            builder.append("time: ");
+            builder.append(mTime);
+            builder.append(", index: ");
+            builder.append(mIndex);
+            builder.append(", latitude: ");
+            builder.append(mLatitude);
+            builder.append(", longitude: ");
+            builder.append(mLongitude);
+            builder.append(", altitude: ");
+            builder.append(mAltitude);
+            builder.append(", distance: ");
+            builder.append(mDistance);
+            builder.append(", speed: ");
+            builder.append(mSpeed);
+            builder.append('}');
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package de.gotovoid.domain.model.track;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+
+import de.gotovoid.database.model.RecordingEntry;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Converts a track with irregular time stamps into a {@link ResampledTrack} with samples on a
+ * uniform time grid.
+ * The samples are interpolated linearly between the surrounding points of the original track.
+ * If two consecutive points are further apart than the maximum gap, the samples between them are
+ * marked as gap.
+ * The points are processed one by one in ascending time order, so the {@link TrackResampler} can
+ * be fed from a stream, for example a
+ * {@link de.gotovoid.database.access.RecordingEntryIterator}.
+ */
+public class TrackResampler {
+    /**
+     * Time between two samples in milliseconds.
+     */
+    private final long mPeriod;
+    /**
+     * Maximal time between two points in milliseconds before samples are marked as gap.
+     */
+    private final long mMaxGap;
+    /**
+     * The {@link ResampledTrack} being written, null until the first point was added.
+     */
+    private ResampledTrack mResult;
+    /**
+     * Time stamp of the next sample to be written.
+     */
+    private long mNextTime;
+    /**
+     * Time stamp of the previous point.
+     */
+    private long mPrevTime;
+    /**
+     * Latitude of the previous point.
+     */
+    private double mPrevLatitude;
+    /**
+     * Longitude of the previous point.
+     */
+    private double mPrevLongitude;
+    /**
+     * Altitude of the previous point.
+     */
+    private double mPrevAltitude;
+
+    /**
+     * Constructor taking the period and maximum gap.
+     *
+     * @param period time between two samples in milliseconds
+     * @param maxGap maximal time between two points in milliseconds before the samples between
+     *               them are marked as gap
+     */
+    public TrackResampler(final long period, final long maxGap) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period of [" + period
+                    + "] must be greater than 0");
+        }
+        mPeriod = period;
+        mMaxGap = maxGap;
+    }
+
+    /**
+     * Resample the {@link RecordingEntry}s provided by the given {@link Iterator}.
+     *
+     * @param entries the {@link RecordingEntry}s in ascending time order
+     * @param period  time between two samples in milliseconds
+     * @param maxGap  maximal time between two points in milliseconds
+     * @return the {@link ResampledTrack}, null if there were no {@link RecordingEntry}s
+     */
+    @Nullable
+    public static ResampledTrack resample(@NonNull final Iterator<RecordingEntry> entries,
+                                          final long period,
+                                          final long maxGap) {
+        final TrackResampler resampler = new TrackResampler(period, maxGap);
+        while (entries.hasNext()) {
+            resampler.add(entries.next());
+        }
+        return resampler.getResult();
+    }
+
+    /**
+     * Resample the given {@link PackedTrack}.
+     *
+     * @param track  the {@link PackedTrack}
+     * @param period time between two samples in milliseconds
+     * @param maxGap maximal time between two points in milliseconds
+     * @return the {@link ResampledTrack}, null if the {@link PackedTrack} is empty
+     */
+    @Nullable
+    public static ResampledTrack resample(@NonNull final PackedTrack track,
+                                          final long period,
+                                          final long maxGap) {
+        final TrackResampler resampler = new TrackResampler(period, maxGap);
+        for (int i = 0; i < track.size(); i++) {
+            resampler.add(track.getTimeStamp(i),
+                    track.getLatitude(i),
+                    track.getLongitude(i),
+                    track.getAltitude(i));
+        }
+        return resampler.getResult();
+    }
+
+    /**
+     * Add the given {@link RecordingEntry}.
+     *
+     * @param entry the {@link RecordingEntry}
+     */
+    public void add(@NonNull final RecordingEntry entry) {
+        add(entry.getTimeStamp(),
+                entry.getLatitude(),
+                entry.getLongitude(),
+                entry.getAltitude());
+    }
+
+    /**
+     * Add a point and write all samples up to its time stamp.
+     * Points which are not newer than the previous point are ignored.
+     *
+     * @param timeStamp time stamp in milliseconds
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @param altitude  the altitude in meters
+     */
+    public void add(final long timeStamp,
+                    final double latitude,
+                    final double longitude,
+                    final double altitude) {
+        if (mResult == null) {
+            mResult = new ResampledTrack(timeStamp, mPeriod);
+            mResult.add(latitude, longitude, altitude, false);
+            mNextTime = timeStamp + mPeriod;
+        } else if (timeStamp <= mPrevTime) {
+            return;
+        } else {
+            final long duration = timeStamp - mPrevTime;
+            final boolean isGap = duration > mMaxGap;
+            while (mNextTime <= timeStamp) {
+                final double fraction = (double) (mNextTime - mPrevTime) / duration;
+                mResult.add(mPrevLatitude + (latitude - mPrevLatitude) * fraction,
+                        mPrevLongitude + (longitude - mPrevLongitude) * fraction,
+                        mPrevAltitude + (altitude - mPrevAltitude) * fraction,
+                        // A sample on the new point is not part of the gap.
+                        isGap && mNextTime < timeStamp);
+                mNextTime += mPeriod;
+            }
+        }
+        mPrevTime = timeStamp;
+        mPrevLatitude = latitude;
+        mPrevLongitude = longitude;
+        mPrevAltitude = altitude;
+    }
+
+    /**
+     * Returns the {@link ResampledTrack} containing all samples written so far.
+     * The samples end at the last grid time before or at the last point added.
+     *
+     * @return the {@link ResampledTrack}, null if no point was added
+     */
+    @Nullable
+    public ResampledTrack getResult() {
+        return mResult;
+    }
+}
@@ -16,8 +16,28 @@ import de.gotovoid.service.sensors.SensorType;
  * It contains the necessary data for the service to identify the callback and
  * send sensor updates of the given {@link SensorType} to the {@link ISensorServiceCallback}
  * in the requested update frequency.
+ * The updates may be coalesced for a batch window, so the client receives several updates in one
+ * transaction, or streamed through shared memory for high update rates.
+ * A client may request a slower update frequency while it is in ambient mode, the service
+ * switches between both when the client enters or exits ambient mode.
  */
 public class CallbackRegistration implements Parcelable {
+    /**
+     * The transport of the updates to the client.
+     */
+    public enum Transport {
+        /**
+         * Every update, or batch of updates, is sent by a binder callback.
+         */
+        BINDER,
+        /**
+         * The updates are written to a {@link SensorStream}, which is sent once by a binder
+         * callback and polled by the client. Falls back to {@link #BINDER} if the device or
+         * {@link SensorType} does not support it.
+         */
+        SHARED_MEMORY
+    }
+
     /**
      * Creator for the {@link Parcelable}.
      */
@@ -46,6 +66,19 @@ public class CallbackRegistration implements Parcelable {
      * Requested update frequency in milliseconds.
      */
     private final long mUpdateFrequency;
+    /**
+     * Time in milliseconds updates may be held back to send them in one batch, 0 to send
+     * every update immediately.
+     */
+    private final long mBatchWindow;
+    /**
+     * The requested {@link Transport}.
+     */
+    private final Transport mTransport;
+    /**
+     * Requested update frequency in milliseconds while the client is in ambient mode.
+     */
+    private final long mAmbientUpdateFrequency;
 
     /**
      * Construcor taking the {@link SensorType},  {@link ISensorServiceCallback} and update
@@ -58,9 +91,70 @@ public class CallbackRegistration implements Parcelable {
     public CallbackRegistration(final SensorType type,
                                 final ISensorServiceCallback callback,
                                 final long updateFrequency) {
+        this(type, callback, updateFrequency, 0);
+    }
+
+    /**
+     * Construcor taking the {@link SensorType},  {@link ISensorServiceCallback}, update
+     * frequency and batch window in milliseconds.
+     *
+     * @param type            {@link SensorType}
+     * @param callback        {@link ISensorServiceCallback}
+     * @param updateFrequency update frequency in milliseconds
+     * @param batchWindow     time in milliseconds updates may be held back to send them in one
+     *                        batch, 0 to send every update immediately
+     */
+    public CallbackRegistration(final SensorType type,
+                                final ISensorServiceCallback callback,
+                                final long updateFrequency,
+                                final long batchWindow) {
+        this(type, callback, updateFrequency, batchWindow, Transport.BINDER);
+    }
+
+    /**
+     * Construcor taking the {@link SensorType},  {@link ISensorServiceCallback}, update
+     * frequency and batch window in milliseconds and the {@link Transport}.
+     *
+     * @param type            {@link SensorType}
+     * @param callback        {@link ISensorServiceCallback}
+     * @param updateFrequency update frequency in milliseconds
+     * @param batchWindow     time in milliseconds updates may be held back to send them in one
+     *                        batch, 0 to send every update immediately
+     * @param transport       the requested {@link Transport}
+     */
+    public CallbackRegistration(final SensorType type,
+                                final ISensorServiceCallback callback,
+                                final long updateFrequency,
+                                final long batchWindow,
+                                @NonNull final Transport transport) {
+        this(type, callback, updateFrequency, batchWindow, transport, updateFrequency);
+    }
+
+    /**
+     * Construcor taking the {@link SensorType},  {@link ISensorServiceCallback}, update
+     * frequency and batch window in milliseconds, the {@link Transport} and the update
+     * frequency in ambient mode.
+     *
+     * @param type                   {@link SensorType}
+     * @param callback               {@link ISensorServiceCallback}
+     * @param updateFrequency        update frequency in milliseconds
+     * @param batchWindow            time in milliseconds updates may be held back to send them
+     *                               in one batch, 0 to send every update immediately
+     * @param transport              the requested {@link Transport}
+     * @param ambientUpdateFrequency update frequency in milliseconds in ambient mode
+     */
+    public CallbackRegistration(final SensorType type,
+                                final ISensorServiceCallback callback,
+                                final long updateFrequency,
+                                final long batchWindow,
+                                @NonNull final Transport transport,
+                                final long ambientUpdateFrequency) {
         mType = type;
         mCallbackId = System.identityHashCode(callback);
         mUpdateFrequency = updateFrequency;
+        mBatchWindow = batchWindow;
+        mTransport = transport;
+        mAmbientUpdateFrequency = ambientUpdateFrequency;
     }
 
     /**
@@ -72,6 +166,9 @@ public class CallbackRegistration implements Parcelable {
         mType = SensorType.values()[parcel.readInt()];
         mCallbackId = parcel.readInt();
         mUpdateFrequency = parcel.readLong();
+        mBatchWindow = parcel.readLong();
+        mTransport = Transport.values()[parcel.readInt()];
+        mAmbientUpdateFrequency = parcel.readLong();
     }
 
     /**
@@ -101,6 +198,43 @@ public class CallbackRegistration implements Parcelable {
         return mUpdateFrequency;
     }
 
+    /**
+     * Returns the requested update frequency in ambient mode.
+     *
+     * @return the requested update frequency in ambient mode
+     */
+    public long getAmbientUpdateFrequency() {
+        return mAmbientUpdateFrequency;
+    }
+
+    /**
+     * Returns the requested update frequency in the given mode.
+     *
+     * @param isAmbient true if the client is in ambient mode
+     * @return the requested update frequency
+     */
+    public long getUpdateFrequency(final boolean isAmbient) {
+        return isAmbient ? getAmbientUpdateFrequency() : getUpdateFrequency();
+    }
+
+    /**
+     * Returns the time updates may be held back to send them in one batch.
+     *
+     * @return the batch window in milliseconds, 0 to send every update immediately
+     */
+    public long getBatchWindow() {
+        return mBatchWindow;
+    }
+
+    /**
+     * Returns the requested {@link Transport} of the updates.
+     *
+     * @return the {@link Transport}
+     */
+    public Transport getTransport() {
+        return mTransport;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -114,6 +248,9 @@ public class CallbackRegistration implements Parcelable {
         dest.writeInt(mType.ordinal());
         dest.writeInt(mCallbackId);
         dest.writeLong(mUpdateFrequency);
+        dest.writeLong(mBatchWindow);
+        dest.writeInt(mTransport.ordinal());
+        dest.writeLong(mAmbientUpdateFrequency);
     }
 
     @Override
@@ -126,6 +263,12 @@ public class CallbackRegistration implements Parcelable {
         builder.append(getCallbackId());
         builder.append(", updateFrequency: ");
         builder.append(getUpdateFrequency());
+        builder.append(", batchWindow: ");
+        builder.append(getBatchWindow());
+        builder.append(", transport: ");
+        builder.append(getTransport());
+        builder.append(", ambientUpdateFrequency: ");
+        builder.append(getAmbientUpdateFrequency());
         builder.append('}');
         return builder.toString();
     }
@@ -4,8 +4,16 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
+import de.gotovoid.database.model.RecordingEntry;
+
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.RecordingDelta;
+import de.gotovoid.service.sensors.SensorState;
+import de.gotovoid.service.sensors.SensorType;
 
 /**
  * Created by DJ on 17/02/18.
@@ -13,8 +21,11 @@ import de.gotovoid.service.sensors.AbstractSensor;
 
 /**
  * This class is a response for the service communication.
- * It is a {@link Parcelable} containing a {@link Serializable} object to be
+ * It is a {@link Parcelable} containing a {@link AbstractSensor.Result} to be
  * transmitted to the application via an AIDL interface.
+ * The payloads of the {@link SensorType}s are written field by field, which avoids the class
+ * descriptors and reflection of Java serialization for every sensor update. Other values are
+ * still written as {@link Serializable}.
  *
  * @param <T> type of the data to be sent to the application
  */
@@ -34,10 +45,39 @@ public class Response<T extends AbstractSensor.Result> implements Parcelable {
                     return new Response[size];
                 }
             };
+    /**
+     * Encoding of a {@link Serializable} value.
+     */
+    private static final int PAYLOAD_SERIALIZABLE = 0;
+    /**
+     * Encoding of a {@link Float} value, the payload of {@link SensorType#PRESSURE}.
+     */
+    private static final int PAYLOAD_FLOAT = 1;
+    /**
+     * Encoding of an {@link ExtendedGeoCoordinate} value, the payload of
+     * {@link SensorType#LOCATION}.
+     */
+    private static final int PAYLOAD_COORDINATE = 2;
+    /**
+     * Encoding of a {@link Long} value.
+     */
+    private static final int PAYLOAD_LONG = 3;
+    /**
+     * Encoding of a {@link RecordingDelta} value, the payload of {@link SensorType#RECORDING}.
+     */
+    private static final int PAYLOAD_RECORDING_DELTA = 4;
+    /**
+     * Flag of the encoding marking a stale value.
+     */
+    private static final int FLAG_STALE = 0x100;
     /**
      * The value to be sent.
      */
     private final T mValue;
+    /**
+     * True if the value is older than the freshness bound of the service.
+     */
+    private final boolean mIsStale;
 
     /**
      * Creates a new {@link Response} to transmit the given value.
@@ -45,7 +85,18 @@ public class Response<T extends AbstractSensor.Result> implements Parcelable {
      * @param value the value to be transmitted
      */
     public Response(final T value) {
+        this(value, false);
+    }
+
+    /**
+     * Creates a new {@link Response} to transmit the given value, which may be stale.
+     *
+     * @param value   the value to be transmitted
+     * @param isStale true if the value is older than the freshness bound of the service
+     */
+    public Response(final T value, final boolean isStale) {
         mValue = value;
+        mIsStale = isStale;
     }
 
     /**
@@ -54,7 +105,36 @@ public class Response<T extends AbstractSensor.Result> implements Parcelable {
      * @param parcel the {@link Parcel} containing the data
      */
     protected Response(final Parcel parcel) {
-        mValue = (T) parcel.readSerializable();
+        final int encoding = parcel.readInt();
+        final int payload = encoding & ~FLAG_STALE;
+        mIsStale = (encoding & FLAG_STALE) != 0;
+        if (payload == PAYLOAD_SERIALIZABLE) {
+            mValue = (T) parcel.readSerializable();
+            return;
+        }
+        final SensorState state = SensorState.values()[parcel.readInt()];
+        final long timeStamp = parcel.readLong();
+        final Serializable value;
+        switch (payload) {
+            case PAYLOAD_FLOAT:
+                value = parcel.readFloat();
+                break;
+            case PAYLOAD_COORDINATE:
+                value = new ExtendedGeoCoordinate(parcel.readDouble(),
+                        parcel.readDouble(),
+                        parcel.readDouble(),
+                        parcel.readFloat());
+                break;
+            case PAYLOAD_LONG:
+                value = parcel.readLong();
+                break;
+            case PAYLOAD_RECORDING_DELTA:
+                value = readRecordingDelta(parcel);
+                break;
+            default:
+                throw new IllegalStateException("unknown payload: " + payload);
+        }
+        mValue = (T) new AbstractSensor.Result<>(state, value, timeStamp);
     }
 
     /**
@@ -66,9 +146,110 @@ public class Response<T extends AbstractSensor.Result> implements Parcelable {
         return mValue;
     }
 
+    /**
+     * Returns true if the value is older than the freshness bound of the service, e.g. a
+     * cached value of a sensor that currently provides no data.
+     *
+     * @return true if stale
+     */
+    public boolean isStale() {
+        return mIsStale;
+    }
+
     @Override
     public void writeToParcel(final Parcel dest, final int flags) {
-        dest.writeSerializable(mValue);
+        final int payload = getPayload();
+        dest.writeInt(mIsStale ? payload | FLAG_STALE : payload);
+        if (payload == PAYLOAD_SERIALIZABLE) {
+            dest.writeSerializable(mValue);
+            return;
+        }
+        dest.writeInt(mValue.getSensorState().ordinal());
+        dest.writeLong(mValue.getTimeStamp());
+        switch (payload) {
+            case PAYLOAD_FLOAT:
+                dest.writeFloat((Float) mValue.getValue());
+                break;
+            case PAYLOAD_COORDINATE:
+                final ExtendedGeoCoordinate coordinate =
+                        (ExtendedGeoCoordinate) mValue.getValue();
+                dest.writeDouble(coordinate.getLatitude());
+                dest.writeDouble(coordinate.getLongitude());
+                dest.writeDouble(coordinate.getAltitude());
+                dest.writeFloat(coordinate.getAccuracy());
+                break;
+            case PAYLOAD_LONG:
+                dest.writeLong((Long) mValue.getValue());
+                break;
+            case PAYLOAD_RECORDING_DELTA:
+                writeRecordingDelta(dest, (RecordingDelta) mValue.getValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Write the {@link RecordingDelta} to the {@link Parcel}. The id of the recording
+     * is written once for all {@link RecordingEntry}s, which have no database id yet.
+     *
+     * @param dest  the {@link Parcel}
+     * @param delta the {@link RecordingDelta}
+     */
+    private static void writeRecordingDelta(final Parcel dest, final RecordingDelta delta) {
+        dest.writeLong(delta.getRecordingId());
+        dest.writeLong(delta.getSequence());
+        dest.writeInt(delta.getEntries().size());
+        for (RecordingEntry entry : delta.getEntries()) {
+            dest.writeLong(entry.getTimeStamp());
+            dest.writeDouble(entry.getLongitude());
+            dest.writeDouble(entry.getLatitude());
+            dest.writeInt(entry.getAltitude());
+        }
+    }
+
+    /**
+     * Read a {@link RecordingDelta} written by
+     * {@link #writeRecordingDelta(Parcel, RecordingDelta)}.
+     *
+     * @param parcel the {@link Parcel}
+     * @return the {@link RecordingDelta}
+     */
+    private static RecordingDelta readRecordingDelta(final Parcel parcel) {
+        final long recordingId = parcel.readLong();
+        final long sequence = parcel.readLong();
+        final int size = parcel.readInt();
+        final List<RecordingEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new RecordingEntry(recordingId,
+                    parcel.readLong(),
+                    parcel.readDouble(),
+                    parcel.readDouble(),
+                    parcel.readInt()));
+        }
+        return new RecordingDelta(recordingId, sequence, entries);
+    }
+
+    /**
+     * Returns the encoding of the value.
+     *
+     * @return the encoding
+     */
+    private int getPayload() {
+        if (mValue == null || mValue.getSensorState() == null) {
+            return PAYLOAD_SERIALIZABLE;
+        }
+        final Serializable value = mValue.getValue();
+        if (value instanceof Float) {
+            return PAYLOAD_FLOAT;
+        } else if (value instanceof ExtendedGeoCoordinate) {
+            return PAYLOAD_COORDINATE;
+        } else if (value instanceof Long) {
+            return PAYLOAD_LONG;
+        } else if (value instanceof RecordingDelta) {
+            return PAYLOAD_RECORDING_DELTA;
+        }
+        return PAYLOAD_SERIALIZABLE;
     }
 
     @Override
@@ -82,6 +263,9 @@ public class Response<T extends AbstractSensor.Result> implements Parcelable {
         builder.append(getClass().getSimpleName());
         builder.append("{value: ");
         builder.append(getValue().toString());
+        if (isStale()) {
+            builder.append(", stale");
+        }
         builder.append('}');
         return builder.toString();
     }
@@ -0,0 +1,133 @@
+package de.gotovoid.service.communication;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.service.sensors.SensorType;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * This class is a batch of {@link Response}s for the service communication.
+ * It is a {@link Parcelable} containing several {@link Response}s, possibly of different
+ * {@link SensorType}s, to be transmitted to the application in one transaction of the AIDL
+ * interface.
+ */
+public class ResponseBatch implements Parcelable {
+    /**
+     * The creator for the {@link Parcelable}.
+     */
+    public static final Parcelable.Creator<ResponseBatch> CREATOR =
+            new Parcelable.Creator<ResponseBatch>() {
+                @Override
+                public ResponseBatch createFromParcel(final Parcel source) {
+                    return new ResponseBatch(source);
+                }
+
+                @Override
+                public ResponseBatch[] newArray(int size) {
+                    return new ResponseBatch[size];
+                }
+            };
+    /**
+     * The {@link SensorType}s of the {@link Response}s.
+     */
+    private final List<SensorType> mTypes;
+    /**
+     * The {@link Response}s in the order of the updates.
+     */
+    private final List<Response> mResponses;
+
+    /**
+     * Creates a new empty {@link ResponseBatch}.
+     */
+    public ResponseBatch() {
+        mTypes = new ArrayList<>();
+        mResponses = new ArrayList<>();
+    }
+
+    /**
+     * Create a {@link ResponseBatch} from the given {@link Parcel}.
+     *
+     * @param parcel the {@link Parcel} containing the data
+     */
+    protected ResponseBatch(final Parcel parcel) {
+        final int size = parcel.readInt();
+        mTypes = new ArrayList<>(size);
+        mResponses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            mTypes.add(SensorType.values()[parcel.readInt()]);
+            mResponses.add(Response.CREATOR.createFromParcel(parcel));
+        }
+    }
+
+    /**
+     * Add a {@link Response} to the batch.
+     *
+     * @param type     the {@link SensorType} of the {@link Response}
+     * @param response the {@link Response}
+     */
+    public void add(@NonNull final SensorType type, @NonNull final Response response) {
+        mTypes.add(type);
+        mResponses.add(response);
+    }
+
+    /**
+     * Returns the number of {@link Response}s.
+     *
+     * @return the number of {@link Response}s
+     */
+    public int size() {
+        return mResponses.size();
+    }
+
+    /**
+     * Returns the {@link SensorType} of the {@link Response} at the given index.
+     *
+     * @param index index of the {@link Response}
+     * @return the {@link SensorType}
+     */
+    public SensorType getType(final int index) {
+        return mTypes.get(index);
+    }
+
+    /**
+     * Returns the {@link Response} at the given index.
+     *
+     * @param index index of the {@link Response}
+     * @return the {@link Response}
+     */
+    public Response getResponse(final int index) {
+        return mResponses.get(index);
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeInt(mResponses.size());
+        for (int i = 0; i < mResponses.size(); i++) {
+            dest.writeInt(mTypes.get(i).ordinal());
+            mResponses.get(i).writeToParcel(dest, flags);
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(getClass().getSimpleName());
+        builder.append("{size: ");
+        builder.append(size());
+        builder.append('}');
+        return builder.toString();
+    }
+}
@@ -0,0 +1,561 @@
+package de.gotovoid.service.communication;
+
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorType;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Sends the sensor updates to one client {@link ISensorServiceCallback}.
+ * If the client registered with a batch window, the updates of all its {@link SensorType}s are
+ * coalesced and sent as one {@link ResponseBatch} when the window of the first held back update
+ * has passed. This reduces the number of binder transactions by the number of updates per
+ * window, e.g. while the watch is in ambient mode.
+ * The smallest batch window of the registrations of the client is used.
+ * <p>
+ * The client is called on the given {@link Executor}, never on the thread of the sensor update.
+ * The updates wait in a bounded queue of the client, so a slow or frozen client only delays its
+ * own updates. If the queue is full, the {@link OverflowPolicy} decides which update is dropped.
+ * <p>
+ * The updates of a {@link SensorType} with a {@link SensorStream} are written to its
+ * {@link SensorRingBuffer} instead, which the client polls.
+ * <p>
+ * Once the client died, the dispatcher is closed and drops all further updates.
+ */
+class ResponseDispatcher {
+    private static final String TAG = ResponseDispatcher.class.getSimpleName();
+
+    /**
+     * Decides which update is dropped if the queue of the client is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * Replace the newest queued update of the same {@link SensorType} by the new update.
+         * If there is none, the oldest update is dropped.
+         * The {@link SensorType#RECORDING} updates are deltas the client applies in sequence,
+         * they are neither conflated nor dropped in favour of another update.
+         */
+        CONFLATE_LATEST,
+        /**
+         * Drop the oldest queued update.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * The {@link ISensorServiceCallback} of the client.
+     */
+    private final ISensorServiceCallback mCallback;
+    /**
+     * {@link Handler} to send the held back updates on.
+     */
+    private final Handler mHandler;
+    /**
+     * {@link Executor} to call the client on.
+     */
+    private final Executor mExecutor;
+    /**
+     * Maximal number of queued transactions.
+     */
+    private final int mCapacity;
+    /**
+     * The {@link OverflowPolicy} if the queue is full.
+     */
+    private final OverflowPolicy mOverflowPolicy;
+    /**
+     * Synchronization object.
+     */
+    private final Object mLock = new Object();
+    /**
+     * The batch windows of the registrations of the client by {@link SensorType}.
+     */
+    private final Map<SensorType, Long> mBatchWindows = new EnumMap<>(SensorType.class);
+    /**
+     * The batch window in milliseconds, 0 to send every update immediately.
+     */
+    private long mBatchWindow;
+    /**
+     * The held back updates, null if there are none.
+     */
+    private ResponseBatch mBatch;
+    /**
+     * The {@link SensorStream}s of the client by {@link SensorType}, guarded by the lock.
+     */
+    private final Map<SensorType, SensorStream> mStreams = new EnumMap<>(SensorType.class);
+    /**
+     * The {@link SensorRingBuffer}s to write the updates of the {@link SensorStream}s to,
+     * guarded by the lock.
+     */
+    private final Map<SensorType, SensorRingBuffer> mRingBuffers =
+            new EnumMap<>(SensorType.class);
+    /**
+     * The transactions waiting to be sent to the client, guarded by the lock.
+     */
+    private final ArrayDeque<Transaction> mQueue = new ArrayDeque<>();
+    /**
+     * True while a {@link #mDrainRunnable} is scheduled or running, guarded by the lock.
+     */
+    private boolean mIsDraining;
+    /**
+     * Number of updates dropped because the queue was full, guarded by the lock.
+     */
+    private long mDropCount;
+    /**
+     * True if the dispatcher was closed, guarded by the lock.
+     */
+    private boolean mIsClosed;
+    /**
+     * Sends the held back updates.
+     */
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    /**
+     * Sends the queued transactions to the client.
+     */
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor taking the {@link ISensorServiceCallback} of the client, the {@link Handler}
+     * to send the held back updates on, the {@link Executor} to call the client on and the
+     * capacity and {@link OverflowPolicy} of the queue.
+     *
+     * @param callback       the {@link ISensorServiceCallback}
+     * @param handler        the {@link Handler}
+     * @param executor       the {@link Executor}
+     * @param capacity       maximal number of queued transactions
+     * @param overflowPolicy the {@link OverflowPolicy}
+     */
+    ResponseDispatcher(@NonNull final ISensorServiceCallback callback,
+                       @NonNull final Handler handler,
+                       @NonNull final Executor executor,
+                       final int capacity,
+                       @NonNull final OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mCallback = callback;
+        mHandler = handler;
+        mExecutor = executor;
+        mCapacity = capacity;
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Add a registration of the client.
+     *
+     * @param registration the {@link CallbackRegistration}
+     */
+    void addRegistration(@NonNull final CallbackRegistration registration) {
+        synchronized (mLock) {
+            mBatchWindows.put(registration.getType(), registration.getBatchWindow());
+            updateBatchWindow();
+        }
+    }
+
+    /**
+     * Remove a registration of the client. The held back updates are sent if it was the last
+     * registration.
+     *
+     * @param registration the {@link CallbackRegistration}
+     * @return true if the client has no more registrations
+     */
+    boolean removeRegistration(@NonNull final CallbackRegistration registration) {
+        final boolean isEmpty;
+        synchronized (mLock) {
+            mBatchWindows.remove(registration.getType());
+            updateBatchWindow();
+            isEmpty = mBatchWindows.isEmpty();
+            mRingBuffers.remove(registration.getType());
+            final SensorStream stream = mStreams.remove(registration.getType());
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        if (isEmpty) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            flush();
+        }
+        return isEmpty;
+    }
+
+    /**
+     * Close the dispatcher, e.g. because the client died. The queued and held back updates
+     * are dropped, the {@link SensorStream}s are closed and further updates are ignored.
+     */
+    void close() {
+        synchronized (mLock) {
+            if (mIsClosed) {
+                return;
+            }
+            mIsClosed = true;
+            mQueue.clear();
+            mBatch = null;
+            mBatchWindows.clear();
+            updateBatchWindow();
+            mRingBuffers.clear();
+            for (SensorStream stream : mStreams.values()) {
+                stream.close();
+            }
+            mStreams.clear();
+        }
+        mHandler.removeCallbacks(mFlushRunnable);
+    }
+
+    /**
+     * Returns true if the dispatcher was closed.
+     *
+     * @return true if closed
+     */
+    boolean isClosed() {
+        synchronized (mLock) {
+            return mIsClosed;
+        }
+    }
+
+    /**
+     * Add a {@link SensorStream} for the updates of its {@link SensorType} and send it to the
+     * client. The updates are written to the given {@link SensorRingBuffer} from then on.
+     *
+     * @param stream     the {@link SensorStream}
+     * @param ringBuffer the {@link SensorRingBuffer} mapped for writing
+     */
+    void addStream(@NonNull final SensorStream stream,
+                   @NonNull final SensorRingBuffer ringBuffer) {
+        synchronized (mLock) {
+            if (mIsClosed) {
+                stream.close();
+                return;
+            }
+            mStreams.put(stream.getType(), stream);
+            mRingBuffers.put(stream.getType(), ringBuffer);
+        }
+        mExecutor.execute(() -> {
+            synchronized (mLock) {
+                if (mStreams.get(stream.getType()) != stream) {
+                    return;
+                }
+            }
+            try {
+                mCallback.onSensorStreamCreated(stream);
+            } catch (final DeadObjectException exception) {
+                Log.w(TAG, "addStream: client died");
+                close();
+            } catch (final RemoteException exception) {
+                Log.e(TAG, "addStream: ", exception);
+            } catch (final IllegalStateException exception) {
+                // The stream was closed while it was parcelled, as if it was removed.
+                Log.d(TAG, "addStream: stream closed");
+            }
+        });
+    }
+
+    /**
+     * Returns the batch window.
+     *
+     * @return the batch window in milliseconds, 0 if every update is sent immediately
+     */
+    long getBatchWindow() {
+        synchronized (mLock) {
+            return mBatchWindow;
+        }
+    }
+
+    /**
+     * Returns the number of transactions waiting to be sent to the client.
+     *
+     * @return the queue depth
+     */
+    int getQueueDepth() {
+        synchronized (mLock) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * Returns the number of updates dropped because the queue of the client was full.
+     *
+     * @return the number of dropped updates
+     */
+    long getDropCount() {
+        synchronized (mLock) {
+            return mDropCount;
+        }
+    }
+
+    /**
+     * Send a sensor update to the client, write it to the {@link SensorStream} of its
+     * {@link SensorType}, or hold it back for the batch window.
+     *
+     * @param type   the {@link SensorType} of the update
+     * @param result the {@link AbstractSensor.Result}
+     */
+    void dispatch(@NonNull final SensorType type, @NonNull final AbstractSensor.Result result) {
+        final Response response;
+        final boolean isHeldBack;
+        synchronized (mLock) {
+            if (mIsClosed) {
+                return;
+            }
+            final SensorRingBuffer ringBuffer = mRingBuffers.get(type);
+            if (ringBuffer != null) {
+                ringBuffer.write(result);
+                return;
+            }
+            response = new Response(result);
+            if (mBatchWindow > 0) {
+                if (mBatch == null) {
+                    mBatch = new ResponseBatch();
+                    mHandler.postDelayed(mFlushRunnable, mBatchWindow);
+                }
+                mBatch.add(type, response);
+                return;
+            } else if (mBatch != null) {
+                // The batch window was removed, keep the order of the held back updates.
+                mBatch.add(type, response);
+            }
+            isHeldBack = mBatch != null;
+        }
+        if (isHeldBack) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            flush();
+            return;
+        }
+        enqueue(new Transaction(type, response, null));
+    }
+
+    /**
+     * Send a {@link Response} to the client without batch window or {@link SensorStream},
+     * e.g. a cached value.
+     *
+     * @param type     the {@link SensorType} of the {@link Response}
+     * @param response the {@link Response}
+     */
+    void send(@NonNull final SensorType type, @NonNull final Response response) {
+        enqueue(new Transaction(type, response, null));
+    }
+
+    /**
+     * Send the held back updates. A single update is sent without batch.
+     */
+    void flush() {
+        final ResponseBatch batch;
+        synchronized (mLock) {
+            batch = mBatch;
+            mBatch = null;
+        }
+        if (batch == null) {
+            return;
+        }
+        Log.d(TAG, "flush: " + batch);
+        if (batch.size() == 1) {
+            enqueue(new Transaction(batch.getType(0), batch.getResponse(0), null));
+        } else {
+            enqueue(new Transaction(null, null, batch));
+        }
+    }
+
+    /**
+     * Queue a {@link Transaction} for the client and schedule sending the queue if it is not
+     * already being sent.
+     *
+     * @param transaction the {@link Transaction}
+     */
+    private void enqueue(@NonNull final Transaction transaction) {
+        final boolean isScheduled;
+        synchronized (mLock) {
+            if (mIsClosed) {
+                return;
+            }
+            if (mQueue.size() >= mCapacity) {
+                if (mOverflowPolicy != OverflowPolicy.CONFLATE_LATEST) {
+                    mDropCount += mQueue.pollFirst().size();
+                } else if (conflate(transaction) || !dropOldestConflatable(transaction)) {
+                    return;
+                }
+            }
+            mQueue.addLast(transaction);
+            isScheduled = mIsDraining;
+            mIsDraining = true;
+        }
+        if (!isScheduled) {
+            mExecutor.execute(mDrainRunnable);
+        }
+    }
+
+    /**
+     * Replace the newest queued update of the same {@link SensorType} by the given
+     * {@link Transaction}. Must be called holding the lock.
+     *
+     * @param transaction the {@link Transaction}
+     * @return true if an update was replaced
+     */
+    private boolean conflate(@NonNull final Transaction transaction) {
+        if (transaction.mType == null || !transaction.isConflatable()) {
+            return false;
+        }
+        final Iterator<Transaction> iterator = mQueue.descendingIterator();
+        while (iterator.hasNext()) {
+            final Transaction queued = iterator.next();
+            if (queued.mType == transaction.mType) {
+                queued.mResponse = transaction.mResponse;
+                mDropCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the oldest queued {@link Transaction} without {@link SensorType#RECORDING} update to
+     * make room for the given {@link Transaction}. If there is none, the given
+     * {@link Transaction} is dropped instead, unless it holds a {@link SensorType#RECORDING}
+     * update itself, which then replaces the oldest one and the client re-reads the recording.
+     * Must be called holding the lock.
+     *
+     * @param transaction the {@link Transaction} to be queued
+     * @return true if the given {@link Transaction} is to be queued
+     */
+    private boolean dropOldestConflatable(@NonNull final Transaction transaction) {
+        final Iterator<Transaction> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            final Transaction queued = iterator.next();
+            if (queued.isConflatable()) {
+                iterator.remove();
+                mDropCount += queued.size();
+                return true;
+            }
+        }
+        if (transaction.isConflatable()) {
+            mDropCount += transaction.size();
+            return false;
+        }
+        mDropCount += mQueue.pollFirst().size();
+        return true;
+    }
+
+    /**
+     * Send the queued {@link Transaction}s to the client until the queue is empty.
+     * If the client died, the dispatcher is closed, which drops the remaining transactions.
+     */
+    private void drain() {
+        while (true) {
+            final Transaction transaction;
+            synchronized (mLock) {
+                transaction = mQueue.pollFirst();
+                if (transaction == null) {
+                    mIsDraining = false;
+                    return;
+                }
+            }
+            try {
+                if (transaction.mBatch == null) {
+                    mCallback.onSensorValueChanged(transaction.mResponse);
+                } else {
+                    mCallback.onSensorValuesChanged(transaction.mBatch);
+                }
+            } catch (final DeadObjectException exception) {
+                Log.w(TAG, "drain: client died");
+                close();
+            } catch (final RemoteException exception) {
+                Log.e(TAG, "drain: ", exception);
+            }
+        }
+    }
+
+    /**
+     * Update the batch window to the smallest batch window of the registrations.
+     * Must be called holding the lock.
+     */
+    private void updateBatchWindow() {
+        long batchWindow = Long.MAX_VALUE;
+        for (long window : mBatchWindows.values()) {
+            batchWindow = Math.min(batchWindow, window);
+        }
+        mBatchWindow = mBatchWindows.isEmpty() ? 0 : Math.max(0, batchWindow);
+    }
+
+    /**
+     * One transaction to the client, either a single {@link Response} or a
+     * {@link ResponseBatch}.
+     */
+    private static class Transaction {
+        /**
+         * {@link SensorType} of the single {@link Response}, null for a batch.
+         */
+        private final SensorType mType;
+        /**
+         * The single {@link Response}, replaced when conflated.
+         */
+        private Response mResponse;
+        /**
+         * The {@link ResponseBatch}, null for a single {@link Response}.
+         */
+        private final ResponseBatch mBatch;
+
+        /**
+         * Constructor taking either the {@link SensorType} and single {@link Response} or the
+         * {@link ResponseBatch}.
+         *
+         * @param type     the {@link SensorType}
+         * @param response the {@link Response}
+         * @param batch    the {@link ResponseBatch}
+         */
+        private Transaction(final SensorType type,
+                            final Response response,
+                            final ResponseBatch batch) {
+            mType = type;
+            mResponse = response;
+            mBatch = batch;
+        }
+
+        /**
+         * Returns the number of updates of the transaction.
+         *
+         * @return the number of updates
+         */
+        private int size() {
+            return mBatch == null ? 1 : mBatch.size();
+        }
+
+        /**
+         * Returns true if the transaction may be conflated or dropped, i.e. holds no
+         * {@link SensorType#RECORDING} update.
+         *
+         * @return true if conflatable
+         */
+        private boolean isConflatable() {
+            if (mBatch == null) {
+                return mType != SensorType.RECORDING;
+            }
+            for (int i = 0; i < mBatch.size(); i++) {
+                if (mBatch.getType(i) == SensorType.RECORDING) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
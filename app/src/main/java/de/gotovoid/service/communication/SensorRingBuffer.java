@@ -0,0 +1,216 @@
+package de.gotovoid.service.communication;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Ring buffer of float sensor values in a {@link ByteBuffer}, which may be shared between
+ * processes.
+ * A single producer writes the values, any number of consumers poll them without locks or
+ * binder transactions. The buffer starts with the number of values written, followed by the
+ * slots of the values:
+ * <pre>
+ * header: long count
+ * slot:   long sequence, long time stamp, float value, int state
+ * </pre>
+ * The sequence of a slot is written last, so a consumer detects a slot that was overwritten
+ * while it was read and drops it, as well as values that were overwritten before it polled.
+ * <p>
+ * The accesses to the {@link ByteBuffer} are plain memory accesses, which the compiler and
+ * weakly ordered CPUs like ARM may reorder. The Java memory model gives no ordering guarantee
+ * for them: a volatile access only orders memory against another thread accessing the same
+ * field, and the consumer of another process never does. Release and acquire accesses to
+ * the {@link ByteBuffer} itself are not available before API 33, so the producer and the
+ * consumers separate the sequence, the values and the count by a {@link #fence()}. The
+ * protocol relies on ART compiling a volatile store and load to full hardware barriers
+ * ({@code dmb ish} on ARM) it does not move memory accesses across, which order the accesses
+ * to the shared memory as well.
+ * <p>
+ * A consumer never trusts a copied value on its own: after copying the values of a slot it
+ * re-checks the sequence of the slot and the count, and drops the value if the producer
+ * started overwriting the slot meanwhile, so a torn read is never returned.
+ */
+public class SensorRingBuffer {
+    /**
+     * Size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 8;
+    /**
+     * Size of a slot in bytes.
+     */
+    static final int SLOT_SIZE = 24;
+    /**
+     * Sequence of a slot while it is written.
+     */
+    private static final long WRITING = -1;
+    /**
+     * Volatile field only accessed by {@link #fence()}.
+     */
+    private static volatile int sFence;
+    /**
+     * The shared {@link ByteBuffer}.
+     */
+    private final ByteBuffer mBuffer;
+    /**
+     * Number of slots.
+     */
+    private final int mCapacity;
+    /**
+     * Number of the next value to be polled by this consumer.
+     */
+    private long mNextValue;
+    /**
+     * Number of values this consumer missed because they were overwritten.
+     */
+    private long mLostCount;
+
+    /**
+     * Constructor taking the shared {@link ByteBuffer}.
+     * The capacity is derived from the size of the {@link ByteBuffer}.
+     *
+     * @param buffer the {@link ByteBuffer}
+     */
+    public SensorRingBuffer(@NonNull final ByteBuffer buffer) {
+        mBuffer = buffer;
+        mCapacity = (buffer.capacity() - HEADER_SIZE) / SLOT_SIZE;
+        if (mCapacity < 1) {
+            throw new IllegalArgumentException("buffer too small: " + buffer.capacity());
+        }
+    }
+
+    /**
+     * Returns the size in bytes of a buffer holding the given number of values.
+     *
+     * @param capacity number of values
+     * @return the size in bytes
+     */
+    public static int getSize(final int capacity) {
+        return HEADER_SIZE + capacity * SLOT_SIZE;
+    }
+
+    /**
+     * Returns the number of values the buffer keeps.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Returns the number of values written to the buffer.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return mBuffer.getLong(0);
+    }
+
+    /**
+     * Returns the number of values this consumer missed because they were overwritten before
+     * they were polled.
+     *
+     * @return the number of lost values
+     */
+    public long getLostCount() {
+        return mLostCount;
+    }
+
+    /**
+     * Write a value. Must only be called by the single producer.
+     *
+     * @param result the {@link AbstractSensor.Result} to be written
+     */
+    public void write(@NonNull final AbstractSensor.Result<Float> result) {
+        final long count = mBuffer.getLong(0);
+        final int slot = getSlot(count);
+        mBuffer.putLong(slot, WRITING);
+        // The slot is marked before its values change.
+        fence();
+        mBuffer.putLong(slot + 8, result.getTimeStamp());
+        mBuffer.putFloat(slot + 16, result.getValue() == null ? Float.NaN : result.getValue());
+        mBuffer.putInt(slot + 20, result.getSensorState().ordinal());
+        // The values are complete before the slot is released.
+        fence();
+        mBuffer.putLong(slot, count);
+        // The slot is released before the value is published.
+        fence();
+        mBuffer.putLong(0, count + 1);
+    }
+
+    /**
+     * Returns the values written since the last poll of this consumer, oldest first.
+     * Values overwritten before they were polled are counted as lost.
+     *
+     * @return the {@link AbstractSensor.Result}s, empty if there are none
+     */
+    @NonNull
+    public List<AbstractSensor.Result<Float>> poll() {
+        final long count = mBuffer.getLong(0);
+        // The slots are read after the count.
+        fence();
+        if (count - mNextValue > mCapacity) {
+            mLostCount += count - mCapacity - mNextValue;
+            mNextValue = count - mCapacity;
+        }
+        final List<AbstractSensor.Result<Float>> results =
+                new ArrayList<>((int) Math.max(0, count - mNextValue));
+        for (long value = mNextValue; value < count; value++) {
+            final int slot = getSlot(value);
+            if (mBuffer.getLong(slot) != value) {
+                mLostCount++;
+                continue;
+            }
+            // The values are read after the sequence.
+            fence();
+            final long timeStamp = mBuffer.getLong(slot + 8);
+            final float pressure = mBuffer.getFloat(slot + 16);
+            final int state = mBuffer.getInt(slot + 20);
+            // The values are read before the sequence and the count are validated.
+            fence();
+            // Drop the value if the producer overwrote the slot while it was read.
+            if (mBuffer.getLong(slot) != value
+                    || mBuffer.getLong(0) - value > mCapacity) {
+                mLostCount++;
+                continue;
+            }
+            results.add(new AbstractSensor.Result<>(SensorState.values()[state],
+                    Float.isNaN(pressure) ? null : pressure,
+                    timeStamp));
+        }
+        mNextValue = Math.max(mNextValue, count);
+        return results;
+    }
+
+    /**
+     * Memory fence between the accesses before and after the call.
+     * Not a guarantee of the Java memory model, it relies on ART emitting a full barrier for
+     * the volatile write and read of the otherwise unused field.
+     *
+     * @return the value of the field, only read for the ordering
+     */
+    private static int fence() {
+        sFence = 0;
+        return sFence;
+    }
+
+    /**
+     * Returns the byte offset of the slot of the given value.
+     *
+     * @param value number of the value
+     * @return the offset in bytes
+     */
+    private int getSlot(final long value) {
+        return HEADER_SIZE + (int) (value % mCapacity) * SLOT_SIZE;
+    }
+}
@@ -1,15 +1,28 @@
 package de.gotovoid.service.communication;
 
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.support.annotation.NonNull;
+import android.system.ErrnoException;
 import android.util.Log;
-import android.util.SparseArray;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.RecordingDelta;
 import de.gotovoid.service.sensors.SensorHandler;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.service.sensors.SensorType;
@@ -22,16 +35,92 @@ import de.gotovoid.service.sensors.SensorType;
  * Implementation of the {@link ISensorService}.
  * This implements the service side AIDL interface and enables to addObserver and unregister
  * callbacks for the sensor service.
+ * The updates are sent to each client by a {@link ResponseDispatcher}, which coalesces the
+ * updates of all {@link SensorType}s of the client if it registered with a batch window.
+ * Each client has its own bounded queue, which is sent on a pooled thread, so a slow client
+ * neither blocks the sensor thread nor the other clients.
+ * Clients registering with {@link CallbackRegistration.Transport#SHARED_MEMORY} receive a
+ * {@link SensorStream} instead, if the device and {@link SensorType} support it.
+ * New clients and {@link #requestUpdate(CallbackRegistration)} are served the last value of the
+ * sensor immediately, flagged as stale if it is older than the freshness bound.
+ * The binder of each client is linked to death, so the callbacks of a client that died are
+ * evicted and the sensors are released without waiting for it to unregister.
+ * The {@link ResponseDispatcher} and death link of a client are referenced by the binder of its
+ * {@link ISensorServiceCallback}, as {@link CallbackRegistration#getCallbackId()} is only an
+ * identity hash in the process of the client. The calls only taking the
+ * {@link CallbackRegistration} find the {@link Callback} by the id, which is bound to the binder
+ * of the client that registered it first.
+ * A client switching to ambient mode by {@link #setAmbient(CallbackRegistration, boolean)} is
+ * updated in its ambient update frequency, and the sensors slow down if no other client needs
+ * faster updates.
+ * The {@link Callback}s are kept in a concurrent map per {@link SensorType}, which is read
+ * without locking and changed holding the lock of its {@link SensorType}, so registrations of
+ * different {@link SensorType}s do not wait for each other. Only the {@link ResponseDispatcher}s
+ * and death links shared by the {@link SensorType}s of a client are guarded by a common lock,
+ * held for a few map operations. No lock is held while the sensors are started or stopped, so a
+ * registration neither blocks the dispatch nor waits for the sensor of another
+ * {@link SensorType} to start.
  */
 public class SensorServiceBinder extends ISensorService.Stub {
     private static final String TAG = SensorServiceBinder.class.getSimpleName();
+    /**
+     * Default maximal number of queued transactions per client.
+     */
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * Number of values kept by a {@link SensorStream}, about 10 seconds at 25 Hz.
+     */
+    static final int STREAM_CAPACITY = 256;
+    /**
+     * Age in milliseconds after which a last value is stale, unless the update frequency of the
+     * client is lower.
+     */
+    static final long MAX_VALUE_AGE = 10000;
 
     /**
      * {@link Map} containing references to the {@link Callback} referenced by {@link SensorType}
      * and {@link CallbackRegistration#getCallbackId()}.
+     * The {@link Map} of each {@link SensorType} is read without locking and only changed
+     * holding its lock in {@link #mTypeLocks}. A registration of another client with an id
+     * already in use for the {@link SensorType} is rejected.
+     */
+    private final Map<SensorType, ConcurrentMap<Integer, Callback>> mCallbacks;
+    /**
+     * Locks for the {@link Callback}s of each {@link SensorType}, never held while calling the
+     * {@link SensorHandler} or the clients. Taken before {@link #mClientLock}.
+     */
+    private final Map<SensorType, Object> mTypeLocks;
+    /**
+     * Lock for the {@link ResponseDispatcher}s and death links of the clients, never held while
+     * calling the {@link SensorHandler} or the clients.
+     */
+    private final Object mClientLock = new Object();
+    /**
+     * {@link ResponseDispatcher}s of the clients referenced by {@link #getClientKey}, guarded by
+     * {@link #mClientLock}.
+     */
+    private final Map<Object, ResponseDispatcher> mDispatchers = new HashMap<>();
+    /**
+     * {@link ClientDeathRecipient}s of the clients referenced by {@link #getClientKey}, guarded
+     * by {@link #mClientLock}.
+     */
+    private final Map<Object, ClientDeathRecipient> mDeathRecipients = new HashMap<>();
+    /**
+     * {@link Handler} to send the batched updates on.
+     */
+    private final Handler mHandler;
+    /**
+     * {@link Executor} to call the clients on.
+     */
+    private final Executor mExecutor;
+    /**
+     * Maximal number of queued transactions per client.
+     */
+    private final int mQueueCapacity;
+    /**
+     * The {@link ResponseDispatcher.OverflowPolicy} if the queue of a client is full.
      */
-    // TODO: use sparse array!
-    private final Map<SensorType, SparseArray<Callback>> mCallbacks;
+    private final ResponseDispatcher.OverflowPolicy mOverflowPolicy;
     /**
      * Synchronization object.
      */
@@ -41,10 +130,11 @@ public class SensorServiceBinder extends ISensorService.Stub {
      */
     private final SensorHandler mSensorHandler;
     /**
-     * Set to true if the client requested the updates to be paused.
+     * Set to true if the client requested the updates to be paused. Read with every update,
+     * so it is not guarded by a lock.
      * TODO: maybe consider moving this into the Callbacks
      */
-    private boolean mIsUpdatePaused;
+    private volatile boolean mIsUpdatePaused;
 
     /**
      * True if there was a request to start a new recording.
@@ -58,18 +148,46 @@ public class SensorServiceBinder extends ISensorService.Stub {
      * @param sensorHandler the {@link SensorHandler}
      */
     public SensorServiceBinder(final SensorHandler sensorHandler) {
-        mCallbacks = new HashMap<>();
+        this(sensorHandler,
+                new Handler(Looper.getMainLooper()),
+                Executors.newCachedThreadPool(),
+                DEFAULT_QUEUE_CAPACITY,
+                ResponseDispatcher.OverflowPolicy.CONFLATE_LATEST);
+    }
+
+    /**
+     * Create a new instance of the {@link SensorServiceBinder} using the given
+     * {@link SensorHandler} instance, {@link Handler} to send the batched updates on,
+     * {@link Executor} to call the clients on and the capacity and
+     * {@link ResponseDispatcher.OverflowPolicy} of the queue of each client.
+     *
+     * @param sensorHandler  the {@link SensorHandler}
+     * @param handler        the {@link Handler}
+     * @param executor       the {@link Executor}
+     * @param queueCapacity  maximal number of queued transactions per client
+     * @param overflowPolicy the {@link ResponseDispatcher.OverflowPolicy}
+     */
+    SensorServiceBinder(final SensorHandler sensorHandler,
+                        final Handler handler,
+                        final Executor executor,
+                        final int queueCapacity,
+                        final ResponseDispatcher.OverflowPolicy overflowPolicy) {
+        mHandler = handler;
+        mExecutor = executor;
+        mQueueCapacity = queueCapacity;
+        mOverflowPolicy = overflowPolicy;
+        mCallbacks = new EnumMap<>(SensorType.class);
+        mTypeLocks = new EnumMap<>(SensorType.class);
         for (SensorType type : SensorType.values()) {
-            mCallbacks.put(type, new SparseArray<Callback>());
+            mCallbacks.put(type, new ConcurrentHashMap<Integer, Callback>());
+            mTypeLocks.put(type, new Object());
         }
         mSensorHandler = sensorHandler;
     }
 
     @Override
     public void setUpdatePaused(final boolean isUpdatePaused) throws RemoteException {
-        synchronized (mLock) {
-            mIsUpdatePaused = isUpdatePaused;
-        }
+        mIsUpdatePaused = isUpdatePaused;
     }
 
     /**
@@ -78,9 +196,7 @@ public class SensorServiceBinder extends ISensorService.Stub {
      * @return true if paused
      */
     boolean isUpdatePaused() {
-        synchronized (mLock) {
-            return mIsUpdatePaused;
-        }
+        return mIsUpdatePaused;
     }
 
     @Override
@@ -102,7 +218,31 @@ public class SensorServiceBinder extends ISensorService.Stub {
     @Override
     public void requestUpdate(final CallbackRegistration registration)
             throws RemoteException {
-        // TODO:implement
+        Log.d(TAG, "requestUpdate() called with: registration = [" + registration + "]");
+        final Callback callback = getCallback(registration);
+        if (callback == null) {
+            return;
+        }
+        final ResponseDispatcher dispatcher;
+        synchronized (mClientLock) {
+            dispatcher = mDispatchers.get(getClientKey(callback.getCallback()));
+        }
+        if (dispatcher != null) {
+            sendLastValue(registration, dispatcher);
+        }
+    }
+
+    @Override
+    public void setAmbient(final CallbackRegistration registration, final boolean isAmbient)
+            throws RemoteException {
+        Log.d(TAG, "setAmbient() called with: registration = [" + registration
+                + "], isAmbient = [" + isAmbient + "]");
+        final Callback callback = getCallback(registration);
+        if (callback == null) {
+            return;
+        }
+        mSensorHandler.setUpdateFrequency(callback.getObserver(),
+                registration.getUpdateFrequency(isAmbient));
     }
 
     @Override
@@ -139,25 +279,110 @@ public class SensorServiceBinder extends ISensorService.Stub {
         if (registration == null || registration.getType() == null || sensorCallback == null) {
             return;
         }
-        synchronized (mCallbacks) {
-            // TODO: minimize synchronized block.
-            // Get the map of callbacks for the appropriate SensorType
-            SparseArray<Callback> callbacks = mCallbacks.get(registration.getType());
+        final int callbackId = registration.getCallbackId();
+        final Object clientKey = getClientKey(sensorCallback);
+        // Get the map of callbacks for the appropriate SensorType
+        final Map<Integer, Callback> callbacks = mCallbacks.get(registration.getType());
+        final Callback callback;
+        final ResponseDispatcher dispatcher;
+        synchronized (mTypeLocks.get(registration.getType())) {
             // Check whether the callback is already registered
-            if (callbacks.get(registration.getCallbackId()) == null) {
-                Log.d(TAG, "addCallback: add new callback: " + registration.getType());
+            final Callback registered = callbacks.get(callbackId);
+            if (registered != null) {
+                if (clientKey.equals(getClientKey(registered.getCallback()))) {
+                    Log.d(TAG, "addCallback: callback already registered");
+                } else {
+                    Log.w(TAG, "addCallback: callback id used by another client: " + callbackId);
+                }
+                return;
+            }
+            Log.d(TAG, "addCallback: add new callback: " + registration.getType());
+            synchronized (mClientLock) {
+                final ResponseDispatcher existing = mDispatchers.get(clientKey);
+                if (existing == null) {
+                    if (!linkToDeath(clientKey, sensorCallback)) {
+                        return;
+                    }
+                    dispatcher = new ResponseDispatcher(sensorCallback,
+                            mHandler,
+                            mExecutor,
+                            mQueueCapacity,
+                            mOverflowPolicy);
+                } else {
+                    dispatcher = existing;
+                }
                 // Create a local Observer instance to be stored in the map
-                final Callback callback = createCallback(registration, sensorCallback);
-                if (callback != null) {
-                    // Store the Observer and addObserver it with the SensorHandler.
-                    callbacks.put(registration.getCallbackId(), callback);
-                    mSensorHandler.addObserver(callback.getObserver());
+                callback = createCallback(registration, sensorCallback, dispatcher);
+                if (callback == null) {
+                    if (existing == null) {
+                        unlinkToDeath(clientKey);
+                    }
+                    return;
                 }
-            } else {
-                Log.d(TAG, "addCallback: callback already registered");
+                dispatcher.addRegistration(registration);
+                mDispatchers.put(clientKey, dispatcher);
             }
+            callbacks.put(callbackId, callback);
             Log.d(TAG, "addCallback: callbacks " + callbacks.size());
         }
+        if (registration.getTransport() == CallbackRegistration.Transport.SHARED_MEMORY) {
+            openStream(registration.getType(), dispatcher);
+        }
+        if (!isUpdatePaused()) {
+            sendLastValue(registration, dispatcher);
+        }
+        // Start the sensor outside the lock, it may restart the hardware.
+        mSensorHandler.addObserver(callback.getObserver());
+        // The callback may have been removed meanwhile, before its observer was added.
+        if (callbacks.get(callbackId) != callback) {
+            mSensorHandler.removeObserver(callback.getObserver());
+        }
+    }
+
+    /**
+     * Send the last value of the {@link SensorType} of the registration to the client.
+     * The value is flagged as stale if it is older than {@link #MAX_VALUE_AGE} or twice the
+     * update frequency of the client, whichever is longer.
+     *
+     * @param registration the {@link CallbackRegistration}
+     * @param dispatcher   the {@link ResponseDispatcher} of the client
+     */
+    private void sendLastValue(@NonNull final CallbackRegistration registration,
+                               @NonNull final ResponseDispatcher dispatcher) {
+        final AbstractSensor.Result result = mSensorHandler.getLastResult(registration.getType());
+        if (result == null) {
+            return;
+        }
+        final long age = mSensorHandler.getClock().elapsedRealtime() - result.getTimeStamp();
+        final long maxAge = Math.max(MAX_VALUE_AGE, 2 * registration.getUpdateFrequency());
+        dispatcher.send(registration.getType(), new Response(result, age > maxAge));
+    }
+
+    /**
+     * Open a {@link SensorStream} for the updates of the given {@link SensorType} of the client.
+     * If the device or {@link SensorType} does not support it, the updates are sent by binder
+     * callbacks.
+     *
+     * @param type       the {@link SensorType}
+     * @param dispatcher the {@link ResponseDispatcher} of the client
+     */
+    private static void openStream(@NonNull final SensorType type,
+                                   @NonNull final ResponseDispatcher dispatcher) {
+        // Only float values are streamed.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1 || type != SensorType.PRESSURE) {
+            Log.d(TAG, "openStream: not supported, fall back to binder: " + type);
+            return;
+        }
+        SensorStream stream = null;
+        try {
+            stream = SensorStream.create(type, STREAM_CAPACITY);
+            dispatcher.addStream(stream, stream.mapReadWrite());
+        } catch (final ErrnoException exception) {
+            Log.e(TAG, "openStream: fall back to binder: ", exception);
+            if (stream != null) {
+                stream.close();
+            }
+        }
     }
 
     /**
@@ -171,25 +396,123 @@ public class SensorServiceBinder extends ISensorService.Stub {
         if (registration == null || registration.getType() == null) {
             return;
         }
-        synchronized (mCallbacks) {
-            // TODO: minimize synchronized block.
-            // Get the appropriate map for the SensorType
-            SparseArray<Callback> callbacks = mCallbacks.get(registration.getType());
-            // Check whether the Observer is actually managed.
-            if (callbacks.get(registration.getCallbackId()) == null) {
+        final int callbackId = registration.getCallbackId();
+        // Get the appropriate map for the SensorType
+        final Map<Integer, Callback> callbacks = mCallbacks.get(registration.getType());
+        final Callback callback;
+        synchronized (mTypeLocks.get(registration.getType())) {
+            // If the callback is managed, remove it from the managed Callbacks.
+            callback = callbacks.remove(callbackId);
+            if (callback == null) {
                 Log.d(TAG, "removeCallback: callback not registered");
-            } else {
-                // If the callback is managed, remove it from the managed Callbacks.
-                Log.d(TAG, "removeCallback: remove callback");
-                final Callback callback = callbacks.get(registration.getCallbackId());
-                callbacks.remove(registration.getCallbackId());
-                if (callbacks.size() == 0) {
-                    // Then also remove it from the SensorHandler.
-                    mSensorHandler.removeObserver(callback.getObserver());
+                return;
+            }
+            Log.d(TAG, "removeCallback: remove callback");
+            final Object clientKey = getClientKey(callback.getCallback());
+            synchronized (mClientLock) {
+                final ResponseDispatcher dispatcher = mDispatchers.get(clientKey);
+                if (dispatcher != null && dispatcher.removeRegistration(registration)) {
+                    mDispatchers.remove(clientKey);
+                    unlinkToDeath(clientKey);
                 }
             }
             Log.d(TAG, "removeCallback: callbacks: " + callbacks.size());
         }
+        // Then also remove it from the SensorHandler, outside the lock as it may stop the
+        // hardware.
+        mSensorHandler.removeObserver(callback.getObserver());
+    }
+
+    /**
+     * Returns the key of the client of the given {@link ISensorServiceCallback}, which is its
+     * binder. A local {@link ISensorServiceCallback} without binder is its own key.
+     *
+     * @param callback the {@link ISensorServiceCallback} of the client
+     * @return the key of the client
+     */
+    @NonNull
+    private static Object getClientKey(@NonNull final ISensorServiceCallback callback) {
+        final IBinder binder = callback.asBinder();
+        return binder == null ? callback : binder;
+    }
+
+    /**
+     * Link to the death of the binder of a new client. Must be called holding
+     * {@link #mClientLock}.
+     *
+     * @param clientKey the key of the client
+     * @param callback  the {@link ISensorServiceCallback} of the client
+     * @return false if the client already died
+     */
+    private boolean linkToDeath(@NonNull final Object clientKey,
+                                @NonNull final ISensorServiceCallback callback) {
+        final IBinder binder = callback.asBinder();
+        if (binder == null) {
+            return true;
+        }
+        final ClientDeathRecipient recipient = new ClientDeathRecipient(clientKey, binder);
+        try {
+            binder.linkToDeath(recipient, 0);
+        } catch (final RemoteException exception) {
+            Log.w(TAG, "linkToDeath: client already died: " + binder);
+            return false;
+        }
+        mDeathRecipients.put(clientKey, recipient);
+        return true;
+    }
+
+    /**
+     * Unlink from the death of the binder of a client that unregistered. Must be called
+     * holding {@link #mClientLock}.
+     *
+     * @param clientKey the key of the client
+     */
+    private void unlinkToDeath(@NonNull final Object clientKey) {
+        final ClientDeathRecipient recipient = mDeathRecipients.remove(clientKey);
+        if (recipient != null) {
+            recipient.mBinder.unlinkToDeath(recipient, 0);
+        }
+    }
+
+    /**
+     * Evict all {@link Callback}s of a client that died and remove their
+     * {@link AbstractSensor.Observer}s from the {@link SensorHandler}, so the sensors are
+     * released once no other client observes them.
+     *
+     * @param recipient the {@link ClientDeathRecipient} of the client
+     */
+    private void evictClient(@NonNull final ClientDeathRecipient recipient) {
+        final Object clientKey = recipient.mClientKey;
+        Log.d(TAG, "evictClient() called with: clientKey = [" + clientKey + "]");
+        final List<Callback> evicted = new ArrayList<>();
+        synchronized (mClientLock) {
+            // The client may have unregistered meanwhile.
+            if (mDeathRecipients.get(clientKey) != recipient) {
+                return;
+            }
+            mDeathRecipients.remove(clientKey);
+            final ResponseDispatcher dispatcher = mDispatchers.remove(clientKey);
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
+        }
+        // A registration after the removal of the dispatcher fails to link to the dead binder,
+        // a registration before is removed here.
+        for (SensorType type : SensorType.values()) {
+            synchronized (mTypeLocks.get(type)) {
+                final Iterator<Callback> iterator = mCallbacks.get(type).values().iterator();
+                while (iterator.hasNext()) {
+                    final Callback callback = iterator.next();
+                    if (clientKey.equals(getClientKey(callback.getCallback()))) {
+                        iterator.remove();
+                        evicted.add(callback);
+                    }
+                }
+            }
+        }
+        for (Callback callback : evicted) {
+            mSensorHandler.removeObserver(callback.getObserver());
+        }
     }
 
     /**
@@ -202,12 +525,54 @@ public class SensorServiceBinder extends ISensorService.Stub {
         if (registration == null || registration.getType() == null) {
             return null;
         }
-        synchronized (mCallbacks) {
-            SparseArray<Callback> callbacks = mCallbacks.get(registration.getType());
-            return callbacks.get(registration.getCallbackId());
+        return mCallbacks.get(registration.getType()).get(registration.getCallbackId());
+    }
+
+    /**
+     * Returns the number of transactions waiting to be sent to the client with the given
+     * callback id.
+     *
+     * @param callbackId the {@link CallbackRegistration#getCallbackId()}
+     * @return the queue depth, 0 if the client is not registered
+     */
+    int getQueueDepth(final int callbackId) {
+        synchronized (mClientLock) {
+            final ResponseDispatcher dispatcher = getDispatcher(callbackId);
+            return dispatcher == null ? 0 : dispatcher.getQueueDepth();
+        }
+    }
+
+    /**
+     * Returns the number of updates dropped for the client with the given callback id because
+     * its queue was full.
+     *
+     * @param callbackId the {@link CallbackRegistration#getCallbackId()}
+     * @return the number of dropped updates, 0 if the client is not registered
+     */
+    long getDropCount(final int callbackId) {
+        synchronized (mClientLock) {
+            final ResponseDispatcher dispatcher = getDispatcher(callbackId);
+            return dispatcher == null ? 0 : dispatcher.getDropCount();
         }
     }
 
+    /**
+     * Returns the {@link ResponseDispatcher} of the client with the given callback id. Must be
+     * called holding {@link #mClientLock}.
+     *
+     * @param callbackId the {@link CallbackRegistration#getCallbackId()}
+     * @return the {@link ResponseDispatcher}, null if the client is not registered
+     */
+    private ResponseDispatcher getDispatcher(final int callbackId) {
+        for (Map<Integer, Callback> callbacks : mCallbacks.values()) {
+            final Callback callback = callbacks.get(callbackId);
+            if (callback != null) {
+                return mDispatchers.get(getClientKey(callback.getCallback()));
+            }
+        }
+        return null;
+    }
+
     /**
      * Generates a {@link Callback} instance to be more easy to store and manage.
      * Also creates an {@link AbstractSensor.Observer}
@@ -217,10 +582,12 @@ public class SensorServiceBinder extends ISensorService.Stub {
      *
      * @param registration the {@link CallbackRegistration}
      * @param callback     the {@link ISensorServiceCallback}
+     * @param dispatcher   the {@link ResponseDispatcher} of the client
      * @return a new {@link Callback} instance
      */
     private Callback createCallback(@NonNull final CallbackRegistration registration,
-                                    @NonNull final ISensorServiceCallback callback) {
+                                    @NonNull final ISensorServiceCallback callback,
+                                    @NonNull final ResponseDispatcher dispatcher) {
         Log.d(TAG, "getObserver() called with: type = [" + registration + "]");
         // Fail fast.
         if (registration == null || registration.getType() == null || callback == null) {
@@ -230,19 +597,19 @@ public class SensorServiceBinder extends ISensorService.Stub {
         switch (registration.getType()) {
             case PRESSURE:
                 observer = new SensorObserver<Float>(
-                        callback,
+                        dispatcher,
                         registration.getUpdateFrequency(),
                         registration.getType());
                 break;
             case LOCATION:
                 observer = new SensorObserver<ExtendedGeoCoordinate>(
-                        callback,
+                        dispatcher,
                         registration.getUpdateFrequency(),
                         registration.getType());
                 break;
             case RECORDING:
-                observer = new SensorObserver<Long>(
-                        callback,
+                observer = new SensorObserver<RecordingDelta>(
+                        dispatcher,
                         registration.getUpdateFrequency(),
                         registration.getType());
                 break;
@@ -261,19 +628,21 @@ public class SensorServiceBinder extends ISensorService.Stub {
     }
 
     private class SensorObserver<T extends Serializable> extends AbstractSensor.Observer<T> {
-        private ISensorServiceCallback mCallback;
+        private final ResponseDispatcher mDispatcher;
 
         /**
-         * Constructor taking the update frequency in milliseconds and {@link SensorType}.
+         * Constructor taking the {@link ResponseDispatcher} of the client, the update frequency
+         * in milliseconds and {@link SensorType}.
          *
+         * @param dispatcher      the {@link ResponseDispatcher}
          * @param updateFrequency the update frequency requested by the {@link AbstractSensor.Observer}
          * @param type            the {@link SensorType}
          */
-        public SensorObserver(final ISensorServiceCallback callback,
+        public SensorObserver(final ResponseDispatcher dispatcher,
                               final long updateFrequency,
                               final SensorType type) {
             super(updateFrequency, type);
-            mCallback = callback;
+            mDispatcher = dispatcher;
         }
 
         @Override
@@ -281,11 +650,39 @@ public class SensorServiceBinder extends ISensorService.Stub {
             if (isUpdatePaused()) {
                 return;
             }
-            try {
-                mCallback.onSensorValueChanged(new Response(result));
-            } catch (final RemoteException exception) {
-                Log.e(TAG, "onChange: ", exception);
-            }
+            mDispatcher.dispatch(getType(), result);
+        }
+    }
+
+    /**
+     * Evicts the {@link Callback}s of a client when its binder died.
+     */
+    private class ClientDeathRecipient implements IBinder.DeathRecipient {
+        /**
+         * The key of the client.
+         */
+        private final Object mClientKey;
+        /**
+         * The binder of the client.
+         */
+        private final IBinder mBinder;
+
+        /**
+         * Constructor taking the key and binder of the client.
+         *
+         * @param clientKey the key of the client
+         * @param binder    the binder of the client
+         */
+        private ClientDeathRecipient(@NonNull final Object clientKey,
+                                     @NonNull final IBinder binder) {
+            mClientKey = clientKey;
+            mBinder = binder;
+        }
+
+        @Override
+        public void binderDied() {
+            Log.w(TAG, "binderDied: client " + mBinder);
+            evictClient(this);
         }
     }
 
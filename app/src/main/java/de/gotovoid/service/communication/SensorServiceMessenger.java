@@ -123,6 +123,31 @@ public class SensorServiceMessenger {
         }
     }
 
+    /**
+     * Tell the {@link LocationService} that the client of the provided
+     * {@link CallbackRegistration} entered or exited ambient mode, so it is updated in the
+     * according update frequency.
+     *
+     * @param registration the {@link CallbackRegistration}
+     * @param isAmbient    true if the client entered ambient mode
+     * @return true if successful
+     */
+    public boolean setAmbient(@NonNull final CallbackRegistration registration,
+                              final boolean isAmbient) {
+        if (mServiceConnection == null || mServiceConnection.getService() == null) {
+            return false;
+        }
+        Log.d(TAG, "setAmbient() called with: registration = [" + registration
+                + "], isAmbient = [" + isAmbient + "]");
+        try {
+            mServiceConnection.getService().setAmbient(registration, isAmbient);
+            return true;
+        } catch (final RemoteException exception) {
+            Log.e(TAG, "setAmbient: ", exception);
+            return false;
+        }
+    }
+
     /**
      * Tell the {@link LocationService} to start recording.
      *
@@ -0,0 +1,164 @@
+package de.gotovoid.service.communication;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SharedMemory;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+import android.system.ErrnoException;
+
+import java.nio.ByteBuffer;
+
+import de.gotovoid.service.sensors.SensorType;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Stream of sensor values from the service to the application through {@link SharedMemory}.
+ * The service writes the values of one {@link SensorType} into a {@link SensorRingBuffer} and
+ * sends this {@link Parcelable}, containing the file descriptor of the memory, once to the
+ * application. The application maps the memory and polls the values, so there is no binder
+ * transaction per value.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class SensorStream implements Parcelable {
+    /**
+     * The creator for the {@link Parcelable}.
+     */
+    public static final Parcelable.Creator<SensorStream> CREATOR =
+            new Parcelable.Creator<SensorStream>() {
+                @Override
+                public SensorStream createFromParcel(final Parcel source) {
+                    return new SensorStream(source);
+                }
+
+                @Override
+                public SensorStream[] newArray(int size) {
+                    return new SensorStream[size];
+                }
+            };
+    /**
+     * The {@link SensorType} of the values.
+     */
+    private final SensorType mType;
+    /**
+     * The {@link SharedMemory} containing the {@link SensorRingBuffer}.
+     */
+    private final SharedMemory mMemory;
+    /**
+     * The mapped memory, null if not mapped.
+     */
+    private ByteBuffer mBuffer;
+
+    /**
+     * Constructor taking the {@link SensorType} and {@link SharedMemory}.
+     *
+     * @param type   the {@link SensorType}
+     * @param memory the {@link SharedMemory}
+     */
+    private SensorStream(@NonNull final SensorType type, @NonNull final SharedMemory memory) {
+        mType = type;
+        mMemory = memory;
+    }
+
+    /**
+     * Create a {@link SensorStream} from the given {@link Parcel}.
+     *
+     * @param parcel the {@link Parcel} containing the data
+     */
+    protected SensorStream(final Parcel parcel) {
+        mType = SensorType.values()[parcel.readInt()];
+        mMemory = SharedMemory.CREATOR.createFromParcel(parcel);
+    }
+
+    /**
+     * Create a new {@link SensorStream} keeping the given number of values.
+     *
+     * @param type     the {@link SensorType}
+     * @param capacity number of values
+     * @return the {@link SensorStream}
+     * @throws ErrnoException if the memory can not be created
+     */
+    public static SensorStream create(@NonNull final SensorType type, final int capacity)
+            throws ErrnoException {
+        return new SensorStream(type,
+                SharedMemory.create(type.name(), SensorRingBuffer.getSize(capacity)));
+    }
+
+    /**
+     * Returns the {@link SensorType} of the values.
+     *
+     * @return the {@link SensorType}
+     */
+    public SensorType getType() {
+        return mType;
+    }
+
+    /**
+     * Map the memory to write the values. Must only be called by the service.
+     *
+     * @return the {@link SensorRingBuffer}
+     * @throws ErrnoException if the memory can not be mapped
+     */
+    public synchronized SensorRingBuffer mapReadWrite() throws ErrnoException {
+        unmap();
+        mBuffer = mMemory.mapReadWrite();
+        return new SensorRingBuffer(mBuffer);
+    }
+
+    /**
+     * Map the memory to poll the values.
+     *
+     * @return the {@link SensorRingBuffer}
+     * @throws ErrnoException if the memory can not be mapped
+     */
+    public synchronized SensorRingBuffer mapReadOnly() throws ErrnoException {
+        unmap();
+        mBuffer = mMemory.mapReadOnly();
+        return new SensorRingBuffer(mBuffer);
+    }
+
+    /**
+     * Unmap and close the memory. The {@link SensorRingBuffer} must not be used afterwards.
+     */
+    public synchronized void close() {
+        unmap();
+        mMemory.close();
+    }
+
+    /**
+     * Unmap the memory if it is mapped.
+     */
+    private void unmap() {
+        if (mBuffer != null) {
+            SharedMemory.unmap(mBuffer);
+            mBuffer = null;
+        }
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeInt(mType.ordinal());
+        mMemory.writeToParcel(dest, flags);
+    }
+
+    @Override
+    public int describeContents() {
+        return mMemory.describeContents();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(getClass().getSimpleName());
+        builder.append("{type: ");
+        builder.append(getType());
+        builder.append(", size: ");
+        builder.append(mMemory.getSize());
+        builder.append('}');
+        return builder.toString();
+    }
+}
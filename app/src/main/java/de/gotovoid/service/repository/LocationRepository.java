@@ -33,6 +33,11 @@ public class LocationRepository {
      */
     private RepositoryObservable mRepositoryObservable;
 
+    /**
+     * Shares the subscriptions of the {@link LiveData} instances per {@link SensorType}.
+     */
+    private final RepositoryMultiplexer mMultiplexer;
+
     /**
      * Constructor taking the {@link SensorServiceMessenger} instance to use for service
      * communication.
@@ -42,6 +47,7 @@ public class LocationRepository {
     public LocationRepository(final SensorServiceMessenger messenger) {
         mServiceMessenger = messenger;
         mRepositoryObservable = new RepositoryObservable(messenger);
+        mMultiplexer = new RepositoryMultiplexer(mRepositoryObservable);
     }
 
     /**
@@ -63,6 +69,7 @@ public class LocationRepository {
     /**
      * Returns the {@link LiveData} for the {@link ExtendedGeoCoordinate} representing the
      * current location.
+     * All {@link LiveData} instances of the location share one service subscription.
      *
      * @param updateFrequency the updateFrequency for the {@link LiveData}
      * @return the {@link LiveData}
@@ -70,23 +77,22 @@ public class LocationRepository {
     @NonNull
     public LiveData<AbstractSensor.Result<ExtendedGeoCoordinate>>
     getLocation(final long updateFrequency) {
-        // TODO: maybe we should not always return a new LiveData object.
         Log.d(TAG, "getLocation() called with: updateFrequency = [" + updateFrequency + "]");
-        return new RepositoryLiveData<>(mRepositoryObservable,
+        return new RepositoryLiveData<>(mMultiplexer,
                 updateFrequency,
                 SensorType.LOCATION);
     }
 
     /**
      * Returns the {@link LiveData} for the current pressure.
+     * All {@link LiveData} instances of the pressure share one service subscription.
      *
      * @param updateFrequency the update frequency for the {@link LiveData}
      * @return the {@link LiveData}
      */
     @NonNull
     public LiveData<AbstractSensor.Result<Float>> getPressure(final long updateFrequency) {
-        // TODO: maybe we should not always return a new LiveData object.
-        return new RepositoryLiveData<>(mRepositoryObservable,
+        return new RepositoryLiveData<>(mMultiplexer,
                 updateFrequency,
                 SensorType.PRESSURE);
     }
@@ -109,6 +115,16 @@ public class LocationRepository {
         mRepositoryObservable.removeObserver(observer);
     }
 
+    /**
+     * Set whether the application is in ambient mode, the sensor updates are received in the
+     * ambient update frequency of the observers.
+     *
+     * @param isAmbient true if the application entered ambient mode
+     */
+    public void setAmbient(final boolean isAmbient) {
+        mRepositoryObservable.setAmbient(isAmbient);
+    }
+
     /**
      * Start recording.
      * TODO: Does it really make sense to send this id or should the service generate
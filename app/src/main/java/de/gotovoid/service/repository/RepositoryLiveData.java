@@ -5,6 +5,7 @@ import android.support.annotation.Nullable;
 
 import java.io.Serializable;
 
+import de.gotovoid.components.arcitecture.IObservable;
 import de.gotovoid.components.arcitecture.ObserverLiveData;
 import de.gotovoid.service.sensors.AbstractSensor;
 import de.gotovoid.service.sensors.SensorType;
@@ -51,6 +52,32 @@ public class RepositoryLiveData<T extends Serializable>
         observer.setLiveData(this);
     }
 
+    /**
+     * Constructor taking the {@link RepositoryMultiplexer} to share the subscription of the
+     * {@link SensorType} with other consumers, and the update frequency of this
+     * {@link RepositoryLiveData}.
+     *
+     * @param multiplexer     the {@link RepositoryMultiplexer}
+     * @param updateFrequency the update frequency in milliseconds
+     * @param sensorType      the {@link SensorType}
+     */
+    public RepositoryLiveData(final @NonNull RepositoryMultiplexer multiplexer,
+                              final long updateFrequency,
+                              final @NonNull SensorType sensorType) {
+        this(new MultiplexedObserver<>(multiplexer, updateFrequency, sensorType));
+    }
+
+    /**
+     * Private constructor taking the {@link MultiplexedObserver} which registers the
+     * {@link RepositoryLiveData} at the {@link RepositoryMultiplexer} while it is active.
+     *
+     * @param observer the {@link MultiplexedObserver}
+     */
+    private RepositoryLiveData(final @NonNull MultiplexedObserver<T> observer) {
+        super(observer);
+        observer.setLiveData(this);
+    }
+
     /**
      * Creates a new {@link RepositoryLiveData} instance with the given {@link RepositoryObserver}
      * and the {@link RepositoryObservable}. The {@link RepositoryObservable} needs to take care
@@ -111,4 +138,60 @@ public class RepositoryLiveData<T extends Serializable>
             mLiveData = liveData;
         }
     }
+
+    /**
+     * Hidden consumer of the {@link RepositoryMultiplexer} to automatically update the
+     * {@link RepositoryLiveData}.
+     *
+     * @param <T> type of the observed data
+     */
+    private static class MultiplexedObserver<T extends Serializable>
+            implements RegistrationHandler, IObservable.Observer<AbstractSensor.Result<T>> {
+        private final RepositoryMultiplexer mMultiplexer;
+        private final long mUpdateFrequency;
+        private final SensorType mSensorType;
+        private RepositoryLiveData<T> mLiveData;
+
+        /**
+         * Constructor taking the {@link RepositoryMultiplexer}, update frequency and
+         * {@link SensorType} to register at.
+         *
+         * @param multiplexer     the {@link RepositoryMultiplexer}
+         * @param updateFrequency frequency in ms to receive updates
+         * @param sensorType      {@link SensorType} to receive updates for
+         */
+        private MultiplexedObserver(final RepositoryMultiplexer multiplexer,
+                                    final long updateFrequency,
+                                    final SensorType sensorType) {
+            mMultiplexer = multiplexer;
+            mUpdateFrequency = updateFrequency;
+            mSensorType = sensorType;
+        }
+
+        @Override
+        public void onRegister() {
+            mMultiplexer.addObserver(mSensorType, mUpdateFrequency, this);
+        }
+
+        @Override
+        public void onUnregister() {
+            mMultiplexer.removeObserver(mSensorType, this);
+        }
+
+        @Override
+        public void onChange(final @Nullable AbstractSensor.Result<T> data) {
+            if (mLiveData != null) {
+                mLiveData.postValue(data);
+            }
+        }
+
+        /**
+         * Set the {@link RepositoryLiveData} to be updated when the observed value changes.
+         *
+         * @param liveData the {@link RepositoryLiveData}
+         */
+        private void setLiveData(final @NonNull RepositoryLiveData<T> liveData) {
+            mLiveData = liveData;
+        }
+    }
 }
@@ -0,0 +1,306 @@
+package de.gotovoid.service.repository;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.gotovoid.components.arcitecture.IObservable;
+import de.gotovoid.service.communication.SensorStream;
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorType;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Shares one service subscription per {@link SensorType} between all local consumers.
+ * The subscription is registered at the {@link RepositoryObservable} in the update frequency
+ * of the fastest consumer, and the updates are fanned out locally. Every consumer only receives
+ * the updates matching its own update frequency.
+ * The subscription is reference counted: it is registered with the first consumer, moved to a
+ * new update frequency when the fastest consumer changes, and removed with the last consumer.
+ * The pressure is streamed through a {@link SensorStream} where shared memory is available.
+ */
+public class RepositoryMultiplexer {
+    private static final String TAG = RepositoryMultiplexer.class.getSimpleName();
+    /**
+     * Tolerance in milliseconds for the update frequency of a consumer, so updates arriving
+     * slightly early are not dropped.
+     */
+    private static final long UPDATE_FREQUENCY_TOLERANCE = 30;
+    /**
+     * The {@link RepositoryObservable} to register the subscriptions at.
+     */
+    private final RepositoryObservable mObservable;
+    /**
+     * The {@link Channel}s by {@link SensorType}.
+     */
+    private final Map<SensorType, Channel> mChannels = new EnumMap<>(SensorType.class);
+
+    /**
+     * Constructor taking the {@link RepositoryObservable} to register the subscriptions at.
+     *
+     * @param observable the {@link RepositoryObservable}
+     */
+    public RepositoryMultiplexer(@NonNull final RepositoryObservable observable) {
+        mObservable = observable;
+    }
+
+    /**
+     * Add a consumer of the updates of the given {@link SensorType}.
+     * The consumer immediately receives the last update of the shared subscription, if there
+     * is one.
+     *
+     * @param type            the {@link SensorType}
+     * @param updateFrequency the update frequency of the consumer in milliseconds
+     * @param consumer        the consumer
+     * @param <T>             type of the observed data
+     */
+    public <T extends Serializable> void addObserver(
+            @NonNull final SensorType type,
+            final long updateFrequency,
+            @NonNull final IObservable.Observer<AbstractSensor.Result<T>> consumer) {
+        Log.d(TAG, "addObserver() called with: type = [" + type
+                + "], updateFrequency = [" + updateFrequency + "]");
+        final Channel channel;
+        synchronized (mChannels) {
+            Channel existing = mChannels.get(type);
+            if (existing == null) {
+                existing = new Channel(type);
+                mChannels.put(type, existing);
+            }
+            channel = existing;
+        }
+        channel.add(new Consumer(updateFrequency, consumer));
+    }
+
+    /**
+     * Remove a consumer. The subscription of the {@link SensorType} is removed with its last
+     * consumer.
+     *
+     * @param type     the {@link SensorType}
+     * @param consumer the consumer
+     */
+    public void removeObserver(@NonNull final SensorType type,
+                               @NonNull final IObservable.Observer consumer) {
+        Log.d(TAG, "removeObserver() called with: type = [" + type + "]");
+        final Channel channel;
+        synchronized (mChannels) {
+            channel = mChannels.get(type);
+        }
+        if (channel != null) {
+            channel.remove(consumer);
+        }
+    }
+
+    /**
+     * Returns the update frequency of the service subscription of the given
+     * {@link SensorType}.
+     *
+     * @param type the {@link SensorType}
+     * @return the update frequency in milliseconds, -1 if there is no subscription
+     */
+    long getUpdateFrequency(@NonNull final SensorType type) {
+        final Channel channel;
+        synchronized (mChannels) {
+            channel = mChannels.get(type);
+        }
+        return channel == null ? -1 : channel.getUpdateFrequency();
+    }
+
+    /**
+     * The shared subscription of one {@link SensorType} and its consumers.
+     */
+    private class Channel {
+        private final SensorType mType;
+        /**
+         * The consumers, iterated without lock when the updates are fanned out.
+         */
+        private final List<Consumer> mConsumers = new CopyOnWriteArrayList<>();
+        /**
+         * The {@link RepositoryObserver} registered at the service, null without consumers.
+         * Guarded by the {@link Channel}.
+         */
+        private RepositoryObserver mSubscription;
+        /**
+         * The last update, null if there was none.
+         */
+        private volatile AbstractSensor.Result mLastResult;
+
+        /**
+         * Constructor taking the {@link SensorType}.
+         *
+         * @param type the {@link SensorType}
+         */
+        private Channel(@NonNull final SensorType type) {
+            mType = type;
+        }
+
+        /**
+         * Add a {@link Consumer} and send it the last update.
+         *
+         * @param consumer the {@link Consumer}
+         */
+        private synchronized void add(@NonNull final Consumer consumer) {
+            for (Consumer existing : mConsumers) {
+                if (existing.mObserver == consumer.mObserver) {
+                    return;
+                }
+            }
+            mConsumers.add(consumer);
+            final AbstractSensor.Result lastResult = mLastResult;
+            if (mSubscription != null && lastResult != null) {
+                consumer.onChange(lastResult);
+            }
+            updateSubscription();
+        }
+
+        /**
+         * Remove the {@link Consumer} of the given observer.
+         *
+         * @param observer the observer of the {@link Consumer}
+         */
+        private synchronized void remove(@NonNull final IObservable.Observer observer) {
+            for (Consumer consumer : mConsumers) {
+                if (consumer.mObserver == observer) {
+                    mConsumers.remove(consumer);
+                    updateSubscription();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the update frequency of the subscription.
+         *
+         * @return the update frequency in milliseconds, -1 if there is no subscription
+         */
+        private synchronized long getUpdateFrequency() {
+            return mSubscription == null ? -1 : mSubscription.getUpdateFrequency();
+        }
+
+        /**
+         * Register, move or remove the subscription so it matches the fastest consumer.
+         * The new subscription is registered before the old one is removed, so there is no
+         * gap in the updates.
+         */
+        private void updateSubscription() {
+            long updateFrequency = Long.MAX_VALUE;
+            for (Consumer consumer : mConsumers) {
+                updateFrequency = Math.min(updateFrequency, consumer.mUpdateFrequency);
+            }
+            final RepositoryObserver previous = mSubscription;
+            if (mConsumers.isEmpty()) {
+                mSubscription = null;
+                mLastResult = null;
+            } else if (previous == null || previous.getUpdateFrequency() != updateFrequency) {
+                Log.d(TAG, "updateSubscription: " + mType + " every " + updateFrequency);
+                mSubscription = new Subscription<>(updateFrequency, mType, this);
+                mObservable.addObserver(mSubscription);
+            }
+            if (previous != null && previous != mSubscription) {
+                mObservable.removeObserver(previous);
+            }
+        }
+
+        /**
+         * Fan out an update of the subscription to the consumers.
+         * While the subscription is moved, both subscriptions may deliver the same update, the
+         * {@link Consumer}s drop the duplicate by its time stamp.
+         *
+         * @param result the update
+         */
+        private void onChange(@NonNull final AbstractSensor.Result result) {
+            mLastResult = result;
+            for (Consumer consumer : mConsumers) {
+                consumer.onChange(result);
+            }
+        }
+    }
+
+    /**
+     * The {@link RepositoryObserver} of a shared subscription.
+     *
+     * @param <T> type of the observed data
+     */
+    private static class Subscription<T extends Serializable> extends RepositoryObserver<T> {
+        private final Channel mChannel;
+
+        /**
+         * Constructor taking the update frequency, {@link SensorType} and the {@link Channel}
+         * to fan out the updates.
+         *
+         * @param updateFrequency frequency in ms to receive updates
+         * @param sensorType      {@link SensorType} to receive updates for
+         * @param channel         the {@link Channel}
+         */
+        private Subscription(final long updateFrequency,
+                             final SensorType sensorType,
+                             final Channel channel) {
+            super(updateFrequency,
+                    sensorType,
+                    0,
+                    getPreferredTransport(sensorType, Build.VERSION.SDK_INT));
+            mChannel = channel;
+        }
+
+        @Override
+        public void onChange(final AbstractSensor.Result<T> data) {
+            if (data != null) {
+                mChannel.onChange(data);
+            }
+        }
+    }
+
+    /**
+     * A local consumer and the time stamp of its last update.
+     */
+    private static class Consumer {
+        private final long mUpdateFrequency;
+        private final IObservable.Observer mObserver;
+        /**
+         * Time stamp of the last update sent, guarded by the {@link Consumer}.
+         */
+        private long mLastUpdate;
+        private boolean mHasUpdate;
+
+        /**
+         * Constructor taking the update frequency and observer of the consumer.
+         *
+         * @param updateFrequency update frequency in milliseconds
+         * @param observer        the observer
+         */
+        private Consumer(final long updateFrequency,
+                         @NonNull final IObservable.Observer observer) {
+            mUpdateFrequency = updateFrequency;
+            mObserver = observer;
+        }
+
+        /**
+         * Send the update to the consumer if its update frequency has passed since its last
+         * update.
+         *
+         * @param result the update
+         */
+        @SuppressWarnings("unchecked")
+        private void onChange(@NonNull final AbstractSensor.Result result) {
+            synchronized (this) {
+                final long timeStamp = result.getTimeStamp();
+                if (mHasUpdate && timeStamp - mLastUpdate
+                        < mUpdateFrequency - UPDATE_FREQUENCY_TOLERANCE) {
+                    return;
+                }
+                mHasUpdate = true;
+                mLastUpdate = timeStamp;
+            }
+            mObserver.onChange(result);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import de.gotovoid.service.sensors.SensorType;
  * Manager for {@link RepositoryObserver}s.
  * Manages the {@link RepositoryObserver}s currently registered at the
  * {@link SensorServiceMessenger}.
+ * The ambient mode is applied to all {@link RepositoryObserver}s, including the ones registered
+ * while in ambient mode.
  *
  * @param <T> type of the observer data
  */
@@ -37,6 +39,10 @@ class RepositoryObservable<T extends Serializable>
      * {@link SensorServiceMessenger}.
      */
     private final Map<SensorType, Map<RepositoryObserver<T>, CallbackRegistration>> mObservers;
+    /**
+     * True if the application is in ambient mode.
+     */
+    private boolean mIsAmbient;
 
     /**
      * Constructor taking the {@link SensorServiceMessenger} to register the
@@ -82,9 +88,41 @@ class RepositoryObservable<T extends Serializable>
             }
             observers.put(obs, obs.getCallbackRegistration());
             mServiceMessenger.start(obs.getCallbackRegistration(), obs);
+            if (mIsAmbient) {
+                mServiceMessenger.setAmbient(obs.getCallbackRegistration(), true);
+            }
+        }
+    }
+
+    /**
+     * Set whether the application is in ambient mode.
+     * The registered {@link RepositoryObserver}s are switched to their update frequency of the
+     * mode.
+     *
+     * @param isAmbient true if the application entered ambient mode
+     */
+    public void setAmbient(final boolean isAmbient) {
+        Log.d(TAG, "setAmbient() called with: isAmbient = [" + isAmbient + "]");
+        if (mIsAmbient == isAmbient) {
+            return;
+        }
+        mIsAmbient = isAmbient;
+        for (Map<RepositoryObserver<T>, CallbackRegistration> observers : mObservers.values()) {
+            for (CallbackRegistration registration : observers.values()) {
+                mServiceMessenger.setAmbient(registration, isAmbient);
+            }
         }
     }
 
+    /**
+     * Returns true if the application is in ambient mode.
+     *
+     * @return true if ambient
+     */
+    public boolean isAmbient() {
+        return mIsAmbient;
+    }
+
     /**
      * Remove an {@link Observer} from the managed observers.
      * The {@link Observer} will no longer receive updates.
@@ -106,6 +144,7 @@ class RepositoryObservable<T extends Serializable>
             }
             CallbackRegistration registration = observers.remove(obs);
             mServiceMessenger.stop(registration);
+            obs.closeStream();
         }
     }
 }
@@ -1,14 +1,23 @@
 package de.gotovoid.service.repository;
 
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.support.annotation.RequiresApi;
+import android.system.ErrnoException;
 import android.util.Log;
 
 import java.io.Serializable;
+import java.util.List;
 
 import de.gotovoid.components.arcitecture.IObservable;
 import de.gotovoid.service.communication.CallbackRegistration;
 import de.gotovoid.service.communication.ISensorServiceCallback;
 import de.gotovoid.service.communication.Response;
+import de.gotovoid.service.communication.ResponseBatch;
+import de.gotovoid.service.communication.SensorRingBuffer;
+import de.gotovoid.service.communication.SensorStream;
 import de.gotovoid.service.sensors.AbstractSensor;
 import de.gotovoid.service.sensors.SensorType;
 
@@ -22,6 +31,8 @@ import de.gotovoid.service.sensors.SensorType;
  * It will be registered at the {@link RepositoryObservable} to receive sensor updates.
  * In order to receive these updates from the {@link RepositoryObservable},
  * the {@link ISensorServiceCallback} must be extended.
+ * If the service streams the updates through a {@link SensorStream}, the stream is polled on the
+ * main thread in the update frequency until {@link #closeStream()} is called.
  *
  * @param <T> type of the observed data.
  */
@@ -29,9 +40,45 @@ public abstract class RepositoryObserver<T extends Serializable>
         extends ISensorServiceCallback.Stub
         implements IObservable.Observer<AbstractSensor.Result<T>> {
     private static final String TAG = RepositoryObserver.class.getSimpleName();
+    /**
+     * Minimal time in ms between two polls of a {@link SensorStream}, about one frame.
+     */
+    private static final long MIN_POLL_INTERVAL = 16;
+    /**
+     * Default update frequency in ms in ambient mode, the display is refreshed once a minute.
+     */
+    public static final long DEFAULT_AMBIENT_UPDATE_FREQUENCY = 60000;
     private final long mUpdateFrequency;
+    private final long mAmbientUpdateFrequency;
     private final SensorType mSensorType;
+    private final long mBatchWindow;
+    private final CallbackRegistration.Transport mTransport;
     private CallbackRegistration mCallbackRegistration;
+    /**
+     * Synchronization object for the {@link SensorStream}.
+     */
+    private final Object mStreamLock = new Object();
+    /**
+     * The {@link SensorStream} of the service, null if the updates are sent by binder callbacks.
+     */
+    private SensorStream mStream;
+    /**
+     * The {@link SensorRingBuffer} of the {@link SensorStream}, guarded by the stream lock.
+     */
+    private SensorRingBuffer mRingBuffer;
+    /**
+     * {@link Handler} to poll the {@link SensorStream} on.
+     */
+    private Handler mHandler;
+    /**
+     * Polls the {@link SensorStream}.
+     */
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
 
     /**
      * Constructor taking the update frequency and {@link SensorType} needed for the callback
@@ -42,8 +89,86 @@ public abstract class RepositoryObserver<T extends Serializable>
      */
     public RepositoryObserver(final long updateFrequency,
                               final SensorType sensorType ) {
+        this(updateFrequency, sensorType, 0);
+    }
+
+    /**
+     * Constructor taking the update frequency, {@link SensorType} and batch window needed for
+     * the callback registration.
+     *
+     * @param updateFrequency frequency in ms to receive updates
+     * @param sensorType      {@link SensorType} to receive updates for
+     * @param batchWindow     time in ms the service may hold back updates to send them in one
+     *                        batch, 0 to receive every update immediately
+     */
+    public RepositoryObserver(final long updateFrequency,
+                              final SensorType sensorType,
+                              final long batchWindow) {
+        this(updateFrequency, sensorType, batchWindow, CallbackRegistration.Transport.BINDER);
+    }
+
+    /**
+     * Constructor taking the update frequency, {@link SensorType}, batch window and
+     * {@link CallbackRegistration.Transport} needed for the callback registration.
+     *
+     * @param updateFrequency frequency in ms to receive updates
+     * @param sensorType      {@link SensorType} to receive updates for
+     * @param batchWindow     time in ms the service may hold back updates to send them in one
+     *                        batch, 0 to receive every update immediately
+     * @param transport       the requested {@link CallbackRegistration.Transport}
+     */
+    public RepositoryObserver(final long updateFrequency,
+                              final SensorType sensorType,
+                              final long batchWindow,
+                              final CallbackRegistration.Transport transport) {
+        this(updateFrequency,
+                sensorType,
+                batchWindow,
+                transport,
+                Math.max(updateFrequency, DEFAULT_AMBIENT_UPDATE_FREQUENCY));
+    }
+
+    /**
+     * Constructor taking the update frequency, {@link SensorType}, batch window,
+     * {@link CallbackRegistration.Transport} and update frequency in ambient mode needed for
+     * the callback registration.
+     *
+     * @param updateFrequency        frequency in ms to receive updates
+     * @param sensorType             {@link SensorType} to receive updates for
+     * @param batchWindow            time in ms the service may hold back updates to send them
+     *                               in one batch, 0 to receive every update immediately
+     * @param transport              the requested {@link CallbackRegistration.Transport}
+     * @param ambientUpdateFrequency frequency in ms to receive updates in ambient mode
+     */
+    public RepositoryObserver(final long updateFrequency,
+                              final SensorType sensorType,
+                              final long batchWindow,
+                              final CallbackRegistration.Transport transport,
+                              final long ambientUpdateFrequency) {
+        mAmbientUpdateFrequency = ambientUpdateFrequency;
         mUpdateFrequency = updateFrequency;
         mSensorType = sensorType;
+        mBatchWindow = batchWindow;
+        mTransport = transport;
+    }
+
+    /**
+     * Returns the {@link CallbackRegistration.Transport} to request for the given
+     * {@link SensorType} on the given API level.
+     * The pressure of the barometer and vario is polled from a {@link SensorStream} from
+     * {@link Build.VERSION_CODES#O_MR1} on, instead of a binder transaction per update.
+     *
+     * @param sensorType the {@link SensorType}
+     * @param sdkInt     the API level
+     * @return the {@link CallbackRegistration.Transport}
+     */
+    public static CallbackRegistration.Transport getPreferredTransport(
+            final SensorType sensorType,
+            final int sdkInt) {
+        if (sensorType == SensorType.PRESSURE && sdkInt >= Build.VERSION_CODES.O_MR1) {
+            return CallbackRegistration.Transport.SHARED_MEMORY;
+        }
+        return CallbackRegistration.Transport.BINDER;
     }
 
     /**
@@ -55,6 +180,15 @@ public abstract class RepositoryObserver<T extends Serializable>
         return mUpdateFrequency;
     }
 
+    /**
+     * Returns the frequency in ms to receive updates in while in ambient mode.
+     *
+     * @return the update frequency in ambient mode
+     */
+    public long getAmbientUpdateFrequency() {
+        return mAmbientUpdateFrequency;
+    }
+
     /**
      * Returns the {@link SensorType}
      *
@@ -64,6 +198,24 @@ public abstract class RepositoryObserver<T extends Serializable>
         return mSensorType;
     }
 
+    /**
+     * Returns the time the service may hold back updates to send them in one batch.
+     *
+     * @return the batch window in ms
+     */
+    public long getBatchWindow() {
+        return mBatchWindow;
+    }
+
+    /**
+     * Returns the requested {@link CallbackRegistration.Transport} of the updates.
+     *
+     * @return the {@link CallbackRegistration.Transport}
+     */
+    public CallbackRegistration.Transport getTransport() {
+        return mTransport;
+    }
+
     /**
      * Returns the {@link CallbackRegistration} for this {@link RepositoryObserver}.
      *
@@ -71,7 +223,12 @@ public abstract class RepositoryObserver<T extends Serializable>
      */
     public CallbackRegistration getCallbackRegistration() {
         if (mCallbackRegistration == null) {
-            mCallbackRegistration = new CallbackRegistration(getSensorType(), this, getUpdateFrequency());
+            mCallbackRegistration = new CallbackRegistration(getSensorType(),
+                    this,
+                    getUpdateFrequency(),
+                    getBatchWindow(),
+                    getTransport(),
+                    getAmbientUpdateFrequency());
         }
         return mCallbackRegistration;
     }
@@ -79,7 +236,96 @@ public abstract class RepositoryObserver<T extends Serializable>
     @Override
     public void onSensorValueChanged(final Response response) throws RemoteException {
         Log.d(TAG, "onSensorValueChanged() called with: response = [" + response + "]");
-        onChange(response.getValue());
+        onChange(getResult(response));
     }
 
+    @Override
+    public void onSensorValuesChanged(final ResponseBatch batch) throws RemoteException {
+        Log.d(TAG, "onSensorValuesChanged() called with: batch = [" + batch + "]");
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getType(i) == getSensorType()) {
+                onChange(getResult(batch.getResponse(i)));
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link AbstractSensor.Result} of the given {@link Response}, marked as stale
+     * if the {@link Response} is stale.
+     *
+     * @param response the {@link Response}
+     * @return the {@link AbstractSensor.Result}
+     */
+    @SuppressWarnings("unchecked")
+    private AbstractSensor.Result<T> getResult(final Response response) {
+        final AbstractSensor.Result<T> result = response.getValue();
+        if (!response.isStale() || result.isStale()) {
+            return result;
+        }
+        return new AbstractSensor.Result<>(result.getSensorState(),
+                result.getValue(),
+                result.getTimeStamp(),
+                true);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    @Override
+    public void onSensorStreamCreated(final SensorStream stream) throws RemoteException {
+        Log.d(TAG, "onSensorStreamCreated() called with: stream = [" + stream + "]");
+        if (stream.getType() != getSensorType()) {
+            stream.close();
+            return;
+        }
+        synchronized (mStreamLock) {
+            closeStream();
+            try {
+                mRingBuffer = stream.mapReadOnly();
+            } catch (final ErrnoException exception) {
+                Log.e(TAG, "onSensorStreamCreated: ", exception);
+                stream.close();
+                return;
+            }
+            mStream = stream;
+            if (mHandler == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+            mHandler.post(mPollRunnable);
+        }
+    }
+
+    /**
+     * Stop polling and close the {@link SensorStream}, if the service streams the updates.
+     */
+    public void closeStream() {
+        synchronized (mStreamLock) {
+            if (mStream == null) {
+                return;
+            }
+            mHandler.removeCallbacks(mPollRunnable);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                mStream.close();
+            }
+            mStream = null;
+            mRingBuffer = null;
+        }
+    }
+
+    /**
+     * Poll the new values of the {@link SensorStream} and schedule the next poll.
+     */
+    @SuppressWarnings("unchecked")
+    private void poll() {
+        final List<AbstractSensor.Result<Float>> results;
+        synchronized (mStreamLock) {
+            if (mRingBuffer == null) {
+                return;
+            }
+            results = mRingBuffer.poll();
+            mHandler.postDelayed(mPollRunnable,
+                    Math.max(getUpdateFrequency(), MIN_POLL_INTERVAL));
+        }
+        for (final AbstractSensor.Result<Float> result : results) {
+            onChange((AbstractSensor.Result<T>) (AbstractSensor.Result) result);
+        }
+    }
 }
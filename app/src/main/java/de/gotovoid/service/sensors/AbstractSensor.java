@@ -1,11 +1,15 @@
 package de.gotovoid.service.sensors;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by DJ on 07/01/18.
@@ -18,17 +22,75 @@ import java.util.List;
  * Therefore concrete implementations need to override {@link #startSensor()}
  * and {@link #stopSensor()}. These methods will be called when an {@link Observer} is registered
  * or respectively the last {@link Observer} is unregistered.
+ * The {@link Observer}s are kept in a {@link CopyOnWriteArrayList}, so the sensor data is
+ * dispatched without holding a lock. A slow {@link Observer} therefore does not block adding or
+ * removing {@link Observer}s. Changes of the registered {@link Observer}s and the resulting
+ * start, stop and restart of the sensor are serialized by a separate lock.
+ * The last {@link Result} is kept, independent of the {@link Observer}s notified, so new
+ * {@link Observer}s can be served without waiting for the next sensor data.
  *
  * @param <Type> Type of the sensor data
  */
 public abstract class AbstractSensor<Type extends Serializable> {
     private static final String TAG = AbstractSensor.class.getSimpleName();
-    private final List<Observer<Type>> mObservers = new ArrayList<>();
+    private final List<Observer<Type>> mObservers = new CopyOnWriteArrayList<>();
+    /**
+     * Lock for changes of the registered {@link Observer}s and the sensor lifecycle.
+     * Never held while dispatching sensor data.
+     */
+    private final Object mLock = new Object();
+    /**
+     * The {@link StateEvaluator}, guarded by itself.
+     */
     private final StateEvaluator<Type> mStateEvaluator;
-    private long mUpdateFrequency = 1000;
+    /**
+     * The {@link Clock} the sensor data is timed with.
+     */
+    private final Clock mClock;
+    private volatile long mUpdateFrequency = 1000;
+    /**
+     * The last {@link Result}, null if there was no sensor data yet.
+     */
+    private volatile Result<Type> mLastResult;
 
     public AbstractSensor(@NonNull final StateEvaluator<Type> stateEvaluator) {
+        this(stateEvaluator, Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor taking the {@link StateEvaluator} and the {@link Clock} the sensor data is
+     * timed with.
+     *
+     * @param stateEvaluator the {@link StateEvaluator}
+     * @param clock          the {@link Clock}
+     */
+    public AbstractSensor(@NonNull final StateEvaluator<Type> stateEvaluator,
+                          @NonNull final Clock clock) {
         mStateEvaluator = stateEvaluator;
+        mClock = clock;
+    }
+
+    /**
+     * Returns the {@link Result} of the last sensor data, also after the sensor was stopped.
+     * Its age is given by its time stamp and the {@link Clock#elapsedRealtime()} of
+     * {@link #getClock()}.
+     *
+     * @return the last {@link Result}, null if there was no sensor data yet
+     */
+    @Nullable
+    public Result<Type> getLastResult() {
+        return mLastResult;
+    }
+
+    /**
+     * Returns the {@link Clock} the sensor data is timed with. The time stamps of the sensor
+     * data are based on its {@link Clock#elapsedRealtime()}.
+     *
+     * @return the {@link Clock}
+     */
+    @NonNull
+    public Clock getClock() {
+        return mClock;
     }
 
     /**
@@ -41,7 +103,7 @@ public abstract class AbstractSensor<Type extends Serializable> {
     public void addObserver(@NonNull final Observer<Type> observer) {
         // TODO: use list that holds similar instances only once
         Log.d(TAG, "addObserver() called with: observer = [" + observer + "]");
-        synchronized (mObservers) {
+        synchronized (mLock) {
             if (!mObservers.contains(observer)) {
                 if (mObservers.isEmpty()) {
                     Log.d(TAG, "addObserver: start sensor");
@@ -83,26 +145,77 @@ public abstract class AbstractSensor<Type extends Serializable> {
      */
     public void removeObserver(@NonNull final Observer<Type> observer) {
         Log.d(TAG, "removeObserver() called with: observer = [" + observer + "]");
-        synchronized (mObservers) {
-            // TODO: minimize synchronized scope.
-            mObservers.remove(observer);
+        synchronized (mLock) {
+            if (!mObservers.remove(observer)) {
+                return;
+            }
             if (mObservers.isEmpty()) {
                 Log.d(TAG, "removeObserver: stopSensor");
                 stopSensor();
-                mStateEvaluator.stop();
-            } else if (observer != null) {
-                if (mUpdateFrequency >= observer.getUpdateFrequency()) {
-                    mUpdateFrequency = Integer.MAX_VALUE;
-                    // Find minimal update frequency.
-                    for (Observer obs : mObservers) {
-                        if (mUpdateFrequency > obs.getUpdateFrequency()) {
-                            mUpdateFrequency = obs.getUpdateFrequency();
-                            restartSensor();
-                        }
-                    }
+                // The sensor thread may still evaluate a value of the last sensor data.
+                synchronized (mStateEvaluator) {
+                    mStateEvaluator.stop();
                 }
+            } else if (mUpdateFrequency >= observer.getUpdateFrequency()) {
+                updateMinimalFrequency();
+            }
+        }
+    }
+
+    /**
+     * Change the update frequency of the given {@link Observer}.
+     * If the {@link Observer} is registered, the minimal update frequency is recomputed and the
+     * sensor restarted if it changed, so the sensor slows down when no {@link Observer} needs
+     * fast updates anymore.
+     *
+     * @param observer        the {@link Observer}
+     * @param updateFrequency the new update frequency in milliseconds
+     */
+    public void setUpdateFrequency(@NonNull final Observer<Type> observer,
+                                   final long updateFrequency) {
+        Log.d(TAG, "setUpdateFrequency() called with: observer = [" + observer
+                + "], updateFrequency = [" + updateFrequency + "]");
+        synchronized (mLock) {
+            if (observer.getUpdateFrequency() == updateFrequency) {
+                return;
+            }
+            observer.mUpdateFrequency = updateFrequency;
+            if (mObservers.contains(observer)) {
+                updateMinimalFrequency();
             }
+        }
+    }
 
+    /**
+     * Set the minimal update frequency of the registered {@link Observer}s and restart the
+     * sensor if it changed. Needs to be called holding the lock.
+     */
+    private void updateMinimalFrequency() {
+        long updateFrequency = Long.MAX_VALUE;
+        for (Observer obs : mObservers) {
+            updateFrequency = Math.min(updateFrequency, obs.getUpdateFrequency());
+        }
+        if (updateFrequency != mUpdateFrequency) {
+            mUpdateFrequency = updateFrequency;
+            restartSensor();
+        }
+    }
+
+    /**
+     * Removes all {@link Observer}s and stops the sensor, e.g. when the sensors are released
+     * before their thread is quit.
+     */
+    public void removeAllObservers() {
+        Log.d(TAG, "removeAllObservers() called");
+        synchronized (mLock) {
+            if (mObservers.isEmpty()) {
+                return;
+            }
+            mObservers.clear();
+            stopSensor();
+            synchronized (mStateEvaluator) {
+                mStateEvaluator.stop();
+            }
         }
     }
 
@@ -120,9 +233,7 @@ public abstract class AbstractSensor<Type extends Serializable> {
      * @return true if sensor is active
      */
     public boolean isStarted() {
-        synchronized (mObservers) {
-            return !mObservers.isEmpty();
-        }
+        return !mObservers.isEmpty();
     }
 
     /**
@@ -140,23 +251,136 @@ public abstract class AbstractSensor<Type extends Serializable> {
      */
     protected abstract void restartSensor();
 
+    /**
+     * Restart the sensor if it is started, to apply changed parameters of the concrete
+     * implementation. The check and restart hold the lock of the {@link Observer}s, so a sensor
+     * stopped concurrently by removing the last {@link Observer} is never restarted.
+     *
+     * @return true if the sensor was restarted
+     */
+    protected boolean restartIfStarted() {
+        synchronized (mLock) {
+            if (mObservers.isEmpty()) {
+                return false;
+            }
+            restartSensor();
+            return true;
+        }
+    }
+
     /**
      * Notify all registered {@link Observer}s with the new sensor data.
      * Only notifies the {@link Observer} if the timing fits the update frequency of the
      * {@link Observer}.
+     * Iterates over a snapshot of the registered {@link Observer}s without holding a lock,
+     * {@link Observer}s added or removed meanwhile take effect with the next sensor data.
+     * The {@link SensorState} is evaluated once per sensor data, independent of the number of
+     * {@link Observer}s, and the same {@link Result} is passed to all notified
+     * {@link Observer}s.
+     *
+     * The sensor data is timed with the current {@link Clock#elapsedRealtime()}, sensors
+     * providing the time of measurement use {@link #notifyObserver(Serializable, long)}.
      *
      * @param type the sensor data to be sent.
      */
     protected void notifyObserver(@NonNull final Type type) {
+        notifyObserver(type, mClock.elapsedRealtime());
+    }
+
+    /**
+     * Notify all registered {@link Observer}s with the new sensor data measured at the given
+     * time.
+     * The timing of the {@link Observer}s is based on the time of measurement instead of the
+     * time of delivery, so sensor data delivered in batches is not dropped.
+     * A sensor must always use the same time base.
+     *
+     * @param type      the sensor data to be sent.
+     * @param timeStamp time of the measurement in milliseconds since boot
+     * @see #notifyObserver(Serializable)
+     */
+    protected void notifyObserver(@NonNull final Type type, final long timeStamp) {
         Log.d(TAG, "notifyObserver() called with: type = [" + type + "]");
-        synchronized (mObservers) {
-            for (Observer<Type> observer : mObservers) {
-                if (observer.canUpdate()) {
-                    observer.setLastUpdate(System.currentTimeMillis());
-                    observer.onChange(new Result<Type>(
-                            mStateEvaluator.evaluateState(type, getObservers()),
-                            type));
-                }
+        final SensorState state = evaluateState(type);
+        final Result<Type> result = new Result<>(state, type, timeStamp);
+        mLastResult = result;
+        for (Observer<Type> observer : mObservers) {
+            if (observer.canUpdate(timeStamp)) {
+                observer.setLastUpdate(timeStamp);
+                observer.onChange(result);
+            }
+        }
+    }
+
+    /**
+     * Notify all registered {@link Observer}s with the new sensor data measured at the given
+     * time, regardless of their update frequency.
+     * This is meant for sensor data that must not be dropped, e.g. deltas which are only
+     * complete in sequence.
+     *
+     * @param type      the sensor data to be sent.
+     * @param timeStamp time of the measurement in milliseconds since boot
+     * @see #notifyObserver(Serializable, long)
+     */
+    protected void notifyAllObservers(@NonNull final Type type, final long timeStamp) {
+        Log.d(TAG, "notifyAllObservers() called with: type = [" + type + "]");
+        final SensorState state = evaluateState(type);
+        final Result<Type> result = new Result<>(state, type, timeStamp);
+        mLastResult = result;
+        for (Observer<Type> observer : mObservers) {
+            observer.setLastUpdate(timeStamp);
+            observer.onChange(result);
+        }
+    }
+
+    /**
+     * Evaluate the {@link SensorState} of the sensor data.
+     * The {@link StateEvaluator} is guarded by its own lock, as it is reset by the thread
+     * removing the last {@link Observer} while the sensor thread may still evaluate data.
+     *
+     * @param type the sensor data
+     * @return the {@link SensorState}
+     */
+    private SensorState evaluateState(@NonNull final Type type) {
+        synchronized (mStateEvaluator) {
+            return mStateEvaluator.evaluateState(type, mObservers);
+        }
+    }
+
+    /**
+     * Notify all registered {@link Observer}s with a batch of sensor data.
+     * The {@link SensorState} is evaluated for every value of the batch. The {@link Observer}s
+     * receive the complete batch by {@link Observer#onBatchChange(List)}, timed by the
+     * time stamp of the last value.
+     *
+     * @param values     the sensor data in the order of measurement
+     * @param timeStamps the times of measurement in milliseconds since boot
+     */
+    protected void notifyObserverBatch(@NonNull final List<Type> values,
+                                       @NonNull final long[] timeStamps) {
+        Log.d(TAG, "notifyObserverBatch() called with: values = [" + values.size() + "]");
+        if (values.isEmpty()) {
+            return;
+        }
+        if (values.size() == 1) {
+            notifyObserver(values.get(0), timeStamps[0]);
+            return;
+        }
+        final List<Result<Type>> results = new ArrayList<>(values.size());
+        synchronized (mStateEvaluator) {
+            for (int i = 0; i < values.size(); i++) {
+                final Type value = values.get(i);
+                results.add(new Result<>(mStateEvaluator.evaluateState(value, mObservers),
+                        value,
+                        timeStamps[i]));
+            }
+        }
+        final List<Result<Type>> batch = Collections.unmodifiableList(results);
+        mLastResult = batch.get(batch.size() - 1);
+        final long timeStamp = timeStamps[values.size() - 1];
+        for (Observer<Type> observer : mObservers) {
+            if (observer.canUpdate(timeStamp)) {
+                observer.setLastUpdate(timeStamp);
+                observer.onBatchChange(batch);
             }
         }
     }
@@ -173,10 +397,15 @@ public abstract class AbstractSensor<Type extends Serializable> {
      */
     public static abstract class Observer<Type extends Serializable> {
         private static final long UPDATE_FREQUENCY_TOLERANCE = 30;
-        private final long mUpdateFrequency;
+        /**
+         * The requested update frequency, changed by
+         * {@link AbstractSensor#setUpdateFrequency(Observer, long)}.
+         */
+        private volatile long mUpdateFrequency;
         // TODO: check if this is needed
         private final SensorType mType;
         private long mLastUpdate;
+        private boolean mHasUpdate;
 
         /**
          * Constructor taking the update frequency in milliseconds and {@link SensorType}.
@@ -215,6 +444,17 @@ public abstract class AbstractSensor<Type extends Serializable> {
          */
         public abstract void onChange(@NonNull final Result<Type> type);
 
+        /**
+         * Called when a batch of sensor values was measured.
+         * Only delivers the latest {@link Result} to {@link #onChange(Result)} by default,
+         * {@link Observer}s interested in all values need to override this.
+         *
+         * @param results the {@link Result}s in the order of measurement, not empty
+         */
+        public void onBatchChange(@NonNull final List<Result<Type>> results) {
+            onChange(results.get(results.size() - 1));
+        }
+
         /**
          * Set the time when the last update was received.
          * This is a private method and should only be accessed directly by the
@@ -224,15 +464,20 @@ public abstract class AbstractSensor<Type extends Serializable> {
          */
         private void setLastUpdate(final long lastUpdate) {
             mLastUpdate = lastUpdate;
+            mHasUpdate = true;
         }
 
         /**
          * Returns true if sufficient time has passed since the last update.
          *
+         * @param timeStamp time of the new update in milliseconds
          * @return true if update can be sent to the {@link Observer}
          */
-        private boolean canUpdate() {
-            final long timeDiff = System.currentTimeMillis() - mLastUpdate;
+        private boolean canUpdate(final long timeStamp) {
+            if (!mHasUpdate) {
+                return true;
+            }
+            final long timeDiff = timeStamp - mLastUpdate;
             return timeDiff - getUpdateFrequency() > -UPDATE_FREQUENCY_TOLERANCE;
         }
     }
@@ -241,22 +486,56 @@ public abstract class AbstractSensor<Type extends Serializable> {
      * This class contains the {@link Result} of a sensor reading.
      * This consists of the data provided by the {@link AbstractSensor} and the
      * {@link SensorState}.
+     * A {@link Result} is immutable, the same instance is shared by all {@link Observer}s
+     * notified with a sensor reading.
      *
      * @param <T> type of the sensor data
      */
     public static class Result<T extends Serializable> implements Serializable {
         private final SensorState mSensorState;
         private final T mValue;
+        private final long mTimeStamp;
+        private final boolean mIsStale;
 
         /**
          * Constructor taking the {@link SensorState} and data.
+         * Uses the current time since boot as time of measurement.
          *
          * @param state the {@link SensorState}
          * @param value the data
          */
         public Result(final SensorState state, final T value) {
+            this(state, value, Clock.SYSTEM.elapsedRealtime());
+        }
+
+        /**
+         * Constructor taking the {@link SensorState}, data and time of measurement.
+         *
+         * @param state     the {@link SensorState}
+         * @param value     the data
+         * @param timeStamp time of measurement in milliseconds since boot
+         */
+        public Result(final SensorState state, final T value, final long timeStamp) {
+            this(state, value, timeStamp, false);
+        }
+
+        /**
+         * Constructor taking the {@link SensorState}, data, time of measurement and whether
+         * the data is stale.
+         *
+         * @param state     the {@link SensorState}
+         * @param value     the data
+         * @param timeStamp time of measurement in milliseconds since boot
+         * @param isStale   true if the data is older than the freshness bound of the service
+         */
+        public Result(final SensorState state,
+                      final T value,
+                      final long timeStamp,
+                      final boolean isStale) {
             mSensorState = state;
             mValue = value;
+            mTimeStamp = timeStamp;
+            mIsStale = isStale;
         }
 
         /**
@@ -276,20 +555,165 @@ public abstract class AbstractSensor<Type extends Serializable> {
         public T getValue() {
             return mValue;
         }
+
+        /**
+         * Returns the time of measurement in the time base of the {@link AbstractSensor}, the
+         * {@link Clock#elapsedRealtime()} of its {@link Clock}.
+         *
+         * @return time of measurement in milliseconds since boot
+         */
+        public long getTimeStamp() {
+            return mTimeStamp;
+        }
+
+        /**
+         * Returns true if the data is older than the freshness bound of the service, e.g. the
+         * cached value sent to a new client while the sensor provides no data.
+         *
+         * @return true if stale
+         */
+        public boolean isStale() {
+            return mIsStale;
+        }
     }
 
     /**
-     * Evaluator for the {@link SensorState}. Stores the recent sensor values in a buffer and
-     * determines the state by the average of the readings stored in the buffer.
+     * Aggregates sensor values delivered in batches instead of discarding them.
+     * The values are collected until the update period has passed since the last aggregated
+     * value, then the median of the collected values is provided. The time stamps of the
+     * sensor events are used instead of the time of delivery, so values delivered late from a
+     * hardware FIFO are assigned to the right period.
+     * The methods are synchronized, as the {@link BatchAggregator} is reset by the thread
+     * stopping the sensor while the sensor thread may still add values.
+     */
+    protected static class BatchAggregator {
+        private static final int INITIAL_CAPACITY = 16;
+        /**
+         * The values collected since the last aggregated value.
+         */
+        private float[] mValues = new float[INITIAL_CAPACITY];
+        /**
+         * Number of collected values.
+         */
+        private int mCount;
+        /**
+         * Time stamp of the last aggregated value.
+         */
+        private long mTimeStamp;
+        /**
+         * True if a value has been aggregated since the last reset.
+         */
+        private boolean mHasTimeStamp;
+        /**
+         * The last aggregated value.
+         */
+        private float mResult;
+
+        /**
+         * Add a sensor value.
+         * The first value after a reset is provided immediately.
+         *
+         * @param timeStamp time stamp of the value
+         * @param value     the sensor value
+         * @param period    update period in the unit of the time stamp
+         * @return true if a new aggregated value is available by {@link #getResult()}
+         */
+        public synchronized boolean add(final long timeStamp,
+                                        final float value,
+                                        final long period) {
+            if (mCount == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mValues[mCount++] = value;
+            if (mHasTimeStamp && timeStamp - mTimeStamp < period) {
+                return false;
+            }
+            mResult = computeMedian();
+            mCount = 0;
+            mTimeStamp = timeStamp;
+            mHasTimeStamp = true;
+            return true;
+        }
+
+        /**
+         * Returns the last aggregated value.
+         *
+         * @return the median of the values of the last period
+         */
+        public synchronized float getResult() {
+            return mResult;
+        }
+
+        /**
+         * Drop the collected values, the next value will be provided immediately.
+         */
+        public synchronized void reset() {
+            mCount = 0;
+            mHasTimeStamp = false;
+        }
+
+        /**
+         * Compute the median of the collected values.
+         *
+         * @return the median
+         */
+        private float computeMedian() {
+            Arrays.sort(mValues, 0, mCount);
+            final int middle = mCount / 2;
+            if (mCount % 2 == 1) {
+                return mValues[middle];
+            }
+            return (mValues[middle - 1] + mValues[middle]) / 2;
+        }
+    }
+
+    /**
+     * Evaluator for the {@link SensorState}. Keeps the differences between the recent sensor
+     * values in a ring buffer and determines the state by their average.
+     * The sum and the sum of squares of the buffered differences are updated with every value,
+     * so evaluating a value takes constant time and does not allocate, independent of the size
+     * of the window.
      *
      * @param <Type> type of the sensor value
      */
     protected static abstract class StateEvaluator<Type extends Serializable> {
         private final int mBufferSize;
         private final double mTolerance;
-        private final List<Type> mBuffer;
+        /**
+         * Ring buffer of the differences between adjacent sensor values.
+         */
+        private final double[] mDifferences;
+        /**
+         * Index the next difference is written to.
+         */
+        private int mPosition;
+        /**
+         * Number of values in the window, at most the buffer size.
+         */
+        private int mCount;
+        /**
+         * Sum of the buffered differences.
+         */
+        private double mSum;
+        /**
+         * Sum of the squares of the buffered differences.
+         */
+        private double mSquareSum;
+        /**
+         * The last sensor value.
+         */
+        private Type mLastValue;
         private SensorState mOldSensorState;
 
+        /**
+         * Constructor taking the {@link SensorType} providing window size and tolerance.
+         *
+         * @param type the {@link SensorType}
+         */
+        public StateEvaluator(@NonNull final SensorType type) {
+            this(type.getStateWindow(), type.getStateTolerance());
+        }
+
         /**
          * Constructor taking the size of the buffer and tolerance value.
          *
@@ -297,9 +721,9 @@ public abstract class AbstractSensor<Type extends Serializable> {
          * @param tolerance  tolerance value
          */
         public StateEvaluator(final int bufferSize, final double tolerance) {
-            mBufferSize = bufferSize;
+            mBufferSize = Math.max(bufferSize, 2);
             mTolerance = tolerance;
-            mBuffer = new ArrayList<>();
+            mDifferences = new double[mBufferSize - 1];
             mOldSensorState = SensorState.STOPPED;
         }
 
@@ -309,10 +733,57 @@ public abstract class AbstractSensor<Type extends Serializable> {
          * @param value value to add
          */
         private void addValue(final Type value) {
-            if (mBuffer.size() >= mBufferSize) {
-                mBuffer.remove(0);
+            if (mCount > 0) {
+                final double difference = computeDifference(mLastValue, value);
+                if (mCount >= mBufferSize) {
+                    final double removed = mDifferences[mPosition];
+                    mSum -= removed;
+                    mSquareSum -= removed * removed;
+                } else {
+                    mCount++;
+                }
+                mDifferences[mPosition] = difference;
+                mSum += difference;
+                mSquareSum += difference * difference;
+                mPosition = (mPosition + 1) % mDifferences.length;
+            } else {
+                mCount = 1;
+            }
+            mLastValue = value;
+        }
+
+        /**
+         * Returns the number of differences currently buffered.
+         *
+         * @return number of differences
+         */
+        private int getDifferenceCount() {
+            return Math.max(mCount - 1, 0);
+        }
+
+        /**
+         * Returns the average of the buffered differences.
+         *
+         * @return the average difference, 0 if there are none
+         */
+        protected double getAverageDifference() {
+            final int count = getDifferenceCount();
+            return count == 0 ? 0 : mSum / count;
+        }
+
+        /**
+         * Returns the variance of the buffered differences.
+         *
+         * @return the variance, 0 if there are none
+         */
+        protected double getDifferenceVariance() {
+            final int count = getDifferenceCount();
+            if (count == 0) {
+                return 0;
             }
-            mBuffer.add(value);
+            final double average = mSum / count;
+            // Rounding errors of the running sums may result in slightly negative values.
+            return Math.max(mSquareSum / count - average * average, 0);
         }
 
         /**
@@ -334,7 +805,6 @@ public abstract class AbstractSensor<Type extends Serializable> {
          */
         protected SensorState evaluateState(final Type value,
                                             final List<Observer<Type>> observers) {
-            Log.d(TAG, "evaluateState: old state: " + mOldSensorState);
             if (SensorState.RUNNING.equals(mOldSensorState)) {
                 return mOldSensorState;
             }
@@ -343,19 +813,12 @@ public abstract class AbstractSensor<Type extends Serializable> {
                 state = SensorState.STOPPED;
             } else {
                 addValue(value);
-                if (mBuffer.size() == 1) {
+                if (mCount == 1) {
                     state = SensorState.STARTED;
+                } else if (getAverageDifference() >= mTolerance) {
+                    state = SensorState.CALIBRATING;
                 } else {
-                    double totalDiff = 0;
-                    for (int i = 1; i < mBuffer.size(); i++) {
-                        totalDiff += computeDifference(mBuffer.get(i - 1), mBuffer.get(i));
-                    }
-                    totalDiff = totalDiff / (mBuffer.size() - 1);
-                    if (totalDiff >= mTolerance) {
-                        state = SensorState.CALIBRATING;
-                    } else {
-                        state = SensorState.RUNNING;
-                    }
+                    state = SensorState.RUNNING;
                 }
             }
             mOldSensorState = state;
@@ -367,7 +830,11 @@ public abstract class AbstractSensor<Type extends Serializable> {
          */
         private void stop() {
             mOldSensorState = SensorState.STOPPED;
-            mBuffer.clear();
+            mCount = 0;
+            mPosition = 0;
+            mSum = 0;
+            mSquareSum = 0;
+            mLastValue = null;
         }
     }
 
@@ -0,0 +1,73 @@
+package de.gotovoid.service.sensors;
+
+import android.os.SystemClock;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Source of the time for the sensor pipeline.
+ * The sensors measure time with the monotonic {@link #elapsedRealtime()}, the time base of
+ * the native sensor events, so rate limiting and alignment are not affected by changes of the
+ * wall clock. The wall clock is only read to time stamp the recorded data.
+ * The {@link #SYSTEM} clock is used on the device, tests can inject a virtual clock to run
+ * time dependent code without waiting.
+ */
+public interface Clock {
+    /**
+     * {@link Clock} using the system time.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        @Override
+        public void sleep(final long millis) throws InterruptedException {
+            Thread.sleep(millis);
+        }
+    };
+
+    /**
+     * Returns the current wall clock time.
+     *
+     * @return current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns the monotonic time since boot, including deep sleep.
+     *
+     * @return time since boot in milliseconds
+     */
+    long elapsedRealtime();
+
+    /**
+     * Returns the monotonic time since boot, including deep sleep. This is the time base of
+     * {@link android.hardware.SensorEvent#timestamp} and
+     * {@link android.location.Location#getElapsedRealtimeNanos()}.
+     *
+     * @return time since boot in nanoseconds
+     */
+    long elapsedRealtimeNanos();
+
+    /**
+     * Wait for the given time.
+     *
+     * @param millis time to wait in milliseconds
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    void sleep(long millis) throws InterruptedException;
+}
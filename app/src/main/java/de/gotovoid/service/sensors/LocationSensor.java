@@ -5,6 +5,8 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
 import android.util.Log;
 
@@ -15,6 +17,11 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.domain.model.geodata.GeoCoordinate;
 
@@ -24,6 +31,8 @@ import de.gotovoid.domain.model.geodata.GeoCoordinate;
 
 /**
  * Implementation of the {@link AbstractSensor} for location data.
+ * The locations are timed with {@link Location#getElapsedRealtimeNanos()}, the time since boot
+ * of the fix, so they share the time base with the {@link PressureSensor}.
  */
 public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
     private static final String TAG = LocationSensor.class.getSimpleName();
@@ -31,6 +40,18 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
      * {@link FusedLocationProviderClient} providing access to the sensor data.
      */
     private final FusedLocationProviderClient mLocationProvider;
+    /**
+     * {@link Looper} the {@link LocationCallback} is called on.
+     */
+    private final Looper mLooper;
+    /**
+     * Maximal time in milliseconds locations may be batched, 0 if batching is disabled.
+     */
+    private volatile long mMaxWaitTime;
+    /**
+     * The {@link SamplingPolicy} adapting the sampling, null for a fixed sampling.
+     */
+    private volatile SamplingPolicy mSamplingPolicy;
     /**
      * {@link LocationCallback} to be notified on sensor changes.
      */
@@ -49,14 +70,23 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
             if (locationResult == null || locationResult.getLastLocation() == null) {
                 return;
             }
-            Location location = locationResult.getLastLocation();
-            final ExtendedGeoCoordinate coordinate = new ExtendedGeoCoordinate(location.getLatitude(),
-                    location.getLongitude(),
-                    location.getAltitude(),
-                    location.getAccuracy());
-            notifyObserver(coordinate);
-            Log.d(TAG, "onLocationResult: " + location);
-            Log.d(TAG, "onLocationResult: " + location.getAccuracy());
+            final List<Location> locations = locationResult.getLocations();
+            if (locations == null || locations.size() <= 1) {
+                final Location location = locationResult.getLastLocation();
+                Log.d(TAG, "onLocationResult: " + location);
+                onLocationsChanged(Collections.singletonList(createCoordinate(location)),
+                        new long[]{toTimeStamp(location)});
+                return;
+            }
+            // Batched result, deliver all locations.
+            final List<ExtendedGeoCoordinate> coordinates = new ArrayList<>(locations.size());
+            final long[] timeStamps = new long[locations.size()];
+            for (int i = 0; i < locations.size(); i++) {
+                coordinates.add(createCoordinate(locations.get(i)));
+                timeStamps[i] = toTimeStamp(locations.get(i));
+            }
+            Log.d(TAG, "onLocationResult: batch of " + coordinates.size());
+            onLocationsChanged(coordinates, timeStamps);
         }
     };
 
@@ -78,19 +108,218 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
      * @param provider the {@link FusedLocationProviderClient} to addObserver at
      */
     LocationSensor(final FusedLocationProviderClient provider) {
-        super(new StateEvaluator(5, 40));
+        this(provider, Looper.getMainLooper());
+    }
+
+    /**
+     * Package private constructor taking the {@link FusedLocationProviderClient} to addObserver
+     * for updates and the {@link Looper} of the thread to process the locations on.
+     *
+     * @param provider the {@link FusedLocationProviderClient} to addObserver at
+     * @param looper   the {@link Looper} to receive the locations on
+     */
+    LocationSensor(final FusedLocationProviderClient provider, @NonNull final Looper looper) {
+        this(provider, looper, Clock.SYSTEM);
+    }
+
+    /**
+     * Package private constructor taking the {@link FusedLocationProviderClient} to addObserver
+     * for updates, the {@link Looper} of the thread to process the locations on and the
+     * {@link Clock} of the locations.
+     *
+     * @param provider the {@link FusedLocationProviderClient} to addObserver at
+     * @param looper   the {@link Looper} to receive the locations on
+     * @param clock    the {@link Clock}
+     */
+    LocationSensor(final FusedLocationProviderClient provider,
+                   @NonNull final Looper looper,
+                   @NonNull final Clock clock) {
+        super(new StateEvaluator(), clock);
         mLocationProvider = provider;
+        mLooper = looper;
+    }
+
+    /**
+     * Returns the time of the fix since boot. Falls back to the time of the fix on the wall
+     * clock for {@link Location}s without time since boot, e.g. mock locations.
+     *
+     * @param location the {@link Location}
+     * @return time of the fix in milliseconds since boot
+     */
+    private long toTimeStamp(@NonNull final Location location) {
+        final long elapsedRealtimeNanos = location.getElapsedRealtimeNanos();
+        if (elapsedRealtimeNanos != 0) {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedRealtimeNanos);
+        }
+        final Clock clock = getClock();
+        return clock.elapsedRealtime() - (clock.currentTimeMillis() - location.getTime());
+    }
+
+    /**
+     * Computes the distance between two locations in meters.
+     *
+     * @param first  the first location
+     * @param second the second location
+     * @return the distance in meters
+     */
+    static double computeDistance(@NonNull final ExtendedGeoCoordinate first,
+                                  @NonNull final ExtendedGeoCoordinate second) {
+        return GeoCoordinate.computeDistance(first.getLatitude(),
+                first.getLongitude(),
+                second.getLatitude(),
+                second.getLongitude());
+    }
+
+    /**
+     * Set the {@link SamplingPolicy} adapting interval and priority of the location requests.
+     * Restarts the sensor if it is running.
+     *
+     * @param policy the {@link SamplingPolicy}, null for a fixed sampling
+     */
+    public void setSamplingPolicy(@Nullable final SamplingPolicy policy) {
+        Log.d(TAG, "setSamplingPolicy() called with: policy = [" + policy + "]");
+        mSamplingPolicy = policy;
+        restartIfStarted();
+    }
+
+    /**
+     * Returns the {@link SamplingPolicy}.
+     *
+     * @return the {@link SamplingPolicy}, null for a fixed sampling
+     */
+    @Nullable
+    public SamplingPolicy getSamplingPolicy() {
+        return mSamplingPolicy;
+    }
+
+    /**
+     * Inform the {@link SamplingPolicy} about a pressure reading.
+     *
+     * @param pressure  the pressure in hPa
+     * @param timeStamp time of the reading in milliseconds
+     */
+    public void onPressureChanged(final float pressure, final long timeStamp) {
+        final SamplingPolicy policy = mSamplingPolicy;
+        if (policy != null && isStarted() && policy.onPressureChanged(pressure, timeStamp)) {
+            restartIfStarted();
+        }
+    }
+
+    /**
+     * Inform the {@link SamplingPolicy} about a location and restart the sensor if the
+     * sampling changed.
+     *
+     * @param coordinate the location
+     * @param timeStamp  time of the location in milliseconds
+     */
+    private void updateSamplingPolicy(@NonNull final ExtendedGeoCoordinate coordinate,
+                                      final long timeStamp) {
+        final SamplingPolicy policy = mSamplingPolicy;
+        if (policy != null && policy.onLocationChanged(coordinate, timeStamp)) {
+            restartIfStarted();
+        }
+    }
+
+    /**
+     * Notify the {@link AbstractSensor.Observer}s about the received locations and inform the
+     * {@link SamplingPolicy}. A single location is delivered by
+     * {@link Observer#onChange(Result)}, multiple locations as batch.
+     *
+     * @param coordinates the locations in the order of measurement
+     * @param timeStamps  the times of the locations in milliseconds
+     */
+    void onLocationsChanged(@NonNull final List<ExtendedGeoCoordinate> coordinates,
+                            @NonNull final long[] timeStamps) {
+        if (coordinates.size() == 1) {
+            notifyObserver(coordinates.get(0), timeStamps[0]);
+        } else {
+            notifyObserverBatch(coordinates, timeStamps);
+        }
+        for (int i = 0; i < coordinates.size(); i++) {
+            updateSamplingPolicy(coordinates.get(i), timeStamps[i]);
+        }
+    }
+
+    /**
+     * Create the {@link ExtendedGeoCoordinate} for the given {@link Location}.
+     *
+     * @param location the {@link Location}
+     * @return the {@link ExtendedGeoCoordinate}
+     */
+    private static ExtendedGeoCoordinate createCoordinate(@NonNull final Location location) {
+        return new ExtendedGeoCoordinate(location.getLatitude(),
+                location.getLongitude(),
+                location.getAltitude(),
+                location.getAccuracy());
+    }
+
+    /**
+     * Set the maximal time in milliseconds the locations may be batched before they are
+     * delivered. Batching saves battery, as the location is still determined with the update
+     * frequency, but the application processor is only woken up once per batch.
+     * The batched locations are delivered by {@link Observer#onBatchChange(List)}.
+     * Restarts the sensor if it is running.
+     *
+     * @param maxWaitTime maximal wait time in milliseconds, 0 to disable batching
+     */
+    public void setMaxWaitTime(final long maxWaitTime) {
+        Log.d(TAG, "setMaxWaitTime() called with: maxWaitTime = [" + maxWaitTime + "]");
+        if (mMaxWaitTime == maxWaitTime) {
+            return;
+        }
+        mMaxWaitTime = maxWaitTime;
+        restartIfStarted();
+    }
+
+    /**
+     * Returns the maximal time in milliseconds the locations may be batched.
+     *
+     * @return maximal wait time in milliseconds, 0 if batching is disabled
+     */
+    public long getMaxWaitTime() {
+        return mMaxWaitTime;
+    }
+
+    /**
+     * Returns the interval to request locations with.
+     *
+     * @return the interval in milliseconds
+     */
+    long getInterval() {
+        final SamplingPolicy policy = mSamplingPolicy;
+        if (policy == null) {
+            return getUpdateFrequency();
+        }
+        return policy.getInterval(getUpdateFrequency());
+    }
+
+    /**
+     * Returns the priority to request locations with.
+     *
+     * @return one of the priorities of {@link LocationRequest}
+     */
+    int getPriority() {
+        final SamplingPolicy policy = mSamplingPolicy;
+        if (policy == null) {
+            return LocationRequest.PRIORITY_HIGH_ACCURACY;
+        }
+        return policy.getPriority();
     }
 
     @Override
     protected void startSensor() {
         Log.d(TAG, "startSensor() called");
         if (mLocationProvider != null) {
-            Log.d(TAG, "startSensor: " + getUpdateFrequency());
+            final long interval = getInterval();
+            final int priority = getPriority();
+            Log.d(TAG, "startSensor: " + interval + ", priority: " + priority);
             LocationRequest request = new LocationRequest();
-            request.setInterval(getUpdateFrequency());
-            request.setFastestInterval(getUpdateFrequency());
-            request.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+            request.setInterval(interval);
+            request.setFastestInterval(interval);
+            request.setPriority(priority);
+            if (mMaxWaitTime > interval) {
+                request.setMaxWaitTime(mMaxWaitTime);
+            }
             final Context context = mLocationProvider.getApplicationContext();
             if (ActivityCompat.checkSelfPermission(context,
                     Manifest.permission.ACCESS_FINE_LOCATION)
@@ -103,13 +332,24 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
             }
             getLocationProvider().requestLocationUpdates(request,
                     mLocationCallback,
-                    Looper.getMainLooper());
+                    mLooper);
         }
     }
 
     @Override
     protected void stopSensor() {
         Log.d(TAG, "stopSensor() called");
+        removeLocationUpdates();
+        final SamplingPolicy policy = mSamplingPolicy;
+        if (policy != null) {
+            policy.reset();
+        }
+    }
+
+    /**
+     * Remove the location updates.
+     */
+    private void removeLocationUpdates() {
         if (mLocationProvider != null) {
             getLocationProvider().removeLocationUpdates(mLocationCallback);
         }
@@ -117,7 +357,8 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
 
     @Override
     protected void restartSensor() {
-        stopSensor();
+        // Keep the state of the SamplingPolicy.
+        removeLocationUpdates();
         startSensor();
     }
 
@@ -132,19 +373,14 @@ public class LocationSensor extends AbstractSensor<ExtendedGeoCoordinate> {
     private static class StateEvaluator
             extends AbstractSensor.StateEvaluator<ExtendedGeoCoordinate> {
 
-        public StateEvaluator(int bufferSize, double tolerance) {
-            super(bufferSize, tolerance);
+        public StateEvaluator() {
+            super(SensorType.LOCATION);
         }
 
-        // TODO: use lambda
         @Override
         protected double computeDifference(final ExtendedGeoCoordinate first,
                                            final ExtendedGeoCoordinate second) {
-            GeoCoordinate firstCoord = new GeoCoordinate(first.getLatitude(),
-                    first.getLongitude());
-            GeoCoordinate secondCoord = new GeoCoordinate(second.getLatitude(),
-                    second.getLongitude());
-            return Math.abs(firstCoord.getHaversineDistanceTo(secondCoord));
+            return computeDistance(first, second);
         }
     }
 
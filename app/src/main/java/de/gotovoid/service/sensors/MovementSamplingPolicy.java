@@ -0,0 +1,156 @@
+package de.gotovoid.service.sensors;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.location.LocationRequest;
+
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * {@link SamplingPolicy} reducing the location sampling while the user is stationary.
+ * The user is considered stationary if all locations of at least {@link #STATIONARY_TIME} stay
+ * within {@link #STATIONARY_RADIUS} of the first one and the pressure does not change by more
+ * than {@link #STATIONARY_PRESSURE}. The distance is measured from this anchor instead of
+ * between consecutive locations, so the noise of the locations does not add up.
+ * While stationary, locations are requested {@link #REDUCED_FACTOR} times less often with a
+ * lower priority. As soon as a location leaves the radius or the pressure changes, the full
+ * sampling is restored.
+ */
+public class MovementSamplingPolicy implements SamplingPolicy {
+    private static final String TAG = MovementSamplingPolicy.class.getSimpleName();
+    /**
+     * Radius in meters the locations need to stay in while stationary.
+     */
+    static final double STATIONARY_RADIUS = 25;
+    /**
+     * Time in milliseconds the user needs to stay in the radius to be stationary.
+     */
+    static final long STATIONARY_TIME = 60000;
+    /**
+     * Change of the pressure in hPa regarded as movement, about 2 m of altitude.
+     */
+    static final float STATIONARY_PRESSURE = 0.25f;
+    /**
+     * Factor the interval is multiplied with while stationary.
+     */
+    static final int REDUCED_FACTOR = 6;
+    /**
+     * Maximal interval in milliseconds while stationary.
+     */
+    static final long MAX_REDUCED_INTERVAL = 60000;
+
+    /**
+     * True while the user is stationary.
+     */
+    private boolean mIsStationary;
+    /**
+     * The location the distances are measured from.
+     */
+    private ExtendedGeoCoordinate mAnchor;
+    /**
+     * Time of the anchor location in milliseconds.
+     */
+    private long mAnchorTime;
+    /**
+     * Pressure at the time of the anchor location, NaN if unknown.
+     */
+    private float mAnchorPressure = Float.NaN;
+    /**
+     * The last pressure, NaN if unknown.
+     */
+    private float mPressure = Float.NaN;
+
+    /**
+     * Returns true while the user is considered stationary.
+     *
+     * @return true if stationary
+     */
+    public synchronized boolean isStationary() {
+        return mIsStationary;
+    }
+
+    @Override
+    public synchronized long getInterval(final long updateFrequency) {
+        if (!mIsStationary) {
+            return updateFrequency;
+        }
+        return Math.max(updateFrequency,
+                Math.min(updateFrequency * REDUCED_FACTOR, MAX_REDUCED_INTERVAL));
+    }
+
+    @Override
+    public synchronized int getPriority() {
+        if (mIsStationary) {
+            return LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+        }
+        return LocationRequest.PRIORITY_HIGH_ACCURACY;
+    }
+
+    @Override
+    public synchronized boolean onLocationChanged(@NonNull final ExtendedGeoCoordinate coordinate,
+                                                  final long timeStamp) {
+        if (mAnchor == null
+                || LocationSensor.computeDistance(mAnchor, coordinate) > STATIONARY_RADIUS) {
+            setAnchor(coordinate, timeStamp);
+            return setStationary(false);
+        }
+        return setStationary(timeStamp - mAnchorTime >= STATIONARY_TIME);
+    }
+
+    @Override
+    public synchronized boolean onPressureChanged(final float pressure, final long timeStamp) {
+        mPressure = pressure;
+        if (Float.isNaN(mAnchorPressure)) {
+            mAnchorPressure = pressure;
+            return false;
+        }
+        if (Math.abs(pressure - mAnchorPressure) > STATIONARY_PRESSURE) {
+            // Changed altitude, measure from the next location.
+            mAnchor = null;
+            mAnchorPressure = pressure;
+            return setStationary(false);
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void reset() {
+        mIsStationary = false;
+        mAnchor = null;
+        mAnchorPressure = Float.NaN;
+        mPressure = Float.NaN;
+    }
+
+    /**
+     * Set the location the distances are measured from.
+     *
+     * @param coordinate the location
+     * @param timeStamp  time of the location in milliseconds
+     */
+    private void setAnchor(@NonNull final ExtendedGeoCoordinate coordinate,
+                           final long timeStamp) {
+        mAnchor = coordinate;
+        mAnchorTime = timeStamp;
+        mAnchorPressure = mPressure;
+    }
+
+    /**
+     * Set whether the user is stationary.
+     *
+     * @param isStationary true if stationary
+     * @return true if changed
+     */
+    private boolean setStationary(final boolean isStationary) {
+        if (mIsStationary == isStationary) {
+            return false;
+        }
+        Log.d(TAG, "setStationary() called with: isStationary = [" + isStationary + "]");
+        mIsStationary = isStationary;
+        return true;
+    }
+}
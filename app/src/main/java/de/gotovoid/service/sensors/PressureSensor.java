@@ -5,10 +5,12 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventCallback;
 import android.hardware.SensorManager;
+import android.os.Handler;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
-import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by DJ on 07/01/18.
@@ -17,9 +19,18 @@ import java.io.Serializable;
 /**
  * Concrete implementation of the {@link AbstractSensor} for air pressure.
  * Serves as wrapper for the actual {@link Sensor} provided by the system.
+ * If the {@link Sensor} has a hardware FIFO, the readings are batched for the update frequency,
+ * so the application processor is not woken up for every reading. All readings of a batch are
+ * aggregated by a {@link BatchAggregator}.
+ * The readings are timed with {@link SensorEvent#timestamp}, the time since boot of the
+ * measurement, instead of the time of delivery.
  */
 public class PressureSensor extends AbstractSensor<Float> {
     private static final String TAG = PressureSensor.class.getSimpleName();
+    /**
+     * Sampling period of the {@link Sensor} in microseconds.
+     */
+    static final int SAMPLING_PERIOD_US = 200000;
     /**
      * {@link SensorManager} of the system to addObserver for pressure sensor updates.
      */
@@ -29,10 +40,14 @@ public class PressureSensor extends AbstractSensor<Float> {
      */
     private final Sensor mPressureSensor;
     /**
-     * The time stamp of the last update.
+     * {@link Handler} of the thread to receive the {@link SensorEvent}s on, null for the main
+     * thread.
      */
-    @Deprecated
-    private long mTimeStamp;
+    private final Handler mHandler;
+    /**
+     * Aggregates the readings for the update frequency.
+     */
+    private final BatchAggregator mAggregator = new BatchAggregator();
     /**
      * Observer for {@link Sensor} events.
      */
@@ -49,13 +64,7 @@ public class PressureSensor extends AbstractSensor<Float> {
             if (event == null || event.values == null || event.values.length == 0) {
                 return;
             }
-            final float val = event.values[0];
-            long millis = System.currentTimeMillis();
-            if (millis - mTimeStamp > getUpdateFrequency()) {
-                Log.d(TAG, "onSensorChanged: update: " + val);
-                notifyObserver(val);
-                mTimeStamp = millis;
-            }
+            onPressureChanged(event.values[0], event.timestamp);
         }
     };
 
@@ -65,18 +74,108 @@ public class PressureSensor extends AbstractSensor<Float> {
      * @param context the {@link Context}
      */
     PressureSensor(@NonNull final Context context) {
-        super(new StateEvaluator(4, .1));
-        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
-        mPressureSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        this(context, null);
+    }
+
+    /**
+     * Constructor taking the {@link Context} to get the {@link Sensor}s from and the
+     * {@link Handler} of the thread to process the {@link SensorEvent}s on.
+     *
+     * @param context the {@link Context}
+     * @param handler the {@link Handler} to receive the {@link SensorEvent}s on,
+     *                null for the main thread
+     */
+    PressureSensor(@NonNull final Context context, @Nullable final Handler handler) {
+        this((SensorManager) context.getSystemService(Context.SENSOR_SERVICE), handler);
+    }
+
+    /**
+     * Constructor taking the {@link SensorManager} to get the {@link Sensor} from and the
+     * {@link Handler} of the thread to process the {@link SensorEvent}s on.
+     *
+     * @param sensorManager the {@link SensorManager}, null if no {@link Sensor} is available
+     * @param handler       the {@link Handler} to receive the {@link SensorEvent}s on,
+     *                      null for the main thread
+     */
+    PressureSensor(@Nullable final SensorManager sensorManager, @Nullable final Handler handler) {
+        this(sensorManager, handler, Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor taking the {@link SensorManager} to get the {@link Sensor} from, the
+     * {@link Handler} of the thread to process the {@link SensorEvent}s on and the
+     * {@link Clock} of the {@link SensorEvent}s.
+     *
+     * @param sensorManager the {@link SensorManager}, null if no {@link Sensor} is available
+     * @param handler       the {@link Handler} to receive the {@link SensorEvent}s on,
+     *                      null for the main thread
+     * @param clock         the {@link Clock}
+     */
+    PressureSensor(@Nullable final SensorManager sensorManager,
+                   @Nullable final Handler handler,
+                   @NonNull final Clock clock) {
+        super(new StateEvaluator(), clock);
+        mHandler = handler;
+        mSensorManager = sensorManager;
+        if (sensorManager == null) {
+            mPressureSensor = null;
+        } else {
+            mPressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        }
+    }
+
+    /**
+     * Aggregate a pressure reading and notify the {@link AbstractSensor.Observer}s once the
+     * readings of the update frequency are complete.
+     *
+     * @param pressure   the pressure in hPa
+     * @param sensorTime time of the reading in nanoseconds since boot
+     */
+    void onPressureChanged(final float pressure, final long sensorTime) {
+        if (mAggregator.add(sensorTime,
+                pressure,
+                TimeUnit.MILLISECONDS.toNanos(getUpdateFrequency()))) {
+            Log.d(TAG, "onPressureChanged: update: " + mAggregator.getResult());
+            notifyObserver(mAggregator.getResult(), TimeUnit.NANOSECONDS.toMillis(sensorTime));
+        }
     }
 
     @Override
     protected void startSensor() {
         if (mPressureSensor != null && mSensorManager != null) {
-            mSensorManager.registerListener(mSensorCallback,
-                    mPressureSensor,
-                    SensorManager.SENSOR_DELAY_NORMAL);
+            final int maxReportLatency = getMaxReportLatency();
+            if (maxReportLatency > 0) {
+                Log.d(TAG, "startSensor: batched with latency: " + maxReportLatency);
+                mSensorManager.registerListener(mSensorCallback,
+                        mPressureSensor,
+                        SAMPLING_PERIOD_US,
+                        maxReportLatency,
+                        mHandler);
+            } else {
+                mSensorManager.registerListener(mSensorCallback,
+                        mPressureSensor,
+                        SensorManager.SENSOR_DELAY_NORMAL,
+                        mHandler);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximal report latency in microseconds to batch the readings for the
+     * current update frequency. The latency is limited to the time the hardware FIFO of the
+     * {@link Sensor} can buffer.
+     *
+     * @return the maximal report latency, 0 if the readings can not be batched
+     */
+    int getMaxReportLatency() {
+        final long fifoLatency =
+                (long) mPressureSensor.getFifoMaxEventCount() * SAMPLING_PERIOD_US;
+        final long latency = Math.min(TimeUnit.MILLISECONDS.toMicros(getUpdateFrequency()),
+                fifoLatency);
+        if (latency <= SAMPLING_PERIOD_US) {
+            return 0;
         }
+        return (int) Math.min(latency, Integer.MAX_VALUE);
     }
 
     @Override
@@ -84,6 +183,7 @@ public class PressureSensor extends AbstractSensor<Float> {
         if (mPressureSensor != null && mSensorManager != null) {
             mSensorManager.unregisterListener(mSensorCallback);
         }
+        mAggregator.reset();
     }
 
     @Override
@@ -103,8 +203,8 @@ public class PressureSensor extends AbstractSensor<Float> {
 
     private static class StateEvaluator extends AbstractSensor.StateEvaluator<Float> {
 
-        public StateEvaluator(int bufferSize, double tolerance) {
-            super(bufferSize, tolerance);
+        public StateEvaluator() {
+            super(SensorType.PRESSURE);
         }
 
         @Override
@@ -0,0 +1,105 @@
+package de.gotovoid.service.sensors;
+
+import android.support.annotation.NonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.gotovoid.database.model.Recording;
+import de.gotovoid.database.model.RecordingEntry;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * The {@link RecordingEntry}s newly added to a {@link Recording}, the sensor data of
+ * {@link SensorType#RECORDING}.
+ * The entries of a {@link Recording} are numbered in the order they are created, starting with
+ * 0. The sequence of a {@link RecordingDelta} is the number of its first entry, so a client
+ * appending the deltas detects a missing one and reads the {@link Recording} from the database
+ * instead.
+ */
+public class RecordingDelta implements Serializable {
+    /**
+     * Id of the {@link Recording}.
+     */
+    private final long mRecordingId;
+    /**
+     * Number of the first {@link RecordingEntry} in the {@link Recording}.
+     */
+    private final long mSequence;
+    /**
+     * The {@link RecordingEntry}s in the order of measurement.
+     */
+    private final List<RecordingEntry> mEntries;
+
+    /**
+     * Constructor taking the id of the {@link Recording}, the number of the first
+     * {@link RecordingEntry} and the {@link RecordingEntry}s.
+     *
+     * @param recordingId id of the {@link Recording}
+     * @param sequence    number of the first {@link RecordingEntry}
+     * @param entries     the {@link RecordingEntry}s in the order of measurement
+     */
+    public RecordingDelta(final long recordingId,
+                          final long sequence,
+                          @NonNull final List<RecordingEntry> entries) {
+        mRecordingId = recordingId;
+        mSequence = sequence;
+        mEntries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Returns the id of the {@link Recording}.
+     *
+     * @return the id
+     */
+    public long getRecordingId() {
+        return mRecordingId;
+    }
+
+    /**
+     * Returns the number of the first {@link RecordingEntry} in the {@link Recording}.
+     *
+     * @return the sequence
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns the number of the {@link RecordingEntry} following this {@link RecordingDelta}.
+     *
+     * @return the sequence of the next {@link RecordingDelta}
+     */
+    public long getNextSequence() {
+        return mSequence + mEntries.size();
+    }
+
+    /**
+     * Returns the {@link RecordingEntry}s in the order of measurement.
+     *
+     * @return the {@link RecordingEntry}s
+     */
+    @NonNull
+    public List<RecordingEntry> getEntries() {
+        return mEntries;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(getClass().getSimpleName());
+        builder.append("{recordingId: ");
+        builder.append(getRecordingId());
+        builder.append(", sequence: ");
+        builder.append(getSequence());
+        builder.append(", entries: ");
+        builder.append(getEntries().size());
+        builder.append('}');
+        return builder.toString();
+    }
+}
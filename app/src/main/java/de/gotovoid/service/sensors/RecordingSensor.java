@@ -3,6 +3,11 @@ package de.gotovoid.service.sensors;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.gotovoid.database.model.CalibratedAltitude;
 import de.gotovoid.database.model.Recording;
@@ -17,9 +22,32 @@ import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
  * {@link AbstractSensor} implementation for recording data.
  * This is a wrapper to combine both, the {@link LocationSensor} and {@link PressureSensor}
  * data into one result.
+ * The sensors deliver their data with different latencies, so the pressure readings are kept
+ * with their time stamps in a {@link TimeSeriesBuffer} and the locations wait in a queue until
+ * a pressure reading at or after their time arrived. The altitude is then interpolated to the
+ * exact time of the location. If no such reading arrives within the maximal pressure age, the
+ * newest reading is used.
+ * The sensor data is timed with the time since boot. The {@link RecordingEntry}s are time
+ * stamped on the wall clock with an offset fixed when the recording starts, so changes of the
+ * wall clock during a recording do not distort the track.
+ * Both sensors may call from different threads. The {@link RecordingEntry}s are created and
+ * published without locks by whichever thread completes them, one thread at a time, in the
+ * order of the locations.
+ * The observers receive every published batch of {@link RecordingEntry}s as a
+ * {@link RecordingDelta}, numbered within the {@link Recording}, so a client can keep the track
+ * in memory instead of reading it from the database on every update.
  */
-public class RecordingSensor extends AbstractSensor<Long> {
+public class RecordingSensor extends AbstractSensor<RecordingDelta> {
     private static final String TAG = RecordingSensor.class.getSimpleName();
+    /**
+     * Number of pressure readings kept to align the locations with.
+     */
+    static final int PRESSURE_BUFFER_SIZE = 256;
+    /**
+     * Minimal time in milliseconds a location waits for a pressure reading, and a pressure
+     * reading may be used for locations outside of the time covered by the readings.
+     */
+    static final long MIN_PRESSURE_AGE = 5000;
     /**
      * The {@link AbstractSensor.Observer} for the {@link PressureSensor}.
      */
@@ -42,18 +70,64 @@ public class RecordingSensor extends AbstractSensor<Long> {
     private final AbstractSensor.Observer<RecordingEntry> mRecordingEntryObserver;
 
     /**
-     * The {@link CalibratedAltitude} data to calculate the altitude from air pressure.
+     * The pressure readings with their time stamps, written by the {@link PressureObserver}.
+     */
+    private final TimeSeriesBuffer mPressures = new TimeSeriesBuffer(PRESSURE_BUFFER_SIZE);
+    /**
+     * The locations waiting for a pressure reading, in the order of measurement.
      */
-    private CalibratedAltitude mCalibratedAltitude;
+    private final Queue<PendingLocation> mPendingLocations = new ConcurrentLinkedQueue<>();
     /**
-     * The current altitude.
+     * Number of requests to publish the waiting locations. Only the thread incrementing it
+     * from zero publishes, so the {@link RecordingEntry}s are published in order.
      */
-    private Integer mAltitude;
+    private final AtomicInteger mPublishRequests = new AtomicInteger();
+    /**
+     * Time stamp of the newest location, written by the {@link LocationObserver}.
+     */
+    private volatile long mNewestLocationTime = Long.MIN_VALUE;
+    /**
+     * True if all waiting locations are to be published without waiting for pressure readings,
+     * set while the recording is stopped.
+     */
+    private volatile boolean mIsFlushing;
+    /**
+     * Maximal time in milliseconds a location waits for a pressure reading, and a pressure
+     * reading may be used for locations outside of the time covered by the readings.
+     */
+    private volatile long mMaxPressureAge = MIN_PRESSURE_AGE;
+
+    /**
+     * Offset in milliseconds from the time since boot of the sensor data to the wall clock.
+     */
+    private volatile long mTimeOffset;
+
+    /**
+     * The {@link CalibratedAltitude} data to calculate the altitude from air pressure.
+     */
+    private volatile CalibratedAltitude mCalibratedAltitude;
 
     /**
      * The id of the {@link Recording} the sensor data is for.
      */
-    private Long mRecordingId;
+    private volatile Long mRecordingId;
+
+    /**
+     * The last started {@link Recording}, null if none was started.
+     */
+    private volatile StartedRecording mStartedRecording;
+
+    /**
+     * Id of the {@link Recording} of the last published {@link RecordingDelta}.
+     * Only accessed by the publishing thread.
+     */
+    private long mPublishedRecordingId;
+
+    /**
+     * Number of {@link RecordingEntry}s published for {@link #mPublishedRecordingId}.
+     * Only accessed by the publishing thread.
+     */
+    private long mPublishedCount;
 
     /**
      * Constructor taking the {@link PressureSensor} and {@link LocationSensor} instance,
@@ -67,7 +141,24 @@ public class RecordingSensor extends AbstractSensor<Long> {
     RecordingSensor(final PressureSensor pressureSensor,
                     final LocationSensor locationSensor,
                     final AbstractSensor.Observer<RecordingEntry> observer) {
-        super(new StateEvaluator(5, 5));
+        this(pressureSensor, locationSensor, observer, Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor taking the {@link PressureSensor} and {@link LocationSensor} instance,
+     * the {@link AbstractSensor.Observer} for {@link RecordingEntry} changes and the
+     * {@link Clock} of the sensors.
+     *
+     * @param pressureSensor the {@link PressureSensor}
+     * @param locationSensor the {@link LocationSensor}
+     * @param observer       the {@link AbstractSensor.Observer} for recording data
+     * @param clock          the {@link Clock} of the sensors
+     */
+    RecordingSensor(final PressureSensor pressureSensor,
+                    final LocationSensor locationSensor,
+                    final AbstractSensor.Observer<RecordingEntry> observer,
+                    @NonNull final Clock clock) {
+        super(new StateEvaluator(), clock);
         mRecordingEntryObserver = observer;
         mPressureSensor = pressureSensor;
         mLocationSensor = locationSensor;
@@ -90,8 +181,25 @@ public class RecordingSensor extends AbstractSensor<Long> {
      * @param recordingId the id of the recording
      */
     public void startRecording(final long recordingId) {
-        Log.d(TAG, "startRecording() called with: recordingId = [" + recordingId + "]");
+        startRecording(recordingId, 0);
+    }
+
+    /**
+     * Start or resume recording data for the {@link Recording} with the given id, which
+     * already has the given number of stored {@link RecordingEntry}s, e.g. after the service
+     * was restarted. The {@link RecordingDelta}s continue with that sequence.
+     *
+     * @param recordingId the id of the recording
+     * @param entryCount  number of {@link RecordingEntry}s already stored for the recording
+     */
+    public void startRecording(final long recordingId, final long entryCount) {
+        Log.d(TAG, "startRecording() called with: recordingId = [" + recordingId
+                + "], entryCount = [" + entryCount + "]");
+        mStartedRecording = new StartedRecording(recordingId, entryCount);
+        mTimeOffset = getClock().currentTimeMillis() - getClock().elapsedRealtime();
         mRecordingId = recordingId;
+        mMaxPressureAge = Math.max(MIN_PRESSURE_AGE, 2 * getUpdateFrequency());
+        mIsFlushing = false;
         mPressureObserver = new PressureObserver(getUpdateFrequency());
         mLocationObserver = new LocationObserver(getUpdateFrequency());
         mPressureSensor.addObserver(mPressureObserver);
@@ -100,12 +208,25 @@ public class RecordingSensor extends AbstractSensor<Long> {
 
     /**
      * Stop the recording.
+     * The locations still waiting for a pressure reading are published with the newest reading.
      */
     public void stopRecording() {
         Log.d(TAG, "stopRecording() called");
         mRecordingId = null;
         mPressureSensor.removeObserver(mPressureObserver);
         mLocationSensor.removeObserver(mLocationObserver);
+        // Keep flushing until the next recording, in case another thread is still publishing.
+        mIsFlushing = true;
+        publish();
+    }
+
+    /**
+     * Returns true if a recording is started.
+     *
+     * @return true if recording
+     */
+    boolean isRecording() {
+        return mRecordingId != null;
     }
 
     @Override
@@ -131,6 +252,168 @@ public class RecordingSensor extends AbstractSensor<Long> {
         return mLocationObserver;
     }
 
+    /**
+     * Publish the waiting locations that can be aligned with the pressure readings.
+     * If another thread is publishing, it publishes them instead, so this never blocks.
+     */
+    private void publish() {
+        if (mPublishRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            publishAligned();
+            requests = mPublishRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * Create the {@link RecordingEntry}s for the waiting locations covered by the pressure
+     * readings, or waiting longer than the maximal pressure age, and notify the
+     * {@link RecordingEntry} observer. Must only be called by one thread at a time.
+     */
+    private void publishAligned() {
+        final long newestPressureTime = mPressures.getNewestTimeStamp();
+        final long newestLocationTime = mNewestLocationTime;
+        final long maxPressureAge = mMaxPressureAge;
+        final boolean isFlushing = mIsFlushing;
+        List<Result<RecordingEntry>> entries = null;
+        long recordingId = 0;
+        PendingLocation location;
+        while ((location = mPendingLocations.peek()) != null) {
+            final long timeStamp = location.mResult.getTimeStamp();
+            if (!isFlushing
+                    && timeStamp > newestPressureTime
+                    && newestLocationTime - timeStamp < maxPressureAge) {
+                break;
+            }
+            mPendingLocations.poll();
+            if (entries != null && location.mRecordingId != recordingId) {
+                notifyRecordingEntryObserver(recordingId, entries);
+                entries = null;
+            }
+            final Result<RecordingEntry> entry =
+                    createEntry(location.mRecordingId, location.mResult, maxPressureAge);
+            if (entry != null) {
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                }
+                entries.add(entry);
+                recordingId = location.mRecordingId;
+            }
+        }
+        if (entries != null) {
+            notifyRecordingEntryObserver(recordingId, entries);
+        }
+    }
+
+    /**
+     * Notify the {@link RecordingEntry} observer about the {@link RecordingEntry}s and the
+     * registered observers about the {@link RecordingDelta}. Every {@link RecordingDelta} is
+     * sent to every observer, as the observers can not follow the track with gaps.
+     *
+     * @param recordingId id of the {@link Recording}
+     * @param entries     the {@link RecordingEntry}s in the order of measurement
+     */
+    private void notifyRecordingEntryObserver(final long recordingId,
+                                              @NonNull final List<Result<RecordingEntry>> entries) {
+        if (entries.size() == 1) {
+            mRecordingEntryObserver.onChange(entries.get(0));
+        } else {
+            mRecordingEntryObserver.onBatchChange(entries);
+        }
+        if (recordingId != mPublishedRecordingId) {
+            mPublishedRecordingId = recordingId;
+            final StartedRecording started = mStartedRecording;
+            if (started != null && started.mRecordingId == recordingId) {
+                mPublishedCount = started.mEntryCount;
+            } else {
+                mPublishedCount = 0;
+            }
+        }
+        final List<RecordingEntry> values = new ArrayList<>(entries.size());
+        for (Result<RecordingEntry> entry : entries) {
+            values.add(entry.getValue());
+        }
+        final RecordingDelta delta = new RecordingDelta(recordingId, mPublishedCount, values);
+        mPublishedCount = delta.getNextSequence();
+        // Notify the registered observers with the new entries.
+        notifyAllObservers(delta, entries.get(entries.size() - 1).getTimeStamp());
+    }
+
+    /**
+     * Create the {@link Result} containing the {@link RecordingEntry} for the given
+     * location {@link Result}. The altitude is computed from the pressure at the time of
+     * the location.
+     *
+     * @param recordingId    id of the {@link Recording}
+     * @param result         the location {@link Result}
+     * @param maxPressureAge maximal age of the pressure reading in milliseconds
+     * @return the {@link RecordingEntry} {@link Result}, null if the altitude is unknown
+     */
+    private Result<RecordingEntry> createEntry(final long recordingId,
+                                               @NonNull final Result<ExtendedGeoCoordinate> result,
+                                               final long maxPressureAge) {
+        final CalibratedAltitude calibratedAltitude = mCalibratedAltitude;
+        if (calibratedAltitude == null) {
+            return null;
+        }
+        final float pressure = mPressures.get(result.getTimeStamp(), maxPressureAge);
+        if (Float.isNaN(pressure)) {
+            Log.d(TAG, "createEntry: no pressure for: " + result.getTimeStamp());
+            return null;
+        }
+        final RecordingEntry entry =
+                new RecordingEntry(
+                        recordingId,
+                        result.getTimeStamp() + mTimeOffset,
+                        result.getValue().getLongitude(),
+                        result.getValue().getLatitude(),
+                        calibratedAltitude.calculateHeight(pressure));
+        return new Result<>(SensorState.RUNNING, entry, result.getTimeStamp());
+    }
+
+    /**
+     * Started {@link Recording} with the number of its {@link RecordingEntry}s stored before
+     * the start.
+     */
+    private static class StartedRecording {
+        private final long mRecordingId;
+        private final long mEntryCount;
+
+        /**
+         * Constructor taking the id of the {@link Recording} and the number of its stored
+         * {@link RecordingEntry}s.
+         *
+         * @param recordingId id of the {@link Recording}
+         * @param entryCount  number of stored {@link RecordingEntry}s
+         */
+        private StartedRecording(final long recordingId, final long entryCount) {
+            mRecordingId = recordingId;
+            mEntryCount = entryCount;
+        }
+    }
+
+    /**
+     * Location waiting for a pressure reading.
+     */
+    private static class PendingLocation {
+        private final long mRecordingId;
+        private final Result<ExtendedGeoCoordinate> mResult;
+
+        /**
+         * Constructor taking the id of the {@link Recording} and the location.
+         *
+         * @param recordingId id of the {@link Recording}
+         * @param result      the location {@link Result}
+         */
+        private PendingLocation(final long recordingId,
+                                @NonNull final Result<ExtendedGeoCoordinate> result) {
+            mRecordingId = recordingId;
+            mResult = result;
+        }
+    }
+
     /**
      * Observable for location data updates.
      * Will notify the {@link RecordingSensor} observer.
@@ -148,30 +431,51 @@ public class RecordingSensor extends AbstractSensor<Long> {
         @Override
         public void onChange(@NonNull final Result<ExtendedGeoCoordinate> extendedGeoCoordinate) {
             Log.d(TAG, "onChange() called with: extendedGeoCoordinate = [" + extendedGeoCoordinate + "]");
-            if (extendedGeoCoordinate != null
-                    && mAltitude != null
-                    && mRecordingEntryObserver != null
-                    && mRecordingId != null) {
-                // Create a new RecordingEntry
-                final RecordingEntry entry =
-                        new RecordingEntry(
-                                mRecordingId,
-                                System.currentTimeMillis(),
-                                extendedGeoCoordinate.getValue().getLongitude(),
-                                extendedGeoCoordinate.getValue().getLatitude(),
-                                mAltitude);
-                // Notify the RecordingEntry observer to store the data in the database
-                mRecordingEntryObserver.onChange(
-                        new Result<>(SensorState.RUNNING, entry));
-                // Notify the registered observers with the recording id
-                notifyObserver(mRecordingId);
+            final Long recordingId = mRecordingId;
+            if (extendedGeoCoordinate == null
+                    || mRecordingEntryObserver == null
+                    || recordingId == null) {
+                return;
+            }
+            add(recordingId, extendedGeoCoordinate);
+            publish();
+        }
+
+        /**
+         * Stores all locations of the batch with a single notification of the
+         * {@link RecordingEntry} observer, so they can be written to the database in bulk.
+         *
+         * @param results the {@link Result}s in the order of measurement
+         */
+        @Override
+        public void onBatchChange(@NonNull final List<Result<ExtendedGeoCoordinate>> results) {
+            Log.d(TAG, "onBatchChange() called with: results = [" + results.size() + "]");
+            final Long recordingId = mRecordingId;
+            if (mRecordingEntryObserver == null || recordingId == null) {
+                return;
             }
+            for (Result<ExtendedGeoCoordinate> result : results) {
+                add(recordingId, result);
+            }
+            publish();
+        }
+
+        /**
+         * Add a location to wait for the pressure reading.
+         *
+         * @param recordingId id of the {@link Recording}
+         * @param result      the location {@link Result}
+         */
+        private void add(final long recordingId,
+                         @NonNull final Result<ExtendedGeoCoordinate> result) {
+            mPendingLocations.add(new PendingLocation(recordingId, result));
+            mNewestLocationTime = Math.max(mNewestLocationTime, result.getTimeStamp());
         }
     }
 
     /**
      * Observable for pressure data.
-     * Will store the current pressure in a member variable
+     * Will store the pressure readings in the {@link TimeSeriesBuffer}.
      */
     protected class PressureObserver extends AbstractSensor.Observer<Float> {
         /**
@@ -186,24 +490,28 @@ public class RecordingSensor extends AbstractSensor<Long> {
         @Override
         public void onChange(@NonNull final Result<Float> result) {
             Log.d(TAG, "onChange() called with: pressure = [" + result + "]");
-            if (mCalibratedAltitude == null || result == null) {
-                mAltitude = null;
+            if (result == null) {
                 return;
             }
-            mAltitude = mCalibratedAltitude.calculateHeight(result.getValue());
+            // Let the sampling of the locations adapt to altitude changes.
+            mLocationSensor.onPressureChanged(result.getValue(), result.getTimeStamp());
+            if (mPressures.add(result.getTimeStamp(), result.getValue())
+                    && !mPendingLocations.isEmpty()) {
+                publish();
+            }
         }
     }
 
     private static class StateEvaluator
-            extends AbstractSensor.StateEvaluator<Long> {
+            extends AbstractSensor.StateEvaluator<RecordingDelta> {
 
-        public StateEvaluator(final int bufferSize, final double tolerance) {
-            super(bufferSize, tolerance);
+        public StateEvaluator() {
+            super(SensorType.RECORDING);
         }
 
         @Override
-        protected double computeDifference(final Long first,
-                                           final Long second) {
+        protected double computeDifference(final RecordingDelta first,
+                                           final RecordingDelta second) {
             return 0;
         }
     }
@@ -0,0 +1,122 @@
+package de.gotovoid.service.sensors;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * {@link LocationSensor} delivering the locations of a {@link SensorReplay} instead of the
+ * location services.
+ * Behaves like the fused location provider: locations closer than the interval of the
+ * {@link SamplingPolicy} are skipped, and if a maximal wait time is set, the locations are
+ * delivered in batches.
+ */
+class ReplayLocationSensor extends LocationSensor {
+    private static final String TAG = ReplayLocationSensor.class.getSimpleName();
+    /**
+     * Locations waiting to be delivered.
+     */
+    private final List<ExtendedGeoCoordinate> mCoordinates = new ArrayList<>();
+    /**
+     * Time stamps of the waiting locations.
+     */
+    private final List<Long> mTimeStamps = new ArrayList<>();
+    /**
+     * Interval in milliseconds to deliver locations with.
+     */
+    private volatile long mInterval;
+    /**
+     * Time stamp of the last accepted location, {@link Long#MIN_VALUE} if there is none.
+     */
+    private long mLastTimeStamp = Long.MIN_VALUE;
+
+    /**
+     * Package private constructor taking the {@link Clock} of the replayed locations.
+     *
+     * @param clock the {@link Clock}
+     */
+    ReplayLocationSensor(@NonNull final Clock clock) {
+        super(null, Looper.getMainLooper(), clock);
+    }
+
+    /**
+     * Replay a location. Does nothing if the sensor is not started.
+     * Must be called with ascending time stamps.
+     *
+     * @param coordinate the location
+     * @param timeStamp  time of the location in milliseconds since boot
+     */
+    void replay(@NonNull final ExtendedGeoCoordinate coordinate, final long timeStamp) {
+        if (!isStarted()) {
+            return;
+        }
+        synchronized (mCoordinates) {
+            if (mLastTimeStamp != Long.MIN_VALUE && timeStamp - mLastTimeStamp < mInterval) {
+                return;
+            }
+            mLastTimeStamp = timeStamp;
+            mCoordinates.add(coordinate);
+            mTimeStamps.add(timeStamp);
+            final long maxWaitTime = getMaxWaitTime();
+            if (maxWaitTime > mInterval && timeStamp - mTimeStamps.get(0) < maxWaitTime) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Deliver the waiting locations.
+     * The {@link AbstractSensor.Observer}s are notified outside of the lock, so they may
+     * remove themselves.
+     */
+    void flush() {
+        final List<ExtendedGeoCoordinate> coordinates;
+        final long[] timeStamps;
+        synchronized (mCoordinates) {
+            if (mCoordinates.isEmpty()) {
+                return;
+            }
+            coordinates = new ArrayList<>(mCoordinates);
+            timeStamps = new long[mTimeStamps.size()];
+            for (int i = 0; i < timeStamps.length; i++) {
+                timeStamps[i] = mTimeStamps.get(i);
+            }
+            mCoordinates.clear();
+            mTimeStamps.clear();
+        }
+        onLocationsChanged(coordinates, timeStamps);
+    }
+
+    @Override
+    protected void startSensor() {
+        mInterval = getInterval();
+        Log.d(TAG, "startSensor: interval: " + mInterval);
+    }
+
+    @Override
+    protected void stopSensor() {
+        super.stopSensor();
+        synchronized (mCoordinates) {
+            mCoordinates.clear();
+            mTimeStamps.clear();
+            mLastTimeStamp = Long.MIN_VALUE;
+        }
+    }
+
+    @Override
+    protected void restartSensor() {
+        // Keep the state of the SamplingPolicy and the waiting locations.
+        mInterval = getInterval();
+        Log.d(TAG, "restartSensor: interval: " + mInterval);
+    }
+}
@@ -0,0 +1,42 @@
+package de.gotovoid.service.sensors;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * {@link PressureSensor} delivering the pressure readings of a {@link SensorReplay} instead of
+ * the hardware sensor. The readings are aggregated like the readings of the hardware sensor.
+ */
+class ReplayPressureSensor extends PressureSensor {
+
+    /**
+     * Package private constructor taking the {@link Clock} of the replayed readings.
+     *
+     * @param clock the {@link Clock}
+     */
+    ReplayPressureSensor(@NonNull final Clock clock) {
+        super(null, null, clock);
+    }
+
+    /**
+     * Replay a pressure reading. Does nothing if the sensor is not started.
+     *
+     * @param pressure  the pressure in hPa
+     * @param timeStamp time of the reading in milliseconds since boot
+     */
+    void replay(final float pressure, final long timeStamp) {
+        if (isStarted()) {
+            onPressureChanged(pressure, TimeUnit.MILLISECONDS.toNanos(timeStamp));
+        }
+    }
+
+    @Override
+    protected void startSensor() {
+        // Readings are provided by the SensorReplay.
+    }
+}
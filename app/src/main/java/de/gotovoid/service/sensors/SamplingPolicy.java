@@ -0,0 +1,56 @@
+package de.gotovoid.service.sensors;
+
+import android.support.annotation.NonNull;
+
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Policy deciding the interval and priority the {@link LocationSensor} requests locations with.
+ * The policy is informed about every location and pressure reading and may adapt the sampling,
+ * for example to save battery while the user is not moving.
+ * When a method returns true, the {@link LocationSensor} is restarted to apply the changed
+ * sampling.
+ */
+public interface SamplingPolicy {
+    /**
+     * Returns the interval in milliseconds to request locations with.
+     *
+     * @param updateFrequency the update frequency requested by the {@link AbstractSensor.Observer}s
+     * @return the interval in milliseconds
+     */
+    long getInterval(long updateFrequency);
+
+    /**
+     * Returns the priority to request locations with.
+     *
+     * @return one of the priorities of {@link com.google.android.gms.location.LocationRequest}
+     */
+    int getPriority();
+
+    /**
+     * Called for every location received by the {@link LocationSensor}.
+     *
+     * @param coordinate the location
+     * @param timeStamp  time of the location in milliseconds
+     * @return true if the sampling changed
+     */
+    boolean onLocationChanged(@NonNull ExtendedGeoCoordinate coordinate, long timeStamp);
+
+    /**
+     * Called for pressure readings while the {@link LocationSensor} is running.
+     *
+     * @param pressure  the pressure in hPa
+     * @param timeStamp time of the reading in milliseconds
+     * @return true if the sampling changed
+     */
+    boolean onPressureChanged(float pressure, long timeStamp);
+
+    /**
+     * Reset the policy when the {@link LocationSensor} is stopped.
+     */
+    void reset();
+}
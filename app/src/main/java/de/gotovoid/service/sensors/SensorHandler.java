@@ -3,14 +3,22 @@ package de.gotovoid.service.sensors;
 import android.app.Application;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Process;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.google.android.gms.location.LocationServices;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import de.gotovoid.database.model.Recording;
 import de.gotovoid.database.AppDatabase;
 import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.track.RollupPyramid;
 
 /**
  * Created by DJ on 24/12/17.
@@ -23,6 +31,10 @@ import de.gotovoid.database.model.RecordingEntry;
  */
 public class SensorHandler {
     private static final String TAG = SensorHandler.class.getSimpleName();
+    /**
+     * Default maximal time in milliseconds the locations are batched while recording.
+     */
+    public static final long DEFAULT_RECORDING_MAX_WAIT_TIME = 60000;
 
     /**
      * Database instance to save recording data.
@@ -45,6 +57,13 @@ public class SensorHandler {
      * Observable to write recording data to database.
      */
     private final RecordingEntryObserver mRecordingEntryObserver;
+    /**
+     * {@link HandlerThread} processing the sensor data.
+     * Shared by the {@link LocationSensor} and {@link PressureSensor}, so the sensor data is
+     * processed on one thread and the main thread only handles the service lifecycle.
+     * Null if the sensors manage their threads.
+     */
+    private final HandlerThread mSensorThread;
     /**
      * {@link HandlerThread} for database interaction.
      */
@@ -53,6 +72,10 @@ public class SensorHandler {
      * {@link Handler} for database interaction.
      */
     private final Handler mHandler;
+    /**
+     * Maximal time in milliseconds the locations are batched while recording.
+     */
+    private volatile long mRecordingMaxWaitTime = DEFAULT_RECORDING_MAX_WAIT_TIME;
 
     /**
      * Constructor taking the {@link Application} as context.
@@ -60,19 +83,80 @@ public class SensorHandler {
      * @param application the {@link Application}
      */
     public SensorHandler(final Application application) {
-        mLocationSensor = new LocationSensor(LocationServices
-                .getFusedLocationProviderClient(application));
-        mPressureSensor = new PressureSensor(application);
+        this(application, createSensorThread());
+    }
+
+    /**
+     * Constructor taking the {@link Application} as context and the started
+     * {@link HandlerThread} to process the sensor data on.
+     *
+     * @param application  the {@link Application}
+     * @param sensorThread the {@link HandlerThread} for the sensor data
+     */
+    private SensorHandler(final Application application, final HandlerThread sensorThread) {
+        this(AppDatabase.getDatabaseInstance(application),
+                new LocationSensor(LocationServices.getFusedLocationProviderClient(application),
+                        sensorThread.getLooper()),
+                new PressureSensor(application, new Handler(sensorThread.getLooper())),
+                sensorThread);
+        mLocationSensor.setSamplingPolicy(new MovementSamplingPolicy());
+    }
+
+    /**
+     * Package private constructor taking the {@link AppDatabase} and the sensors to record
+     * from, for example the sensors of a {@link SensorReplay}.
+     * The sensors deliver their data on their own threads.
+     *
+     * @param database       the {@link AppDatabase} to store the recording data in
+     * @param locationSensor the {@link LocationSensor}
+     * @param pressureSensor the {@link PressureSensor}
+     */
+    SensorHandler(@NonNull final AppDatabase database,
+                  @NonNull final LocationSensor locationSensor,
+                  @NonNull final PressureSensor pressureSensor) {
+        this(database, locationSensor, pressureSensor, null);
+    }
+
+    /**
+     * Constructor taking the {@link AppDatabase}, the sensors and the {@link HandlerThread} the
+     * sensors deliver their data on.
+     *
+     * @param database       the {@link AppDatabase} to store the recording data in
+     * @param locationSensor the {@link LocationSensor}
+     * @param pressureSensor the {@link PressureSensor}
+     * @param sensorThread   the {@link HandlerThread} for the sensor data, null if the sensors
+     *                       manage their threads
+     */
+    private SensorHandler(@NonNull final AppDatabase database,
+                          @NonNull final LocationSensor locationSensor,
+                          @NonNull final PressureSensor pressureSensor,
+                          @Nullable final HandlerThread sensorThread) {
+        mSensorThread = sensorThread;
+        mLocationSensor = locationSensor;
+        mPressureSensor = pressureSensor;
         mRecordingEntryObserver = new RecordingEntryObserver();
         mRecordingSensor = new RecordingSensor(mPressureSensor,
                 mLocationSensor,
-                mRecordingEntryObserver);
+                mRecordingEntryObserver,
+                mLocationSensor.getClock());
 
         mHandlerThread = new HandlerThread("Looper");
         mHandlerThread.start();
         mHandler = new Handler(mHandlerThread.getLooper());
 
-        mDatabase = AppDatabase.getDatabaseInstance(application);
+        mDatabase = database;
+    }
+
+    /**
+     * Create and start the {@link HandlerThread} to process the sensor data on.
+     *
+     * @return the {@link HandlerThread}
+     */
+    private static HandlerThread createSensorThread() {
+        final HandlerThread thread =
+                new HandlerThread("SensorThread", Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        return thread;
     }
 
     /**
@@ -105,11 +189,15 @@ public class SensorHandler {
     /**
      * Start recording data for the {@link Recording} with
      * the given id.
+     * The locations are batched for the recording max wait time until the recording is
+     * stopped.
      *
      * @param recordingId id of the {@link Recording}
+     * @see #setLocationMaxWaitTime(long)
      */
     public void startRecording(final long recordingId) {
         Log.d(TAG, "startRecording() called with: recordingId = [" + recordingId + "]");
+        mLocationSensor.setMaxWaitTime(mRecordingMaxWaitTime);
         // TODO: remove
         mHandler.post(new Runnable() {
             @Override
@@ -119,7 +207,9 @@ public class SensorHandler {
                     // TODO: make updateable
                     mRecordingSensor.setCalibratedAltitude(
                             mDatabase.getCalibratedPressureDao().getCalibratedPressure());
-                    mRecordingSensor.startRecording(recordingId);
+                    // Continue the sequence of a recording resumed after a restart.
+                    mRecordingSensor.startRecording(recordingId,
+                            mDatabase.getRecordingEntryDao().getTrackEntryCount(recordingId));
                 } catch (final IllegalStateException exception) {
                     Log.e(TAG, "run: start recording failed: ", exception);
                 }
@@ -128,10 +218,30 @@ public class SensorHandler {
     }
 
     /**
-     * Stop recording.
+     * Stop recording. The locations are delivered without batching again.
      */
     public void stopRecording() {
         mRecordingSensor.stopRecording();
+        mLocationSensor.setMaxWaitTime(0);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRecordingEntryObserver.flushRollups();
+            }
+        });
+    }
+
+    /**
+     * Set the maximal time in milliseconds locations may be batched before they are delivered
+     * while recording, {@link #DEFAULT_RECORDING_MAX_WAIT_TIME} by default.
+     * Batched locations are written to the database in bulk, so no location is lost.
+     * Takes effect with the next {@link #startRecording(long)}.
+     *
+     * @param maxWaitTime maximal wait time in milliseconds, 0 to disable batching
+     * @see LocationSensor#setMaxWaitTime(long)
+     */
+    public void setLocationMaxWaitTime(final long maxWaitTime) {
+        mRecordingMaxWaitTime = maxWaitTime;
     }
 
     /**
@@ -176,6 +286,61 @@ public class SensorHandler {
         }
     }
 
+    /**
+     * Change the update frequency of the given {@link AbstractSensor.Observer}, the
+     * {@link AbstractSensor} adapts its own update frequency.
+     *
+     * @param observer        the {@link AbstractSensor.Observer}
+     * @param updateFrequency the new update frequency in milliseconds
+     */
+    public void setUpdateFrequency(@NonNull final AbstractSensor.Observer observer,
+                                   final long updateFrequency) {
+        Log.d(TAG, "setUpdateFrequency() called with: observer = [" + observer
+                + "], updateFrequency = [" + updateFrequency + "]");
+        switch (observer.getType()) {
+            case PRESSURE:
+                mPressureSensor.setUpdateFrequency(observer, updateFrequency);
+                break;
+            case LOCATION:
+                mLocationSensor.setUpdateFrequency(observer, updateFrequency);
+                break;
+            case RECORDING:
+                mRecordingSensor.setUpdateFrequency(observer, updateFrequency);
+                break;
+        }
+    }
+
+    /**
+     * Returns the {@link AbstractSensor.Result} of the last sensor data of the given
+     * {@link SensorType}.
+     *
+     * @param type the {@link SensorType}
+     * @return the last {@link AbstractSensor.Result}, null if there was no sensor data yet
+     */
+    @Nullable
+    public AbstractSensor.Result getLastResult(@NonNull final SensorType type) {
+        switch (type) {
+            case PRESSURE:
+                return mPressureSensor.getLastResult();
+            case LOCATION:
+                return mLocationSensor.getLastResult();
+            case RECORDING:
+                return mRecordingSensor.getLastResult();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the {@link Clock} the sensor data is timed with.
+     *
+     * @return the {@link Clock}
+     */
+    @NonNull
+    public Clock getClock() {
+        return mLocationSensor.getClock();
+    }
+
     /**
      * Returns true if currently recording.
      *
@@ -187,8 +352,21 @@ public class SensorHandler {
 
     /**
      * Stop all sensors.
+     * A running recording is stopped and the sensors release the location updates and the
+     * {@link android.hardware.Sensor} listener, before the threads are quit. The pending
+     * database operations are still processed.
      */
     public void stopSensors() {
+        Log.d(TAG, "stopSensors() called");
+        if (mRecordingSensor.isRecording()) {
+            stopRecording();
+        }
+        mRecordingSensor.removeAllObservers();
+        mLocationSensor.removeAllObservers();
+        mPressureSensor.removeAllObservers();
+        if (mSensorThread != null) {
+            mSensorThread.quitSafely();
+        }
         mHandlerThread.quitSafely();
     }
 
@@ -198,6 +376,12 @@ public class SensorHandler {
      * TODO: maybe we can simplify this if we move it to the sensor
      */
     private class RecordingEntryObserver extends AbstractSensor.Observer<RecordingEntry> {
+        /**
+         * {@link RollupPyramid} of the current recording.
+         * Only accessed from the {@link HandlerThread}.
+         */
+        private RollupPyramid mRollupPyramid;
+
         /**
          * Constructor.
          */
@@ -220,11 +404,80 @@ public class SensorHandler {
                     Log.d(TAG, "run: write data: ");
                     try {
                         mDatabase.getRecordingEntryDao().add(result.getValue());
+                        updateRollups(Collections.singletonList(result.getValue()));
                     } catch (final IllegalStateException exception) {
                         Log.e(TAG, "run: save recording entry failed: ", exception);
                     }
                 }
             });
         }
+
+        /**
+         * Writes all {@link RecordingEntry}s of the batch to the database in one transaction.
+         *
+         * @param results the {@link AbstractSensor.Result}s in the order of measurement
+         */
+        @Override
+        public void onBatchChange(
+                @NonNull final List<AbstractSensor.Result<RecordingEntry>> results) {
+            Log.d(TAG, "onBatchChange() called with: results = [" + results.size() + "]");
+            final List<RecordingEntry> entries = new ArrayList<>(results.size());
+            for (AbstractSensor.Result<RecordingEntry> result : results) {
+                entries.add(result.getValue());
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d(TAG, "run: write batch: " + entries.size());
+                    try {
+                        mDatabase.getRecordingEntryDao().addAll(entries);
+                        updateRollups(entries);
+                    } catch (final IllegalStateException exception) {
+                        Log.e(TAG, "run: save recording entries failed: ", exception);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Add the {@link RecordingEntry}s to the {@link RollupPyramid} and store the changed
+         * {@link RecordingRollup}s.
+         * The open buckets are stored as well and replaced once they are completed, so the
+         * {@link RecordingRollup}s are always up to date with the {@link RecordingEntry}s.
+         *
+         * @param entries the {@link RecordingEntry}s
+         */
+        private void updateRollups(@NonNull final List<RecordingEntry> entries) {
+            final List<RecordingRollup> rollups = new ArrayList<>();
+            for (RecordingEntry entry : entries) {
+                if (mRollupPyramid != null
+                        && mRollupPyramid.getRecordingId() != entry.getRecordingId()) {
+                    flushRollups();
+                }
+                if (mRollupPyramid == null) {
+                    mRollupPyramid = new RollupPyramid(entry.getRecordingId());
+                }
+                rollups.addAll(mRollupPyramid.add(entry));
+            }
+            if (mRollupPyramid != null) {
+                rollups.addAll(mRollupPyramid.getOpen());
+            }
+            mDatabase.getRecordingRollupDao().addOrReplace(rollups);
+        }
+
+        /**
+         * Complete and store the open {@link RecordingRollup}s of the current recording.
+         */
+        private void flushRollups() {
+            if (mRollupPyramid == null) {
+                return;
+            }
+            try {
+                mDatabase.getRecordingRollupDao().addOrReplace(mRollupPyramid.flush());
+            } catch (final IllegalStateException exception) {
+                Log.e(TAG, "flushRollups: save rollups failed: ", exception);
+            }
+            mRollupPyramid = null;
+        }
     }
 }
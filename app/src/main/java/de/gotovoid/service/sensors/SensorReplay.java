@@ -0,0 +1,301 @@
+package de.gotovoid.service.sensors;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.gotovoid.database.model.CalibratedAltitude;
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingWithEntries;
+import de.gotovoid.domain.model.GPXParser;
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+import de.gotovoid.domain.model.track.PackedTrack;
+import de.gotovoid.domain.model.track.TrackPlayback;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Replays a recorded track through a {@link LocationSensor} and a {@link PressureSensor}, so the
+ * recording pipeline can be run without the hardware sensors.
+ * Every point of the track is delivered as location. The pressure is computed from the
+ * altitude interpolated by a {@link TrackPlayback} and delivered with the sampling period of
+ * the hardware sensor.
+ * The samples keep the time stamps of the track, so the results do not depend on the
+ * acceleration. The acceleration only changes how fast the samples are delivered, measured by
+ * the injected {@link Clock}.
+ */
+public class SensorReplay implements Runnable {
+    private static final String TAG = SensorReplay.class.getSimpleName();
+    /**
+     * Minimal acceleration, replay in real time.
+     */
+    public static final int MIN_ACCELERATION = 1;
+    /**
+     * Maximal acceleration.
+     */
+    public static final int MAX_ACCELERATION = 1000;
+    /**
+     * Interval in milliseconds between the points of a track without time stamps,
+     * as the points of a gpx file.
+     */
+    static final long DEFAULT_INTERVAL = 1000;
+    /**
+     * Period in milliseconds between two pressure readings.
+     */
+    static final long PRESSURE_PERIOD =
+            TimeUnit.MICROSECONDS.toMillis(PressureSensor.SAMPLING_PERIOD_US);
+    /**
+     * Accuracy in meters of the replayed locations.
+     */
+    static final float ACCURACY = 5;
+
+    /**
+     * The {@link PackedTrack} to replay.
+     */
+    private final PackedTrack mTrack;
+    /**
+     * The {@link TrackPlayback} to interpolate the altitude for the pressure readings.
+     */
+    private final TrackPlayback mPlayback;
+    /**
+     * The {@link CalibratedAltitude} to compute the pressure from the altitude.
+     */
+    private final CalibratedAltitude mCalibratedAltitude;
+    /**
+     * The time acceleration.
+     */
+    private final int mAcceleration;
+    /**
+     * The {@link Clock} to pace the replay.
+     */
+    private final Clock mClock;
+    /**
+     * The {@link Clock} of the replayed sensor data, showing the time of the track.
+     */
+    private final TrackClock mTrackClock = new TrackClock();
+    /**
+     * The {@link LocationSensor} delivering the locations.
+     */
+    private final ReplayLocationSensor mLocationSensor = new ReplayLocationSensor(mTrackClock);
+    /**
+     * The {@link PressureSensor} delivering the pressure readings.
+     */
+    private final ReplayPressureSensor mPressureSensor = new ReplayPressureSensor(mTrackClock);
+    /**
+     * True if the replay was cancelled.
+     */
+    private volatile boolean mIsCancelled;
+
+    /**
+     * Constructor taking the {@link RecordingEntry}s to replay.
+     * If the time stamps of the {@link RecordingEntry}s are not ascending, the points are
+     * replayed with {@link #DEFAULT_INTERVAL}.
+     *
+     * @param entries            the {@link RecordingEntry}s in the order of recording
+     * @param calibratedAltitude the {@link CalibratedAltitude} to compute the pressure with
+     * @param acceleration       the time acceleration between {@link #MIN_ACCELERATION} and
+     *                           {@link #MAX_ACCELERATION}
+     * @param clock              the {@link Clock} to pace the replay
+     */
+    public SensorReplay(@NonNull final List<RecordingEntry> entries,
+                        @NonNull final CalibratedAltitude calibratedAltitude,
+                        final int acceleration,
+                        @NonNull final Clock clock) {
+        if (acceleration < MIN_ACCELERATION || acceleration > MAX_ACCELERATION) {
+            throw new IllegalArgumentException("acceleration out of range: " + acceleration);
+        }
+        mTrack = createTrack(entries);
+        mPlayback = new TrackPlayback(mTrack);
+        mCalibratedAltitude = calibratedAltitude;
+        mAcceleration = acceleration;
+        mClock = clock;
+    }
+
+    /**
+     * Create a {@link SensorReplay} for the track of a gpx file.
+     *
+     * @param stream             the {@link InputStream} of the gpx file
+     * @param calibratedAltitude the {@link CalibratedAltitude} to compute the pressure with
+     * @param acceleration       the time acceleration between {@link #MIN_ACCELERATION} and
+     *                           {@link #MAX_ACCELERATION}
+     * @param clock              the {@link Clock} to pace the replay
+     * @return the {@link SensorReplay}, null if the file could not be parsed
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    @Nullable
+    public static SensorReplay fromGpx(@NonNull final InputStream stream,
+                                       @NonNull final CalibratedAltitude calibratedAltitude,
+                                       final int acceleration,
+                                       @NonNull final Clock clock)
+            throws IOException, XmlPullParserException {
+        final RecordingWithEntries recording = GPXParser.parseRecording(stream);
+        if (recording == null || recording.getEntries() == null) {
+            return null;
+        }
+        return new SensorReplay(recording.getEntries(), calibratedAltitude, acceleration, clock);
+    }
+
+    /**
+     * Create the {@link PackedTrack} of the {@link RecordingEntry}s.
+     *
+     * @param entries the {@link RecordingEntry}s
+     * @return the {@link PackedTrack}
+     */
+    private static PackedTrack createTrack(@NonNull final List<RecordingEntry> entries) {
+        boolean isAscending = true;
+        for (int i = 1; i < entries.size() && isAscending; i++) {
+            isAscending = entries.get(i).getTimeStamp() > entries.get(i - 1).getTimeStamp();
+        }
+        final PackedTrack track = new PackedTrack(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final RecordingEntry entry = entries.get(i);
+            track.add(isAscending ? entry.getTimeStamp() : i * DEFAULT_INTERVAL,
+                    entry.getLatitude(),
+                    entry.getLongitude(),
+                    entry.getAltitude());
+        }
+        return track;
+    }
+
+    /**
+     * Returns the {@link LocationSensor} delivering the locations.
+     *
+     * @return the {@link LocationSensor}
+     */
+    @NonNull
+    public LocationSensor getLocationSensor() {
+        return mLocationSensor;
+    }
+
+    /**
+     * Returns the {@link PressureSensor} delivering the pressure readings.
+     *
+     * @return the {@link PressureSensor}
+     */
+    @NonNull
+    public PressureSensor getPressureSensor() {
+        return mPressureSensor;
+    }
+
+    /**
+     * Returns the {@link PackedTrack} replayed.
+     *
+     * @return the {@link PackedTrack}
+     */
+    @NonNull
+    public PackedTrack getTrack() {
+        return mTrack;
+    }
+
+    /**
+     * Cancel the replay. The samples already delivered are kept.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+    }
+
+    /**
+     * Replay the track on the calling thread. Returns when all samples are delivered, the
+     * replay is cancelled or the thread is interrupted.
+     * Pressure readings are delivered before a location with the same time stamp, so the
+     * altitude is known when the location arrives.
+     */
+    @Override
+    public void run() {
+        Log.d(TAG, "run() called: " + mTrack.size() + " points, acceleration: "
+                + mAcceleration);
+        if (mTrack.isEmpty()) {
+            return;
+        }
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        final long trackStart = mPlayback.getStartTime();
+        final long trackEnd = mPlayback.getEndTime();
+        final long start = mClock.elapsedRealtime();
+        long pressureTime = trackStart;
+        int index = 0;
+        try {
+            while (!mIsCancelled && (index < mTrack.size() || pressureTime <= trackEnd)) {
+                final long locationTime =
+                        index < mTrack.size() ? mTrack.getTimeStamp(index) : Long.MAX_VALUE;
+                final long time = Math.min(locationTime, pressureTime);
+                waitUntil(start + (time - trackStart) / mAcceleration);
+                mTrackClock.mTime = time;
+                if (pressureTime == time) {
+                    mPlayback.getSample(pressureTime, sample);
+                    mPressureSensor.replay(
+                            mCalibratedAltitude.calculatePressure(sample.getAltitude()),
+                            pressureTime);
+                    pressureTime += PRESSURE_PERIOD;
+                }
+                if (locationTime == time) {
+                    mLocationSensor.replay(new ExtendedGeoCoordinate(
+                                    mTrack.getLatitude(index),
+                                    mTrack.getLongitude(index),
+                                    mTrack.getAltitude(index),
+                                    ACCURACY),
+                            locationTime);
+                    index++;
+                }
+            }
+        } catch (final InterruptedException exception) {
+            Log.d(TAG, "run: interrupted");
+            Thread.currentThread().interrupt();
+        }
+        mLocationSensor.flush();
+    }
+
+    /**
+     * Wait until the {@link Clock} reaches the given time.
+     *
+     * @param time the time since boot in milliseconds
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private void waitUntil(final long time) throws InterruptedException {
+        final long delay = time - mClock.elapsedRealtime();
+        if (delay > 0) {
+            mClock.sleep(delay);
+        }
+    }
+
+    /**
+     * {@link Clock} showing the time of the track at the current replay position. The wall
+     * clock and the time since boot are the same, so the replayed sensor data is recorded with
+     * the time stamps of the track.
+     */
+    private class TrackClock implements Clock {
+        /**
+         * Time of the track in milliseconds, only written by the replaying thread.
+         */
+        private volatile long mTime;
+
+        @Override
+        public long currentTimeMillis() {
+            return mTime;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return mTime;
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(mTime);
+        }
+
+        @Override
+        public void sleep(final long millis) throws InterruptedException {
+            mClock.sleep(millis / mAcceleration);
+        }
+    }
+}
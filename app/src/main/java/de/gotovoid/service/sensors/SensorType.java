@@ -4,6 +4,52 @@ package de.gotovoid.service.sensors;
  * Created by DJ on 16/02/18.
  */
 
+/**
+ * The types of sensor data provided by the sensor service.
+ * Each type defines the window and tolerance used by the {@link AbstractSensor.StateEvaluator}
+ * to decide when the sensor is calibrated. A higher sample rate needs a bigger window to cover
+ * the same period of time.
+ */
 public enum SensorType {
-    PRESSURE, LOCATION, RECORDING;
+    PRESSURE(4, .1),
+    LOCATION(5, 40),
+    RECORDING(5, 5);
+
+    /**
+     * Number of sensor values evaluated for the {@link SensorState}.
+     */
+    private final int mStateWindow;
+    /**
+     * Average difference between adjacent sensor values below which the sensor is running.
+     */
+    private final double mStateTolerance;
+
+    /**
+     * Constructor taking the window and tolerance of the state evaluation.
+     *
+     * @param stateWindow    number of evaluated sensor values
+     * @param stateTolerance tolerance of the average difference
+     */
+    SensorType(final int stateWindow, final double stateTolerance) {
+        mStateWindow = stateWindow;
+        mStateTolerance = stateTolerance;
+    }
+
+    /**
+     * Returns the number of sensor values evaluated for the {@link SensorState}.
+     *
+     * @return the window size
+     */
+    public int getStateWindow() {
+        return mStateWindow;
+    }
+
+    /**
+     * Returns the tolerance of the average difference between adjacent sensor values.
+     *
+     * @return the tolerance
+     */
+    public double getStateTolerance() {
+        return mStateTolerance;
+    }
 }
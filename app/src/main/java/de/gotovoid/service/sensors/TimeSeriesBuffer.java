@@ -0,0 +1,140 @@
+package de.gotovoid.service.sensors;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Small ring buffer of time stamped values, to look up the value at any time covered by the
+ * buffer.
+ * The buffer is written by a single thread and can be read by other threads without locks.
+ * Every value is stored in an immutable {@link Sample} published by a volatile write, so
+ * readers always see complete values, even while the writer overwrites the oldest slots.
+ */
+class TimeSeriesBuffer {
+    /**
+     * The slots of the ring, null until written.
+     */
+    private final AtomicReferenceArray<Sample> mSamples;
+    /**
+     * Mask to compute the slot of a value, the capacity is a power of two.
+     */
+    private final int mMask;
+    /**
+     * Number of values written, only changed by the writer.
+     */
+    private volatile long mCount;
+
+    /**
+     * Constructor taking the capacity.
+     *
+     * @param capacity number of values to keep, rounded up to a power of two
+     */
+    TimeSeriesBuffer(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mSamples = new AtomicReferenceArray<>(size);
+        mMask = size - 1;
+    }
+
+    /**
+     * Returns the number of values the buffer keeps.
+     *
+     * @return the capacity
+     */
+    int getCapacity() {
+        return mSamples.length();
+    }
+
+    /**
+     * Add a value. Must only be called by one thread.
+     * Values that are not newer than the newest value are ignored.
+     *
+     * @param timeStamp time of the value in milliseconds
+     * @param value     the value
+     * @return true if the value was added
+     */
+    boolean add(final long timeStamp, final float value) {
+        final long count = mCount;
+        if (timeStamp <= getNewestTimeStamp()) {
+            return false;
+        }
+        mSamples.set((int) (count & mMask), new Sample(timeStamp, value));
+        mCount = count + 1;
+        return true;
+    }
+
+    /**
+     * Returns the time stamp of the newest value.
+     *
+     * @return time stamp in milliseconds, {@link Long#MIN_VALUE} if the buffer is empty
+     */
+    long getNewestTimeStamp() {
+        final long count = mCount;
+        if (count == 0) {
+            return Long.MIN_VALUE;
+        }
+        return mSamples.get((int) ((count - 1) & mMask)).mTimeStamp;
+    }
+
+    /**
+     * Returns the value at the given time. Between two values, the value is interpolated
+     * linearly. Before the oldest and after the newest value, that value is used if it is not
+     * older than the given maximal age.
+     * If the writer overwrites the slots while they are read, the value may be interpolated
+     * between values further apart, but never from incomplete values.
+     *
+     * @param timeStamp time in milliseconds
+     * @param maxAge    maximal time in milliseconds between the given time and the value used
+     *                  if the time is not covered by the buffer
+     * @return the value, {@link Float#NaN} if there is no value for the time
+     */
+    float get(final long timeStamp, final long maxAge) {
+        final long count = mCount;
+        final long oldest = Math.max(0, count - mSamples.length());
+        Sample before = null;
+        Sample after = null;
+        for (long index = count - 1; index >= oldest; index--) {
+            final Sample sample = mSamples.get((int) (index & mMask));
+            if (sample.mTimeStamp <= timeStamp) {
+                before = sample;
+                break;
+            }
+            if (after == null || sample.mTimeStamp < after.mTimeStamp) {
+                after = sample;
+            }
+        }
+        if (before == null && after == null) {
+            return Float.NaN;
+        }
+        if (after == null) {
+            return timeStamp - before.mTimeStamp <= maxAge ? before.mValue : Float.NaN;
+        }
+        if (before == null) {
+            return after.mTimeStamp - timeStamp <= maxAge ? after.mValue : Float.NaN;
+        }
+        final float fraction = (float) (timeStamp - before.mTimeStamp)
+                / (after.mTimeStamp - before.mTimeStamp);
+        return before.mValue + (after.mValue - before.mValue) * fraction;
+    }
+
+    /**
+     * Immutable time stamped value.
+     */
+    private static class Sample {
+        private final long mTimeStamp;
+        private final float mValue;
+
+        /**
+         * Constructor taking the time stamp and value.
+         *
+         * @param timeStamp time of the value in milliseconds
+         * @param value     the value
+         */
+        private Sample(final long timeStamp, final float value) {
+            mTimeStamp = timeStamp;
+            mValue = value;
+        }
+    }
+}
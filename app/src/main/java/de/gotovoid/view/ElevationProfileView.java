@@ -0,0 +1,248 @@
+package de.gotovoid.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+import java.util.List;
+
+import de.gotovoid.R;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.track.PackedTrack;
+import de.gotovoid.domain.model.track.ProfileDecimator;
+import de.gotovoid.domain.model.track.RollupPyramid;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * View to visualize the altitude of a {@link PackedTrack} over time or distance.
+ * The altitudes are reduced to one column per pixel by a {@link ProfileDecimator}, so drawing
+ * costs the same for any number of points.
+ * All buffers are allocated when the size changes, {@link #onDraw(Canvas)} does not allocate.
+ * While recording, {@link #onTrackChanged()} only adds the new points to the columns.
+ * Stored recordings are drawn from the {@link RecordingRollup}s of one level of their
+ * {@link RollupPyramid} by {@link #setRollups(List)}.
+ */
+public class ElevationProfileView extends View implements IAmbientModeHandler {
+    private static final String TAG = ElevationProfileView.class.getSimpleName();
+
+    /**
+     * {@link Paint} for the profile.
+     */
+    private final Paint mPaint = new Paint();
+    /**
+     * {@link Paint} for the altitude text.
+     */
+    private final Paint mTextPaint = new Paint();
+    /**
+     * The {@link ProfileDecimator} of the current {@link PackedTrack}.
+     */
+    private ProfileDecimator mDecimator;
+    /**
+     * The {@link ProfileDecimator.Axis} to use.
+     */
+    private ProfileDecimator.Axis mAxis = ProfileDecimator.Axis.TIME;
+    /**
+     * Buffer for the lines to draw.
+     */
+    private float[] mLines;
+    /**
+     * True if the ambient mode is currently active.
+     */
+    private boolean mIsAmbient = false;
+    /**
+     * Text showing the altitude range.
+     */
+    private String mRangeText;
+
+    /**
+     * Constructor taking the {@link Context}
+     *
+     * @param context the {@link Context}
+     */
+    public ElevationProfileView(@NonNull final Context context) {
+        super(context);
+        init();
+    }
+
+    /**
+     * Constructor taking the {@link Context} and {@link AttributeSet}.
+     *
+     * @param context the {@link Context}
+     * @param attrs   the {@link AttributeSet}
+     */
+    public ElevationProfileView(@NonNull final Context context,
+                                @Nullable final AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    /**
+     * Constructor taking the {@link Context}, {@link AttributeSet}, and style.
+     *
+     * @param context      the {@link Context}
+     * @param attrs        the {@link AttributeSet}
+     * @param defStyleAttr style
+     */
+    public ElevationProfileView(@NonNull final Context context,
+                                @Nullable final AttributeSet attrs,
+                                final int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    /**
+     * Initialize the {@link ElevationProfileView}.
+     */
+    private void init() {
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTextPaint.setStyle(Paint.Style.FILL);
+        mTextPaint.setTextSize(8 * getResources().getDisplayMetrics().density);
+        setPaint();
+    }
+
+    /**
+     * Set the {@link PackedTrack} to show.
+     * If the same {@link PackedTrack} is set again, only the new points are added.
+     *
+     * @param track the {@link PackedTrack}
+     * @param axis  the {@link ProfileDecimator.Axis} to use for the horizontal axis
+     */
+    public void setTrack(@Nullable final PackedTrack track,
+                         @NonNull final ProfileDecimator.Axis axis) {
+        if (track == null) {
+            mDecimator = null;
+            invalidate();
+            return;
+        }
+        if (mDecimator != null && mDecimator.getTrack() == track && mAxis == axis) {
+            onTrackChanged();
+            return;
+        }
+        mAxis = axis;
+        mDecimator = new ProfileDecimator(track, axis);
+        if (getWidth() > 0) {
+            mDecimator.setWidth(getWidth());
+            updateRangeText();
+        }
+        invalidate();
+    }
+
+    /**
+     * Set the {@link RecordingRollup}s of one level of the {@link RollupPyramid} to show.
+     * The horizontal axis is the time.
+     *
+     * @param rollups the {@link RecordingRollup}s ordered by time
+     */
+    public void setRollups(@Nullable final List<RecordingRollup> rollups) {
+        if (rollups == null) {
+            mDecimator = null;
+            invalidate();
+            return;
+        }
+        if (mDecimator != null && mDecimator.getRollups() == rollups) {
+            return;
+        }
+        mAxis = ProfileDecimator.Axis.TIME;
+        mDecimator = new ProfileDecimator(rollups);
+        if (getWidth() > 0) {
+            mDecimator.setWidth(getWidth());
+            updateRangeText();
+        }
+        invalidate();
+    }
+
+    /**
+     * Add the points appended to the current {@link PackedTrack} since the last update.
+     */
+    public void onTrackChanged() {
+        if (mDecimator != null && mDecimator.getWidth() > 0 && mDecimator.update()) {
+            updateRangeText();
+            invalidate();
+        }
+    }
+
+    /**
+     * Update the text showing the altitude range.
+     */
+    private void updateRangeText() {
+        if (mDecimator == null || mDecimator.getColumns() == 0) {
+            mRangeText = null;
+            return;
+        }
+        mRangeText = Math.round(mDecimator.getMinAltitude()) + "m - "
+                + Math.round(mDecimator.getMaxAltitude()) + "m";
+    }
+
+    @Override
+    protected void onSizeChanged(final int width,
+                                 final int height,
+                                 final int oldWidth,
+                                 final int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        Log.d(TAG, "onSizeChanged() called with: width = [" + width
+                + "], height = [" + height + "]");
+        mLines = new float[Math.max(width, 1) * ProfileDecimator.FLOATS_PER_COLUMN];
+        if (mDecimator != null) {
+            mDecimator.setWidth(width);
+            updateRangeText();
+        }
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        super.onDraw(canvas);
+        if (mDecimator == null || mLines == null) {
+            return;
+        }
+        final float textHeight = mTextPaint.getTextSize();
+        final float stroke = mPaint.getStrokeWidth();
+        final int count = mDecimator.fillLines(mLines,
+                getPaddingLeft(),
+                getPaddingTop() + textHeight + stroke,
+                getWidth() - getPaddingLeft() - getPaddingRight(),
+                getHeight() - getPaddingTop() - getPaddingBottom() - textHeight - 2 * stroke);
+        canvas.drawLines(mLines, 0, count, mPaint);
+        if (mRangeText != null) {
+            canvas.drawText(mRangeText, getPaddingLeft(), getPaddingTop() + textHeight,
+                    mTextPaint);
+        }
+    }
+
+    @Override
+    public void setIsAmbient(final boolean isAmbient) {
+        Log.d(TAG, "setIsAmbient() called with: isAmbient = [" + isAmbient + "]");
+        mIsAmbient = isAmbient;
+        setPaint();
+        invalidate();
+    }
+
+    /**
+     * Set the {@link Paint}s for the current ambient state.
+     */
+    private void setPaint() {
+        if (mIsAmbient) {
+            mPaint.setColor(ContextCompat.getColor(getContext(), R.color.track_path_ambient));
+            mPaint.setStrokeWidth(getResources()
+                    .getDimension(R.dimen.track_path_stroke_width_ambient));
+            mPaint.setAntiAlias(false);
+            mTextPaint.setAntiAlias(false);
+        } else {
+            mPaint.setColor(ContextCompat.getColor(getContext(), R.color.track_path));
+            mPaint.setStrokeWidth(getResources()
+                    .getDimension(R.dimen.track_path_stroke_width));
+            mPaint.setAntiAlias(true);
+            mTextPaint.setAntiAlias(true);
+        }
+        mTextPaint.setColor(ContextCompat.getColor(getContext(), R.color.primary_text));
+    }
+}
@@ -1,6 +1,7 @@
 package de.gotovoid.view;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
@@ -17,6 +18,7 @@ import java.util.List;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.domain.model.geodata.GeoCoordinate;
 import de.gotovoid.domain.model.geodata.GeoData;
+import de.gotovoid.domain.model.track.TrackPlayback;
 import de.gotovoid.domain.model.units.DistanceUnit;
 import de.gotovoid.domain.model.units.UnitValue;
 import de.gotovoid.R;
@@ -32,6 +34,8 @@ import de.gotovoid.R;
  * surrounded by a semi transparent circle.
  * Also draws a legend visualizing the horizontal distance in different steps depending
  * on the total horizontal distance.
+ * The path and the legend are rendered into a cached {@link Bitmap}, so the position of a
+ * {@link TrackPlayback.Sample} can be animated by only redrawing the marker.
  */
 public class GeoCoordinateView extends View implements IAmbientModeHandler {
     private static final String TAG = GeoCoordinateView.class.getSimpleName();
@@ -50,10 +54,22 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
      * The {@link GeoData} to convert the {@link GeoCoordinate}s into screen coordinates.
      */
     private GeoData mPainter;
+    /**
+     * The {@link List} of {@link GeoCoordinate}s the {@link GeoData} was created from.
+     */
+    private List<GeoCoordinate> mCoordinates;
     /**
      * {@link ExtendedGeoCoordinate} the current position.
      */
     private ExtendedGeoCoordinate mCurrentPosition;
+    /**
+     * {@link TrackPlayback.Sample} of the track playback, null if no playback is active.
+     */
+    private TrackPlayback.Sample mPlaybackSample;
+    /**
+     * Cached {@link Bitmap} containing the path and legend.
+     */
+    private Bitmap mTrackCache;
 
     /**
      * Constructor taking the {@link Context}
@@ -106,7 +122,13 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
     public void setGeoData(final List<GeoCoordinate> coordinates) {
         Log.d(TAG, "setGeoData() called with: coordinates = [" + coordinates + "]");
         Log.d(TAG, "setGeoData: isAmbient: " + mIsAmbient);
+        if (mPainter != null && coordinates == mCoordinates) {
+            // Nothing changed, keep the cached track.
+            return;
+        }
+        mCoordinates = coordinates;
         mPainter = new GeoData(coordinates);
+        clearTrackCache();
     }
 
     /**
@@ -122,6 +144,42 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
         mCurrentPosition = position;
     }
 
+    /**
+     * Set the {@link TrackPlayback.Sample} to be shown as playback position.
+     * Only the marker is redrawn, the path is taken from the cache.
+     *
+     * @param sample the {@link TrackPlayback.Sample}, null to hide the playback position
+     */
+    public void setPlaybackSample(@Nullable final TrackPlayback.Sample sample) {
+        mPlaybackSample = sample;
+        invalidate();
+    }
+
+    /**
+     * Drop the cached track, it will be drawn again with the next {@link #onDraw(Canvas)}.
+     */
+    private void clearTrackCache() {
+        if (mTrackCache != null) {
+            mTrackCache.recycle();
+            mTrackCache = null;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(final int width,
+                                 final int height,
+                                 final int oldWidth,
+                                 final int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        clearTrackCache();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        clearTrackCache();
+        super.onDetachedFromWindow();
+    }
+
     @Override
     protected void onDraw(final Canvas canvas) {
         final long timestamp = System.currentTimeMillis();
@@ -131,14 +189,61 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
             return;
         }
         GeoData.Painter painter = mPainter.getPainter(canvas.getWidth(), canvas.getHeight());
-        drawPath(canvas, painter);
-        drawLegend(canvas, painter);
+        drawTrack(canvas, painter);
         if (!mIsAmbient) {
             drawCurrentPosition(canvas, painter);
+            drawPlaybackPosition(canvas, painter);
         }
         Log.d(TAG, "onDraw: time: " + (System.currentTimeMillis() - timestamp));
     }
 
+    /**
+     * Draw the path and the legend from the cached {@link Bitmap}.
+     * The cache is created if it does not exist.
+     *
+     * @param canvas  the {@link Canvas} to draw upon
+     * @param painter the {@link GeoData.Painter}
+     */
+    private void drawTrack(@NonNull final Canvas canvas, @NonNull final GeoData.Painter painter) {
+        if (mTrackCache == null
+                || mTrackCache.getWidth() != canvas.getWidth()
+                || mTrackCache.getHeight() != canvas.getHeight()) {
+            clearTrackCache();
+            mTrackCache = Bitmap.createBitmap(canvas.getWidth(),
+                    canvas.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            final Canvas cacheCanvas = new Canvas(mTrackCache);
+            drawPath(cacheCanvas, painter);
+            drawLegend(cacheCanvas, painter);
+        }
+        canvas.drawBitmap(mTrackCache, 0, 0, null);
+    }
+
+    /**
+     * Draw the position of the {@link TrackPlayback.Sample} along with altitude and speed.
+     *
+     * @param canvas  the {@link Canvas} to draw upon
+     * @param painter the {@link GeoData.Painter}
+     */
+    private void drawPlaybackPosition(@NonNull final Canvas canvas,
+                                      @NonNull final GeoData.Painter painter) {
+        if (mPlaybackSample == null) {
+            return;
+        }
+        final float pointRadius = getResources().getDimension(R.dimen.track_path_location_radius);
+        canvas.drawCircle(painter.getXPos(mPlaybackSample.getLongitude()),
+                painter.getYPos(mPlaybackSample.getLatitude()),
+                pointRadius * 2,
+                mPaint.mPlayback);
+        // Speed is provided in meters per second, show kilometers per hour.
+        final String text = Math.round(mPlaybackSample.getAltitude()) + "m "
+                + Math.round(mPlaybackSample.getSpeed() * 3.6) + "km/h";
+        canvas.drawText(text,
+                (canvas.getWidth() - mPaint.mHighLightText.measureText(text)) / 2,
+                mPaint.mHighLightText.getTextSize(),
+                mPaint.mHighLightText);
+    }
+
     /**
      * Draw the current position and visualize the accuracy using a semi transparent circle.
      * Accuracy will only be drawn when the radius of the circle is larger than 4 dp.
@@ -243,6 +348,7 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
         Log.d(TAG, "setIsAmbient() called with: isAmbient = [" + isAmbient + "]");
         mIsAmbient = isAmbient;
         mPaint.setPaint(mIsAmbient);
+        clearTrackCache();
     }
 
     /**
@@ -255,6 +361,7 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
         private Paint mLocationCenter;
         private Paint mLocationBackground;
         private Paint mLocationBackgroundBorder;
+        private Paint mPlayback;
 
         /**
          * Constructor seting up the default paint.
@@ -281,6 +388,9 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
 
             mLocationBackgroundBorder = new Paint();
             mLocationBackgroundBorder.setStyle(Paint.Style.STROKE);
+
+            mPlayback = new Paint();
+            mPlayback.setStyle(Paint.Style.FILL);
         }
 
         /**
@@ -331,6 +441,10 @@ public class GeoCoordinateView extends View implements IAmbientModeHandler {
             mLocationBackgroundBorder.setColor(ContextCompat.getColor(getContext(),
                     R.color.track_location_primary));
             mLocationBackgroundBorder.setAntiAlias(true);
+
+            mPlayback.setColor(ContextCompat.getColor(getContext(),
+                    R.color.track_playback));
+            mPlayback.setAntiAlias(true);
         }
 
         /**
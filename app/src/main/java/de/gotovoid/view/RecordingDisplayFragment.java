@@ -1,5 +1,8 @@
 package de.gotovoid.view;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.arch.lifecycle.Observer;
 import android.arch.lifecycle.ViewModelProviders;
 import android.os.Bundle;
@@ -7,6 +10,8 @@ import android.os.Environment;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.support.v4.view.InputDeviceCompat;
+import android.support.v4.view.MotionEventCompat;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ViewHolder;
 import android.support.wear.widget.SwipeDismissFrameLayout;
@@ -18,8 +23,10 @@ import android.support.wear.widget.drawer.WearableDrawerLayout;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.LinearInterpolator;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -33,6 +40,10 @@ import de.gotovoid.database.model.RecordingWithEntries;
 import de.gotovoid.domain.model.GPXSerializer;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.domain.model.geodata.GeoCoordinate;
+import de.gotovoid.domain.model.track.PackedTrack;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.track.RollupPyramid;
+import de.gotovoid.domain.model.track.TrackPlayback;
 import de.gotovoid.service.repository.LocationRepository;
 import de.gotovoid.service.sensors.AbstractSensor;
 import de.gotovoid.view.model.RecordingDisplayViewModel;
@@ -42,7 +53,9 @@ import de.gotovoid.database.model.RecordingEntry;
 /**
  * This fragment shows a single recording.
  * It shows the GPS coordinates in a {@link GeoCoordinateView} and track attributes in a
- * {@link RecyclerView}.
+ * {@link RecyclerView}, starting with the altitude profile in an {@link ElevationProfileView}.
+ * The recording can be played back in the {@link GeoCoordinateView}. While the playback is
+ * paused, the rotary input scrubs along the timeline.
  * <p>
  * Created by DJ on 05/01/18.
  */
@@ -50,6 +63,14 @@ import de.gotovoid.database.model.RecordingEntry;
 public class RecordingDisplayFragment extends Fragment implements IUpdateableAmbientModeHandler {
     private static final String TAG = RecordingDisplayFragment.class.getSimpleName();
     public static final String RECORDING_ID_KEY = TAG.toLowerCase() + "_recording_id";
+    /**
+     * Duration of the playback of a whole recording in milliseconds.
+     */
+    private static final long PLAYBACK_DURATION = 30000;
+    /**
+     * Number of rotary steps to scrub through the whole recording.
+     */
+    private static final int SCRUB_STEPS = 100;
 
     /**
      * Root layout to enable dismiss of the {@link Fragment} with a swipe.
@@ -60,6 +81,28 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
     private WearableDrawerLayout mDrawer;
     private WearableActionDrawerView mActionDrawerView;
     private DisplayAdapter mAdapter;
+    /**
+     * The {@link PackedTrack} of the displayed recording.
+     * Entries added to the recording are appended.
+     */
+    private PackedTrack mTrack;
+    /**
+     * The {@link RecordingRollup}s of the {@link RollupPyramid} level the altitude profile
+     * is drawn from.
+     */
+    private List<RecordingRollup> mRollups;
+    /**
+     * The {@link TrackPlayback} for the displayed recording.
+     */
+    private TrackPlayback mPlayback;
+    /**
+     * Reused {@link TrackPlayback.Sample} of the current playback position.
+     */
+    private final TrackPlayback.Sample mPlaybackSample = new TrackPlayback.Sample();
+    /**
+     * Drives the playback, null if the playback was not started.
+     */
+    private ValueAnimator mPlaybackAnimator;
 
     @Override
     public void onCreate(final @Nullable Bundle savedInstanceState) {
@@ -117,6 +160,12 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         mDrawer = view.findViewById(R.id.drawer_layout);
         // Request the focus so we can use rotary input devices.
         mDrawer.requestFocus();
+        mDrawer.setOnGenericMotionListener(new View.OnGenericMotionListener() {
+            @Override
+            public boolean onGenericMotion(final View view, final MotionEvent event) {
+                return scrubPlayback(event);
+            }
+        });
         // The ActionDrawerView containing the actions for this screen.
         mActionDrawerView = (WearableActionDrawerView) view.findViewById(R.id.bottom_action_drawer);
         mActionDrawerView.setIsAutoPeekEnabled(false);
@@ -134,6 +183,11 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
                         Log.d(TAG, "onMenuItemClick: save action");
                         saveToFile();
                         break;
+                    case R.id.menu_playback:
+                        Log.d(TAG, "onMenuItemClick: playback");
+                        togglePlayback();
+                        configurePlaybackMenuItem(item);
+                        break;
                 }
                 return false;
             }
@@ -164,15 +218,123 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         });
         MenuItem item = mActionDrawerView.getMenu().findItem(R.id.menu_gps);
         configureGPSMenuItem(item);
+        configurePlaybackMenuItem(mActionDrawerView.getMenu().findItem(R.id.menu_playback));
         return view;
     }
 
     @Override
     public void onPause() {
         mModel.getLocation().removeObservers(this);
+        if (mPlaybackAnimator != null) {
+            mPlaybackAnimator.pause();
+            configurePlaybackMenuItem(mActionDrawerView.getMenu().findItem(R.id.menu_playback));
+        }
         super.onPause();
     }
 
+    @Override
+    public void onDestroyView() {
+        if (mPlaybackAnimator != null) {
+            mPlaybackAnimator.cancel();
+            mPlaybackAnimator = null;
+        }
+        super.onDestroyView();
+    }
+
+    /**
+     * Start, pause or resume the playback of the recording.
+     */
+    private void togglePlayback() {
+        if (mPlayback == null || !mPlayback.canPlay()) {
+            return;
+        }
+        if (mPlaybackAnimator == null) {
+            mPlaybackAnimator = ValueAnimator.ofFloat(0, 1);
+            mPlaybackAnimator.setDuration(PLAYBACK_DURATION);
+            mPlaybackAnimator.setInterpolator(new LinearInterpolator());
+            mPlaybackAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(final ValueAnimator animation) {
+                    showPlayback(animation.getAnimatedFraction());
+                }
+            });
+            mPlaybackAnimator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(final Animator animation) {
+                    configurePlaybackMenuItem(mActionDrawerView.getMenu()
+                            .findItem(R.id.menu_playback));
+                }
+            });
+        }
+        if (mPlaybackAnimator.isPaused()) {
+            mPlaybackAnimator.resume();
+        } else if (mPlaybackAnimator.isRunning()) {
+            mPlaybackAnimator.pause();
+        } else {
+            mPlaybackAnimator.start();
+        }
+    }
+
+    /**
+     * Move the paused playback along the timeline using the rotary input.
+     *
+     * @param event the {@link MotionEvent}
+     * @return true if the event was consumed
+     */
+    private boolean scrubPlayback(final MotionEvent event) {
+        if (mPlaybackAnimator == null
+                || (mPlaybackAnimator.isRunning() && !mPlaybackAnimator.isPaused())) {
+            return false;
+        }
+        if (event.getAction() != MotionEvent.ACTION_SCROLL
+                || !event.isFromSource(InputDeviceCompat.SOURCE_ROTARY_ENCODER)) {
+            return false;
+        }
+        final float delta = -event.getAxisValue(MotionEventCompat.AXIS_SCROLL);
+        final long step = (long) Math.signum(delta) * PLAYBACK_DURATION / SCRUB_STEPS;
+        final long time = Math.max(0, Math.min(PLAYBACK_DURATION,
+                mPlaybackAnimator.getCurrentPlayTime() + step));
+        // Seeking notifies the update listener, which moves the marker.
+        mPlaybackAnimator.setCurrentPlayTime(time);
+        return true;
+    }
+
+    /**
+     * Show the playback position at the given fraction of the recording.
+     * Only the marker of the {@link GeoCoordinateView} is redrawn.
+     *
+     * @param fraction position in the recording between 0 and 1
+     */
+    private void showPlayback(final float fraction) {
+        if (mPlayback == null) {
+            return;
+        }
+        final long time = mPlayback.getStartTime() + (long) (mPlayback.getDuration() * fraction);
+        mPlayback.getSample(time, mPlaybackSample);
+        final GeoCoordinateViewHolder holder = (GeoCoordinateViewHolder) mRecyclerView
+                .findViewHolderForAdapterPosition(0);
+        if (holder != null) {
+            holder.setPlaybackSample(mPlaybackSample);
+        }
+    }
+
+    /**
+     * Sets the text and icon for the playback {@link MenuItem} to represent the current state.
+     *
+     * @param item the {@link MenuItem} to change
+     */
+    private void configurePlaybackMenuItem(final MenuItem item) {
+        if (mPlaybackAnimator != null
+                && mPlaybackAnimator.isRunning()
+                && !mPlaybackAnimator.isPaused()) {
+            item.setTitle("Pause");
+            item.setIcon(R.drawable.ic_pause_white_48dp);
+        } else {
+            item.setTitle("Play");
+            item.setIcon(R.drawable.ic_play_arrow_white_48dp);
+        }
+    }
+
     /**
      * Enable or disable the GPS depending on the current state.
      */
@@ -300,9 +462,13 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
                 } else {
                     location = old.getPosition();
                 }
+                // This is needed for the profile and the playback.
+                updateTrack(recordingEntries);
+                mPlayback = new TrackPlayback(mTrack);
                 // Update the data for the GeoCoordinateView.
                 mAdapter.setHeaderData(new GeoCoordinateHolder(coordinates, location));
                 // Prepare the additional information data.
+                holders.add(new ProfileHolder(mRollups));
                 holders.add(new ShortSummaryHolder(GenericDataHolder.Type.ASCENDED_SUMMARY,
                         (int) ascending));
                 holders.add(new ShortSummaryHolder(GenericDataHolder.Type.DESCENDED_SUMMARY,
@@ -312,6 +478,15 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
             }
         });
 
+        mModel.getRecordingRollups().observe(this, new Observer<List<RecordingRollup>>() {
+            @Override
+            public void onChanged(@Nullable final List<RecordingRollup> rollups) {
+                Log.d(TAG, "onChanged() called with: rollups = [" + rollups + "]");
+                mRollups = rollups;
+                mAdapter.setProfileData(new ProfileHolder(mRollups));
+            }
+        });
+
         mModel.getRecordingWithEntries().observe(this, new Observer<RecordingWithEntries>() {
             @Override
             public void onChanged(@Nullable final RecordingWithEntries recordingWithEntries) {
@@ -320,6 +495,31 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         });
     }
 
+    /**
+     * Update the {@link PackedTrack} with the given {@link RecordingEntry}s.
+     * If the {@link RecordingEntry}s continue the current {@link PackedTrack}, only the new
+     * {@link RecordingEntry}s are appended, otherwise a new {@link PackedTrack} is created.
+     *
+     * @param entries the {@link RecordingEntry}s
+     */
+    private void updateTrack(@Nullable final List<RecordingEntry> entries) {
+        if (entries == null) {
+            mTrack = new PackedTrack();
+            return;
+        }
+        final int size = mTrack == null ? 0 : mTrack.size();
+        final boolean isContinued = size > 0
+                && entries.size() >= size
+                && entries.get(0).getTimeStamp() == mTrack.getTimeStamp(0)
+                && entries.get(size - 1).getTimeStamp() == mTrack.getTimeStamp(size - 1);
+        if (!isContinued) {
+            mTrack = new PackedTrack(entries.size());
+        }
+        for (int i = mTrack.size(); i < entries.size(); i++) {
+            mTrack.add(entries.get(i));
+        }
+    }
+
     /**
      * This class defines a generic data holder object.
      * This class should also enable comparison for {@link android.support.v7.util.DiffUtil}.
@@ -337,7 +537,8 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         enum Type {
             GEO_COORDINATES,
             ASCENDED_SUMMARY,
-            DESCENDED_SUMMARY
+            DESCENDED_SUMMARY,
+            ELEVATION_PROFILE
         }
 
         private final Type mType;
@@ -413,6 +614,21 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         }
     }
 
+    /**
+     * Data holder for the {@link ElevationProfileView}.
+     * Stores the {@link RecordingRollup}s to show the altitude profile for.
+     */
+    private class ProfileHolder extends GenericDataHolder<List<RecordingRollup>> {
+        /**
+         * Constructor taking the {@link RecordingRollup}s.
+         *
+         * @param rollups the {@link RecordingRollup}s, null if not loaded yet
+         */
+        public ProfileHolder(@Nullable final List<RecordingRollup> rollups) {
+            super(Type.ELEVATION_PROFILE, rollups);
+        }
+    }
+
     @Override
     public void onSaveInstanceState(@NonNull final Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -454,6 +670,23 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
             }
             mCoordinateView.setGeoData(data.getData());
             mCoordinateView.setCurrentPosition(data.getPosition());
+            if (mPlaybackAnimator == null) {
+                mCoordinateView.setPlaybackSample(null);
+            } else {
+                mCoordinateView.setPlaybackSample(mPlaybackSample);
+            }
+        }
+
+        /**
+         * Show the {@link TrackPlayback.Sample} in the {@link GeoCoordinateView}.
+         *
+         * @param sample the {@link TrackPlayback.Sample}
+         */
+        public void setPlaybackSample(final TrackPlayback.Sample sample) {
+            if (mCoordinateView == null) {
+                return;
+            }
+            mCoordinateView.setPlaybackSample(sample);
         }
 
     }
@@ -473,6 +706,19 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
         }
     }
 
+    private class ProfileViewHolder extends RecyclerView.ViewHolder {
+        private final ElevationProfileView mProfileView;
+
+        public ProfileViewHolder(final View itemView) {
+            super(itemView);
+            mProfileView = itemView.findViewById(R.id.elevation_profile_view);
+        }
+
+        public void setData(final ProfileHolder data) {
+            mProfileView.setRollups(data.getData());
+        }
+    }
+
     /**
      * Adapter for the {@link RecyclerView}. Has one header entry, being the
      * {@link GeoCoordinateView} that is always available.
@@ -498,6 +744,23 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
             // TODO: implement DiffUtil to notify about item range changes!.
         }
 
+        /**
+         * Replace the {@link ProfileHolder} of the altitude profile, if the data is set.
+         *
+         * @param data the {@link ProfileHolder}
+         */
+        public void setProfileData(final ProfileHolder data) {
+            if (mData == null) {
+                return;
+            }
+            for (int i = 0; i < mData.size(); i++) {
+                if (mData.get(i) instanceof ProfileHolder) {
+                    mData.set(i, data);
+                    notifyItemChanged(i + 1);
+                }
+            }
+        }
+
         @Override
         public ViewHolder onCreateViewHolder(final ViewGroup parent, final int viewType) {
             Log.d(TAG, "onCreateViewHolder() called with: parent = ["
@@ -514,6 +777,10 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
                     view = inflater.inflate(R.layout.recording_list_item, parent, false);
                     viewHolder = new ShortSummaryViewHolder(view);
                     break;
+                case GRAPH_SUMMARY_VIEW:
+                    view = inflater.inflate(R.layout.elevation_profile_list_item, parent, false);
+                    viewHolder = new ProfileViewHolder(view);
+                    break;
                 default:
                     view = null;
                     viewHolder = null;
@@ -532,6 +799,8 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
                 ShortSummaryViewHolder shortViewHolder = (ShortSummaryViewHolder) holder;
                 ShortSummaryHolder shortData = (ShortSummaryHolder) data;
                 shortViewHolder.setData(shortData);
+            } else if (holder instanceof ProfileViewHolder) {
+                ((ProfileViewHolder) holder).setData((ProfileHolder) mData.get(position - 1));
             }
         }
 
@@ -541,7 +810,9 @@ public class RecordingDisplayFragment extends Fragment implements IUpdateableAmb
                 return GEO_COORDINATE_VIEW;
             } else {
                 GenericDataHolder data = mData.get(position - 1);
-                if (GenericDataHolder.Type.ASCENDED_SUMMARY.equals(data.getType())) {
+                if (data instanceof ProfileHolder) {
+                    return GRAPH_SUMMARY_VIEW;
+                } else if (GenericDataHolder.Type.ASCENDED_SUMMARY.equals(data.getType())) {
                     return SHORT_SUMMARY_VIEW;
                 } else {
                     return SHORT_SUMMARY_VIEW;
@@ -4,6 +4,7 @@ import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.support.annotation.NonNull;
@@ -218,7 +219,10 @@ public class CalibratorViewModel extends AndroidViewModel {
          * Constructor.
          */
         public PressureObserver() {
-            super(UPDATE_FREQUENCY, SensorType.PRESSURE);
+            super(UPDATE_FREQUENCY,
+                    SensorType.PRESSURE,
+                    0,
+                    getPreferredTransport(SensorType.PRESSURE, Build.VERSION.SDK_INT));
         }
 
         @Override
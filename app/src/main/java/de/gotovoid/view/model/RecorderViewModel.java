@@ -11,9 +11,12 @@ import android.support.annotation.RestrictTo;
 import android.util.Log;
 
 import java.text.SimpleDateFormat;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.RandomAccess;
 
 import de.gotovoid.database.AppDatabase;
 import de.gotovoid.database.model.Recording;
@@ -21,6 +24,7 @@ import de.gotovoid.database.model.RecordingEntry;
 import de.gotovoid.service.repository.LocationRepository;
 import de.gotovoid.service.repository.RepositoryObserver;
 import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.RecordingDelta;
 import de.gotovoid.service.sensors.SensorState;
 import de.gotovoid.service.sensors.SensorType;
 
@@ -31,10 +35,23 @@ import de.gotovoid.service.sensors.SensorType;
 /**
  * This {@link android.arch.lifecycle.ViewModel} handles all the data needed to show the current
  * state of recording.
+ * The service sends the new {@link RecordingEntry}s as {@link RecordingDelta}s, which are
+ * appended to the track in memory. The track is only read from the database when a
+ * {@link RecordingDelta} is missing, e.g. after reconnecting to the service.
+ * The posted {@link List}s share the array of the track instead of copying it, an entry is
+ * never changed once it was posted.
  */
 public class RecorderViewModel extends AndroidViewModel {
     private static final String TAG = RecorderViewModel.class.getSimpleName();
     private static final long UPDATE_FREQUENCY = 1000;
+    /**
+     * Sequence of the track before it was read from the database.
+     */
+    private static final long NO_SEQUENCE = -1;
+    /**
+     * Initial capacity of the track.
+     */
+    private static final int INITIAL_CAPACITY = 256;
 
     /**
      * Database containing the {@link Recording} data.
@@ -51,7 +68,7 @@ public class RecorderViewModel extends AndroidViewModel {
     /**
      * IObservable for the repository.
      */
-    private final RepositoryObserver<Long> mObserver;
+    private final RepositoryObserver<RecordingDelta> mObserver;
 
     /**
      * The {@link List} of {@link RecordingEntry}s to be displayed.
@@ -62,6 +79,26 @@ public class RecorderViewModel extends AndroidViewModel {
      * The {@link SensorState}.
      */
     private final MutableLiveData<SensorState> mState;
+    /**
+     * The entries of the track of the current recording, only accessed on the
+     * {@link HandlerThread}. The entries below {@link #mTrackSize} are shared with the posted
+     * {@link TrackSnapshot}s and never changed, a new array is allocated instead.
+     */
+    private RecordingEntry[] mTrack = new RecordingEntry[INITIAL_CAPACITY];
+    /**
+     * Number of entries of the track, only accessed on the {@link HandlerThread}.
+     */
+    private int mTrackSize;
+    /**
+     * Id of the {@link Recording} of the track, only accessed on the {@link HandlerThread}.
+     */
+    private long mTrackRecordingId;
+    /**
+     * Sequence of the next {@link RecordingDelta} to be appended to the track,
+     * {@link #NO_SEQUENCE} if the track needs to be read from the database.
+     * Only accessed on the {@link HandlerThread}.
+     */
+    private long mNextSequence = NO_SEQUENCE;
     /**
      * Repository providing sensor data.
      */
@@ -84,27 +121,26 @@ public class RecorderViewModel extends AndroidViewModel {
         /*
          Create the LiveData object for the RecordingEntries.
          This has to be posted new data manually on feedback from the repository, because
-         Room not yet provides events through inter process communication.
+         Room not yet provides events through inter process communication. The service sends
+         the new entries, so the database is only read to catch up.
           */
         mEntries = new MutableLiveData<>();
         mState = new MutableLiveData<>();
-        mObserver = new RepositoryObserver<Long>(
+        mObserver = new RepositoryObserver<RecordingDelta>(
                 UPDATE_FREQUENCY,
                 SensorType.RECORDING) {
 
             @Override
-            public void onChange(final AbstractSensor.Result<Long> result) {
-                Log.d(TAG, "onRecordingUpdate() called with: recordingId = ["
+            public void onChange(final AbstractSensor.Result<RecordingDelta> result) {
+                Log.d(TAG, "onRecordingUpdate() called with: delta = ["
                         + result + "]");
-                if (result == null) {
+                if (result == null || result.getValue() == null) {
                     return;
                 }
                 if (SensorState.RUNNING.equals(result.getSensorState())) {
                     mHandler.post(() -> {
-                        // Get the TrackEntries and update the LiveData.
-                        mEntries.postValue(mDatabase
-                                .getRecordingEntryDao()
-                                .getTrackEntries(result.getValue()));
+                        // Update the track and the LiveData.
+                        mEntries.postValue(applyDelta(result.getValue()));
                         // Update the SensorState LiveData.
                         mState.postValue(result.getSensorState());
                     });
@@ -113,6 +149,69 @@ public class RecorderViewModel extends AndroidViewModel {
         };
     }
 
+    /**
+     * Append the {@link RecordingDelta} to the track. If the track is not in sequence with the
+     * {@link RecordingDelta}, it is read from the database first. Entries the track already
+     * contains are skipped.
+     * Must be called on the {@link HandlerThread}.
+     *
+     * @param delta the {@link RecordingDelta}
+     * @return a {@link TrackSnapshot} of the track
+     */
+    private List<RecordingEntry> applyDelta(@NonNull final RecordingDelta delta) {
+        if (delta.getRecordingId() != mTrackRecordingId
+                || mNextSequence == NO_SEQUENCE
+                || delta.getSequence() > mNextSequence) {
+            Log.d(TAG, "applyDelta: read track from database: " + delta);
+            final List<RecordingEntry> track = mDatabase.getRecordingEntryDao()
+                    .getTrackEntries(delta.getRecordingId());
+            resetTrack(track.size() + delta.getEntries().size());
+            for (int i = 0; i < track.size(); i++) {
+                appendEntry(track.get(i));
+            }
+            mTrackRecordingId = delta.getRecordingId();
+            mNextSequence = mTrackSize;
+            if (mNextSequence < delta.getSequence()) {
+                // The database did not catch up yet, read it again with the next update.
+                mNextSequence = NO_SEQUENCE;
+                return new TrackSnapshot(mTrack, mTrackSize);
+            }
+        }
+        final List<RecordingEntry> entries = delta.getEntries();
+        for (int i = (int) Math.max(0, mNextSequence - delta.getSequence());
+             i < entries.size();
+             i++) {
+            appendEntry(entries.get(i));
+        }
+        mNextSequence = Math.max(mNextSequence, delta.getNextSequence());
+        return new TrackSnapshot(mTrack, mTrackSize);
+    }
+
+    /**
+     * Start an empty track in a new array with at least the given capacity, the array of the
+     * posted {@link TrackSnapshot}s stays unchanged.
+     * Must be called on the {@link HandlerThread}.
+     *
+     * @param capacity the minimal capacity
+     */
+    private void resetTrack(final int capacity) {
+        mTrack = new RecordingEntry[Math.max(INITIAL_CAPACITY, capacity)];
+        mTrackSize = 0;
+    }
+
+    /**
+     * Append the {@link RecordingEntry} to the track, growing the array into a copy if it is
+     * full. Must be called on the {@link HandlerThread}.
+     *
+     * @param entry the {@link RecordingEntry}
+     */
+    private void appendEntry(@NonNull final RecordingEntry entry) {
+        if (mTrackSize == mTrack.length) {
+            mTrack = Arrays.copyOf(mTrack, mTrack.length * 2);
+        }
+        mTrack[mTrackSize++] = entry;
+    }
+
     /**
      * Initialize the {@link RecorderViewModel} with the appropriate {@link LocationRepository}.
      *
@@ -170,6 +269,10 @@ public class RecorderViewModel extends AndroidViewModel {
             final long recordingId = mDatabase.getRecordingDao().add(recording);
 
             Log.d(TAG, "run: start recording id: " + recordingId);
+            // The track of the new recording is empty.
+            resetTrack(INITIAL_CAPACITY);
+            mTrackRecordingId = recordingId;
+            mNextSequence = 0;
             // Tell the repository to start a new recording.
             recording = mDatabase.getRecordingDao().getRecording(recordingId);
             mLocationRepository.startRecording(recording);
@@ -182,6 +285,8 @@ public class RecorderViewModel extends AndroidViewModel {
      */
     public void stopRecording() {
         mLocationRepository.removeObserver(mObserver);
+        // Catch up from the database with the next update.
+        mHandler.post(() -> mNextSequence = NO_SEQUENCE);
         mLocationRepository.stopRecording();
     }
 
@@ -196,4 +301,44 @@ public class RecorderViewModel extends AndroidViewModel {
         super.onCleared();
         mHandlerThread.quitSafely();
     }
+
+    /**
+     * Unmodifiable view of the first entries of a track array. The entries are never changed
+     * once the view is created, so it is posted without copying them.
+     */
+    private static final class TrackSnapshot extends AbstractList<RecordingEntry>
+            implements RandomAccess {
+        /**
+         * The array of the track.
+         */
+        private final RecordingEntry[] mEntries;
+        /**
+         * Number of entries of the view.
+         */
+        private final int mSize;
+
+        /**
+         * Constructor taking the array of the track and the number of its entries.
+         *
+         * @param entries the array of the track
+         * @param size    number of entries
+         */
+        private TrackSnapshot(@NonNull final RecordingEntry[] entries, final int size) {
+            mEntries = entries;
+            mSize = size;
+        }
+
+        @Override
+        public RecordingEntry get(final int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+            }
+            return mEntries[index];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
 }
@@ -3,6 +3,10 @@ package de.gotovoid.view.model;
 import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -14,6 +18,8 @@ import de.gotovoid.service.repository.LocationRepository;
 import de.gotovoid.database.AppDatabase;
 import de.gotovoid.database.model.Recording;
 import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.track.RollupPyramid;
 import de.gotovoid.service.sensors.AbstractSensor;
 
 /**
@@ -31,6 +37,14 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
      * Database containing the {@link Recording} data.
      */
     private final AppDatabase mDatabase;
+    /**
+     * {@link HandlerThread} for database communication.
+     */
+    private final HandlerThread mHandlerThread;
+    /**
+     * {@link Handler} running on the {@link HandlerThread}'s {@link android.os.Looper}.
+     */
+    private final Handler mHandler;
 
     /**
      * Repository for sensor information.
@@ -57,6 +71,16 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
      */
     private LiveData<RecordingWithEntries> mRecordingWithEntries;
 
+    /**
+     * The level of the {@link RollupPyramid} to show the profile with.
+     */
+    private MutableLiveData<Integer> mRollupLevel;
+
+    /**
+     * The {@link RecordingRollup}s of the level to show the profile with.
+     */
+    private LiveData<List<RecordingRollup>> mRecordingRollups;
+
     /**
      * The current location.
      */
@@ -70,6 +94,9 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
     public RecordingDisplayViewModel(@NonNull final Application application) {
         super(application);
         mDatabase = AppDatabase.getDatabaseInstance(application);
+        mHandlerThread = new HandlerThread("Looper");
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
     }
 
     /**
@@ -96,6 +123,43 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
                 .observeTrackEntries(mRecordingId);
         mRecordingWithEntries = mDatabase.getRecordingDao()
                 .observeRecordingWithEntries(mRecordingId);
+        mRollupLevel = new MutableLiveData<>();
+        mRecordingRollups = Transformations.switchMap(mRollupLevel,
+                level -> mDatabase.getRecordingRollupDao().observeRollups(recordingId, level));
+        final int pixels = getApplication().getResources().getDisplayMetrics().widthPixels;
+        mHandler.post(() -> mRollupLevel.postValue(loadRollupLevel(recordingId, pixels)));
+    }
+
+    /**
+     * Determine the level of the {@link RollupPyramid} providing about one
+     * {@link RecordingRollup} per pixel from the coarsest level.
+     * Recordings stored before the {@link RecordingRollup}s existed get their
+     * {@link RecordingRollup}s built from the {@link RecordingEntry}s once.
+     * Must be called on the {@link HandlerThread}.
+     *
+     * @param recordingId id of the {@link Recording}
+     * @param pixels      number of pixels available for the profile
+     * @return the level
+     */
+    private int loadRollupLevel(final long recordingId, final int pixels) {
+        final int coarsest = RollupPyramid.LEVEL_DURATIONS.length - 1;
+        List<RecordingRollup> rollups = mDatabase.getRecordingRollupDao()
+                .getRollups(recordingId, coarsest);
+        if (rollups.isEmpty()) {
+            final List<RecordingEntry> entries = mDatabase.getRecordingEntryDao()
+                    .getTrackEntries(recordingId);
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            Log.d(TAG, "loadRollupLevel: building rollups for " + entries.size() + " entries");
+            mDatabase.getRecordingRollupDao()
+                    .addOrReplace(RollupPyramid.build(recordingId, entries.iterator()));
+            rollups = mDatabase.getRecordingRollupDao().getRollups(recordingId, coarsest);
+        }
+        final long duration = rollups.get(rollups.size() - 1).getStartTime()
+                + RollupPyramid.LEVEL_DURATIONS[coarsest]
+                - rollups.get(0).getStartTime();
+        return RollupPyramid.getLevel(duration, pixels);
     }
 
     /**
@@ -125,6 +189,16 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
         return mRecordingEntries;
     }
 
+    /**
+     * Returns the {@link RecordingRollup}s of the level fitting the display width as
+     * observable.
+     *
+     * @return the {@link RecordingRollup}s ordered by time
+     */
+    public LiveData<List<RecordingRollup>> getRecordingRollups() {
+        return mRecordingRollups;
+    }
+
     /**
      * Returns the {@link Recording} to be displayed as observable.
      *
@@ -154,4 +228,11 @@ public class RecordingDisplayViewModel extends AndroidViewModel {
     public LiveData<RecordingWithEntries> getRecordingWithEntries() {
         return mRecordingWithEntries;
     }
+
+    @Override
+    protected void onCleared() {
+        Log.d(TAG, "onCleared() called");
+        super.onCleared();
+        mHandlerThread.quitSafely();
+    }
 }
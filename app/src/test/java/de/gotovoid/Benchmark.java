@@ -0,0 +1,14 @@
+package de.gotovoid;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * JUnit category of the tests measuring wall-clock times.
+ * The measurements depend on the machine, so they only print their results and do not
+ * assert them. They are excluded from the unit tests and only run with the
+ * {@code benchmark} project property, e.g. {@code ./gradlew test -Pbenchmark}.
+ */
+public interface Benchmark {
+}
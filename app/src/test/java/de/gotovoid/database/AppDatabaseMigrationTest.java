@@ -0,0 +1,87 @@
+package de.gotovoid.database;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.Room;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import de.gotovoid.BuildConfig;
+import de.gotovoid.database.model.Recording;
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.domain.model.track.RollupPyramid;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the {@link android.arch.persistence.room.migration.Migration}s of the
+ * {@link AppDatabase}.
+ * The schemas are not exported, so the version 1 database is created by removing the
+ * {@link de.gotovoid.database.model.RecordingRollup} table from a current database.
+ * Room validates the migrated tables against the entities when opening the database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class AppDatabaseMigrationTest {
+    private static final String DATABASE_NAME = "migration_test_database";
+    private Context mContext;
+
+    @Before
+    public void before() {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void after() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Verify that {@link AppDatabase#MIGRATION_1_2} keeps the existing recordings and that
+     * the {@link de.gotovoid.database.model.RecordingRollup}s can be built for them.
+     */
+    @Test
+    public void testMigration1To2() {
+        AppDatabase database = Room.databaseBuilder(mContext, AppDatabase.class, DATABASE_NAME)
+                .allowMainThreadQueries()
+                .build();
+        final long recordingId = database.getRecordingDao()
+                .add(new Recording("hike", Recording.Type.HIKE, false, 0));
+        database.getRecordingEntryDao().add(new RecordingEntry(recordingId, 0, 10.0, 47.0, 500));
+        database.getRecordingEntryDao().add(new RecordingEntry(recordingId, 1000, 10.0, 47.0, 510));
+        final SupportSQLiteDatabase version1 = database.getOpenHelper().getWritableDatabase();
+        version1.execSQL("DROP TABLE `recording_rollup`");
+        version1.setVersion(1);
+        database.close();
+
+        database = Room.databaseBuilder(mContext, AppDatabase.class, DATABASE_NAME)
+                .addMigrations(AppDatabase.MIGRATION_1_2)
+                .allowMainThreadQueries()
+                .build();
+        final List<RecordingEntry> entries = database.getRecordingEntryDao()
+                .getTrackEntries(recordingId);
+        assertThat(entries, hasSize(2));
+        assertThat(database.getRecordingRollupDao().getRollups(recordingId, 0), is(empty()));
+
+        database.getRecordingRollupDao()
+                .addOrReplace(RollupPyramid.build(recordingId, entries.iterator()));
+        assertThat(database.getRecordingRollupDao().getRollups(recordingId, 0), hasSize(2));
+        assertThat(database.getRecordingRollupDao()
+                .getRollups(recordingId, RollupPyramid.LEVEL_DURATIONS.length - 1), hasSize(1));
+        database.close();
+    }
+}
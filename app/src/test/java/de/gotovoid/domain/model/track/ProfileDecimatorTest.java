@@ -0,0 +1,276 @@
+package de.gotovoid.domain.model.track;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.gotovoid.Benchmark;
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link ProfileDecimator}.
+ */
+public class ProfileDecimatorTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 100;
+    private static final int DRAWS = 100;
+    private static final int[] TRACK_SIZES = {1000, 100000, 1000000};
+
+    /**
+     * Create a {@link PackedTrack} with random altitudes and irregular time stamps.
+     *
+     * @param random the {@link Random}
+     * @param points number of points
+     * @return the {@link PackedTrack}
+     */
+    private static PackedTrack createTrack(final Random random, final int points) {
+        final PackedTrack track = new PackedTrack(points);
+        addPoints(random, track, points);
+        return track;
+    }
+
+    /**
+     * Add points with random altitudes and irregular time stamps to the given
+     * {@link PackedTrack}.
+     *
+     * @param random the {@link Random}
+     * @param track  the {@link PackedTrack}
+     * @param points number of points to add
+     */
+    private static void addPoints(final Random random,
+                                  final PackedTrack track,
+                                  final int points) {
+        long time = track.isEmpty() ? 0 : track.getTimeStamp(track.size() - 1);
+        int altitude = track.isEmpty() ? 1000 : track.getAltitude(track.size() - 1);
+        for (int i = 0; i < points; i++) {
+            time += 500 + random.nextInt(1000);
+            altitude += random.nextInt(21) - 10;
+            track.add(time, 47.0, 10.0, altitude);
+        }
+    }
+
+    /**
+     * Verify that every column contains first, last, min and max of the points falling into
+     * the column, using the column size chosen by the {@link ProfileDecimator}.
+     *
+     * @param decimator the {@link ProfileDecimator}
+     */
+    private static void verifyColumns(final ProfileDecimator decimator) {
+        final PackedTrack track = decimator.getTrack();
+        final int width = decimator.getWidth();
+        final int[] counts = new int[width];
+        final float[] first = new float[width];
+        final float[] last = new float[width];
+        final float[] min = new float[width];
+        final float[] max = new float[width];
+        for (int i = 0; i < track.size(); i++) {
+            final int column = (int) ((track.getTimeStamp(i) - track.getTimeStamp(0))
+                    / decimator.getColumnSize());
+            final float altitude = track.getAltitude(i);
+            if (counts[column] == 0) {
+                first[column] = altitude;
+                min[column] = altitude;
+                max[column] = altitude;
+            }
+            last[column] = altitude;
+            min[column] = Math.min(min[column], altitude);
+            max[column] = Math.max(max[column], altitude);
+            counts[column]++;
+        }
+        for (int column = 0; column < width; column++) {
+            assertThat(decimator.getCount(column), is(counts[column]));
+            if (counts[column] > 0) {
+                assertThat(decimator.getFirst(column), is(first[column]));
+                assertThat(decimator.getLast(column), is(last[column]));
+                assertThat(decimator.getMin(column), is(min[column]));
+                assertThat(decimator.getMax(column), is(max[column]));
+            }
+        }
+    }
+
+    /**
+     * Verify that an empty track does not produce any lines.
+     */
+    @Test
+    public void testEmpty() {
+        final ProfileDecimator decimator =
+                new ProfileDecimator(new PackedTrack(), ProfileDecimator.Axis.TIME);
+        decimator.setWidth(WIDTH);
+        assertThat(decimator.getColumns(), is(0));
+        assertThat(decimator.update(), is(false));
+        assertThat(decimator.fillLines(new float[WIDTH * ProfileDecimator.FLOATS_PER_COLUMN],
+                0, 0, WIDTH, HEIGHT), is(0));
+    }
+
+    /**
+     * Verify the columns of a complete track.
+     */
+    @Test
+    public void testColumns() {
+        final ProfileDecimator decimator = new ProfileDecimator(
+                createTrack(new Random(42), 10000), ProfileDecimator.Axis.TIME);
+        decimator.setWidth(WIDTH);
+        assertThat(decimator.getColumns(), is(WIDTH));
+        verifyColumns(decimator);
+    }
+
+    /**
+     * Verify that appending points keeps the columns correct when columns are merged.
+     */
+    @Test
+    public void testAppend() {
+        final Random random = new Random(42);
+        final PackedTrack track = createTrack(random, 1);
+        final ProfileDecimator decimator =
+                new ProfileDecimator(track, ProfileDecimator.Axis.TIME);
+        decimator.setWidth(WIDTH);
+        for (int i = 0; i < 200; i++) {
+            addPoints(random, track, 1 + random.nextInt(100));
+            assertThat(decimator.update(), is(true));
+            verifyColumns(decimator);
+        }
+        assertThat(decimator.getColumns(), lessThanOrEqualTo(WIDTH));
+        assertThat(decimator.getColumns(), greaterThan(WIDTH / 2));
+        assertThat(decimator.update(), is(false));
+    }
+
+    /**
+     * Verify the lines produced for two columns.
+     */
+    @Test
+    public void testFillLines() {
+        final PackedTrack track = new PackedTrack();
+        track.add(0, 47.0, 10.0, 100);
+        track.add(1, 47.0, 10.0, 200);
+        track.add(2, 47.0, 10.0, 150);
+        track.add(3, 47.0, 10.0, 0);
+        final ProfileDecimator decimator =
+                new ProfileDecimator(track, ProfileDecimator.Axis.TIME);
+        decimator.setWidth(2);
+        final float[] lines = new float[2 * ProfileDecimator.FLOATS_PER_COLUMN];
+        assertThat(decimator.fillLines(lines, 0, 0, 20, 200), is(12));
+        // First column from 100 to 200.
+        assertThat(lines[0], is(5f));
+        assertThat(lines[1], is(100f));
+        assertThat(lines[3], is(0f));
+        // Connection from 200 to 150.
+        assertThat(lines[4], is(5f));
+        assertThat(lines[5], is(0f));
+        assertThat(lines[6], is(15f));
+        assertThat(lines[7], is(50f));
+        // Second column from 0 to 150.
+        assertThat(lines[9], is(200f));
+        assertThat(lines[11], is(50f));
+    }
+
+    /**
+     * Verify that the columns computed from the {@link RecordingRollup}s of one level contain
+     * all points and the altitude range of the track.
+     */
+    @Test
+    public void testRollups() {
+        final PackedTrack track = createTrack(new Random(42), 10000);
+        final List<RecordingEntry> entries = new ArrayList<>();
+        for (int i = 0; i < track.size(); i++) {
+            entries.add(new RecordingEntry(1, track.getTimeStamp(i), 10.0, 47.0,
+                    track.getAltitude(i)));
+        }
+        final List<RecordingRollup> rollups = new ArrayList<>();
+        for (RecordingRollup rollup : RollupPyramid.build(1, entries.iterator())) {
+            if (rollup.getLevel() == 1) {
+                rollups.add(rollup);
+            }
+        }
+        final ProfileDecimator trackDecimator =
+                new ProfileDecimator(track, ProfileDecimator.Axis.TIME);
+        trackDecimator.setWidth(WIDTH);
+        final ProfileDecimator decimator = new ProfileDecimator(rollups);
+        decimator.setWidth(WIDTH);
+        assertThat(decimator.getColumns(), allOf(greaterThan(WIDTH / 2),
+                lessThanOrEqualTo(WIDTH)));
+        int count = 0;
+        for (int column = 0; column < WIDTH; column++) {
+            count += decimator.getCount(column);
+        }
+        assertThat(count, is(track.size()));
+        assertThat(decimator.getMinAltitude(), is(trackDecimator.getMinAltitude()));
+        assertThat(decimator.getMaxAltitude(), is(trackDecimator.getMaxAltitude()));
+        assertThat(decimator.update(), is(false));
+        final float[] lines = new float[WIDTH * ProfileDecimator.FLOATS_PER_COLUMN];
+        assertThat(decimator.fillLines(lines, 0, 0, WIDTH, HEIGHT),
+                allOf(greaterThan(0), lessThanOrEqualTo(lines.length)));
+    }
+
+    /**
+     * Verify that the columns and the lines drawn by the
+     * {@link de.gotovoid.view.ElevationProfileView} only depend on the width for
+     * {@link #TRACK_SIZES} points, also after appending a point.
+     */
+    @Test
+    public void testLargeTracks() {
+        final float[] lines = new float[WIDTH * ProfileDecimator.FLOATS_PER_COLUMN];
+        for (int points : TRACK_SIZES) {
+            final Random random = new Random(42);
+            final PackedTrack track = createTrack(random, points);
+            final ProfileDecimator decimator =
+                    new ProfileDecimator(track, ProfileDecimator.Axis.TIME);
+            decimator.setWidth(WIDTH);
+            verifyColumns(decimator);
+            assertThat(decimator.getColumns(), lessThanOrEqualTo(WIDTH));
+            assertThat(decimator.fillLines(lines, 0, 0, WIDTH, HEIGHT),
+                    allOf(greaterThan(0), lessThanOrEqualTo(lines.length)));
+
+            addPoints(random, track, 1);
+            assertThat(decimator.update(), is(true));
+            verifyColumns(decimator);
+            assertThat(decimator.getColumns(), lessThanOrEqualTo(WIDTH));
+        }
+    }
+
+    /**
+     * Print the time needed to build the columns, to append points and to fill the lines
+     * drawn by the {@link de.gotovoid.view.ElevationProfileView} in onDraw for
+     * {@link #TRACK_SIZES} points.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmark() {
+        final float[] lines = new float[WIDTH * ProfileDecimator.FLOATS_PER_COLUMN];
+        for (int points : TRACK_SIZES) {
+            final Random random = new Random(42);
+            final PackedTrack track = createTrack(random, points);
+            final ProfileDecimator decimator =
+                    new ProfileDecimator(track, ProfileDecimator.Axis.TIME);
+
+            long timestamp = System.nanoTime();
+            decimator.setWidth(WIDTH);
+            final long buildTime = System.nanoTime() - timestamp;
+
+            timestamp = System.nanoTime();
+            for (int i = 0; i < DRAWS; i++) {
+                decimator.fillLines(lines, 0, 0, WIDTH, HEIGHT);
+            }
+            final long drawTime = (System.nanoTime() - timestamp) / DRAWS;
+
+            addPoints(random, track, 1);
+            timestamp = System.nanoTime();
+            decimator.update();
+            final long appendTime = System.nanoTime() - timestamp;
+
+            System.out.println("ProfileDecimator " + points + " points: build "
+                    + buildTime / 1000 + "us, draw " + drawTime / 1000
+                    + "us, append " + appendTime / 1000 + "us");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.gotovoid.domain.model.track;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link RollupPyramid}.
+ */
+public class RollupPyramidTest {
+    private static final long RECORDING_ID = 123;
+    private static final double TOLERANCE = 0.000001;
+
+    /**
+     * Returns the {@link RecordingRollup}s of the given level.
+     *
+     * @param rollups all {@link RecordingRollup}s
+     * @param level   the level
+     * @return the {@link RecordingRollup}s of the level
+     */
+    private static List<RecordingRollup> getLevel(final List<RecordingRollup> rollups,
+                                                  final int level) {
+        final List<RecordingRollup> result = new ArrayList<>();
+        for (RecordingRollup rollup : rollups) {
+            if (rollup.getLevel() == level) {
+                result.add(rollup);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Verify that buckets are only completed once a point after their end is added.
+     */
+    @Test
+    public void testIncremental() {
+        final RollupPyramid pyramid = new RollupPyramid(RECORDING_ID);
+        assertThat(pyramid.add(1000, 47.0, 10.0, 100), is(empty()));
+        assertThat(pyramid.add(1500, 47.0, 10.0, 200), is(empty()));
+        assertThat(pyramid.getOpen().size(), is(RollupPyramid.LEVEL_DURATIONS.length));
+
+        final List<RecordingRollup> completed = pyramid.add(2000, 47.0, 10.0, 300);
+        assertThat(completed.size(), is(1));
+        final RecordingRollup rollup = completed.get(0);
+        assertThat(rollup.getRecordingId(), is(RECORDING_ID));
+        assertThat(rollup.getLevel(), is(0));
+        assertThat(rollup.getStartTime(), is(1000L));
+        assertThat(rollup.getCount(), is(2));
+        assertThat(rollup.getMinAltitude(), is(100));
+        assertThat(rollup.getMaxAltitude(), is(200));
+        assertThat(rollup.getAvgAltitude(), closeTo(150, TOLERANCE));
+
+        final List<RecordingRollup> flushed = pyramid.flush();
+        assertThat(flushed.size(), is(RollupPyramid.LEVEL_DURATIONS.length));
+        assertThat(getLevel(flushed, 1).get(0).getCount(), is(3));
+        assertThat(getLevel(flushed, 1).get(0).getAvgAltitude(), closeTo(200, TOLERANCE));
+        assertThat(pyramid.getOpen(), is(empty()));
+    }
+
+    /**
+     * Verify the aggregates of all levels over a longer track.
+     */
+    @Test
+    public void testLevels() {
+        final List<RecordingEntry> entries = new ArrayList<>();
+        // One hour with a point every second.
+        for (int i = 0; i < 3600; i++) {
+            entries.add(new RecordingEntry(RECORDING_ID, i * 1000L,
+                    10.0 + i * 0.0001, 47.0, i % 100));
+        }
+        final List<RecordingRollup> rollups =
+                RollupPyramid.build(RECORDING_ID, entries.iterator());
+        assertThat(getLevel(rollups, 0).size(), is(3600));
+        assertThat(getLevel(rollups, 1).size(), is(360));
+        assertThat(getLevel(rollups, 2).size(), is(60));
+        assertThat(getLevel(rollups, 3).size(), is(6));
+
+        final RecordingRollup minute = getLevel(rollups, 2).get(1);
+        assertThat(minute.getStartTime(), is(60000L));
+        assertThat(minute.getCount(), is(60));
+        assertThat(minute.getMinAltitude(), is(0));
+        assertThat(minute.getMaxAltitude(), is(99));
+
+        final double total = PackedTrack.fromEntries(entries).getTotalDistance();
+        for (int level = 0; level < RollupPyramid.LEVEL_DURATIONS.length; level++) {
+            double distance = 0;
+            int count = 0;
+            for (RecordingRollup rollup : getLevel(rollups, level)) {
+                distance += rollup.getDistance();
+                count += rollup.getCount();
+            }
+            assertThat(distance, closeTo(total, 0.001));
+            assertThat(count, is(entries.size()));
+        }
+    }
+
+    /**
+     * Verify the selection of the level for the chart resolution.
+     */
+    @Test
+    public void testGetLevel() {
+        // One minute on 200 pixels needs the finest level.
+        assertThat(RollupPyramid.getLevel(60000, 200), is(0));
+        // One hour on 200 pixels: 18 s per pixel.
+        assertThat(RollupPyramid.getLevel(3600000, 200), is(1));
+        // Ten hours on 200 pixels: 3 min per pixel.
+        assertThat(RollupPyramid.getLevel(36000000, 200), is(2));
+        // Hundred hours on 200 pixels: 30 min per pixel.
+        assertThat(RollupPyramid.getLevel(360000000, 200), is(3));
+    }
+}
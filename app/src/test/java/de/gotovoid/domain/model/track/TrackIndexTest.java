@@ -0,0 +1,220 @@
+package de.gotovoid.domain.model.track;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+import de.gotovoid.Benchmark;
+import de.gotovoid.domain.model.geodata.GeoCoordinate;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link TrackIndex}.
+ */
+public class TrackIndexTest {
+    private static final int SEGMENTS = 100000;
+    private static final int QUERIES = 500;
+    private static final int BENCHMARK_QUERIES = 2000;
+    private static final double TOLERANCE = 0.001;
+
+    private Random mRandom;
+
+    /**
+     * Prepare the test.
+     */
+    @Before
+    public void before() {
+        mRandom = new Random(42);
+    }
+
+    /**
+     * Create a random walk {@link PackedTrack} with the given number of segments.
+     *
+     * @param segments number of segments
+     * @return the {@link PackedTrack}
+     */
+    private PackedTrack createTrack(final int segments) {
+        final PackedTrack track = new PackedTrack(segments + 1);
+        double latitude = 47.5;
+        double longitude = 10.2;
+        double heading = 0;
+        for (int i = 0; i <= segments; i++) {
+            track.add(i * 1000L, latitude, longitude, 1000 + i % 100);
+            heading += (mRandom.nextDouble() - 0.5) * 0.5;
+            // About 5 to 15 meters per segment.
+            final double step = 0.00005 + mRandom.nextDouble() * 0.0001;
+            latitude += Math.cos(heading) * step;
+            longitude += Math.sin(heading) * step;
+        }
+        return track;
+    }
+
+    /**
+     * Find the nearest segment by scanning all segments.
+     * Uses the same projection as the {@link TrackIndex}.
+     *
+     * @param track        the {@link PackedTrack}
+     * @param metersPerLng meters per degree longitude used for the projection
+     * @param latitude     the latitude
+     * @param longitude    the longitude
+     * @return the distance to the closest segment
+     */
+    private static double findNearestLinear(final PackedTrack track,
+                                            final double metersPerLng,
+                                            final double latitude,
+                                            final double longitude) {
+        final double metersPerLat = Math.toRadians(GeoCoordinate.EARTH_RADIUS);
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < track.size() - 1; i++) {
+            final double ax = (track.getLongitude(i) - longitude) * metersPerLng;
+            final double ay = (track.getLatitude(i) - latitude) * metersPerLat;
+            final double bx = (track.getLongitude(i + 1) - longitude) * metersPerLng;
+            final double by = (track.getLatitude(i + 1) - latitude) * metersPerLat;
+            final double dx = bx - ax;
+            final double dy = by - ay;
+            final double lengthSquared = dx * dx + dy * dy;
+            double fraction = lengthSquared == 0 ? 0 : -(ax * dx + ay * dy) / lengthSquared;
+            fraction = Math.max(0, Math.min(1, fraction));
+            best = Math.min(best, Math.hypot(ax + fraction * dx, ay + fraction * dy));
+        }
+        return best;
+    }
+
+    /**
+     * Returns the meters per degree longitude at the center latitude of the given track.
+     *
+     * @param track the {@link PackedTrack}
+     * @return meters per degree longitude
+     */
+    private static double getMetersPerLng(final PackedTrack track) {
+        double latMin = Double.MAX_VALUE;
+        double latMax = -Double.MAX_VALUE;
+        for (int i = 0; i < track.size(); i++) {
+            latMin = Math.min(latMin, track.getLatitude(i));
+            latMax = Math.max(latMax, track.getLatitude(i));
+        }
+        return Math.toRadians(GeoCoordinate.EARTH_RADIUS)
+                * Math.cos(Math.toRadians((latMin + latMax) / 2));
+    }
+
+    /**
+     * Create query positions close to the given track with up to 500 meters offset.
+     *
+     * @param track   the {@link PackedTrack}
+     * @param queries number of query positions
+     * @return latitudes and longitudes of the query positions
+     */
+    private double[][] createQueries(final PackedTrack track, final int queries) {
+        final double[][] positions = new double[2][queries];
+        for (int i = 0; i < queries; i++) {
+            final int point = mRandom.nextInt(track.size());
+            positions[0][i] = track.getLatitude(point) + (mRandom.nextDouble() - 0.5) * 0.009;
+            positions[1][i] = track.getLongitude(point) + (mRandom.nextDouble() - 0.5) * 0.013;
+        }
+        return positions;
+    }
+
+    /**
+     * Verify that a track without segments does not return a match.
+     */
+    @Test
+    public void testEmptyTrack() {
+        final PackedTrack track = new PackedTrack();
+        assertThat(new TrackIndex(track).findNearest(1, 1), is(nullValue()));
+        track.add(0, 1, 1, 0);
+        assertThat(new TrackIndex(track).findNearest(1, 1), is(nullValue()));
+    }
+
+    /**
+     * Verify the distance and progress on a straight track.
+     */
+    @Test
+    public void testStraightTrack() {
+        final PackedTrack track = new PackedTrack();
+        track.add(0, 47.0, 10.0, 0);
+        track.add(1000, 47.0, 10.01, 0);
+        track.add(2000, 47.0, 10.02, 0);
+        final TrackIndex index = new TrackIndex(track);
+        final TrackIndex.Match match = index.findNearest(47.001, 10.015);
+        assertThat(match.getSegment(), is(1));
+        assertThat(match.getFraction(), closeTo(0.5, TOLERANCE));
+        // 0.001 degrees latitude are about 111 meters.
+        assertThat(match.getDistance(), closeTo(111.2, 0.5));
+        assertThat(match.getRelativeProgress(), closeTo(0.75, TOLERANCE));
+        assertThat(match.getLatitude(), closeTo(47.0, TOLERANCE));
+        assertThat(match.getLongitude(), closeTo(10.015, TOLERANCE));
+    }
+
+    /**
+     * Verify that positions far off the track are matched to the track end.
+     */
+    @Test
+    public void testOutsideGrid() {
+        final PackedTrack track = createTrack(1000);
+        final TrackIndex index = new TrackIndex(track);
+        final TrackIndex.Match match = index.findNearest(48.5, 11.5);
+        assertThat(match.getDistance(),
+                closeTo(findNearestLinear(track, getMetersPerLng(track), 48.5, 11.5),
+                        TOLERANCE));
+    }
+
+    /**
+     * Verify that the index finds the same distance as the linear scan at {@link #SEGMENTS}
+     * segments.
+     */
+    @Test
+    public void testLargeTrack() {
+        final PackedTrack track = createTrack(SEGMENTS);
+        final TrackIndex index = new TrackIndex(track);
+        final double[][] positions = createQueries(track, QUERIES);
+
+        final double metersPerLng = getMetersPerLng(track);
+        for (int i = 0; i < QUERIES; i++) {
+            assertThat(index.findNearest(positions[0][i], positions[1][i]).getDistance(),
+                    closeTo(findNearestLinear(track, metersPerLng,
+                            positions[0][i], positions[1][i]), TOLERANCE));
+        }
+    }
+
+    /**
+     * Print the build time of the index and the query times of the index and the linear scan
+     * at {@link #SEGMENTS} segments.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmark() {
+        final PackedTrack track = createTrack(SEGMENTS);
+
+        long timestamp = System.nanoTime();
+        final TrackIndex index = new TrackIndex(track);
+        final long buildTime = System.nanoTime() - timestamp;
+
+        final double[][] positions = createQueries(track, BENCHMARK_QUERIES);
+        timestamp = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            index.findNearest(positions[0][i], positions[1][i]);
+        }
+        final long indexTime = System.nanoTime() - timestamp;
+
+        final int linearQueries = BENCHMARK_QUERIES / 10;
+        final double metersPerLng = getMetersPerLng(track);
+        timestamp = System.nanoTime();
+        for (int i = 0; i < linearQueries; i++) {
+            findNearestLinear(track, metersPerLng, positions[0][i], positions[1][i]);
+        }
+        final long linearTime = System.nanoTime() - timestamp;
+
+        System.out.println("TrackIndex " + SEGMENTS + " segments: build "
+                + buildTime / 1000000 + "ms, indexed query "
+                + indexTime / BENCHMARK_QUERIES / 1000 + "us, linear query "
+                + linearTime / linearQueries / 1000 + "us");
+    }
+}
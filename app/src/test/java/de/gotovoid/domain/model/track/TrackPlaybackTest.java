@@ -0,0 +1,166 @@
+package de.gotovoid.domain.model.track;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import de.gotovoid.Benchmark;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link TrackPlayback}.
+ */
+public class TrackPlaybackTest {
+    private static final double TOLERANCE = 0.000001;
+    private static final int POINTS = 100000;
+    private static final int FRAMES = 100000;
+
+    /**
+     * Create a straight {@link PackedTrack} with a point every second.
+     *
+     * @param points number of points
+     * @return the {@link PackedTrack}
+     */
+    private static PackedTrack createTrack(final int points) {
+        final PackedTrack track = new PackedTrack(points);
+        for (int i = 0; i < points; i++) {
+            track.add(1000 + i * 1000L, 47.0, 10.0 + i * 0.0001, 500 + i);
+        }
+        return track;
+    }
+
+    /**
+     * Verify that an empty track does not provide a {@link TrackPlayback.Sample}.
+     */
+    @Test
+    public void testEmptyTrack() {
+        final TrackPlayback playback = new TrackPlayback(new PackedTrack());
+        assertThat(playback.canPlay(), is(false));
+        assertThat(playback.getDuration(), is(0L));
+        assertThat(playback.getSample(0, new TrackPlayback.Sample()), is(false));
+    }
+
+    /**
+     * Verify that a track with a single point provides that point.
+     */
+    @Test
+    public void testSinglePoint() {
+        final PackedTrack track = new PackedTrack();
+        track.add(1000, 47.0, 10.0, 500);
+        final TrackPlayback playback = new TrackPlayback(track);
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        assertThat(playback.getSample(5000, sample), is(true));
+        assertThat(sample.getTime(), is(1000L));
+        assertThat(sample.getLatitude(), closeTo(47.0, TOLERANCE));
+        assertThat(sample.getAltitude(), closeTo(500, TOLERANCE));
+        assertThat(sample.getSpeed(), closeTo(0, TOLERANCE));
+    }
+
+    /**
+     * Verify the binary search for the point preceding a time stamp.
+     */
+    @Test
+    public void testGetIndex() {
+        final TrackPlayback playback = new TrackPlayback(createTrack(10));
+        assertThat(playback.getIndex(0), is(0));
+        assertThat(playback.getIndex(1000), is(0));
+        assertThat(playback.getIndex(1999), is(0));
+        assertThat(playback.getIndex(2000), is(1));
+        assertThat(playback.getIndex(5500), is(4));
+        assertThat(playback.getIndex(10000), is(9));
+        assertThat(playback.getIndex(20000), is(9));
+    }
+
+    /**
+     * Verify the interpolation between two points.
+     */
+    @Test
+    public void testInterpolation() {
+        final PackedTrack track = createTrack(10);
+        final TrackPlayback playback = new TrackPlayback(track);
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        assertThat(playback.getSample(3250, sample), is(true));
+        assertThat(sample.getIndex(), is(2));
+        assertThat(sample.getLongitude(), closeTo(10.000225, TOLERANCE));
+        assertThat(sample.getAltitude(), closeTo(502.25, TOLERANCE));
+        final double segment = track.getDistance(3) - track.getDistance(2);
+        assertThat(sample.getDistance(),
+                closeTo(track.getDistance(2) + segment / 4, TOLERANCE));
+        assertThat(sample.getSpeed(), closeTo(segment, TOLERANCE));
+    }
+
+    /**
+     * Verify that times outside of the track are clamped to the start and end.
+     */
+    @Test
+    public void testClamping() {
+        final PackedTrack track = createTrack(10);
+        final TrackPlayback playback = new TrackPlayback(track);
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        playback.getSample(0, sample);
+        assertThat(sample.getTime(), is(1000L));
+        assertThat(sample.getLongitude(), closeTo(10.0, TOLERANCE));
+        playback.getSample(100000, sample);
+        assertThat(sample.getTime(), is(10000L));
+        assertThat(sample.getIndex(), is(8));
+        assertThat(sample.getLongitude(), closeTo(10.0009, TOLERANCE));
+        assertThat(sample.getDistance(), closeTo(track.getTotalDistance(), TOLERANCE));
+    }
+
+    /**
+     * Verify that points with equal time stamps do not break the interpolation.
+     */
+    @Test
+    public void testEqualTimeStamps() {
+        final PackedTrack track = new PackedTrack();
+        track.add(1000, 47.0, 10.0, 500);
+        track.add(1000, 47.0, 10.001, 500);
+        track.add(2000, 47.0, 10.002, 500);
+        final TrackPlayback playback = new TrackPlayback(track);
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        playback.getSample(1000, sample);
+        assertThat(sample.getIndex(), is(1));
+        assertThat(sample.getLongitude(), closeTo(10.001, TOLERANCE));
+    }
+
+    /**
+     * Verify the samples of {@link #FRAMES} frames played through a track with
+     * {@link #POINTS} points.
+     */
+    @Test
+    public void testLargeTrack() {
+        final TrackPlayback playback = new TrackPlayback(createTrack(POINTS));
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        final long duration = playback.getDuration();
+        for (int i = 0; i < FRAMES; i++) {
+            final long offset = duration * i / FRAMES;
+            assertThat(playback.getSample(playback.getStartTime() + offset, sample), is(true));
+            assertThat(sample.getIndex(), is((int) Math.min(offset / 1000, POINTS - 2)));
+            assertThat(sample.getAltitude(), closeTo(500 + offset / 1000.0, TOLERANCE));
+        }
+    }
+
+    /**
+     * Print the time of a lookup on a track with {@link #POINTS} points.
+     * One frame at 60 fps leaves about 16 ms, the lookup must only be a fraction of it.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmark() {
+        final TrackPlayback playback = new TrackPlayback(createTrack(POINTS));
+        final TrackPlayback.Sample sample = new TrackPlayback.Sample();
+        final long duration = playback.getDuration();
+        final long timestamp = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            playback.getSample(playback.getStartTime() + duration * i / FRAMES, sample);
+        }
+        final long time = System.nanoTime() - timestamp;
+        System.out.println("TrackPlayback " + POINTS + " points: "
+                + time / FRAMES + "ns per sample");
+    }
+}
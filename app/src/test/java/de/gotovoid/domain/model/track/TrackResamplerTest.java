@@ -0,0 +1,163 @@
+package de.gotovoid.domain.model.track;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.database.access.RecordingEntryDao;
+import de.gotovoid.database.access.RecordingEntryIterator;
+import de.gotovoid.database.model.RecordingEntry;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link TrackResampler}.
+ */
+public class TrackResamplerTest {
+    private static final long RECORDING_ID = 123;
+    private static final long PERIOD = 1000;
+    private static final long MAX_GAP = 5000;
+    private static final double TOLERANCE = 0.000001;
+
+    /**
+     * Verify that no {@link ResampledTrack} is created without points.
+     */
+    @Test
+    public void testEmpty() {
+        assertThat(TrackResampler.resample(new PackedTrack(), PERIOD, MAX_GAP), is(nullValue()));
+    }
+
+    /**
+     * Verify that an invalid period is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPeriod() {
+        new TrackResampler(0, MAX_GAP);
+    }
+
+    /**
+     * Verify the linear interpolation of irregular points onto the time grid.
+     */
+    @Test
+    public void testInterpolation() {
+        final TrackResampler resampler = new TrackResampler(PERIOD, MAX_GAP);
+        resampler.add(10000, 47.0, 10.0, 100);
+        resampler.add(10400, 47.0, 10.0, 140);
+        resampler.add(12500, 47.0, 10.0, 350);
+        resampler.add(13000, 47.0, 10.0, 300);
+        final ResampledTrack track = resampler.getResult();
+        assertThat(track.getStartTime(), is(10000L));
+        assertThat(track.getPeriod(), is(PERIOD));
+        assertThat(track.size(), is(4));
+        assertThat(track.getTime(3), is(13000L));
+        final double[] altitudes = track.getAltitudes();
+        assertThat(altitudes.length, is(4));
+        assertThat(altitudes[0], closeTo(100, TOLERANCE));
+        assertThat(altitudes[1], closeTo(200, TOLERANCE));
+        assertThat(altitudes[2], closeTo(300, TOLERANCE));
+        assertThat(altitudes[3], closeTo(300, TOLERANCE));
+        assertThat(track.getGapCount(), is(0));
+    }
+
+    /**
+     * Verify that samples between points further apart than the maximum gap are marked.
+     */
+    @Test
+    public void testGap() {
+        final TrackResampler resampler = new TrackResampler(PERIOD, MAX_GAP);
+        resampler.add(0, 47.0, 10.0, 100);
+        resampler.add(1000, 47.0, 10.001, 100);
+        resampler.add(11000, 47.0, 10.011, 100);
+        resampler.add(12000, 47.0, 10.012, 100);
+        final ResampledTrack track = resampler.getResult();
+        assertThat(track.size(), is(13));
+        assertThat(track.getGapCount(), is(9));
+        assertThat(track.isGap(1), is(false));
+        assertThat(track.isGap(2), is(true));
+        assertThat(track.isGap(10), is(true));
+        assertThat(track.isGap(11), is(false));
+        // Gap samples are still interpolated.
+        assertThat(track.getLongitude(6), closeTo(10.006, TOLERANCE));
+    }
+
+    /**
+     * Verify that points not newer than the previous point are ignored.
+     */
+    @Test
+    public void testOutOfOrder() {
+        final TrackResampler resampler = new TrackResampler(PERIOD, MAX_GAP);
+        resampler.add(0, 47.0, 10.0, 0);
+        resampler.add(2000, 47.0, 10.0, 200);
+        resampler.add(1500, 47.0, 10.0, 5000);
+        resampler.add(2000, 47.0, 10.0, 5000);
+        resampler.add(3000, 47.0, 10.0, 300);
+        final double[] altitudes = resampler.getResult().getAltitudes();
+        assertThat(altitudes.length, is(4));
+        assertThat(altitudes[1], closeTo(100, TOLERANCE));
+        assertThat(altitudes[2], closeTo(200, TOLERANCE));
+        assertThat(altitudes[3], closeTo(300, TOLERANCE));
+    }
+
+    /**
+     * Verify that resampling from the paged {@link RecordingEntryIterator} creates the same
+     * {@link ResampledTrack} as resampling the whole track at once.
+     */
+    @Test
+    public void testStreaming() {
+        final List<RecordingEntry> entries = new ArrayList<>();
+        long time = 0;
+        for (int i = 0; i < 2500; i++) {
+            // Irregular intervals between 500 and 1500 ms with a gap every 1000 entries.
+            time += 500 + (i * 37) % 1000 + (i % 1000 == 999 ? 20000 : 0);
+            final RecordingEntry entry = new RecordingEntry(RECORDING_ID, time,
+                    10.0 + i * 0.0001, 47.0, 100 + i % 50);
+            entry.setId(i + 1);
+            entries.add(entry);
+        }
+        final RecordingEntryDao dao = Mockito.mock(RecordingEntryDao.class);
+        Mockito.when(dao.getTrackEntriesPage(Mockito.eq(RECORDING_ID),
+                Mockito.anyLong(),
+                Mockito.anyInt()))
+                .thenAnswer(new Answer<List<RecordingEntry>>() {
+                    @Override
+                    public List<RecordingEntry> answer(final InvocationOnMock invocation) {
+                        final long lastId = invocation.getArgument(1);
+                        final int limit = invocation.getArgument(2);
+                        final List<RecordingEntry> page = new ArrayList<>();
+                        for (RecordingEntry entry : entries) {
+                            if (entry.getId() > lastId && page.size() < limit) {
+                                page.add(entry);
+                            }
+                        }
+                        return page;
+                    }
+                });
+
+        final ResampledTrack streamed = TrackResampler.resample(
+                new RecordingEntryIterator(dao, RECORDING_ID, 100), PERIOD, MAX_GAP);
+        final ResampledTrack expected = TrackResampler.resample(
+                PackedTrack.fromEntries(entries), PERIOD, MAX_GAP);
+        // 25 pages and a final empty page.
+        Mockito.verify(dao, Mockito.times(26)).getTrackEntriesPage(Mockito.eq(RECORDING_ID),
+                Mockito.anyLong(),
+                Mockito.anyInt());
+
+        assertThat(streamed.size(), is(expected.size()));
+        assertThat(streamed.getGapCount(), is(expected.getGapCount()));
+        assertThat(streamed.getGapCount(), greaterThan(0));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(streamed.getLongitude(i), closeTo(expected.getLongitude(i), TOLERANCE));
+            assertThat(streamed.getAltitude(i), closeTo(expected.getAltitude(i), TOLERANCE));
+            assertThat(streamed.isGap(i), is(expected.isGap(i)));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.os.Parcel;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.robolectric.ParameterizedRobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -29,6 +30,8 @@ import static org.hamcrest.Matchers.*;
 @RunWith(ParameterizedRobolectricTestRunner.class)
 @Config(constants = BuildConfig.class)
 public class CallbackRegistrationTest {
+    private static final long BATCH_WINDOW = 5000;
+    private static final long AMBIENT_UPDATE_FREQUENCY = 60000;
 
     public SensorType mSensorType;
 
@@ -81,6 +84,25 @@ public class CallbackRegistrationTest {
         assertThat(registration.getType(), is(mSensorType));
         assertThat(registration.getUpdateFrequency(), is(mUpdateFrequency));
         assertThat(registration.getCallbackId(), is(System.identityHashCode(mCallback)));
+        assertThat(registration.getBatchWindow(), is(0L));
+        assertThat(registration.getTransport(), is(CallbackRegistration.Transport.BINDER));
+        assertThat(registration.getAmbientUpdateFrequency(), is(mUpdateFrequency));
+    }
+
+    /**
+     * Verifies the update frequency in ambient mode.
+     */
+    @Test
+    public void verifyAmbientUpdateFrequency() {
+        final CallbackRegistration registration = new CallbackRegistration(mSensorType,
+                mCallback,
+                mUpdateFrequency,
+                BATCH_WINDOW,
+                CallbackRegistration.Transport.BINDER,
+                AMBIENT_UPDATE_FREQUENCY);
+        assertThat(registration.getAmbientUpdateFrequency(), is(AMBIENT_UPDATE_FREQUENCY));
+        assertThat(registration.getUpdateFrequency(true), is(AMBIENT_UPDATE_FREQUENCY));
+        assertThat(registration.getUpdateFrequency(false), is(mUpdateFrequency));
     }
 
     /**
@@ -118,16 +140,23 @@ public class CallbackRegistrationTest {
     public void testWriteToParcel() {
         final CallbackRegistration registration = new CallbackRegistration(mSensorType,
                 mCallback,
-                mUpdateFrequency);
+                mUpdateFrequency,
+                BATCH_WINDOW,
+                CallbackRegistration.Transport.SHARED_MEMORY,
+                AMBIENT_UPDATE_FREQUENCY);
         final Parcel parcel = Mockito.mock(Parcel.class);
         registration.writeToParcel(parcel, 0);
-        final CallbackRegistration result = CallbackRegistration.CREATOR.createFromParcel(parcel);
+        final ArgumentCaptor<Integer> ints = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(parcel, Mockito.times(3)).writeInt(ints.capture());
+        assertThat(ints.getAllValues(), contains(mSensorType.ordinal(),
+                System.identityHashCode(mCallback),
+                CallbackRegistration.Transport.SHARED_MEMORY.ordinal()));
         Mockito.verify(parcel, Mockito.times(1))
-                .writeInt(mSensorType.ordinal());
+                .writeLong(mUpdateFrequency);
         Mockito.verify(parcel, Mockito.times(1))
-                .writeInt(System.identityHashCode(mCallback));
+                .writeLong(BATCH_WINDOW);
         Mockito.verify(parcel, Mockito.times(1))
-                .writeLong(mUpdateFrequency);
+                .writeLong(AMBIENT_UPDATE_FREQUENCY);
     }
 
     /**
@@ -138,12 +167,19 @@ public class CallbackRegistrationTest {
         final Parcel parcel = Mockito.mock(Parcel.class);
         Mockito.when(parcel.readInt())
                 .thenReturn(mSensorType.ordinal())
-                .thenReturn(System.identityHashCode(mCallback));
-        Mockito.when(parcel.readLong()).thenReturn(mUpdateFrequency);
+                .thenReturn(System.identityHashCode(mCallback))
+                .thenReturn(CallbackRegistration.Transport.SHARED_MEMORY.ordinal());
+        Mockito.when(parcel.readLong())
+                .thenReturn(mUpdateFrequency)
+                .thenReturn(BATCH_WINDOW)
+                .thenReturn(AMBIENT_UPDATE_FREQUENCY);
         final CallbackRegistration result =
                 CallbackRegistration.CREATOR.createFromParcel(parcel);
         assertThat(result.getType(), is(mSensorType));
         assertThat(result.getCallbackId(), is(System.identityHashCode(mCallback)));
         assertThat(result.getUpdateFrequency(), is(mUpdateFrequency));
+        assertThat(result.getBatchWindow(), is(BATCH_WINDOW));
+        assertThat(result.getTransport(), is(CallbackRegistration.Transport.SHARED_MEMORY));
+        assertThat(result.getAmbientUpdateFrequency(), is(AMBIENT_UPDATE_FREQUENCY));
     }
 }
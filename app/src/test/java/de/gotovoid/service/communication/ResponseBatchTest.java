@@ -0,0 +1,81 @@
+package de.gotovoid.service.communication;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.gotovoid.BuildConfig;
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
+import de.gotovoid.service.sensors.SensorType;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Test for the {@link ResponseBatch} class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ResponseBatchTest {
+    private static final long TIME_STAMP = 1500000000000L;
+
+    /**
+     * Verify that a {@link ResponseBatch} with {@link Response}s of different
+     * {@link SensorType}s is restored from a {@link Parcel}.
+     */
+    @Test
+    public void testParcel() {
+        final ResponseBatch batch = new ResponseBatch();
+        batch.add(SensorType.PRESSURE, new Response(
+                new AbstractSensor.Result<>(SensorState.RUNNING, 1013.25f, TIME_STAMP)));
+        batch.add(SensorType.LOCATION, new Response(new AbstractSensor.Result<>(
+                SensorState.CALIBRATING,
+                new ExtendedGeoCoordinate(47.0, 10.0, 500, 5),
+                TIME_STAMP + 1)));
+        batch.add(SensorType.RECORDING, new Response(
+                new AbstractSensor.Result<>(SensorState.RUNNING, 1337L, TIME_STAMP + 2)));
+
+        final Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final ResponseBatch result = ResponseBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertThat(result.size(), is(3));
+        assertThat(result.getType(0), is(SensorType.PRESSURE));
+        assertThat(result.getType(1), is(SensorType.LOCATION));
+        assertThat(result.getType(2), is(SensorType.RECORDING));
+        assertThat((Float) result.getResponse(0).getValue().getValue(), is(1013.25f));
+        final ExtendedGeoCoordinate coordinate =
+                (ExtendedGeoCoordinate) result.getResponse(1).getValue().getValue();
+        assertThat(coordinate.getLatitude(), is(47.0));
+        assertThat(coordinate.getAltitude(), is(500.0));
+        assertThat(result.getResponse(1).getValue().getSensorState(),
+                is(SensorState.CALIBRATING));
+        assertThat((Long) result.getResponse(2).getValue().getValue(), is(1337L));
+        for (int i = 0; i < result.size(); i++) {
+            assertThat(result.getResponse(i).getValue().getTimeStamp(), is(TIME_STAMP + i));
+        }
+    }
+
+    /**
+     * Verify that an empty {@link ResponseBatch} is restored from a {@link Parcel}.
+     */
+    @Test
+    public void testEmpty() {
+        final Parcel parcel = Parcel.obtain();
+        new ResponseBatch().writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        assertThat(ResponseBatch.CREATOR.createFromParcel(parcel).size(), is(0));
+        parcel.recycle();
+    }
+}
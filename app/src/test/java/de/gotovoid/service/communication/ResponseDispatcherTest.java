@@ -0,0 +1,464 @@
+package de.gotovoid.service.communication;
+
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import de.gotovoid.Benchmark;
+import de.gotovoid.BuildConfig;
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
+import de.gotovoid.service.sensors.SensorType;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Test for the {@link ResponseDispatcher} class.
+ * The held back updates are sent on the main {@link Looper}, whose time is advanced by the
+ * {@link Scheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ResponseDispatcherTest {
+    private static final long UPDATE_FREQUENCY = 1000;
+    private static final long BATCH_WINDOW = 10000;
+    private static final int CAPACITY = 4;
+    private static final long TIMEOUT = 1000;
+    private static final int BENCHMARK_UPDATES = 100000;
+    private ISensorServiceCallback mCallback;
+    private Scheduler mScheduler;
+    private ResponseDispatcher mDispatcher;
+
+    /**
+     * Prepare the test cases.
+     */
+    @Before
+    public void before() {
+        mCallback = Mockito.mock(ISensorServiceCallback.class);
+        mScheduler = Robolectric.getForegroundThreadScheduler();
+        // Call the client directly to verify the batching synchronously.
+        mDispatcher = createDispatcher(mCallback,
+                Runnable::run,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Verify that every update is sent immediately without batch window.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testWithoutBatchWindow() throws RemoteException {
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        for (int i = 0; i < 10; i++) {
+            mDispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+        }
+        Mockito.verify(mCallback, Mockito.times(10))
+                .onSensorValueChanged(Mockito.any(Response.class));
+        Mockito.verify(mCallback, Mockito.never())
+                .onSensorValuesChanged(Mockito.any(ResponseBatch.class));
+        assertThat(mScheduler.size(), is(0));
+    }
+
+    /**
+     * Verify that the updates of all {@link SensorType}s of the batch window are sent in one
+     * transaction.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testBatchWindow() throws RemoteException {
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, BATCH_WINDOW));
+        mDispatcher.addRegistration(createRegistration(SensorType.LOCATION, BATCH_WINDOW));
+        for (int i = 0; i < 10; i++) {
+            mDispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+            mDispatcher.dispatch(SensorType.LOCATION, createResult(i));
+        }
+        assertThat(mScheduler.size(), is(1));
+        mScheduler.advanceBy(BATCH_WINDOW - 1, TimeUnit.MILLISECONDS);
+        Mockito.verifyZeroInteractions(mCallback);
+        mScheduler.advanceBy(1, TimeUnit.MILLISECONDS);
+
+        final ArgumentCaptor<ResponseBatch> batch = ArgumentCaptor.forClass(ResponseBatch.class);
+        Mockito.verify(mCallback, Mockito.times(1)).onSensorValuesChanged(batch.capture());
+        assertThat(batch.getValue().size(), is(20));
+        for (int i = 0; i < 10; i++) {
+            assertThat(batch.getValue().getType(2 * i), is(SensorType.PRESSURE));
+            assertThat(batch.getValue().getType(2 * i + 1), is(SensorType.LOCATION));
+            assertThat(batch.getValue().getResponse(2 * i).getValue().getTimeStamp(),
+                    is(i * UPDATE_FREQUENCY));
+        }
+
+        // The next update starts a new batch window.
+        assertThat(mScheduler.size(), is(0));
+        mDispatcher.dispatch(SensorType.PRESSURE, createResult(10));
+        assertThat(mScheduler.size(), is(1));
+    }
+
+    /**
+     * Verify that a single update of the batch window is sent without batch.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testSingleUpdate() throws RemoteException {
+        mDispatcher.addRegistration(createRegistration(SensorType.RECORDING, BATCH_WINDOW));
+        mDispatcher.dispatch(SensorType.RECORDING, createResult(0));
+        mDispatcher.flush();
+        Mockito.verify(mCallback, Mockito.times(1))
+                .onSensorValueChanged(Mockito.any(Response.class));
+        Mockito.verify(mCallback, Mockito.never())
+                .onSensorValuesChanged(Mockito.any(ResponseBatch.class));
+    }
+
+    /**
+     * Verify that the smallest batch window of the registrations is used.
+     */
+    @Test
+    public void testSmallestBatchWindow() {
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, BATCH_WINDOW));
+        mDispatcher.addRegistration(createRegistration(SensorType.LOCATION, BATCH_WINDOW / 2));
+        assertThat(mDispatcher.getBatchWindow(), is(BATCH_WINDOW / 2));
+        mDispatcher.removeRegistration(createRegistration(SensorType.LOCATION, 0));
+        assertThat(mDispatcher.getBatchWindow(), is(BATCH_WINDOW));
+    }
+
+    /**
+     * Verify that removing the last registration sends the held back updates.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testRemoveRegistration() throws RemoteException {
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, BATCH_WINDOW));
+        mDispatcher.addRegistration(createRegistration(SensorType.LOCATION, BATCH_WINDOW));
+        mDispatcher.dispatch(SensorType.PRESSURE, createResult(0));
+        mDispatcher.dispatch(SensorType.LOCATION, createResult(0));
+        assertThat(mDispatcher.removeRegistration(
+                createRegistration(SensorType.PRESSURE, BATCH_WINDOW)), is(false));
+        Mockito.verifyZeroInteractions(mCallback);
+        assertThat(mDispatcher.removeRegistration(
+                createRegistration(SensorType.LOCATION, BATCH_WINDOW)), is(true));
+        Mockito.verify(mCallback, Mockito.times(1))
+                .onSensorValuesChanged(Mockito.any(ResponseBatch.class));
+        assertThat(mScheduler.size(), is(0));
+    }
+
+    /**
+     * Verify that held back updates are sent before newer updates when the batch window is
+     * removed.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testBatchWindowRemoved() throws RemoteException {
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, BATCH_WINDOW));
+        mDispatcher.dispatch(SensorType.PRESSURE, createResult(0));
+        mDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        mDispatcher.dispatch(SensorType.PRESSURE, createResult(1));
+        final ArgumentCaptor<ResponseBatch> batch = ArgumentCaptor.forClass(ResponseBatch.class);
+        Mockito.verify(mCallback, Mockito.times(1)).onSensorValuesChanged(batch.capture());
+        assertThat(batch.getValue().size(), is(2));
+        assertThat(mScheduler.size(), is(0));
+    }
+
+    /**
+     * Verify that a slow client neither blocks the thread of the sensor updates nor other
+     * clients, and that its queue drops the oldest updates when it is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSlowClient() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final SlowCallback slowCallback = new SlowCallback();
+        final ResponseDispatcher slowDispatcher = createDispatcher(slowCallback,
+                executor,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+        final ResponseDispatcher fastDispatcher = createDispatcher(mCallback,
+                executor,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+        slowDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        fastDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+
+        // Wait for the slow client to block on the first update.
+        slowDispatcher.dispatch(SensorType.PRESSURE, createResult(0));
+        assertThat(slowCallback.mIsCalled.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        // Does not block on the slow client.
+        for (int i = 1; i < 10; i++) {
+            slowDispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+            fastDispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+        }
+        Mockito.verify(mCallback, Mockito.timeout(TIMEOUT).times(9))
+                .onSensorValueChanged(Mockito.any(Response.class));
+        assertThat(slowDispatcher.getQueueDepth(), is(CAPACITY));
+        assertThat(slowDispatcher.getDropCount(), is(9L - CAPACITY));
+
+        slowCallback.mRelease.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        assertThat(slowDispatcher.getQueueDepth(), is(0));
+        // The first update and the newest updates are received.
+        assertThat(slowCallback.mTimeStamps.size(), is(1 + CAPACITY));
+        assertThat(slowCallback.mTimeStamps.get(0), is(0L));
+        for (int i = 1; i <= CAPACITY; i++) {
+            assertThat(slowCallback.mTimeStamps.get(i),
+                    is((10 - 1 - CAPACITY + i) * UPDATE_FREQUENCY));
+        }
+    }
+
+    /**
+     * Print the time the thread of the sensor updates spends dispatching an update to a
+     * client that is blocked on an earlier update.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmark() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final SlowCallback slowCallback = new SlowCallback();
+        final ResponseDispatcher slowDispatcher = createDispatcher(slowCallback,
+                executor,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+        slowDispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        slowDispatcher.dispatch(SensorType.PRESSURE, createResult(0));
+        slowCallback.mIsCalled.await(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final long timestamp = System.nanoTime();
+        for (int i = 1; i <= BENCHMARK_UPDATES; i++) {
+            slowDispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+        }
+        final long time = System.nanoTime() - timestamp;
+        System.out.println("ResponseDispatcher blocked client: "
+                + time / BENCHMARK_UPDATES + "ns per dispatch, dropped "
+                + slowDispatcher.getDropCount());
+
+        slowCallback.mRelease.countDown();
+        executor.shutdown();
+        executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Verify that a full queue replaces the newest update of the same {@link SensorType}.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testConflateLatest() throws RemoteException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ResponseDispatcher dispatcher = createDispatcher(mCallback,
+                tasks::add,
+                ResponseDispatcher.OverflowPolicy.CONFLATE_LATEST);
+        dispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        dispatcher.addRegistration(createRegistration(SensorType.LOCATION, 0));
+        dispatcher.dispatch(SensorType.LOCATION, createResult(0));
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+        }
+        assertThat(dispatcher.getQueueDepth(), is(CAPACITY));
+        assertThat(dispatcher.getDropCount(), is(10L + 1 - CAPACITY));
+        // The queue is only sent once until it is empty.
+        assertThat(tasks.size(), is(1));
+        tasks.get(0).run();
+
+        final ArgumentCaptor<Response> responses = ArgumentCaptor.forClass(Response.class);
+        Mockito.verify(mCallback, Mockito.times(CAPACITY))
+                .onSensorValueChanged(responses.capture());
+        assertThat(responses.getAllValues().get(0).getValue().getTimeStamp(), is(0L));
+        assertThat(responses.getAllValues().get(CAPACITY - 1).getValue().getTimeStamp(),
+                is(9 * UPDATE_FREQUENCY));
+        assertThat(dispatcher.getQueueDepth(), is(0));
+    }
+
+    /**
+     * Verify that the {@link SensorType#RECORDING} deltas are neither conflated nor dropped in
+     * favour of another update, so the client receives them in sequence.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testConflateLatestRecording() throws RemoteException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ResponseDispatcher dispatcher = createDispatcher(mCallback,
+                tasks::add,
+                ResponseDispatcher.OverflowPolicy.CONFLATE_LATEST);
+        dispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        dispatcher.addRegistration(createRegistration(SensorType.RECORDING, 0));
+        dispatcher.dispatch(SensorType.PRESSURE, createResult(0));
+        for (int i = 1; i <= CAPACITY; i++) {
+            dispatcher.dispatch(SensorType.RECORDING, createResult(i));
+        }
+        // The queue only holds deltas, the pressure update is dropped.
+        dispatcher.dispatch(SensorType.PRESSURE, createResult(CAPACITY + 1));
+        assertThat(dispatcher.getQueueDepth(), is(CAPACITY));
+        assertThat(dispatcher.getDropCount(), is(2L));
+        tasks.get(0).run();
+
+        final ArgumentCaptor<Response> responses = ArgumentCaptor.forClass(Response.class);
+        Mockito.verify(mCallback, Mockito.times(CAPACITY))
+                .onSensorValueChanged(responses.capture());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertThat(responses.getAllValues().get(i).getValue().getTimeStamp(),
+                    is((i + 1) * UPDATE_FREQUENCY));
+        }
+    }
+
+    /**
+     * Verify that the dispatcher is closed and drops the queued and further updates once the
+     * client died.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testDeadClient() throws RemoteException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ResponseDispatcher dispatcher = createDispatcher(mCallback,
+                tasks::add,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+        Mockito.doThrow(new DeadObjectException())
+                .when(mCallback).onSensorValueChanged(Mockito.any(Response.class));
+        dispatcher.addRegistration(createRegistration(SensorType.PRESSURE, 0));
+        for (int i = 0; i < CAPACITY; i++) {
+            dispatcher.dispatch(SensorType.PRESSURE, createResult(i));
+        }
+        tasks.get(0).run();
+        Mockito.verify(mCallback, Mockito.times(1))
+                .onSensorValueChanged(Mockito.any(Response.class));
+        assertThat(dispatcher.isClosed(), is(true));
+        assertThat(dispatcher.getQueueDepth(), is(0));
+
+        dispatcher.dispatch(SensorType.PRESSURE, createResult(CAPACITY));
+        assertThat(dispatcher.getQueueDepth(), is(0));
+        assertThat(tasks.size(), is(1));
+    }
+
+    /**
+     * Verify that a {@link SensorStream} closed while it is sent to the client is dropped like
+     * a removed stream instead of failing the executor.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testStreamClosedWhileSent() throws RemoteException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ResponseDispatcher dispatcher = createDispatcher(mCallback,
+                tasks::add,
+                ResponseDispatcher.OverflowPolicy.DROP_OLDEST);
+        final SensorStream stream = Mockito.mock(SensorStream.class);
+        Mockito.when(stream.getType()).thenReturn(SensorType.PRESSURE);
+        Mockito.doThrow(new IllegalStateException("closed"))
+                .when(mCallback).onSensorStreamCreated(stream);
+        dispatcher.addStream(stream, Mockito.mock(SensorRingBuffer.class));
+        tasks.get(0).run();
+        Mockito.verify(mCallback).onSensorStreamCreated(stream);
+        assertThat(dispatcher.isClosed(), is(false));
+    }
+
+    /**
+     * Create a {@link ResponseDispatcher} with a queue of {@link #CAPACITY}.
+     *
+     * @param callback       the {@link ISensorServiceCallback}
+     * @param executor       the {@link Executor} to call the client on
+     * @param overflowPolicy the {@link ResponseDispatcher.OverflowPolicy}
+     * @return the {@link ResponseDispatcher}
+     */
+    private static ResponseDispatcher createDispatcher(
+            final ISensorServiceCallback callback,
+            final Executor executor,
+            final ResponseDispatcher.OverflowPolicy overflowPolicy) {
+        return new ResponseDispatcher(callback,
+                new Handler(Looper.getMainLooper()),
+                executor,
+                CAPACITY,
+                overflowPolicy);
+    }
+
+    /**
+     * Create a {@link CallbackRegistration} of the client.
+     *
+     * @param type        the {@link SensorType}
+     * @param batchWindow the batch window
+     * @return the {@link CallbackRegistration}
+     */
+    private CallbackRegistration createRegistration(final SensorType type,
+                                                    final long batchWindow) {
+        return new CallbackRegistration(type, mCallback, UPDATE_FREQUENCY, batchWindow);
+    }
+
+    /**
+     * Create the {@link AbstractSensor.Result} of an update.
+     *
+     * @param index index of the update
+     * @return the {@link AbstractSensor.Result}
+     */
+    private static AbstractSensor.Result<Long> createResult(final int index) {
+        return new AbstractSensor.Result<>(SensorState.RUNNING,
+                (long) index,
+                index * UPDATE_FREQUENCY);
+    }
+
+    /**
+     * Client which blocks on its first update until it is released.
+     */
+    private static class SlowCallback implements ISensorServiceCallback {
+        private final CountDownLatch mIsCalled = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private final List<Long> mTimeStamps = new ArrayList<>();
+
+        @Override
+        public void onSensorValueChanged(final Response response) {
+            mIsCalled.countDown();
+            try {
+                mRelease.await();
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (mTimeStamps) {
+                mTimeStamps.add(response.getValue().getTimeStamp());
+            }
+        }
+
+        @Override
+        public void onSensorValuesChanged(final ResponseBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                onSensorValueChanged(batch.getResponse(i));
+            }
+        }
+
+        @Override
+        public void onSensorStreamCreated(final SensorStream stream) {
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return null;
+        }
+    }
+}
@@ -4,20 +4,22 @@ import android.os.Parcel;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
-import org.junit.runners.Parameterized;
-import org.junit.runners.Parameterized.Parameters;
-import org.junit.runners.Parameterized.Parameter;
 import org.mockito.Mockito;
 import org.robolectric.ParameterizedRobolectricTestRunner;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import de.gotovoid.Benchmark;
+import de.gotovoid.database.model.RecordingEntry;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.RecordingDelta;
 import de.gotovoid.service.sensors.SensorState;
 
 import static org.junit.Assert.*;
@@ -36,6 +38,11 @@ public class ResponseTest {
     private static final double LAT = 9.45;
     private static final double ALT = 555;
     private static final float ACC = 33;
+    private static final float PRESSURE = 1013.25f;
+    private static final long TIME_STAMP = 1500000000000L;
+    private static final long RECORDING_ID = 1337;
+    private static final long SEQUENCE = 42;
+    private static final int BENCHMARK_UPDATES = 10000;
 
     public Serializable mData;
 
@@ -59,12 +66,19 @@ public class ResponseTest {
         Serializable[] string = new Serializable[]{"test"};
         Serializable[] intVal = new Serializable[]{1};
         Serializable[] longVal = new Serializable[]{1l};
+        Serializable[] floatVal = new Serializable[]{PRESSURE};
         Serializable[] geoCoord = new Serializable[]{
                 new ExtendedGeoCoordinate(LNG, LAT, ALT, ACC)};
         parameters.add(string);
         parameters.add(intVal);
         parameters.add(longVal);
+        parameters.add(floatVal);
+        Serializable[] recordingDelta = new Serializable[]{
+                new RecordingDelta(RECORDING_ID, SEQUENCE, Arrays.asList(
+                        new RecordingEntry(RECORDING_ID, TIME_STAMP, LNG, LAT, (int) ALT),
+                        new RecordingEntry(RECORDING_ID, TIME_STAMP + 1000, LNG, LAT, 0)))};
         parameters.add(geoCoord);
+        parameters.add(recordingDelta);
         return parameters;
     }
 
@@ -77,16 +91,19 @@ public class ResponseTest {
 
     /**
      * Verify that writing to a {@link Parcel} works as expected.
+     * The payloads of the {@link de.gotovoid.service.sensors.SensorType}s are written without
+     * Java serialization.
      */
     @Test
     public void testWriteToParcel() {
         final Parcel parcel = Mockito.mock(Parcel.class);
         final AbstractSensor.Result result = new AbstractSensor.Result(
                 SensorState.RUNNING,
-                mData);
+                mData,
+                TIME_STAMP);
         final Response response = new Response(result);
         response.writeToParcel(parcel, 0);
-        Mockito.verify(parcel, Mockito.times(1)).writeSerializable(result);
+        Mockito.verify(parcel, Mockito.times(isTyped() ? 0 : 1)).writeSerializable(result);
     }
 
     /**
@@ -94,12 +111,149 @@ public class ResponseTest {
      */
     @Test
     public void testCreateFromParcel() {
-        final Parcel parcel = Mockito.mock(Parcel.class);
         final AbstractSensor.Result result = new AbstractSensor.Result(
                 SensorState.RUNNING,
-                mData);
-        Mockito.when(parcel.readSerializable()).thenReturn(result);
+                mData,
+                TIME_STAMP);
+        final Parcel parcel = Parcel.obtain();
+        new Response(result).writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final Response response = Response.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        assertThat(response.getValue().getSensorState(), is(SensorState.RUNNING));
+        assertThat(response.getValue().getTimeStamp(), is(TIME_STAMP));
+        assertValue(response.getValue().getValue());
+        assertThat(response.isStale(), is(false));
+    }
+
+    /**
+     * Verify that the stale flag survives the {@link Parcel}.
+     */
+    @Test
+    public void testStale() {
+        final AbstractSensor.Result result = new AbstractSensor.Result(
+                SensorState.RUNNING,
+                mData,
+                TIME_STAMP);
+        final Parcel parcel = Parcel.obtain();
+        new Response(result, true).writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
         final Response response = Response.CREATOR.createFromParcel(parcel);
-        assertThat(result.getValue(), is(mData));
+        parcel.recycle();
+        assertThat(response.isStale(), is(true));
+        assertThat(response.getValue().getTimeStamp(), is(TIME_STAMP));
+        assertValue(response.getValue().getValue());
+    }
+
+    /**
+     * Verify that a typed {@link Response} needs less bytes per update than the Java
+     * serialization of the {@link AbstractSensor.Result}.
+     */
+    @Test
+    public void testParcelSize() {
+        final AbstractSensor.Result result = new AbstractSensor.Result(
+                SensorState.RUNNING,
+                mData,
+                TIME_STAMP);
+        final Parcel parcel = Parcel.obtain();
+        new Response(result).writeToParcel(parcel, 0);
+        final int bytes = parcel.dataSize();
+        parcel.setDataSize(0);
+        parcel.writeSerializable(result);
+        final int serializedBytes = parcel.dataSize();
+        parcel.recycle();
+
+        if (isTyped()) {
+            assertThat(bytes, lessThan(serializedBytes));
+        }
+    }
+
+    /**
+     * Print bytes per update and time to marshal and unmarshal a {@link Response} and the Java
+     * serialization of the {@link AbstractSensor.Result}.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmark() {
+        final AbstractSensor.Result result = new AbstractSensor.Result(
+                SensorState.RUNNING,
+                mData,
+                TIME_STAMP);
+        final Parcel parcel = Parcel.obtain();
+        new Response(result).writeToParcel(parcel, 0);
+        final int bytes = parcel.dataSize();
+        parcel.setDataSize(0);
+        parcel.writeSerializable(result);
+        final int serializedBytes = parcel.dataSize();
+
+        long timestamp = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_UPDATES; i++) {
+            parcel.setDataSize(0);
+            new Response(result).writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            Response.CREATOR.createFromParcel(parcel);
+        }
+        final long time = System.nanoTime() - timestamp;
+
+        timestamp = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_UPDATES; i++) {
+            parcel.setDataSize(0);
+            parcel.writeSerializable(result);
+            parcel.setDataPosition(0);
+            parcel.readSerializable();
+        }
+        final long serializedTime = System.nanoTime() - timestamp;
+        parcel.recycle();
+
+        System.out.println("Response " + mData.getClass().getSimpleName() + ": "
+                + bytes + " bytes, " + time / BENCHMARK_UPDATES + "ns per update, "
+                + "serialized " + serializedBytes + " bytes, "
+                + serializedTime / BENCHMARK_UPDATES + "ns per update");
+    }
+
+    /**
+     * Returns true if the data is the payload of a
+     * {@link de.gotovoid.service.sensors.SensorType} and written field by field.
+     *
+     * @return true if the data is written field by field
+     */
+    private boolean isTyped() {
+        return mData instanceof Float
+                || mData instanceof Long
+                || mData instanceof ExtendedGeoCoordinate
+                || mData instanceof RecordingDelta;
+    }
+
+    /**
+     * Verify that the given value equals the data.
+     *
+     * @param value the value
+     */
+    private void assertValue(final Serializable value) {
+        if (mData instanceof ExtendedGeoCoordinate) {
+            final ExtendedGeoCoordinate expected = (ExtendedGeoCoordinate) mData;
+            final ExtendedGeoCoordinate coordinate = (ExtendedGeoCoordinate) value;
+            assertThat(coordinate.getLatitude(), is(expected.getLatitude()));
+            assertThat(coordinate.getLongitude(), is(expected.getLongitude()));
+            assertThat(coordinate.getAltitude(), is(expected.getAltitude()));
+            assertThat(coordinate.getAccuracy(), is(expected.getAccuracy()));
+        } else if (mData instanceof RecordingDelta) {
+            final RecordingDelta expected = (RecordingDelta) mData;
+            final RecordingDelta delta = (RecordingDelta) value;
+            assertThat(delta.getRecordingId(), is(expected.getRecordingId()));
+            assertThat(delta.getSequence(), is(expected.getSequence()));
+            assertThat(delta.getEntries().size(), is(expected.getEntries().size()));
+            for (int i = 0; i < expected.getEntries().size(); i++) {
+                final RecordingEntry entry = delta.getEntries().get(i);
+                final RecordingEntry expectedEntry = expected.getEntries().get(i);
+                assertThat(entry.getRecordingId(), is(expectedEntry.getRecordingId()));
+                assertThat(entry.getTimeStamp(), is(expectedEntry.getTimeStamp()));
+                assertThat(entry.getLongitude(), is(expectedEntry.getLongitude()));
+                assertThat(entry.getLatitude(), is(expectedEntry.getLatitude()));
+                assertThat(entry.getAltitude(), is(expectedEntry.getAltitude()));
+            }
+        } else {
+            assertThat(value, is(mData));
+        }
     }
 }
@@ -0,0 +1,204 @@
+package de.gotovoid.service.communication;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link SensorRingBuffer}.
+ * The producer and consumers use separate instances on the same {@link ByteBuffer}, like the
+ * service and application on the same shared memory.
+ */
+public class SensorRingBufferTest {
+    private static final int CAPACITY = 4;
+    private static final long UPDATE_FREQUENCY = 40;
+
+    /**
+     * Verify the size of the buffer and the capacity derived from it.
+     */
+    @Test
+    public void testCapacity() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        assertThat(buffer.capacity(),
+                is(SensorRingBuffer.HEADER_SIZE + CAPACITY * SensorRingBuffer.SLOT_SIZE));
+        assertThat(new SensorRingBuffer(buffer).getCapacity(), is(CAPACITY));
+    }
+
+    /**
+     * Verify that a buffer without slots is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmall() {
+        new SensorRingBuffer(ByteBuffer.allocate(SensorRingBuffer.HEADER_SIZE));
+    }
+
+    /**
+     * Verify that the consumer polls every value once, oldest first.
+     */
+    @Test
+    public void testPoll() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        final SensorRingBuffer producer = new SensorRingBuffer(buffer);
+        final SensorRingBuffer consumer = new SensorRingBuffer(buffer);
+        assertThat(consumer.poll(), is(empty()));
+
+        producer.write(createResult(0));
+        producer.write(createResult(1));
+        List<AbstractSensor.Result<Float>> results = consumer.poll();
+        assertThat(results.size(), is(2));
+        assertResult(results.get(0), 0);
+        assertResult(results.get(1), 1);
+        assertThat(consumer.poll(), is(empty()));
+
+        producer.write(createResult(2));
+        results = consumer.poll();
+        assertThat(results.size(), is(1));
+        assertResult(results.get(0), 2);
+        assertThat(consumer.getLostCount(), is(0L));
+        assertThat(consumer.getCount(), is(3L));
+    }
+
+    /**
+     * Verify that a missing value is polled as null.
+     */
+    @Test
+    public void testNullValue() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        new SensorRingBuffer(buffer).write(
+                new AbstractSensor.Result<Float>(SensorState.CALIBRATING, null, 0));
+        final List<AbstractSensor.Result<Float>> results = new SensorRingBuffer(buffer).poll();
+        assertThat(results.get(0).getValue(), is(nullValue()));
+        assertThat(results.get(0).getSensorState(), is(SensorState.CALIBRATING));
+    }
+
+    /**
+     * Verify that a slow consumer receives the newest values and counts the overwritten ones.
+     */
+    @Test
+    public void testOverwritten() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        final SensorRingBuffer producer = new SensorRingBuffer(buffer);
+        final SensorRingBuffer consumer = new SensorRingBuffer(buffer);
+        for (int i = 0; i < 10; i++) {
+            producer.write(createResult(i));
+        }
+        final List<AbstractSensor.Result<Float>> results = consumer.poll();
+        assertThat(results.size(), is(CAPACITY));
+        for (int i = 0; i < CAPACITY; i++) {
+            assertResult(results.get(i), 10 - CAPACITY + i);
+        }
+        assertThat(consumer.getLostCount(), is(10L - CAPACITY));
+    }
+
+    /**
+     * Verify that every consumer polls the values independently.
+     */
+    @Test
+    public void testConsumers() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        final SensorRingBuffer producer = new SensorRingBuffer(buffer);
+        final SensorRingBuffer first = new SensorRingBuffer(buffer);
+        final SensorRingBuffer second = new SensorRingBuffer(buffer);
+        producer.write(createResult(0));
+        assertThat(first.poll().size(), is(1));
+        producer.write(createResult(1));
+        assertThat(first.poll().size(), is(1));
+        assertThat(second.poll().size(), is(2));
+    }
+
+    /**
+     * Verify that a consumer drops a value whose slot is marked as written by the producer.
+     */
+    @Test
+    public void testSlotBeingWritten() {
+        final ByteBuffer buffer = ByteBuffer.allocate(SensorRingBuffer.getSize(CAPACITY));
+        final SensorRingBuffer producer = new SensorRingBuffer(buffer);
+        final SensorRingBuffer consumer = new SensorRingBuffer(buffer);
+        producer.write(createResult(0));
+        producer.write(createResult(1));
+        // The producer marked the slot of the second value but did not finish the write.
+        buffer.putLong(SensorRingBuffer.HEADER_SIZE + SensorRingBuffer.SLOT_SIZE, -1);
+        final List<AbstractSensor.Result<Float>> results = consumer.poll();
+        assertThat(results, hasSize(1));
+        assertResult(results.get(0), 0);
+        assertThat(consumer.getLostCount(), is(1L));
+    }
+
+    /**
+     * Verify that a consumer polling while the producer writes only sees complete values in
+     * order.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentConsumer() throws InterruptedException {
+        final int values = 200000;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(SensorRingBuffer.getSize(CAPACITY));
+        final SensorRingBuffer producer = new SensorRingBuffer(buffer);
+        final SensorRingBuffer consumer = new SensorRingBuffer(buffer);
+        final AtomicBoolean isDone = new AtomicBoolean();
+        final AtomicInteger polled = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread thread = new Thread(() -> {
+            long last = -1;
+            boolean isLast = false;
+            while (!isLast) {
+                isLast = isDone.get();
+                for (final AbstractSensor.Result<Float> result : consumer.poll()) {
+                    final long index = result.getTimeStamp() / UPDATE_FREQUENCY;
+                    if (index <= last || result.getValue() != (float) index) {
+                        errors.incrementAndGet();
+                    }
+                    last = index;
+                    polled.incrementAndGet();
+                }
+            }
+        });
+        thread.start();
+        for (int i = 0; i < values; i++) {
+            producer.write(createResult(i));
+        }
+        isDone.set(true);
+        thread.join();
+        assertThat(errors.get(), is(0));
+        assertThat(polled.get(), greaterThan(0));
+        assertThat(polled.get() + consumer.getLostCount(), is((long) values));
+    }
+
+    /**
+     * Create the {@link AbstractSensor.Result} of an update.
+     *
+     * @param index index of the update
+     * @return the {@link AbstractSensor.Result}
+     */
+    private static AbstractSensor.Result<Float> createResult(final int index) {
+        return new AbstractSensor.Result<>(SensorState.RUNNING,
+                (float) index,
+                index * UPDATE_FREQUENCY);
+    }
+
+    /**
+     * Assert that the {@link AbstractSensor.Result} is the one of the update.
+     *
+     * @param result the {@link AbstractSensor.Result}
+     * @param index  index of the update
+     */
+    private static void assertResult(final AbstractSensor.Result<Float> result, final int index) {
+        assertThat(result.getSensorState(), is(SensorState.RUNNING));
+        assertThat(result.getValue(), is((float) index));
+        assertThat(result.getTimeStamp(), is(index * UPDATE_FREQUENCY));
+    }
+}
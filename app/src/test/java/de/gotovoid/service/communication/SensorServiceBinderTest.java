@@ -1,10 +1,16 @@
 package de.gotovoid.service.communication;
 
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.RemoteException;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.robolectric.ParameterizedRobolectricTestRunner;
 import org.robolectric.RobolectricTestRunner;
@@ -13,16 +19,27 @@ import org.robolectric.annotation.Config;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 
+import de.gotovoid.Benchmark;
 import de.gotovoid.BuildConfig;
+import de.gotovoid.database.model.RecordingEntry;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.Clock;
 import de.gotovoid.service.sensors.LocationSensor;
 import de.gotovoid.service.sensors.PressureSensor;
+import de.gotovoid.service.sensors.RecordingDelta;
 import de.gotovoid.service.sensors.RecordingSensor;
 import de.gotovoid.service.sensors.SensorHandler;
+import de.gotovoid.service.sensors.SensorState;
 import de.gotovoid.service.sensors.SensorType;
 
 import static org.junit.Assert.*;
@@ -41,6 +58,12 @@ import org.hamcrest.core.IsInstanceOf;
 @Config(constants = BuildConfig.class)
 public class SensorServiceBinderTest {
     private static final long RECORDING_ID = 12345;
+    private static final long UPDATE_FREQUENCY = 1000;
+    private static final long TIMEOUT = 10000;
+    /**
+     * Time in microseconds to start or stop a sensor in the concurrent registration test.
+     */
+    private static final long SENSOR_START_TIME = 200;
     private SensorServiceBinder mBinder;
     private SensorHandler mSensorHandler;
 
@@ -67,6 +90,47 @@ public class SensorServiceBinderTest {
         assertThat(mBinder.isUpdatePaused(), is(false));
     }
 
+    /**
+     * Verify that a client entering and exiting ambient mode switches the update frequency of
+     * its observer at the {@link SensorHandler}.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testSetAmbient() throws RemoteException {
+        final long ambientUpdateFrequency = 60000;
+        final ISensorServiceCallback callback = mockCallback(Mockito.mock(IBinder.class));
+        final CallbackRegistration registration = new CallbackRegistration(SensorType.PRESSURE,
+                callback,
+                UPDATE_FREQUENCY,
+                0,
+                CallbackRegistration.Transport.BINDER,
+                ambientUpdateFrequency);
+        mBinder.startSensor(registration, callback);
+        final AbstractSensor.Observer observer = mBinder.getCallback(registration).getObserver();
+
+        mBinder.setAmbient(registration, true);
+        Mockito.verify(mSensorHandler).setUpdateFrequency(observer, ambientUpdateFrequency);
+        mBinder.setAmbient(registration, false);
+        Mockito.verify(mSensorHandler).setUpdateFrequency(observer, UPDATE_FREQUENCY);
+    }
+
+    /**
+     * Verify that the ambient mode of an unknown client is ignored.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testSetAmbientUnregistered() throws RemoteException {
+        final CallbackRegistration registration = new CallbackRegistration(SensorType.PRESSURE,
+                Mockito.mock(ISensorServiceCallback.class),
+                UPDATE_FREQUENCY);
+        mBinder.setAmbient(registration, true);
+        Mockito.verify(mSensorHandler, Mockito.never())
+                .setUpdateFrequency(Mockito.any(AbstractSensor.Observer.class),
+                        Mockito.anyLong());
+    }
+
     /**
      * Verify that starting a recording works.
      *
@@ -105,6 +169,421 @@ public class SensorServiceBinderTest {
                 .startRecording(RECORDING_ID);
     }
 
+    /**
+     * Verify that all callbacks of a client are evicted and their observers are removed from
+     * the {@link SensorHandler} when the client dies.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testBinderDied() throws RemoteException {
+        final IBinder binder = Mockito.mock(IBinder.class);
+        final ISensorServiceCallback callback = mockCallback(binder);
+        final CallbackRegistration pressure =
+                new CallbackRegistration(SensorType.PRESSURE, callback, UPDATE_FREQUENCY);
+        final CallbackRegistration location =
+                new CallbackRegistration(SensorType.LOCATION, callback, UPDATE_FREQUENCY);
+        mBinder.startSensor(pressure, callback);
+        mBinder.startSensor(location, callback);
+        Mockito.verify(binder, Mockito.times(1))
+                .linkToDeath(Mockito.any(IBinder.DeathRecipient.class), Mockito.eq(0));
+
+        captureDeathRecipient(binder).binderDied();
+        assertThat(mBinder.getCallback(pressure), is(nullValue()));
+        assertThat(mBinder.getCallback(location), is(nullValue()));
+        Mockito.verify(mSensorHandler, Mockito.times(2))
+                .removeObserver(Mockito.any(AbstractSensor.Observer.class));
+    }
+
+    /**
+     * Verify that a client which died before it was linked is not registered.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testAlreadyDied() throws RemoteException {
+        final IBinder binder = Mockito.mock(IBinder.class);
+        Mockito.doThrow(new RemoteException()).when(binder)
+                .linkToDeath(Mockito.any(IBinder.DeathRecipient.class), Mockito.anyInt());
+        final ISensorServiceCallback callback = mockCallback(binder);
+        final CallbackRegistration registration =
+                new CallbackRegistration(SensorType.PRESSURE, callback, UPDATE_FREQUENCY);
+        mBinder.startSensor(registration, callback);
+        assertThat(mBinder.getCallback(registration), is(nullValue()));
+        Mockito.verify(mSensorHandler, Mockito.never())
+                .addObserver(Mockito.any(AbstractSensor.Observer.class));
+    }
+
+    /**
+     * Verify that the binder of a client is unlinked when its last callback is removed, and
+     * a late death notification does not evict anything.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testUnlinkToDeath() throws RemoteException {
+        final IBinder binder = Mockito.mock(IBinder.class);
+        final ISensorServiceCallback callback = mockCallback(binder);
+        final CallbackRegistration registration =
+                new CallbackRegistration(SensorType.PRESSURE, callback, UPDATE_FREQUENCY);
+        mBinder.startSensor(registration, callback);
+        final IBinder.DeathRecipient recipient = captureDeathRecipient(binder);
+        mBinder.stopSensor(registration);
+        Mockito.verify(binder, Mockito.times(1)).unlinkToDeath(recipient, 0);
+
+        mBinder.startSensor(registration, callback);
+        recipient.binderDied();
+        assertThat(mBinder.getCallback(registration), is(notNullValue()));
+    }
+
+    /**
+     * Verify that clients killed while the sensor updates are dispatched to them are evicted,
+     * neither the dispatching thread nor the other clients fail, and no dead client is called
+     * after its eviction.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testKillClientsDuringDispatch() throws Exception {
+        final int clientCount = 20;
+        final int updateCount = 2000;
+        // Call the clients on the sensor thread, so all updates are sent when it is done.
+        final SensorServiceBinder binder = new SensorServiceBinder(mSensorHandler,
+                new Handler(Looper.getMainLooper()),
+                Runnable::run,
+                SensorServiceBinder.DEFAULT_QUEUE_CAPACITY,
+                ResponseDispatcher.OverflowPolicy.CONFLATE_LATEST);
+        final List<FakeClient> clients = new ArrayList<>();
+        final List<CallbackRegistration> registrations = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            final FakeClient client = new FakeClient();
+            final CallbackRegistration registration =
+                    new CallbackRegistration(SensorType.PRESSURE, client, UPDATE_FREQUENCY);
+            binder.startSensor(registration, client);
+            client.mRecipient = captureDeathRecipient(client.mBinder);
+            clients.add(client);
+            registrations.add(registration);
+        }
+        final ArgumentCaptor<AbstractSensor.Observer> observers =
+                ArgumentCaptor.forClass(AbstractSensor.Observer.class);
+        Mockito.verify(mSensorHandler, Mockito.times(clientCount))
+                .addObserver(observers.capture());
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread sensorThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < updateCount; i++) {
+                    final AbstractSensor.Result<Float> result =
+                            new AbstractSensor.Result<>(SensorState.RUNNING, (float) i, i);
+                    for (AbstractSensor.Observer observer : observers.getAllValues()) {
+                        observer.onChange(result);
+                    }
+                }
+            } catch (final Throwable throwable) {
+                error.set(throwable);
+            }
+        });
+        sensorThread.start();
+        // Kill every other client while the updates are dispatched.
+        for (int i = 0; i < clientCount; i += 2) {
+            clients.get(i).kill();
+        }
+        sensorThread.join();
+        assertThat(error.get(), is(nullValue()));
+
+        for (int i = 0; i < clientCount; i++) {
+            final int callbackId = registrations.get(i).getCallbackId();
+            if (i % 2 == 0) {
+                assertThat(binder.getCallback(registrations.get(i)), is(nullValue()));
+                assertThat(binder.getQueueDepth(callbackId), is(0));
+                // Only a call already in flight when the client was evicted may follow.
+                assertThat(clients.get(i).mCallsAfterDeath.get(), lessThanOrEqualTo(1));
+            } else {
+                assertThat(binder.getCallback(registrations.get(i)), is(notNullValue()));
+                assertThat(clients.get(i).mCalls.get(), greaterThan(0));
+            }
+        }
+        Mockito.verify(mSensorHandler, Mockito.times(clientCount / 2))
+                .removeObserver(Mockito.any(AbstractSensor.Observer.class));
+    }
+
+    /**
+     * Verify that a client in another process with the same callback id neither shares the
+     * {@link ResponseDispatcher} nor the death link of the first client, and cannot take over
+     * the registration of the first client.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCallbackIdOfOtherClient() throws Exception {
+        final FakeClient first = new FakeClient();
+        final FakeClient second = new FakeClient();
+        // Both registrations carry the callback id of the first client.
+        final CallbackRegistration pressure =
+                new CallbackRegistration(SensorType.PRESSURE, first, UPDATE_FREQUENCY);
+        final CallbackRegistration location =
+                new CallbackRegistration(SensorType.LOCATION, first, UPDATE_FREQUENCY);
+        mBinder.startSensor(pressure, first);
+        first.mRecipient = captureDeathRecipient(first.mBinder);
+        mBinder.startSensor(location, second);
+        second.mRecipient = captureDeathRecipient(second.mBinder);
+        assertThat(mBinder.getCallback(location).getCallback(), is(second));
+
+        mBinder.startSensor(pressure, second);
+        assertThat(mBinder.getCallback(pressure).getCallback(), is(first));
+
+        first.kill();
+        assertThat(mBinder.getCallback(pressure), is(nullValue()));
+        assertThat(mBinder.getCallback(location), is(notNullValue()));
+        second.kill();
+        assertThat(mBinder.getCallback(location), is(nullValue()));
+    }
+
+    /**
+     * Verify that clients of other {@link SensorType}s can register and unregister while a
+     * sensor is started, and the client starting it is already registered.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRegistrationDuringSensorStart() throws Exception {
+        final CountDownLatch isStarting = new CountDownLatch(1);
+        final CountDownLatch isReleased = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            final AbstractSensor.Observer observer = invocation.getArgument(0);
+            if (observer.getType() == SensorType.PRESSURE) {
+                isStarting.countDown();
+                isReleased.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }).when(mSensorHandler).addObserver(Mockito.any(AbstractSensor.Observer.class));
+        final FakeClient pressureClient = new FakeClient();
+        final CallbackRegistration pressure =
+                new CallbackRegistration(SensorType.PRESSURE, pressureClient, UPDATE_FREQUENCY);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread pressureThread = new Thread(() -> {
+            try {
+                mBinder.startSensor(pressure, pressureClient);
+            } catch (final Throwable throwable) {
+                error.set(throwable);
+            }
+        });
+        pressureThread.start();
+        assertThat(isStarting.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        assertThat(mBinder.getCallback(pressure), is(notNullValue()));
+
+        final FakeClient locationClient = new FakeClient();
+        final CallbackRegistration location =
+                new CallbackRegistration(SensorType.LOCATION, locationClient, UPDATE_FREQUENCY);
+        final Thread locationThread = new Thread(() -> {
+            try {
+                mBinder.startSensor(location, locationClient);
+                mBinder.stopSensor(location);
+                mBinder.startSensor(location, locationClient);
+            } catch (final Throwable throwable) {
+                error.set(throwable);
+            }
+        });
+        locationThread.start();
+        locationThread.join(TIMEOUT);
+        assertThat(locationThread.isAlive(), is(false));
+        assertThat(mBinder.getCallback(location), is(notNullValue()));
+
+        isReleased.countDown();
+        pressureThread.join(TIMEOUT);
+        assertThat(pressureThread.isAlive(), is(false));
+        assertThat(error.get(), is(nullValue()));
+        assertThat(mBinder.getCallback(pressure), is(notNullValue()));
+    }
+
+    /**
+     * Verify clients registering and unregistering concurrently, while starting or
+     * stopping a sensor takes {@link #SENSOR_START_TIME} microseconds.
+     * Every registration starts and stops the sensor once and no callback stays registered.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        registerConcurrently(8, 500);
+    }
+
+    /**
+     * Benchmark clients of all {@link SensorType}s registering and unregistering concurrently,
+     * while starting or stopping a sensor takes {@link #SENSOR_START_TIME} microseconds.
+     * Prints the time next to starting and stopping the sensors one after another.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testRegistrationBenchmark() throws Exception {
+        final int threadCount = 8;
+        final int iterations = 500;
+        final long time = registerConcurrently(threadCount, iterations);
+        final int registrationCount = threadCount * iterations;
+        final long sequentialTime =
+                TimeUnit.MICROSECONDS.toNanos(2 * registrationCount * SENSOR_START_TIME);
+        System.out.println("SensorServiceBinder " + threadCount + " threads: "
+                + registrationCount + " registrations in " + time / 1000000 + "ms, "
+                + time / registrationCount / 1000 + "us per registration, sequential sensor "
+                + "start and stop " + sequentialTime / 1000000 + "ms");
+    }
+
+    /**
+     * Register and unregister a client of each thread the given number of times, cycling
+     * through the {@link SensorType}s, and verify every registration started and stopped the
+     * sensor once.
+     *
+     * @param threadCount number of threads
+     * @param iterations  registrations per thread
+     * @return the time taken in nanoseconds
+     * @throws Exception
+     */
+    private long registerConcurrently(final int threadCount, final int iterations)
+            throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger stopped = new AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            started.incrementAndGet();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(SENSOR_START_TIME));
+            return null;
+        }).when(mSensorHandler).addObserver(Mockito.any(AbstractSensor.Observer.class));
+        Mockito.doAnswer(invocation -> {
+            stopped.incrementAndGet();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(SENSOR_START_TIME));
+            return null;
+        }).when(mSensorHandler).removeObserver(Mockito.any(AbstractSensor.Observer.class));
+
+        final CountDownLatch isReady = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final List<CallbackRegistration> registrations = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final FakeClient client = new FakeClient();
+            final CallbackRegistration registration = new CallbackRegistration(
+                    SensorType.values()[i % SensorType.values().length],
+                    client,
+                    UPDATE_FREQUENCY);
+            registrations.add(registration);
+            final Thread thread = new Thread(() -> {
+                try {
+                    isReady.await();
+                    for (int j = 0; j < iterations; j++) {
+                        mBinder.startSensor(registration, client);
+                        mBinder.stopSensor(registration);
+                    }
+                } catch (final Throwable throwable) {
+                    error.set(throwable);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        final long timestamp = System.nanoTime();
+        isReady.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final long time = System.nanoTime() - timestamp;
+
+        assertThat(error.get(), is(nullValue()));
+        final int registrationCount = threadCount * iterations;
+        assertThat(started.get(), is(registrationCount));
+        assertThat(stopped.get(), is(registrationCount));
+        for (CallbackRegistration registration : registrations) {
+            assertThat(mBinder.getCallback(registration), is(nullValue()));
+        }
+        return time;
+    }
+
+    /**
+     * Create a mocked {@link ISensorServiceCallback} with the given binder.
+     *
+     * @param binder the binder of the client
+     * @return the {@link ISensorServiceCallback}
+     */
+    private static ISensorServiceCallback mockCallback(final IBinder binder) {
+        final ISensorServiceCallback callback = Mockito.mock(ISensorServiceCallback.class);
+        Mockito.when(callback.asBinder()).thenReturn(binder);
+        return callback;
+    }
+
+    /**
+     * Returns the {@link IBinder.DeathRecipient} linked to the given binder.
+     *
+     * @param binder the binder of the client
+     * @return the {@link IBinder.DeathRecipient}
+     * @throws RemoteException
+     */
+    private static IBinder.DeathRecipient captureDeathRecipient(final IBinder binder)
+            throws RemoteException {
+        final ArgumentCaptor<IBinder.DeathRecipient> recipient =
+                ArgumentCaptor.forClass(IBinder.DeathRecipient.class);
+        Mockito.verify(binder, Mockito.atLeastOnce())
+                .linkToDeath(recipient.capture(), Mockito.anyInt());
+        return recipient.getValue();
+    }
+
+    /**
+     * Client in another process, which can be killed. A killed client throws a
+     * {@link DeadObjectException} on every call, like the binder proxy of a dead process, and
+     * its {@link IBinder.DeathRecipient} is notified.
+     */
+    private static class FakeClient implements ISensorServiceCallback {
+        private final IBinder mBinder = Mockito.mock(IBinder.class);
+        private final AtomicInteger mCalls = new AtomicInteger();
+        private final AtomicInteger mCallsAfterDeath = new AtomicInteger();
+        private volatile boolean mIsDead;
+        private volatile boolean mIsEvicted;
+        private IBinder.DeathRecipient mRecipient;
+
+        /**
+         * Kill the client and notify its {@link IBinder.DeathRecipient}.
+         */
+        private void kill() {
+            mIsDead = true;
+            mRecipient.binderDied();
+            mIsEvicted = true;
+        }
+
+        @Override
+        public void onSensorValueChanged(final Response response) throws RemoteException {
+            onCall();
+        }
+
+        @Override
+        public void onSensorValuesChanged(final ResponseBatch batch) throws RemoteException {
+            onCall();
+        }
+
+        @Override
+        public void onSensorStreamCreated(final SensorStream stream) throws RemoteException {
+            onCall();
+        }
+
+        /**
+         * Count the call and fail if the client is dead.
+         *
+         * @throws DeadObjectException if the client is dead
+         */
+        private void onCall() throws DeadObjectException {
+            if (mIsEvicted) {
+                mCallsAfterDeath.incrementAndGet();
+            }
+            if (mIsDead) {
+                throw new DeadObjectException();
+            }
+            mCalls.incrementAndGet();
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return mBinder;
+        }
+    }
+
     /**
      * Internal parameterized test to verify the functionality for different {@link SensorType}s.
      */
@@ -112,6 +591,8 @@ public class SensorServiceBinderTest {
     @Config(constants = BuildConfig.class)
     public static class StartStopSensorTest {
         private static final long UPDATE_FREQUENCY = 1000;
+        private static final long TIMEOUT = 1000;
+        private static final long LAST_TIME_STAMP = 5000;
         private SensorHandler mSensorHandler;
         private CallbackRegistration mCallbackRegistration;
         private ISensorServiceCallback mCallback;
@@ -161,7 +642,8 @@ public class SensorServiceBinderTest {
                         break;
                     case RECORDING:
                         parameters[1] = RecordingSensor.Observer.class;
-                        parameters[2] = 1234l;
+                        parameters[2] = new RecordingDelta(1234L, 0,
+                                Collections.<RecordingEntry>emptyList());
                         break;
                 }
                 data.add(parameters);
@@ -245,9 +727,103 @@ public class SensorServiceBinderTest {
             final SensorServiceBinder.Callback callback =
                     mBinder.getCallback(mCallbackRegistration);
             callback.getObserver().onChange(Mockito.mock(AbstractSensor.Result.class));
+            // The client is called asynchronously on its own dispatch queue.
+            Mockito.verify(mCallback,
+                    Mockito.timeout(TIMEOUT).times(1))
+                    .onSensorValueChanged(Mockito.any(Response.class));
+        }
+
+        /**
+         * Verify that a new client immediately receives the last value of the sensor.
+         *
+         * @throws RemoteException
+         */
+        @Test
+        public void testLastValueOnStart() throws RemoteException {
+            mockLastResult(LAST_TIME_STAMP + SensorServiceBinder.MAX_VALUE_AGE);
+            mBinder.startSensor(mCallbackRegistration, mCallback);
+            final Response response = captureResponse();
+            assertThat(response.isStale(), is(false));
+            assertThat(response.getValue().getTimeStamp(), is(LAST_TIME_STAMP));
+            assertThat(response.getValue().getValue(), is(mValue));
+        }
+
+        /**
+         * Verify that a last value older than the freshness bound is flagged as stale.
+         *
+         * @throws RemoteException
+         */
+        @Test
+        public void testStaleLastValue() throws RemoteException {
+            mockLastResult(LAST_TIME_STAMP + SensorServiceBinder.MAX_VALUE_AGE + 1);
+            mBinder.startSensor(mCallbackRegistration, mCallback);
+            assertThat(captureResponse().isStale(), is(true));
+        }
+
+        /**
+         * Verify that {@link SensorServiceBinder#requestUpdate(CallbackRegistration)} is
+         * answered with the last value of the sensor.
+         *
+         * @throws RemoteException
+         */
+        @Test
+        public void testRequestUpdate() throws RemoteException {
+            mBinder.requestUpdate(mCallbackRegistration);
+            mBinder.startSensor(mCallbackRegistration, mCallback);
+            mockLastResult(LAST_TIME_STAMP);
+            mBinder.requestUpdate(mCallbackRegistration);
+            assertThat(captureResponse().getValue().getTimeStamp(), is(LAST_TIME_STAMP));
+        }
+
+        /**
+         * Let the {@link SensorHandler} return a last value measured at
+         * {@link #LAST_TIME_STAMP}.
+         *
+         * @param now the current time in milliseconds since boot
+         */
+        private void mockLastResult(final long now) {
+            final Clock clock = Mockito.mock(Clock.class);
+            Mockito.when(clock.elapsedRealtime()).thenReturn(now);
+            Mockito.when(mSensorHandler.getClock()).thenReturn(clock);
+            Mockito.when(mSensorHandler.getLastResult(mSensorType)).thenReturn(
+                    new AbstractSensor.Result<>(SensorState.RUNNING, mValue, LAST_TIME_STAMP));
+        }
+
+        /**
+         * Returns the single {@link Response} received by the client.
+         *
+         * @return the {@link Response}
+         * @throws RemoteException
+         */
+        private Response captureResponse() throws RemoteException {
+            final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+            Mockito.verify(mCallback, Mockito.timeout(TIMEOUT).times(1))
+                    .onSensorValueChanged(response.capture());
+            return response.getValue();
+        }
+
+        /**
+         * Verify that the updates are sent by binder callbacks if the device does not support
+         * {@link SensorStream}s.
+         *
+         * @throws RemoteException
+         */
+        @Test
+        @Config(constants = BuildConfig.class, sdk = 25)
+        public void testSharedMemoryFallback() throws RemoteException {
+            final CallbackRegistration registration = new CallbackRegistration(mSensorType,
+                    mCallback,
+                    UPDATE_FREQUENCY,
+                    0,
+                    CallbackRegistration.Transport.SHARED_MEMORY);
+            mBinder.startSensor(registration, mCallback);
+            final SensorServiceBinder.Callback callback = mBinder.getCallback(registration);
+            callback.getObserver().onChange(Mockito.mock(AbstractSensor.Result.class));
             Mockito.verify(mCallback,
-                    Mockito.times(1))
+                    Mockito.timeout(TIMEOUT).times(1))
                     .onSensorValueChanged(Mockito.any(Response.class));
+            Mockito.verify(mCallback, Mockito.never())
+                    .onSensorStreamCreated(Mockito.any(SensorStream.class));
         }
 
         /**
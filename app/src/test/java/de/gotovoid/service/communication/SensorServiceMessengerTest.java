@@ -2,6 +2,7 @@ package de.gotovoid.service.communication;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.RemoteException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -155,6 +156,30 @@ public class SensorServiceMessengerTest {
         assertThat(mMenssenger.stopRecording(), is(false));
     }
 
+    /**
+     * Verify that {@link SensorServiceMessenger#setAmbient(CallbackRegistration, boolean)}
+     * forwards the ambient mode to the service.
+     *
+     * @throws RemoteException
+     */
+    @Test
+    public void testSetAmbient() throws RemoteException {
+        Mockito.when(mConnection.getService()).thenReturn(mSensorService);
+        final CallbackRegistration registration = Mockito.mock(CallbackRegistration.class);
+        assertThat(mMenssenger.setAmbient(registration, true), is(true));
+        Mockito.verify(mSensorService).setAmbient(registration, true);
+    }
+
+    /**
+     * Verify that {@link SensorServiceMessenger#setAmbient(CallbackRegistration, boolean)}
+     * returns false when unbound.
+     */
+    @Test
+    public void testSetAmbientUnbound() {
+        final CallbackRegistration registration = Mockito.mock(CallbackRegistration.class);
+        assertThat(mMenssenger.setAmbient(registration, true), is(false));
+    }
+
     /**
      * Verify that {@link SensorServiceMessenger#setUpdatesEnabled(boolean)} works as expected.
      */
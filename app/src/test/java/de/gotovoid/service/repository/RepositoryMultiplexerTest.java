@@ -0,0 +1,162 @@
+package de.gotovoid.service.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import de.gotovoid.components.arcitecture.IObservable;
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
+import de.gotovoid.service.sensors.SensorType;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link RepositoryMultiplexer}.
+ */
+public class RepositoryMultiplexerTest {
+    private static final long FAST = 100;
+    private static final long SLOW = 1000;
+
+    private RepositoryObservable mObservable;
+    private RepositoryMultiplexer mMultiplexer;
+
+    @Before
+    public void before() {
+        mObservable = Mockito.mock(RepositoryObservable.class);
+        mMultiplexer = new RepositoryMultiplexer(mObservable);
+    }
+
+    /**
+     * Verify that consumers of the same {@link SensorType} share one subscription.
+     */
+    @Test
+    public void testSharedSubscription() {
+        final IObservable.Observer<AbstractSensor.Result<Float>> first = mockConsumer();
+        final IObservable.Observer<AbstractSensor.Result<Float>> second = mockConsumer();
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, first);
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, second);
+        Mockito.verify(mObservable, Mockito.times(1))
+                .addObserver(Mockito.any(RepositoryObserver.class));
+
+        final AbstractSensor.Result<Float> result = createResult(0);
+        getSubscription().onChange(result);
+        Mockito.verify(first).onChange(result);
+        Mockito.verify(second).onChange(result);
+    }
+
+    /**
+     * Verify that the subscription follows the fastest consumer, and the new subscription is
+     * registered before the old one is removed.
+     */
+    @Test
+    public void testFastestConsumer() {
+        final IObservable.Observer<AbstractSensor.Result<Float>> slow = mockConsumer();
+        final IObservable.Observer<AbstractSensor.Result<Float>> fast = mockConsumer();
+        mMultiplexer.addObserver(SensorType.PRESSURE, SLOW, slow);
+        assertThat(mMultiplexer.getUpdateFrequency(SensorType.PRESSURE), is(SLOW));
+
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, fast);
+        assertThat(mMultiplexer.getUpdateFrequency(SensorType.PRESSURE), is(FAST));
+        final List<RepositoryObserver> subscriptions = getSubscriptions();
+        assertThat(subscriptions.size(), is(2));
+        final InOrder inOrder = Mockito.inOrder(mObservable);
+        inOrder.verify(mObservable).addObserver(subscriptions.get(1));
+        inOrder.verify(mObservable).removeObserver(subscriptions.get(0));
+
+        mMultiplexer.removeObserver(SensorType.PRESSURE, fast);
+        assertThat(mMultiplexer.getUpdateFrequency(SensorType.PRESSURE), is(SLOW));
+        Mockito.verify(mObservable).removeObserver(subscriptions.get(1));
+    }
+
+    /**
+     * Verify that every consumer only receives the updates of its own update frequency.
+     */
+    @Test
+    public void testDecimation() {
+        final IObservable.Observer<AbstractSensor.Result<Float>> slow = mockConsumer();
+        final IObservable.Observer<AbstractSensor.Result<Float>> fast = mockConsumer();
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, fast);
+        mMultiplexer.addObserver(SensorType.PRESSURE, SLOW, slow);
+        final RepositoryObserver subscription = getSubscription();
+        for (int i = 0; i < 20; i++) {
+            subscription.onChange(createResult(i * FAST));
+        }
+        Mockito.verify(fast, Mockito.times(20)).onChange(Mockito.any());
+        Mockito.verify(slow, Mockito.times(2)).onChange(Mockito.any());
+    }
+
+    /**
+     * Verify that a new consumer receives the last update of the subscription.
+     */
+    @Test
+    public void testLastValue() {
+        final IObservable.Observer<AbstractSensor.Result<Float>> first = mockConsumer();
+        final IObservable.Observer<AbstractSensor.Result<Float>> second = mockConsumer();
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, first);
+        final AbstractSensor.Result<Float> result = createResult(0);
+        getSubscription().onChange(result);
+
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, second);
+        Mockito.verify(second).onChange(result);
+    }
+
+    /**
+     * Verify that the subscription is removed with the last consumer.
+     */
+    @Test
+    public void testLastConsumer() {
+        final IObservable.Observer<AbstractSensor.Result<Float>> first = mockConsumer();
+        final IObservable.Observer<AbstractSensor.Result<Float>> second = mockConsumer();
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, first);
+        mMultiplexer.addObserver(SensorType.PRESSURE, FAST, second);
+        final RepositoryObserver subscription = getSubscription();
+
+        mMultiplexer.removeObserver(SensorType.PRESSURE, first);
+        Mockito.verify(mObservable, Mockito.never()).removeObserver(subscription);
+        mMultiplexer.removeObserver(SensorType.PRESSURE, second);
+        Mockito.verify(mObservable).removeObserver(subscription);
+        assertThat(mMultiplexer.getUpdateFrequency(SensorType.PRESSURE), is(-1L));
+    }
+
+    /**
+     * Returns the only subscription registered at the {@link RepositoryObservable}.
+     *
+     * @return the subscription
+     */
+    private RepositoryObserver getSubscription() {
+        final List<RepositoryObserver> subscriptions = getSubscriptions();
+        assertThat(subscriptions.size(), is(1));
+        return subscriptions.get(0);
+    }
+
+    /**
+     * Returns the subscriptions registered at the {@link RepositoryObservable}.
+     *
+     * @return the subscriptions
+     */
+    private List<RepositoryObserver> getSubscriptions() {
+        final ArgumentCaptor<RepositoryObserver> captor =
+                ArgumentCaptor.forClass(RepositoryObserver.class);
+        Mockito.verify(mObservable, Mockito.atLeastOnce()).addObserver(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IObservable.Observer<AbstractSensor.Result<Float>> mockConsumer() {
+        return Mockito.mock(IObservable.Observer.class);
+    }
+
+    private static AbstractSensor.Result<Float> createResult(final long timeStamp) {
+        return new AbstractSensor.Result<>(SensorState.RUNNING, 1013.25f, timeStamp);
+    }
+}
@@ -114,4 +114,33 @@ public class RepositoryObservableTest {
         Mockito.verify(mMessenger, Mockito.times(TIMES))
                 .stop(mRegistration);
     }
+
+    @Test
+    public void testSetAmbient() {
+        final RepositoryObserver observer = Mockito.mock(RepositoryObserver.class);
+        Mockito.when(observer.getSensorType()).thenReturn(mType);
+        Mockito.when(observer.getCallbackRegistration()).thenReturn(mRegistration);
+        mObservable.addObserver(observer);
+        Mockito.verify(mMessenger, Mockito.never())
+                .setAmbient(Mockito.any(CallbackRegistration.class), Mockito.anyBoolean());
+
+        mObservable.setAmbient(true);
+        assertThat(mObservable.isAmbient(), is(true));
+        Mockito.verify(mMessenger, Mockito.times(1)).setAmbient(mRegistration, true);
+        mObservable.setAmbient(true);
+        Mockito.verify(mMessenger, Mockito.times(1)).setAmbient(mRegistration, true);
+        mObservable.setAmbient(false);
+        Mockito.verify(mMessenger, Mockito.times(1)).setAmbient(mRegistration, false);
+    }
+
+    @Test
+    public void testAddObserverAmbient() {
+        mObservable.setAmbient(true);
+        final RepositoryObserver observer = Mockito.mock(RepositoryObserver.class);
+        Mockito.when(observer.getSensorType()).thenReturn(mType);
+        Mockito.when(observer.getCallbackRegistration()).thenReturn(mRegistration);
+        mObservable.addObserver(observer);
+        Mockito.verify(mMessenger, Mockito.times(1)).start(mRegistration, observer);
+        Mockito.verify(mMessenger, Mockito.times(1)).setAmbient(mRegistration, true);
+    }
 }
@@ -1,6 +1,7 @@
 package de.gotovoid.service.repository;
 
 import android.arch.persistence.room.Update;
+import android.os.Build;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,6 +11,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.gotovoid.service.communication.CallbackRegistration;
+import de.gotovoid.service.communication.Response;
+import de.gotovoid.service.communication.ResponseBatch;
+import de.gotovoid.service.sensors.AbstractSensor;
+import de.gotovoid.service.sensors.SensorState;
 import de.gotovoid.service.sensors.SensorType;
 
 import static org.junit.Assert.*;
@@ -52,6 +57,20 @@ public class RepositoryObserverTest {
         assertThat(observer.getSensorType(), is(mType));
     }
 
+    /**
+     * Verify that only the pressure is streamed through shared memory, and only where it is
+     * available.
+     */
+    @Test
+    public void testPreferredTransport() {
+        assertThat(RepositoryObserver.getPreferredTransport(mType, Build.VERSION_CODES.O_MR1),
+                is(mType == SensorType.PRESSURE
+                        ? CallbackRegistration.Transport.SHARED_MEMORY
+                        : CallbackRegistration.Transport.BINDER));
+        assertThat(RepositoryObserver.getPreferredTransport(mType, Build.VERSION_CODES.O),
+                is(CallbackRegistration.Transport.BINDER));
+    }
+
     /**
      * Verify that the {@link CallbackRegistration} is created correctly.
      */
@@ -61,6 +80,8 @@ public class RepositoryObserverTest {
         CallbackRegistration registration = observer.getCallbackRegistration();
         assertThat(registration.getUpdateFrequency(), is(UPDATE_FREQUENCY));
         assertThat(registration.getType(), is(mType));
+        assertThat(registration.getAmbientUpdateFrequency(),
+                is(RepositoryObserver.DEFAULT_AMBIENT_UPDATE_FREQUENCY));
     }
 
     /**
@@ -73,10 +94,47 @@ public class RepositoryObserverTest {
         assertThat(observer.getCallbackRegistration(), is(registration));
     }
 
+    /**
+     * Verify that the stale flag of a {@link Response} is delivered with the
+     * {@link AbstractSensor.Result}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStaleValue() throws Exception {
+        final TestRepositoryObserver observer = new TestRepositoryObserver(UPDATE_FREQUENCY, mType);
+        observer.onSensorValueChanged(new Response(createResult(), true));
+        observer.onSensorValueChanged(new Response(createResult()));
+        final ResponseBatch batch = new ResponseBatch();
+        batch.add(mType, new Response(createResult(), true));
+        batch.add(mType, new Response(createResult()));
+        observer.onSensorValuesChanged(batch);
+
+        assertThat(observer.mResults, hasSize(4));
+        assertThat(observer.mResults.get(0).isStale(), is(true));
+        assertThat(observer.mResults.get(0).getTimeStamp(), is(UPDATE_FREQUENCY));
+        assertThat(observer.mResults.get(1).isStale(), is(false));
+        assertThat(observer.mResults.get(2).isStale(), is(true));
+        assertThat(observer.mResults.get(3).isStale(), is(false));
+    }
+
+    /**
+     * Create an {@link AbstractSensor.Result} measured at {@link #UPDATE_FREQUENCY}.
+     *
+     * @return the {@link AbstractSensor.Result}
+     */
+    private static AbstractSensor.Result<Long> createResult() {
+        return new AbstractSensor.Result<>(SensorState.RUNNING, 0L, UPDATE_FREQUENCY);
+    }
+
     /**
      * Implementation of the {@link RepositoryObserver} class for test purposes only.
      */
     private class TestRepositoryObserver extends RepositoryObserver {
+        /**
+         * The delivered {@link AbstractSensor.Result}s.
+         */
+        private final List<AbstractSensor.Result> mResults = new ArrayList<>();
 
         /**
          * Constructor taking the update frequency and {@link SensorType} needed for the callback
@@ -91,7 +149,7 @@ public class RepositoryObserverTest {
 
         @Override
         public void onChange(final Object data) {
-            // Do nothing
+            mResults.add((AbstractSensor.Result) data);
         }
     }
 }
@@ -5,6 +5,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
@@ -16,12 +25,31 @@ import static org.hamcrest.Matchers.*;
 /**
  * Verify the basic functionality of the {@link AbstractSensor}.
  */
-public abstract class AbstractSensorTest extends GenericSensorTest {
+public class AbstractSensorTest extends GenericSensorTest {
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATIONS = 2000;
+    private static final long TIMEOUT = 10000;
+    private static final int[] VALUES = {0, 10, 11, 12, 13, 14, 15, 16, 30, 31};
+    private static final int[] OBSERVER_COUNTS = {1, 2, 5, 10};
     private Sensor mSensor;
 
     @Before
     public void before() {
-        mSensor = new Sensor(Mockito.mock(AbstractSensor.StateEvaluator.class));
+        mSensor = new Sensor(createEvaluator());
+    }
+
+    /**
+     * Create the {@link AbstractSensor.StateEvaluator} used by the {@link Sensor}.
+     *
+     * @return the {@link AbstractSensor.StateEvaluator}
+     */
+    private static AbstractSensor.StateEvaluator<Integer> createEvaluator() {
+        return new AbstractSensor.StateEvaluator<Integer>(5, 5) {
+            @Override
+            protected double computeDifference(final Integer first, final Integer second) {
+                return Math.abs(second - first);
+            }
+        };
     }
 
     /**
@@ -33,6 +61,11 @@ public abstract class AbstractSensorTest extends GenericSensorTest {
         return mSensor;
     }
 
+    @Override
+    protected Serializable getData() {
+        return 0;
+    }
+
     /**
      * Verify that the start method is called when the first observer is added.
      */
@@ -59,6 +92,18 @@ public abstract class AbstractSensorTest extends GenericSensorTest {
         assertThat(mSensor.mIsStopped, equalTo(true));
     }
 
+    /**
+     * Verify that removing all observers stops the sensor.
+     */
+    @Test
+    public void testRemoveAllObservers() {
+        mSensor.addObserver(new CountingObserver(1000));
+        mSensor.addObserver(new CountingObserver(2000));
+        mSensor.removeAllObservers();
+        assertThat(mSensor.isStarted(), is(false));
+        assertThat(mSensor.mIsStopped, equalTo(true));
+    }
+
     /**
      * Verify that the sensor is restarted when an observer with a shorter update frequency
      * is added.
@@ -95,13 +140,396 @@ public abstract class AbstractSensorTest extends GenericSensorTest {
         assertThat(mSensor.mIsRestarted, equalTo(true));
     }
 
+    /**
+     * Verify that the sensor follows the update frequency of its {@link AbstractSensor.Observer}s
+     * when it is changed, and is only restarted if the minimal update frequency changed.
+     */
+    @Test
+    public void testSetUpdateFrequency() {
+        final CountingObserver fast = new CountingObserver(1000);
+        final CountingObserver slow = new CountingObserver(4000);
+        mSensor.addObserver(fast);
+        mSensor.addObserver(slow);
+        assertThat(mSensor.getUpdateFrequency(), is(1000L));
+
+        mSensor.setUpdateFrequency(slow, 60000);
+        assertThat(slow.getUpdateFrequency(), is(60000L));
+        assertThat(mSensor.mIsRestarted, equalTo(false));
+
+        mSensor.setUpdateFrequency(fast, 60000);
+        assertThat(mSensor.getUpdateFrequency(), is(60000L));
+        assertThat(mSensor.mIsRestarted, equalTo(true));
+
+        mSensor.mIsRestarted = false;
+        mSensor.setUpdateFrequency(fast, 1000);
+        assertThat(mSensor.getUpdateFrequency(), is(1000L));
+        assertThat(mSensor.mIsRestarted, equalTo(true));
+    }
+
+    /**
+     * Verify that changing the update frequency of an {@link AbstractSensor.Observer} which is
+     * not registered does not restart the sensor.
+     */
+    @Test
+    public void testSetUpdateFrequencyUnregistered() {
+        final CountingObserver registered = new CountingObserver(4000);
+        final CountingObserver unregistered = new CountingObserver(4000);
+        mSensor.addObserver(registered);
+        mSensor.setUpdateFrequency(unregistered, 1000);
+        assertThat(unregistered.getUpdateFrequency(), is(1000L));
+        assertThat(mSensor.getUpdateFrequency(), is(4000L));
+        assertThat(mSensor.mIsRestarted, equalTo(false));
+    }
+
+    /**
+     * Verify that the sequence of {@link SensorState}s received by the
+     * {@link AbstractSensor.Observer}s does not depend on the number of registered
+     * {@link AbstractSensor.Observer}s.
+     */
+    @Test
+    public void testStateIndependentOfObserverCount() {
+        final AbstractSensor.StateEvaluator<Integer> evaluator = createEvaluator();
+        final List<AbstractSensor.Observer<Integer>> single = new ArrayList<>();
+        single.add(new StateObserver());
+        final List<SensorState> expected = new ArrayList<>();
+        for (int value : VALUES) {
+            expected.add(evaluator.evaluateState(value, single));
+        }
+        assertThat(expected, hasItem(SensorState.CALIBRATING));
+        assertThat(expected.get(expected.size() - 1), is(SensorState.RUNNING));
+
+        for (int count : OBSERVER_COUNTS) {
+            final Sensor sensor = new Sensor(createEvaluator());
+            final List<StateObserver> observers = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final StateObserver observer = new StateObserver();
+                observers.add(observer);
+                sensor.addObserver(observer);
+            }
+            for (int value : VALUES) {
+                sensor.notifyObserver(value);
+            }
+            for (StateObserver observer : observers) {
+                assertThat(observer.mStates, is(expected));
+            }
+        }
+    }
+
+    /**
+     * Verify that all {@link AbstractSensor.Observer}s notified with a sensor reading receive
+     * the same {@link AbstractSensor.Result}.
+     */
+    @Test
+    public void testSharedResult() {
+        final StateObserver observer1 = new StateObserver();
+        final StateObserver observer2 = new StateObserver();
+        mSensor.addObserver(observer1);
+        mSensor.addObserver(observer2);
+        mSensor.notifyObserver(getData());
+        assertThat(observer1.mLastResult, is(notNullValue()));
+        assertThat(observer1.mLastResult, is(sameInstance(observer2.mLastResult)));
+        assertThat(observer1.mLastResult.getSensorState(), is(SensorState.STARTED));
+    }
+
+    /**
+     * Verify that the timing of the {@link AbstractSensor.Observer}s is based on the time of
+     * measurement, so sensor data delivered at once is not dropped.
+     */
+    @Test
+    public void testNotifyTimeStamp() {
+        final CountingObserver observer = new CountingObserver(1000);
+        mSensor.addObserver(observer);
+        mSensor.notifyObserver(getData(), 0);
+        mSensor.notifyObserver(getData(), 500);
+        mSensor.notifyObserver(getData(), 1000);
+        mSensor.notifyObserver(getData(), 1990);
+        assertThat(observer.mCount.get(), is(3));
+    }
+
+    /**
+     * Verify that the last {@link AbstractSensor.Result} is kept, also if no
+     * {@link AbstractSensor.Observer} was notified.
+     */
+    @Test
+    public void testLastResult() {
+        assertThat(mSensor.getLastResult(), is(nullValue()));
+        mSensor.notifyObserver(getData(), 0);
+        assertThat(mSensor.getLastResult().getTimeStamp(), is(0L));
+
+        final CountingObserver observer = new CountingObserver(1000);
+        mSensor.addObserver(observer);
+        mSensor.notifyObserver(getData(), 1000);
+        mSensor.notifyObserver(getData(), 1500);
+        assertThat(observer.mCount.get(), is(1));
+        assertThat(mSensor.getLastResult().getTimeStamp(), is(1500L));
+        assertThat(mSensor.getLastResult().getValue(), is(getData()));
+
+        mSensor.notifyObserverBatch(Arrays.asList(1, 2), new long[]{1600, 1700});
+        assertThat(mSensor.getLastResult().getTimeStamp(), is(1700L));
+        assertThat(mSensor.getLastResult().getValue(), is(2));
+    }
+
+    /**
+     * Verify that a batch of sensor data is evaluated per value and delivered completely to
+     * {@link AbstractSensor.Observer}s overriding
+     * {@link AbstractSensor.Observer#onBatchChange(List)}, while other
+     * {@link AbstractSensor.Observer}s only receive the latest value.
+     */
+    @Test
+    public void testNotifyBatch() {
+        final AbstractSensor.StateEvaluator<Integer> evaluator = createEvaluator();
+        final List<AbstractSensor.Observer<Integer>> single = new ArrayList<>();
+        single.add(new StateObserver());
+        final List<Integer> values = new ArrayList<>();
+        final long[] timeStamps = new long[VALUES.length];
+        final List<SensorState> expected = new ArrayList<>();
+        for (int i = 0; i < VALUES.length; i++) {
+            values.add(VALUES[i]);
+            timeStamps[i] = i * 100;
+            expected.add(evaluator.evaluateState(VALUES[i], single));
+        }
+
+        final StateObserver observer = new StateObserver();
+        final List<AbstractSensor.Result<Integer>> batch = new ArrayList<>();
+        final StateObserver batchObserver = new StateObserver() {
+            @Override
+            public void onBatchChange(final List<AbstractSensor.Result<Integer>> results) {
+                batch.addAll(results);
+            }
+        };
+        mSensor.addObserver(observer);
+        mSensor.addObserver(batchObserver);
+        mSensor.notifyObserverBatch(values, timeStamps);
+
+        assertThat(observer.mStates.size(), is(1));
+        assertThat(observer.mLastResult.getValue(), is(VALUES[VALUES.length - 1]));
+        assertThat(observer.mLastResult.getTimeStamp(), is(timeStamps[VALUES.length - 1]));
+        assertThat(batch.size(), is(VALUES.length));
+        for (int i = 0; i < VALUES.length; i++) {
+            assertThat(batch.get(i).getValue(), is(VALUES[i]));
+            assertThat(batch.get(i).getTimeStamp(), is(timeStamps[i]));
+            assertThat(batch.get(i).getSensorState(), is(expected.get(i)));
+        }
+    }
+
+    /**
+     * Verify that the {@link AbstractSensor.BatchAggregator} provides the median of the values
+     * of each period.
+     */
+    @Test
+    public void testBatchAggregator() {
+        final long period = 1000;
+        final AbstractSensor.BatchAggregator aggregator = new AbstractSensor.BatchAggregator();
+        assertThat(aggregator.add(0, 1f, period), is(true));
+        assertThat(aggregator.getResult(), is(1f));
+        final float[] values = {5f, 3f, 9f, 4f};
+        for (int i = 0; i < values.length; i++) {
+            assertThat(aggregator.add((i + 1) * 200, values[i], period), is(false));
+        }
+        assertThat(aggregator.add(1000, 7f, period), is(true));
+        assertThat(aggregator.getResult(), is(5f));
+        assertThat(aggregator.add(1200, 2f, period), is(false));
+        assertThat(aggregator.add(2000, 4f, period), is(true));
+        assertThat(aggregator.getResult(), is(3f));
+        aggregator.reset();
+        assertThat(aggregator.add(2100, 8f, period), is(true));
+        assertThat(aggregator.getResult(), is(8f));
+    }
+
+    /**
+     * Verify that adding and removing {@link AbstractSensor.Observer}s from many threads while
+     * the sensor data is dispatched at a high rate neither fails nor leaves an inconsistent state.
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    @Test
+    public void testConcurrentObservers() throws InterruptedException {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicBoolean isDispatching = new AtomicBoolean(true);
+        final CountingObserver permanent = new CountingObserver(0);
+        mSensor.addObserver(permanent);
+
+        final Thread dispatcher = new Thread(() -> {
+            try {
+                while (isDispatching.get()) {
+                    mSensor.notifyObserver(getData());
+                }
+            } catch (Throwable throwable) {
+                error.compareAndSet(null, throwable);
+            }
+        });
+        dispatcher.start();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final long updateFrequency = i * 10;
+            final Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        final CountingObserver observer = new CountingObserver(updateFrequency);
+                        mSensor.addObserver(observer);
+                        mSensor.removeObserver(observer);
+                    }
+                } catch (Throwable throwable) {
+                    error.compareAndSet(null, throwable);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+        isDispatching.set(false);
+        dispatcher.join(TIMEOUT);
+
+        assertThat(error.get(), is(nullValue()));
+        assertThat(mSensor.getObservers().size(), is(1));
+        assertThat(mSensor.getObservers().contains(permanent), is(true));
+        assertThat(mSensor.getUpdateFrequency(), is(0L));
+        assertThat(mSensor.mStartCount.get(), is(1));
+        assertThat(mSensor.mIsStopped, is(false));
+        assertThat(permanent.mCount.get(), greaterThan(0));
+
+        mSensor.removeObserver(permanent);
+        assertThat(mSensor.isStarted(), is(false));
+        assertThat(mSensor.mIsStopped, is(true));
+    }
+
+    /**
+     * Verify that removing the last {@link AbstractSensor.Observer} while the sensor data is
+     * dispatched, which resets the {@link AbstractSensor.StateEvaluator}, does not fail the
+     * evaluation of the sensor data on the sensor thread.
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    @Test
+    public void testRemoveLastObserverDuringDispatch() throws InterruptedException {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicBoolean isDispatching = new AtomicBoolean(true);
+        final Thread dispatcher = new Thread(() -> {
+            try {
+                int value = 0;
+                while (isDispatching.get()) {
+                    // Alternate the values, so the state is evaluated with every value.
+                    mSensor.notifyObserver(value++ % 2 * 100);
+                    mSensor.notifyObserverBatch(Arrays.asList(0, 100, 0), new long[]{0, 1, 2});
+                }
+            } catch (Throwable throwable) {
+                error.compareAndSet(null, throwable);
+            }
+        });
+        dispatcher.start();
+
+        final Thread thread = new Thread(() -> {
+            try {
+                for (int j = 0; j < ITERATIONS * THREAD_COUNT; j++) {
+                    final CountingObserver observer = new CountingObserver(0);
+                    mSensor.addObserver(observer);
+                    mSensor.removeObserver(observer);
+                }
+            } catch (Throwable throwable) {
+                error.compareAndSet(null, throwable);
+            }
+        });
+        thread.start();
+        thread.join(TIMEOUT);
+        isDispatching.set(false);
+        dispatcher.join(TIMEOUT);
+
+        assertThat(error.get(), is(nullValue()));
+        assertThat(mSensor.isStarted(), is(false));
+        assertThat(mSensor.mStartCount.get(), is(ITERATIONS * THREAD_COUNT));
+    }
+
+    /**
+     * Verify that an {@link AbstractSensor.Observer} blocking during dispatch does not block
+     * adding and removing other {@link AbstractSensor.Observer}s.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void testSlowObserver() throws InterruptedException {
+        final CountDownLatch isBlocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingObserver slow = new CountingObserver(0) {
+            @Override
+            public void onChange(final AbstractSensor.Result type) {
+                isBlocked.countDown();
+                try {
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        mSensor.addObserver(slow);
+        final Thread dispatcher = new Thread(() -> mSensor.notifyObserver(getData()));
+        dispatcher.start();
+        assertThat(isBlocked.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+        final CountingObserver observer = new CountingObserver(0);
+        mSensor.addObserver(observer);
+        assertThat(mSensor.getObservers().size(), is(2));
+        mSensor.removeObserver(observer);
+        assertThat(mSensor.getObservers().size(), is(1));
+
+        release.countDown();
+        dispatcher.join(TIMEOUT);
+        // The observer was added and removed during the dispatch, it must not be notified.
+        assertThat(observer.mCount.get(), is(0));
+    }
+
+    /**
+     * {@link AbstractSensor.Observer} counting the received updates.
+     */
+    private static class CountingObserver extends AbstractSensor.Observer {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * Constructor taking the update frequency.
+         *
+         * @param updateFrequency the update frequency
+         */
+        public CountingObserver(final long updateFrequency) {
+            super(updateFrequency, SensorType.PRESSURE);
+        }
+
+        @Override
+        public void onChange(final AbstractSensor.Result type) {
+            mCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@link AbstractSensor.Observer} recording the received {@link SensorState}s.
+     */
+    private static class StateObserver extends AbstractSensor.Observer<Integer> {
+        private final List<SensorState> mStates = new ArrayList<>();
+        private AbstractSensor.Result<Integer> mLastResult;
+
+        /**
+         * Constructor.
+         */
+        public StateObserver() {
+            super(0, SensorType.PRESSURE);
+        }
+
+        @Override
+        public void onChange(final AbstractSensor.Result<Integer> result) {
+            mStates.add(result.getSensorState());
+            mLastResult = result;
+        }
+    }
+
     /**
      * {@link AbstractSensor} implementation for test purposes.
      */
     private class Sensor extends AbstractSensor {
-        private boolean mIsStarted;
-        private boolean mIsStopped;
-        private boolean mIsRestarted;
+        private final AtomicInteger mStartCount = new AtomicInteger();
+        private volatile boolean mIsStarted;
+        private volatile boolean mIsStopped;
+        private volatile boolean mIsRestarted;
 
         public Sensor(final StateEvaluator stateEvaluator) {
             super(stateEvaluator);
@@ -109,6 +537,7 @@ public abstract class AbstractSensorTest extends GenericSensorTest {
 
         @Override
         protected void startSensor() {
+            mStartCount.incrementAndGet();
             mIsStarted = true;
         }
 
@@ -8,6 +8,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -206,6 +207,7 @@ public abstract class GenericSensorTest {
     public static class StateEvaluatorTest {
         private List<AbstractSensor.Observer<Integer>> mEmptyList;
         private List<AbstractSensor.Observer<Integer>> mObserverList;
+        private static final double TOLERANCE = 0.000001;
         private StateEvaluator mEvaluator;
 
         /**
@@ -263,6 +265,57 @@ public abstract class GenericSensorTest {
             assertThat(state, is(SensorState.RUNNING));
         }
 
+        /**
+         * Verify that differences leaving the window are no longer regarded.
+         */
+        @Test
+        public void testSlidingWindow() {
+            final int[] values = {0, 100, 101, 102, 103};
+            SensorState state = null;
+            for (int value : values) {
+                state = mEvaluator.evaluateState(value, mObserverList);
+            }
+            assertThat(state, is(SensorState.CALIBRATING));
+            assertThat(mEvaluator.getAverageDifference(), closeTo(25.75, TOLERANCE));
+            state = mEvaluator.evaluateState(104, mObserverList);
+            assertThat(state, is(SensorState.RUNNING));
+            assertThat(mEvaluator.getAverageDifference(), closeTo(1, TOLERANCE));
+        }
+
+        /**
+         * Verify the running average and variance of the differences for a window much
+         * larger than the number of values.
+         */
+        @Test
+        public void testStatistics() {
+            final StateEvaluator evaluator = new StateEvaluator(1000, 5);
+            evaluator.evaluateState(0, mObserverList);
+            assertThat(evaluator.getAverageDifference(), closeTo(0, TOLERANCE));
+            assertThat(evaluator.getDifferenceVariance(), closeTo(0, TOLERANCE));
+            evaluator.evaluateState(10, mObserverList);
+            evaluator.evaluateState(30, mObserverList);
+            // Differences 10 and 20.
+            assertThat(evaluator.getAverageDifference(), closeTo(15, TOLERANCE));
+            assertThat(evaluator.getDifferenceVariance(), closeTo(25, TOLERANCE));
+        }
+
+        /**
+         * Verify that the window and tolerance are taken from the {@link SensorType}.
+         */
+        @Test
+        public void testSensorType() {
+            final StateEvaluator evaluator = new StateEvaluator(SensorType.RECORDING);
+            final int[] values = {0, 10, 20, 30, 40, 50, 51, 52, 53};
+            final SensorState[] states = new SensorState[values.length];
+            for (int i = 0; i < values.length; i++) {
+                states[i] = evaluator.evaluateState(values[i], mObserverList);
+            }
+            assertThat(states[0], is(SensorState.STARTED));
+            assertThat(states[7], is(SensorState.CALIBRATING));
+            // The window of five values contains the differences 10, 1, 1 and 1.
+            assertThat(states[8], is(SensorState.RUNNING));
+        }
+
         /**
          * Test implementation of the {@link StateEvaluator}.
          */
@@ -278,6 +331,15 @@ public abstract class GenericSensorTest {
                 super(bufferSize, tolerance);
             }
 
+            /**
+             * Constructor taking the {@link SensorType}.
+             *
+             * @param type the {@link SensorType}
+             */
+            public StateEvaluator(final SensorType type) {
+                super(type);
+            }
+
             @Override
             protected double computeDifference(final Integer first, final Integer second) {
                 return Math.abs(second - first);
@@ -3,6 +3,7 @@ package de.gotovoid.service.sensors;
 import android.Manifest;
 import android.content.Context;
 import android.location.Location;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.support.v4.BuildConfig;
 
@@ -10,10 +11,12 @@ import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
@@ -24,10 +27,14 @@ import org.robolectric.shadows.ShadowApplication;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 import de.gotovoid.service.LocationService;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
 /**
  * Created by DJ on 27/02/18.
  */
@@ -100,6 +107,26 @@ public class LocationSensorTest extends GenericSensorTest {
                         Mockito.any(Looper.class));
     }
 
+    /**
+     * Verifies that the locations are requested on the {@link Looper} given to the
+     * {@link LocationSensor}.
+     */
+    @Test
+    public void testStartSensorLooper() {
+        grantPermissions();
+        final HandlerThread thread = new HandlerThread("SensorThread");
+        thread.start();
+        mLocationSensor = new TestLocationSensor(LocationServices
+                .getFusedLocationProviderClient(mService.getApplicationContext()),
+                thread.getLooper());
+        getSensor().startSensor();
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .requestLocationUpdates(Mockito.any(LocationRequest.class),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.eq(thread.getLooper()));
+        thread.quitSafely();
+    }
+
     /**
      * Verifies that the {@link LocationSensor#stopSensor()} method behaves correctly when the
      * permissions are not granted.
@@ -140,6 +167,174 @@ public class LocationSensorTest extends GenericSensorTest {
                 .onChange(Mockito.any(AbstractSensor.Result.class));
     }
 
+    /**
+     * Verify that all locations of a batched {@link LocationResult} are delivered to the
+     * observers at once.
+     */
+    @Test
+    public void testNotifyBatch() {
+        final int count = 3;
+        final LocationSensor.Observer observer = Mockito.mock(LocationSensor.Observer.class);
+        getSensor().addObserver(observer);
+        final List<Location> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final Location location = Mockito.mock(Location.class);
+            Mockito.when(location.getElapsedRealtimeNanos())
+                    .thenReturn(TimeUnit.SECONDS.toNanos(i));
+            list.add(location);
+        }
+        getSensor().getSensorCallback().onLocationResult(LocationResult.create(list));
+        final ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(observer, Mockito.times(1)).onBatchChange(captor.capture());
+        final List<AbstractSensor.Result> results = captor.getValue();
+        assertThat(results.size(), is(count));
+        // The locations are timed with the time since boot of the fix.
+        for (int i = 0; i < count; i++) {
+            assertThat(results.get(i).getTimeStamp(), is(i * 1000L));
+        }
+    }
+
+    /**
+     * Verify that the maximal wait time is set on the {@link LocationRequest} to enable
+     * batching.
+     */
+    @Test
+    public void testMaxWaitTime() {
+        final long maxWaitTime = 60000;
+        grantPermissions();
+        mLocationSensor = new TestLocationSensor(mService.getApplicationContext());
+        getSensor().setMaxWaitTime(maxWaitTime);
+        getSensor().startSensor();
+        final ArgumentCaptor<LocationRequest> captor =
+                ArgumentCaptor.forClass(LocationRequest.class);
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .requestLocationUpdates(captor.capture(),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+        assertThat(captor.getValue().getMaxWaitTime(), is(maxWaitTime));
+    }
+
+    /**
+     * Verify that changing the maximal wait time restarts the running sensor only.
+     */
+    @Test
+    public void testMaxWaitTimeRestart() {
+        grantPermissions();
+        mLocationSensor = new TestLocationSensor(mService.getApplicationContext());
+        getSensor().setMaxWaitTime(60000);
+        Mockito.verify(mLocationProvider, Mockito.never())
+                .requestLocationUpdates(Mockito.any(LocationRequest.class),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+
+        getSensor().addObserver(Mockito.mock(LocationSensor.Observer.class));
+        getSensor().setMaxWaitTime(120000);
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .removeLocationUpdates(Mockito.any(LocationCallback.class));
+        Mockito.verify(mLocationProvider, Mockito.times(2))
+                .requestLocationUpdates(Mockito.any(LocationRequest.class),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+    }
+
+    /**
+     * Verify that interval and priority of the {@link LocationRequest} are taken from the
+     * {@link SamplingPolicy}.
+     */
+    @Test
+    public void testSamplingPolicy() {
+        final long interval = 6000;
+        grantPermissions();
+        mLocationSensor = new TestLocationSensor(mService.getApplicationContext());
+        final SamplingPolicy policy = Mockito.mock(SamplingPolicy.class);
+        Mockito.when(policy.getInterval(Mockito.anyLong())).thenReturn(interval);
+        Mockito.when(policy.getPriority())
+                .thenReturn(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+        getSensor().setSamplingPolicy(policy);
+        getSensor().startSensor();
+        final ArgumentCaptor<LocationRequest> captor =
+                ArgumentCaptor.forClass(LocationRequest.class);
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .requestLocationUpdates(captor.capture(),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+        assertThat(captor.getValue().getInterval(), is(interval));
+        assertThat(captor.getValue().getPriority(),
+                is(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY));
+    }
+
+    /**
+     * Verify that a change of the sampling by the {@link SamplingPolicy} restarts the running
+     * sensor.
+     */
+    @Test
+    public void testSamplingPolicyRestart() {
+        grantPermissions();
+        mLocationSensor = new TestLocationSensor(mService.getApplicationContext());
+        final SamplingPolicy policy = createChangingPolicy();
+        getSensor().setSamplingPolicy(policy);
+        getSensor().addObserver(Mockito.mock(LocationSensor.Observer.class));
+        getSensor().onPressureChanged(1013.25f, 0);
+        getSensor().onLocationsChanged(createCoordinates(), new long[]{0});
+        Mockito.verify(mLocationProvider, Mockito.times(2))
+                .removeLocationUpdates(Mockito.any(LocationCallback.class));
+        Mockito.verify(mLocationProvider, Mockito.times(3))
+                .requestLocationUpdates(Mockito.any(LocationRequest.class),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+    }
+
+    /**
+     * Verify that a change of the sampling by the {@link SamplingPolicy} after the sensor was
+     * stopped does not request locations again.
+     */
+    @Test
+    public void testSamplingPolicyRestartStopped() {
+        grantPermissions();
+        mLocationSensor = new TestLocationSensor(mService.getApplicationContext());
+        final SamplingPolicy policy = createChangingPolicy();
+        getSensor().setSamplingPolicy(policy);
+        final LocationSensor.Observer observer = Mockito.mock(LocationSensor.Observer.class);
+        getSensor().addObserver(observer);
+        getSensor().removeObserver(observer);
+        // Locations of the last batch may still be delivered after the stop.
+        getSensor().onLocationsChanged(createCoordinates(), new long[]{0});
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .requestLocationUpdates(Mockito.any(LocationRequest.class),
+                        Mockito.any(LocationCallback.class),
+                        Mockito.any(Looper.class));
+        Mockito.verify(mLocationProvider, Mockito.times(1))
+                .removeLocationUpdates(Mockito.any(LocationCallback.class));
+    }
+
+    /**
+     * Create a {@link SamplingPolicy} changing the sampling with every reading.
+     *
+     * @return the {@link SamplingPolicy}
+     */
+    private static SamplingPolicy createChangingPolicy() {
+        final SamplingPolicy policy = Mockito.mock(SamplingPolicy.class);
+        Mockito.when(policy.getInterval(Mockito.anyLong())).thenReturn(1000L);
+        Mockito.when(policy.getPriority())
+                .thenReturn(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        Mockito.when(policy.onLocationChanged(Mockito.any(ExtendedGeoCoordinate.class),
+                Mockito.anyLong())).thenReturn(true);
+        Mockito.when(policy.onPressureChanged(Mockito.anyFloat(), Mockito.anyLong()))
+                .thenReturn(true);
+        return policy;
+    }
+
+    /**
+     * Create a single location.
+     *
+     * @return the locations
+     */
+    private static List<ExtendedGeoCoordinate> createCoordinates() {
+        final List<ExtendedGeoCoordinate> coordinates = new ArrayList<>();
+        coordinates.add(new ExtendedGeoCoordinate(47.0, 11.0, 500.0, 5.0f));
+        return coordinates;
+    }
+
     /**
      * Verify that null values do not cause exceptions.
      */
@@ -188,6 +383,16 @@ public class LocationSensorTest extends GenericSensorTest {
             super(provider);
         }
 
+        /**
+         * Constructor taking the {@link FusedLocationProviderClient} and {@link Looper}.
+         *
+         * @param provider the {@link FusedLocationProviderClient}
+         * @param looper   the {@link Looper}
+         */
+        TestLocationSensor(final FusedLocationProviderClient provider, final Looper looper) {
+            super(provider, looper);
+        }
+
         @Override
         protected FusedLocationProviderClient getLocationProvider() {
             return mLocationProvider;
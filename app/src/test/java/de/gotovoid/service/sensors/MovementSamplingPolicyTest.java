@@ -0,0 +1,255 @@
+package de.gotovoid.service.sensors;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+import de.gotovoid.Benchmark;
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link MovementSamplingPolicy}.
+ * The policy is replayed with a recorded hike: walking uphill, a long break and walking on.
+ */
+public class MovementSamplingPolicyTest {
+    private static final long UPDATE_FREQUENCY = 1000;
+    private static final double LATITUDE = 47.0;
+    private static final double LONGITUDE = 10.0;
+    private static final double METERS_PER_DEGREE = 111195;
+    /**
+     * Walking speed in meters per second.
+     */
+    private static final double SPEED = 1.4;
+    /**
+     * Pressure change in hPa per second while walking uphill.
+     */
+    private static final float PRESSURE_RATE = -0.005f;
+    private static final float PRESSURE = 900f;
+    /**
+     * Standard deviation of the location noise in meters.
+     */
+    private static final double LOCATION_NOISE = 4;
+    /**
+     * Standard deviation of the pressure noise in hPa.
+     */
+    private static final double PRESSURE_NOISE = 0.02;
+    private static final long WALK_END = 10 * 60000;
+    private static final long BREAK_END = 40 * 60000;
+    private static final long HIKE_END = 50 * 60000;
+    /**
+     * Relative energy of a location with {@link LocationRequest#PRIORITY_HIGH_ACCURACY}.
+     */
+    private static final double HIGH_ACCURACY_COST = 1;
+    /**
+     * Relative energy of a location with
+     * {@link LocationRequest#PRIORITY_BALANCED_POWER_ACCURACY}.
+     */
+    private static final double BALANCED_COST = 0.3;
+
+    private MovementSamplingPolicy mPolicy;
+    private Random mRandom;
+
+    /**
+     * Prepare the test.
+     */
+    @Before
+    public void before() {
+        mPolicy = new MovementSamplingPolicy();
+        mRandom = new Random(42);
+    }
+
+    /**
+     * Returns the distance walked until the given time in meters.
+     *
+     * @param time time in milliseconds
+     * @return distance in meters
+     */
+    private static double getDistance(final long time) {
+        if (time < WALK_END) {
+            return SPEED * time / 1000;
+        }
+        if (time < BREAK_END) {
+            return SPEED * WALK_END / 1000;
+        }
+        return SPEED * (WALK_END + time - BREAK_END) / 1000;
+    }
+
+    /**
+     * Returns the recorded location at the given time.
+     *
+     * @param time time in milliseconds
+     * @return the location
+     */
+    private ExtendedGeoCoordinate getLocation(final long time) {
+        final double north = getDistance(time) + mRandom.nextGaussian() * LOCATION_NOISE;
+        final double east = mRandom.nextGaussian() * LOCATION_NOISE;
+        return new ExtendedGeoCoordinate(LATITUDE + north / METERS_PER_DEGREE,
+                LONGITUDE + east / METERS_PER_DEGREE / Math.cos(Math.toRadians(LATITUDE)),
+                0,
+                (float) LOCATION_NOISE);
+    }
+
+    /**
+     * Returns the recorded pressure at the given time.
+     *
+     * @param time time in milliseconds
+     * @return pressure in hPa
+     */
+    private float getPressure(final long time) {
+        return (float) (PRESSURE + PRESSURE_RATE * getDistance(time) / SPEED
+                + mRandom.nextGaussian() * PRESSURE_NOISE);
+    }
+
+    /**
+     * Replay the hike with the given {@link SamplingPolicy}.
+     * Locations are taken with the interval given by the policy, the pressure every second.
+     *
+     * @param policy the {@link SamplingPolicy}, null for a fixed sampling
+     * @return the {@link Replay} result
+     */
+    private Replay replay(final SamplingPolicy policy) {
+        final Replay replay = new Replay();
+        long nextPressure = 0;
+        long time = 0;
+        while (time < HIKE_END) {
+            long interval = UPDATE_FREQUENCY;
+            int priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
+            if (policy != null) {
+                interval = policy.getInterval(UPDATE_FREQUENCY);
+                priority = policy.getPriority();
+            }
+            time += interval;
+            for (; policy != null && nextPressure <= time; nextPressure += 1000) {
+                policy.onPressureChanged(getPressure(nextPressure), nextPressure);
+            }
+            replay.mFixes++;
+            if (priority == LocationRequest.PRIORITY_HIGH_ACCURACY) {
+                replay.mEnergy += HIGH_ACCURACY_COST;
+            } else {
+                replay.mEnergy += BALANCED_COST;
+            }
+            if (policy != null) {
+                final boolean wasStationary = mPolicy.isStationary();
+                policy.onLocationChanged(getLocation(time), time);
+                if (wasStationary && !mPolicy.isStationary() && replay.mResumed < 0) {
+                    replay.mResumed = time;
+                }
+            }
+        }
+        return replay;
+    }
+
+    /**
+     * Verify that the user becomes stationary only after staying in the radius long enough.
+     */
+    @Test
+    public void testStationary() {
+        final ExtendedGeoCoordinate coordinate =
+                new ExtendedGeoCoordinate(LATITUDE, LONGITUDE, 0, 1);
+        assertThat(mPolicy.onLocationChanged(coordinate, 0), is(false));
+        assertThat(mPolicy.onLocationChanged(coordinate,
+                MovementSamplingPolicy.STATIONARY_TIME - 1), is(false));
+        assertThat(mPolicy.onLocationChanged(coordinate,
+                MovementSamplingPolicy.STATIONARY_TIME), is(true));
+        assertThat(mPolicy.isStationary(), is(true));
+        assertThat(mPolicy.getInterval(UPDATE_FREQUENCY),
+                is(UPDATE_FREQUENCY * MovementSamplingPolicy.REDUCED_FACTOR));
+        assertThat(mPolicy.getInterval(30000),
+                is(MovementSamplingPolicy.MAX_REDUCED_INTERVAL));
+        assertThat(mPolicy.getPriority(),
+                is(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY));
+    }
+
+    /**
+     * Verify that leaving the radius restores the full sampling.
+     */
+    @Test
+    public void testMoving() {
+        final ExtendedGeoCoordinate coordinate =
+                new ExtendedGeoCoordinate(LATITUDE, LONGITUDE, 0, 1);
+        mPolicy.onLocationChanged(coordinate, 0);
+        mPolicy.onLocationChanged(coordinate, MovementSamplingPolicy.STATIONARY_TIME);
+        assertThat(mPolicy.isStationary(), is(true));
+        final ExtendedGeoCoordinate moved = new ExtendedGeoCoordinate(
+                LATITUDE + 2 * MovementSamplingPolicy.STATIONARY_RADIUS / METERS_PER_DEGREE,
+                LONGITUDE, 0, 1);
+        assertThat(mPolicy.onLocationChanged(moved, MovementSamplingPolicy.STATIONARY_TIME + 1),
+                is(true));
+        assertThat(mPolicy.getInterval(UPDATE_FREQUENCY), is(UPDATE_FREQUENCY));
+        assertThat(mPolicy.getPriority(), is(LocationRequest.PRIORITY_HIGH_ACCURACY));
+    }
+
+    /**
+     * Verify that a change of the pressure restores the full sampling, for example when
+     * taking an elevator.
+     */
+    @Test
+    public void testPressureChange() {
+        final ExtendedGeoCoordinate coordinate =
+                new ExtendedGeoCoordinate(LATITUDE, LONGITUDE, 0, 1);
+        mPolicy.onPressureChanged(PRESSURE, 0);
+        mPolicy.onLocationChanged(coordinate, 0);
+        mPolicy.onLocationChanged(coordinate, MovementSamplingPolicy.STATIONARY_TIME);
+        assertThat(mPolicy.isStationary(), is(true));
+        assertThat(mPolicy.onPressureChanged(PRESSURE + 0.1f, 1), is(false));
+        assertThat(mPolicy.onPressureChanged(
+                PRESSURE + 2 * MovementSamplingPolicy.STATIONARY_PRESSURE, 2), is(true));
+        assertThat(mPolicy.isStationary(), is(false));
+    }
+
+    /**
+     * Replay the recorded hike with and without the {@link MovementSamplingPolicy} and verify
+     * the saved locations and energy. The full sampling needs to be restored quickly when
+     * the walk continues.
+     */
+    @Test
+    public void testReplay() {
+        final Replay fixed = replay(null);
+        final Replay adaptive = replay(mPolicy);
+        final double fixSavings = 1 - (double) adaptive.mFixes / fixed.mFixes;
+        final double energySavings = 1 - adaptive.mEnergy / fixed.mEnergy;
+        // The break takes 60 % of the hike.
+        assertThat(fixSavings, greaterThan(0.4));
+        assertThat(energySavings, greaterThan(0.5));
+        assertThat(adaptive.mResumed, greaterThanOrEqualTo(BREAK_END));
+        assertThat(adaptive.mResumed - BREAK_END, lessThan(30000L));
+    }
+
+    /**
+     * Print the saved locations and energy of the replayed hike and the time until the full
+     * sampling was restored after the break.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testReplayReport() {
+        final Replay fixed = replay(null);
+        final Replay adaptive = replay(mPolicy);
+        final double fixSavings = 1 - (double) adaptive.mFixes / fixed.mFixes;
+        final double energySavings = 1 - adaptive.mEnergy / fixed.mEnergy;
+        System.out.println("MovementSamplingPolicy: fixes " + fixed.mFixes + " -> "
+                + adaptive.mFixes + " (" + Math.round(fixSavings * 100) + "% saved), energy "
+                + Math.round(fixed.mEnergy) + " -> " + Math.round(adaptive.mEnergy) + " ("
+                + Math.round(energySavings * 100) + "% saved), resumed after "
+                + (adaptive.mResumed - BREAK_END) / 1000 + "s");
+    }
+
+    /**
+     * Result of a replay.
+     */
+    private static class Replay {
+        private int mFixes;
+        private double mEnergy;
+        private long mResumed = -1;
+    }
+}
@@ -5,13 +5,20 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventCallback;
 import android.hardware.SensorManager;
+import android.os.Handler;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
 
 /**
  * Created by DJ on 25/02/18.
@@ -24,6 +31,7 @@ public class PressureSensorTest extends GenericSensorTest {
     private PressureSensor mPressureSensor;
     private SensorManager mSensorManager;
     private Sensor mSensor;
+    private Handler mHandler;
 
     /**
      * Prepare the test run.
@@ -35,7 +43,8 @@ public class PressureSensorTest extends GenericSensorTest {
         mSensor = Mockito.mock(Sensor.class);
         Mockito.when(context.getSystemService(Context.SENSOR_SERVICE)).thenReturn(mSensorManager);
         Mockito.when(mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE)).thenReturn(mSensor);
-        mPressureSensor = new PressureSensor(context);
+        mHandler = Mockito.mock(Handler.class);
+        mPressureSensor = new PressureSensor(context, mHandler);
     }
 
     /**
@@ -55,7 +64,7 @@ public class PressureSensorTest extends GenericSensorTest {
 
     /**
      * Verifies that starting the {@link PressureSensor} causes the {@link PressureSensor} to
-     * actually addObserver for hardware {@link Sensor} updates.
+     * actually addObserver for hardware {@link Sensor} updates on the given {@link Handler}.
      */
     @Test
     public void startSensor() {
@@ -63,7 +72,69 @@ public class PressureSensorTest extends GenericSensorTest {
         Mockito.verify(mSensorManager, Mockito.times(1))
                 .registerListener(Mockito.any(SensorEventCallback.class),
                         Mockito.eq(mSensor),
-                        Mockito.eq(SensorManager.SENSOR_DELAY_NORMAL));
+                        Mockito.eq(SensorManager.SENSOR_DELAY_NORMAL),
+                        Mockito.eq(mHandler));
+    }
+
+    /**
+     * Verifies that the readings are batched for the update frequency if the {@link Sensor}
+     * has a hardware FIFO.
+     */
+    @Test
+    public void startSensorBatched() {
+        final long updateFrequency = 10000;
+        Mockito.when(mSensor.getFifoMaxEventCount()).thenReturn(1000);
+        final PressureSensor.Observer observer = Mockito.mock(PressureSensor.Observer.class);
+        Mockito.when(observer.getUpdateFrequency()).thenReturn(updateFrequency);
+        getSensor().addObserver(observer);
+        Mockito.verify(mSensorManager, Mockito.times(1))
+                .registerListener(Mockito.any(SensorEventCallback.class),
+                        Mockito.eq(mSensor),
+                        Mockito.eq(PressureSensor.SAMPLING_PERIOD_US),
+                        Mockito.eq((int) TimeUnit.MILLISECONDS.toMicros(updateFrequency)),
+                        Mockito.eq(mHandler));
+    }
+
+    /**
+     * Verifies that the report latency is limited by the size of the hardware FIFO.
+     */
+    @Test
+    public void testMaxReportLatency() {
+        Mockito.when(mSensor.getFifoMaxEventCount()).thenReturn(10);
+        final PressureSensor.Observer observer = Mockito.mock(PressureSensor.Observer.class);
+        Mockito.when(observer.getUpdateFrequency()).thenReturn(60000L);
+        getSensor().addObserver(observer);
+        assertThat(getSensor().getMaxReportLatency(),
+                equalTo(10 * PressureSensor.SAMPLING_PERIOD_US));
+        Mockito.when(mSensor.getFifoMaxEventCount()).thenReturn(0);
+        assertThat(getSensor().getMaxReportLatency(), equalTo(0));
+    }
+
+    /**
+     * Verifies that the readings of a batch are aggregated to their median instead of being
+     * discarded.
+     */
+    @Test
+    public void testNotifyBatch() {
+        final long updateFrequency = 1000;
+        final PressureSensor.Observer observer = Mockito.mock(PressureSensor.Observer.class);
+        Mockito.when(observer.getUpdateFrequency()).thenReturn(updateFrequency);
+        getSensor().addObserver(observer);
+        final float[] values = {1f, 5f, 3f, 9f, 4f, 7f};
+        // All readings are delivered at once, like a flushed hardware FIFO.
+        for (int i = 0; i < values.length; i++) {
+            getSensor().getSensorCallback().onSensorChanged(createSensorEvent(values[i],
+                    TimeUnit.MILLISECONDS.toNanos(i * updateFrequency / 5)));
+        }
+        final ArgumentCaptor<AbstractSensor.Result> captor =
+                ArgumentCaptor.forClass(AbstractSensor.Result.class);
+        Mockito.verify(observer, Mockito.times(2)).onChange(captor.capture());
+        final List<AbstractSensor.Result> results = captor.getAllValues();
+        assertThat((Float) results.get(0).getValue(), equalTo(1f));
+        assertThat((Float) results.get(1).getValue(), equalTo(5f));
+        // The results are timed with the time stamps of the readings.
+        assertThat(results.get(0).getTimeStamp(), equalTo(0L));
+        assertThat(results.get(1).getTimeStamp(), equalTo(updateFrequency));
     }
 
     /**
@@ -84,7 +155,23 @@ public class PressureSensorTest extends GenericSensorTest {
      * @return the {@link SensorEvent}
      */
     private static SensorEvent createSensorEvent(final Float value) {
+        return createSensorEvent(value, 0);
+    }
+
+    /**
+     * Return a {@link SensorEvent} with the given value and time stamp.
+     *
+     * @param value     value to set
+     * @param timeStamp time stamp in nanoseconds
+     * @return the {@link SensorEvent}
+     */
+    private static SensorEvent createSensorEvent(final Float value, final long timeStamp) {
         final SensorEvent sensorEvent = Mockito.mock(SensorEvent.class);
+        try {
+            SensorEvent.class.getField("timestamp").set(sensorEvent, timeStamp);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
         try {
             final Field valuesField = SensorEvent.class.getField("values");
             valuesField.setAccessible(true);
@@ -2,14 +2,31 @@ package de.gotovoid.service.sensors;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
+import de.gotovoid.Benchmark;
 import de.gotovoid.database.model.CalibratedAltitude;
 import de.gotovoid.database.model.RecordingEntry;
 import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
 
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
 /**
  * Created by DJ on 27/02/18.
  */
@@ -18,10 +35,29 @@ import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
  * Verify the functionality of the {@link RecordingSensor}.
  */
 public class RecordingSensorTest extends GenericSensorTest {
+    /**
+     * Climb rate of the simulated flight in meters per second.
+     */
+    private static final double CLIMB_RATE = 3;
+    /**
+     * Amplitude in meters and period in seconds of the altitude changes in the thermals.
+     */
+    private static final double THERMAL_AMPLITUDE = 20;
+    private static final double THERMAL_PERIOD = 120;
+    /**
+     * Maximal vertical speed of the simulated flight in meters per second.
+     */
+    private static final double MAX_VERTICAL_SPEED =
+            CLIMB_RATE + THERMAL_AMPLITUDE * 2 * Math.PI / THERMAL_PERIOD;
+    /**
+     * Maximal error of the altitude in meters caused by rounding and interpolation.
+     */
+    private static final double ROUNDING_ERROR = 1.1;
     private RecordingSensor mRecordingSensor;
     private LocationSensor mLocationSensor;
     private PressureSensor mPressureSensor;
     private AbstractSensor.Observer<RecordingEntry> mObserver;
+    private VirtualClock mClock;
 
     /**
      * Prepare the test.
@@ -31,7 +67,9 @@ public class RecordingSensorTest extends GenericSensorTest {
         mLocationSensor = Mockito.mock(LocationSensor.class);
         mPressureSensor = Mockito.mock(PressureSensor.class);
         mObserver = Mockito.mock(AbstractSensor.Observer.class);
-        mRecordingSensor = new RecordingSensor(mPressureSensor, mLocationSensor, mObserver);
+        mClock = new VirtualClock(0);
+        mRecordingSensor =
+                new RecordingSensor(mPressureSensor, mLocationSensor, mObserver, mClock);
     }
 
     @Override
@@ -41,7 +79,7 @@ public class RecordingSensorTest extends GenericSensorTest {
 
     @Override
     protected Serializable getData() {
-        return 0l;
+        return new RecordingDelta(0, 0, Collections.<RecordingEntry>emptyList());
     }
 
     /**
@@ -96,6 +134,178 @@ public class RecordingSensorTest extends GenericSensorTest {
                 .onChange(Mockito.any(AbstractSensor.Result.class));
     }
 
+    /**
+     * Verifies that a batch of locations is passed to the {@link RecordingEntry} observer
+     * at once and the observers are notified once.
+     */
+    @Test
+    public void testNotifyBatch() {
+        final int count = 5;
+        final RecordingSensor.Observer observer = Mockito.mock(RecordingSensor.Observer.class);
+        final CalibratedAltitude altitude = Mockito.mock(CalibratedAltitude.class);
+        final AbstractSensor.Result<Float> pressureResult =
+                Mockito.mock(AbstractSensor.Result.class);
+        Mockito.when(pressureResult.getValue()).thenReturn(1f);
+        // The pressure reading covers all locations of the batch.
+        Mockito.when(pressureResult.getTimeStamp()).thenReturn((count - 1) * 1000L);
+        final List<AbstractSensor.Result<ExtendedGeoCoordinate>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(new AbstractSensor.Result<>(SensorState.RUNNING,
+                    new ExtendedGeoCoordinate(47.0 + i, 10.0, 0, 1), i * 1000L));
+        }
+
+        getSensor().setCalibratedAltitude(altitude);
+        getSensor().addObserver(observer);
+        getSensor().startRecording(1337);
+        getSensor().getPressureObserver().onChange(pressureResult);
+        getSensor().getLocationObserver().onBatchChange(results);
+
+        final ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mObserver, Mockito.times(1)).onBatchChange(captor.capture());
+        Mockito.verify(mObserver, Mockito.times(0))
+                .onChange(Mockito.any(AbstractSensor.Result.class));
+        final List<AbstractSensor.Result<RecordingEntry>> entries = captor.getValue();
+        assertThat(entries.size(), is(count));
+        for (int i = 0; i < count; i++) {
+            assertThat(entries.get(i).getValue().getTimeStamp(), is(i * 1000L));
+            assertThat(entries.get(i).getValue().getLatitude(), is(47.0 + i));
+        }
+        Mockito.verify(observer, Mockito.times(1))
+                .onChange(Mockito.any(AbstractSensor.Result.class));
+    }
+
+    /**
+     * Verify that every published batch of {@link RecordingEntry}s is sent to the observers as
+     * {@link RecordingDelta}, numbered within the recording, independent of the update
+     * frequency of the observers.
+     */
+    @Test
+    public void testRecordingDelta() {
+        final List<AbstractSensor.Result<RecordingDelta>> results = new ArrayList<>();
+        final AbstractSensor.Observer<RecordingDelta> observer =
+                new AbstractSensor.Observer<RecordingDelta>(60000, SensorType.RECORDING) {
+                    @Override
+                    public void onChange(final AbstractSensor.Result<RecordingDelta> result) {
+                        results.add(result);
+                    }
+                };
+        getSensor().setCalibratedAltitude(new CalibratedAltitude(0, 1013.25f, 0));
+        getSensor().addObserver(observer);
+        getSensor().startRecording(1337);
+        final List<AbstractSensor.Result<ExtendedGeoCoordinate>> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(createLocation(i * 1000L));
+        }
+        getSensor().getPressureObserver().onChange(
+                new AbstractSensor.Result<>(SensorState.RUNNING, 1013.25f, 4000L));
+        getSensor().getLocationObserver().onBatchChange(batch);
+        getSensor().getLocationObserver().onChange(createLocation(3000L));
+        getSensor().stopRecording();
+        getSensor().startRecording(1338);
+        getSensor().getLocationObserver().onChange(createLocation(4000L));
+
+        assertThat(results.size(), is(3));
+        assertDelta(results.get(0), 1337, 0, 3);
+        assertDelta(results.get(1), 1337, 3, 1);
+        assertDelta(results.get(2), 1338, 0, 1);
+        final RecordingDelta delta = results.get(0).getValue();
+        assertThat(delta.getNextSequence(), is(3L));
+        assertThat(delta.getEntries().get(2).getTimeStamp(), is(2000L));
+        assertThat(results.get(0).getTimeStamp(), is(2000L));
+    }
+
+    /**
+     * Verify that the {@link RecordingDelta}s of a recording resumed with stored
+     * {@link RecordingEntry}s, e.g. after a restart of the service, continue their sequence.
+     */
+    @Test
+    public void testRecordingDeltaResumed() {
+        final List<AbstractSensor.Result<RecordingDelta>> results = new ArrayList<>();
+        final AbstractSensor.Observer<RecordingDelta> observer =
+                new AbstractSensor.Observer<RecordingDelta>(0, SensorType.RECORDING) {
+                    @Override
+                    public void onChange(final AbstractSensor.Result<RecordingDelta> result) {
+                        results.add(result);
+                    }
+                };
+        getSensor().setCalibratedAltitude(new CalibratedAltitude(0, 1013.25f, 0));
+        getSensor().addObserver(observer);
+        getSensor().startRecording(1337, 42);
+        getSensor().getPressureObserver().onChange(
+                new AbstractSensor.Result<>(SensorState.RUNNING, 1013.25f, 2000L));
+        getSensor().getLocationObserver().onChange(createLocation(0L));
+        getSensor().getLocationObserver().onChange(createLocation(1000L));
+        getSensor().stopRecording();
+        getSensor().startRecording(1338);
+        getSensor().getLocationObserver().onChange(createLocation(2000L));
+
+        assertThat(results.size(), is(3));
+        assertDelta(results.get(0), 1337, 42, 1);
+        assertDelta(results.get(1), 1337, 43, 1);
+        assertDelta(results.get(2), 1338, 0, 1);
+    }
+
+    /**
+     * Create the location {@link AbstractSensor.Result} measured at the given time.
+     *
+     * @param timeStamp time of the measurement
+     * @return the {@link AbstractSensor.Result}
+     */
+    private static AbstractSensor.Result<ExtendedGeoCoordinate> createLocation(
+            final long timeStamp) {
+        return new AbstractSensor.Result<>(SensorState.RUNNING,
+                new ExtendedGeoCoordinate(47.0, 10.0, 0, 1),
+                timeStamp);
+    }
+
+    /**
+     * Assert that the {@link AbstractSensor.Result} contains the expected
+     * {@link RecordingDelta}.
+     *
+     * @param result      the {@link AbstractSensor.Result}
+     * @param recordingId the id of the recording
+     * @param sequence    the sequence of the first entry
+     * @param size        the number of entries
+     */
+    private static void assertDelta(final AbstractSensor.Result<RecordingDelta> result,
+                                    final long recordingId,
+                                    final long sequence,
+                                    final int size) {
+        final RecordingDelta delta = result.getValue();
+        assertThat(delta.getRecordingId(), is(recordingId));
+        assertThat(delta.getSequence(), is(sequence));
+        assertThat(delta.getEntries().size(), is(size));
+        for (RecordingEntry entry : delta.getEntries()) {
+            assertThat(entry.getRecordingId(), is(recordingId));
+        }
+    }
+
+    /**
+     * Verify that the {@link RecordingEntry}s are time stamped on the wall clock at the start
+     * of the recording, and changes of the wall clock during the recording are ignored.
+     */
+    @Test
+    public void testWallClock() {
+        final long bootTime = 1500000000000L;
+        final CalibratedAltitude altitude = Mockito.mock(CalibratedAltitude.class);
+        mClock.advance(60000);
+        mClock.setCurrentTimeMillis(bootTime + 60000);
+        getSensor().setCalibratedAltitude(altitude);
+        getSensor().startRecording(1337);
+        mClock.setCurrentTimeMillis(bootTime + 3600000);
+        getSensor().getPressureObserver().onChange(
+                new AbstractSensor.Result<>(SensorState.RUNNING, 1f, 61000L));
+        getSensor().getLocationObserver().onChange(new AbstractSensor.Result<>(
+                SensorState.RUNNING, new ExtendedGeoCoordinate(47.0, 10.0, 0, 1), 61000L));
+
+        final ArgumentCaptor<AbstractSensor.Result> captor =
+                ArgumentCaptor.forClass(AbstractSensor.Result.class);
+        Mockito.verify(mObserver, Mockito.times(1)).onChange(captor.capture());
+        final RecordingEntry entry = (RecordingEntry) captor.getValue().getValue();
+        assertThat(entry.getTimeStamp(), is(bootTime + 61000));
+        assertThat(captor.getValue().getTimeStamp(), is(61000L));
+    }
+
     /**
      * Verify that there are no updates when no altitude value is available.
      */
@@ -138,4 +348,179 @@ public class RecordingSensorTest extends GenericSensorTest {
                 .onChange(Mockito.any(AbstractSensor.Result.class));
     }
 
+    /**
+     * Verify that the altitude of every {@link RecordingEntry} is aligned with the time of the
+     * location, when pressure readings and locations are measured with jitter and delivered
+     * with random latency.
+     * The locations wait for a pressure reading after their time, so the altitude is
+     * interpolated and only differs by rounding. Locations after the last reading are published
+     * when the recording is stopped, with an error limited by the vertical speed.
+     */
+    @Test
+    public void testAlignment() {
+        final double[] errors = replayAlignment();
+        assertThat(errors[0], lessThan(ROUNDING_ERROR));
+        assertThat(errors[1], greaterThan(errors[0]));
+    }
+
+    /**
+     * Print the mean altitude error of the aligned {@link RecordingEntry}s and of using the
+     * newest pressure reading when the location is delivered.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testAlignmentReport() {
+        final double[] errors = replayAlignment();
+        System.out.println("RecordingSensor alignment: mean error " + errors[0]
+                + "m, newest reading " + errors[1] + "m");
+    }
+
+    /**
+     * Record pressure readings and locations measured with jitter and delivered with random
+     * latency and verify that the error of every {@link RecordingEntry} is within its bound.
+     *
+     * @return the mean altitude error of the {@link RecordingEntry}s and the mean error of
+     * using the newest pressure reading when the location is delivered
+     */
+    private double[] replayAlignment() {
+        final Random random = new Random(42);
+        final CalibratedAltitude calibratedAltitude = new CalibratedAltitude(0, 1013.25f, 0);
+        // Delivery time, measurement time and true if the event is a location.
+        final List<long[]> events = new ArrayList<>();
+        for (int i = 0; i < 3600; i++) {
+            final long pressureTime = i * 1000L + random.nextInt(601) - 300;
+            events.add(new long[]{pressureTime + random.nextInt(501), pressureTime, 0});
+            final long locationTime = i * 1000L + 500 + random.nextInt(601) - 300;
+            events.add(new long[]{locationTime + random.nextInt(301), locationTime, 1});
+        }
+        Collections.sort(events, new Comparator<long[]>() {
+            @Override
+            public int compare(final long[] first, final long[] second) {
+                return Long.compare(first[0], second[0]);
+            }
+        });
+
+        getSensor().setCalibratedAltitude(calibratedAltitude);
+        getSensor().startRecording(1337);
+        final List<Long> locationTimes = new ArrayList<>();
+        final Map<Long, Double> naiveErrors = new HashMap<>();
+        long oldestPressureTime = Long.MIN_VALUE;
+        long newestPressureTime = Long.MIN_VALUE;
+        for (long[] event : events) {
+            final long time = event[1];
+            if (event[2] == 0) {
+                // Readings delivered after a newer reading are ignored by the RecordingSensor.
+                if (newestPressureTime == Long.MIN_VALUE) {
+                    oldestPressureTime = time;
+                }
+                newestPressureTime = Math.max(newestPressureTime, time);
+                getSensor().getPressureObserver().onChange(new AbstractSensor.Result<>(
+                        SensorState.RUNNING,
+                        calibratedAltitude.calculatePressure(getAltitude(time)),
+                        time));
+            } else {
+                if (newestPressureTime == Long.MIN_VALUE) {
+                    continue;
+                }
+                locationTimes.add(time);
+                // Error of using the newest reading when the location is delivered.
+                naiveErrors.put(time,
+                        Math.abs(getAltitude(time) - getAltitude(newestPressureTime)));
+                getSensor().getLocationObserver().onChange(new AbstractSensor.Result<>(
+                        SensorState.RUNNING,
+                        new ExtendedGeoCoordinate(47.0, 10.0, 0, 1),
+                        time));
+            }
+        }
+        getSensor().stopRecording();
+
+        final Map<Long, Double> bounds = new HashMap<>();
+        for (long time : locationTimes) {
+            final long age = Math.max(Math.max(0, time - newestPressureTime),
+                    oldestPressureTime - time);
+            bounds.put(time, ROUNDING_ERROR + MAX_VERTICAL_SPEED * age / 1000);
+        }
+        final ArgumentCaptor<AbstractSensor.Result> captor =
+                ArgumentCaptor.forClass(AbstractSensor.Result.class);
+        Mockito.verify(mObserver, Mockito.atLeastOnce()).onChange(captor.capture());
+        final ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mObserver, Mockito.atLeast(0)).onBatchChange(batchCaptor.capture());
+        final List<AbstractSensor.Result> results = new ArrayList<>(captor.getAllValues());
+        for (List batch : batchCaptor.getAllValues()) {
+            results.addAll(batch);
+        }
+        assertThat(results.size(), is(bounds.size()));
+        double error = 0;
+        double naiveError = 0;
+        for (AbstractSensor.Result result : results) {
+            final RecordingEntry entry = (RecordingEntry) result.getValue();
+            final double entryError =
+                    Math.abs(entry.getAltitude() - getAltitude(entry.getTimeStamp()));
+            assertThat(entryError, lessThanOrEqualTo(bounds.get(entry.getTimeStamp())));
+            error += entryError;
+            naiveError += naiveErrors.get(entry.getTimeStamp());
+        }
+        error /= results.size();
+        naiveError /= results.size();
+        return new double[]{error, naiveError};
+    }
+
+    /**
+     * Verify that the altitudes of a batch of locations are aligned with the time of each
+     * location.
+     */
+    @Test
+    public void testAlignmentBatch() {
+        final CalibratedAltitude calibratedAltitude = new CalibratedAltitude(0, 1013.25f, 0);
+        getSensor().setCalibratedAltitude(calibratedAltitude);
+        getSensor().startRecording(1337);
+        // The locations of the last minute are delivered after the pressure readings.
+        final List<AbstractSensor.Result<ExtendedGeoCoordinate>> results = new ArrayList<>();
+        for (int i = 0; i <= 60; i++) {
+            final long time = i * 1000L;
+            getSensor().getPressureObserver().onChange(new AbstractSensor.Result<>(
+                    SensorState.RUNNING,
+                    calibratedAltitude.calculatePressure(getAltitude(time)),
+                    time));
+            results.add(new AbstractSensor.Result<>(SensorState.RUNNING,
+                    new ExtendedGeoCoordinate(47.0, 10.0, 0, 1), time + 500));
+        }
+        getSensor().getLocationObserver().onBatchChange(results);
+
+        // The last location waits for a newer pressure reading.
+        final ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mObserver, Mockito.times(1)).onBatchChange(captor.capture());
+        final List<AbstractSensor.Result<RecordingEntry>> entries =
+                new ArrayList<>(captor.getValue());
+        assertThat(entries.size(), is(results.size() - 1));
+        Mockito.verify(mObserver, Mockito.times(0))
+                .onChange(Mockito.any(AbstractSensor.Result.class));
+
+        // It is published with the newest reading when the recording is stopped.
+        getSensor().stopRecording();
+        final ArgumentCaptor<AbstractSensor.Result> entryCaptor =
+                ArgumentCaptor.forClass(AbstractSensor.Result.class);
+        Mockito.verify(mObserver, Mockito.times(1)).onChange(entryCaptor.capture());
+        entries.add(entryCaptor.getValue());
+        for (AbstractSensor.Result<RecordingEntry> entry : entries) {
+            final long time = entry.getValue().getTimeStamp();
+            final double bound = time > 60000
+                    ? ROUNDING_ERROR + MAX_VERTICAL_SPEED * (time - 60000) / 1000
+                    : ROUNDING_ERROR;
+            assertThat((double) entry.getValue().getAltitude(),
+                    closeTo(getAltitude(time), bound));
+        }
+    }
+
+    /**
+     * Returns the altitude of the simulated flight: climbing in thermals.
+     *
+     * @param time time in milliseconds
+     * @return altitude in meters
+     */
+    private static double getAltitude(final long time) {
+        final double seconds = time / 1000.0;
+        return 1000 + CLIMB_RATE * seconds
+                + THERMAL_AMPLITUDE * Math.sin(2 * Math.PI * seconds / THERMAL_PERIOD);
+    }
 }
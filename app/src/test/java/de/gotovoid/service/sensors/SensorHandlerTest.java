@@ -4,15 +4,30 @@ package de.gotovoid.service.sensors;
  * Created by DJ on 02/03/18.
  */
 
+import android.arch.persistence.room.Room;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.gotovoid.Benchmark;
 import de.gotovoid.BuildConfig;
+import de.gotovoid.database.AppDatabase;
+import de.gotovoid.database.model.CalibratedAltitude;
+import de.gotovoid.database.model.Recording;
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.database.model.RecordingRollup;
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+import de.gotovoid.domain.model.track.RollupPyramid;
 import de.gotovoid.service.LocationService;
 
 import static org.junit.Assert.*;
@@ -26,6 +41,13 @@ import static org.hamcrest.Matchers.*;
 @RunWith(RobolectricTestRunner.class)
 @Config(constants = BuildConfig.class)
 public class SensorHandlerTest {
+    /**
+     * Duration of the simulated flight.
+     */
+    private static final long FLIGHT_DURATION = 10 * 3600000;
+    private static final long FIX_INTERVAL = 1000;
+    private static final long MAX_WAIT_TIME = 60000;
+    private static final long START_TIME = 1500000000000L;
     private LocationService mService;
     private SensorHandler mSensorHandler;
 
@@ -40,6 +62,28 @@ public class SensorHandlerTest {
         mSensorHandler = new SensorHandler(mService.getApplication());
     }
 
+    /**
+     * Verify that stopping the sensors stops the sensors still observed.
+     */
+    @Test
+    public void testStopSensors() {
+        final LocationSensor.Observer location = Mockito.mock(LocationSensor.Observer.class);
+        Mockito.when(location.getType()).thenReturn(SensorType.LOCATION);
+        final PressureSensor.Observer pressure = Mockito.mock(PressureSensor.Observer.class);
+        Mockito.when(pressure.getType()).thenReturn(SensorType.PRESSURE);
+        final RecordingSensor.Observer recording = Mockito.mock(RecordingSensor.Observer.class);
+        Mockito.when(recording.getType()).thenReturn(SensorType.RECORDING);
+        mSensorHandler.addObserver(location);
+        mSensorHandler.addObserver(pressure);
+        mSensorHandler.addObserver(recording);
+        assertThat(mSensorHandler.getLocationSensor().isStarted(), is(true));
+
+        mSensorHandler.stopSensors();
+        assertThat(mSensorHandler.getLocationSensor().isStarted(), is(false));
+        assertThat(mSensorHandler.getPressureSensor().isStarted(), is(false));
+        assertThat(mSensorHandler.getRecordingSensor().isStarted(), is(false));
+    }
+
     /**
      * Verify adding a {@link LocationSensor.Observer} works as expected.
      */
@@ -114,4 +158,134 @@ public class SensorHandlerTest {
         mSensorHandler.removeObserver(observer);
         assertThat(mSensorHandler.getRecordingSensor().isStarted(), is(false));
     }
+
+    /**
+     * Create a ten hour flight climbing to 3000 m, cruising and descending again, with one
+     * fix per second.
+     *
+     * @return the {@link RecordingEntry}s of the flight
+     */
+    private static List<RecordingEntry> createFlight() {
+        final List<RecordingEntry> entries = new ArrayList<>();
+        for (long time = 0; time <= FLIGHT_DURATION; time += FIX_INTERVAL) {
+            final double progress = (double) time / FLIGHT_DURATION;
+            final int altitude = (int) (3000 * Math.min(1, Math.min(progress, 1 - progress) * 10));
+            entries.add(new RecordingEntry(0, START_TIME + time,
+                    10.0 + progress, 47.0 + progress / 2, altitude));
+        }
+        return entries;
+    }
+
+    /**
+     * Replay a ten hour flight through the {@link SensorHandler} into the database and verify
+     * that every fix and its {@link RecordingRollup}s are recorded and the
+     * {@link RecordingSensor.Observer} is notified.
+     * The locations are batched only while recording.
+     */
+    @Test
+    public void testReplayFlight() {
+        final AppDatabase database = Room.inMemoryDatabaseBuilder(mService.getApplication(),
+                AppDatabase.class).allowMainThreadQueries().build();
+        final CalibratedAltitude calibratedAltitude = new CalibratedAltitude(0, 1013.25f, 0);
+        database.getCalibratedPressureDao().setCalibratedPressure(calibratedAltitude);
+        final long recordingId = database.getRecordingDao()
+                .add(new Recording("flight", Recording.Type.FLIGHT, true, START_TIME));
+        final List<RecordingEntry> entries = createFlight();
+        final SensorReplay replay = new SensorReplay(entries, calibratedAltitude,
+                SensorReplay.MAX_ACCELERATION, new VirtualClock(0));
+        final SensorHandler handler = new SensorHandler(database,
+                replay.getLocationSensor(),
+                replay.getPressureSensor());
+        handler.setLocationMaxWaitTime(MAX_WAIT_TIME);
+
+        final AtomicInteger notifications = new AtomicInteger();
+        handler.addObserver(new AbstractSensor.Observer<RecordingDelta>(0, SensorType.RECORDING) {
+            @Override
+            public void onChange(final AbstractSensor.Result<RecordingDelta> result) {
+                notifications.incrementAndGet();
+            }
+        });
+        assertThat(replay.getLocationSensor().getMaxWaitTime(), is(0L));
+        handler.startRecording(recordingId);
+        assertThat(replay.getLocationSensor().getMaxWaitTime(), is(MAX_WAIT_TIME));
+        replay.run();
+        handler.stopRecording();
+        assertThat(replay.getLocationSensor().getMaxWaitTime(), is(0L));
+
+        final int count = database.getRecordingEntryDao().getTrackEntries(recordingId).size();
+        assertThat(notifications.get(), greaterThan(0));
+        assertThat(count, is(entries.size()));
+        int rollupCount = 0;
+        for (RecordingRollup rollup : database.getRecordingRollupDao()
+                .getRollups(recordingId, RollupPyramid.LEVEL_DURATIONS.length - 1)) {
+            rollupCount += rollup.getCount();
+        }
+        assertThat(rollupCount, is(entries.size()));
+        handler.stopSensors();
+        database.close();
+    }
+
+    /**
+     * Replay a ten hour flight through the {@link SensorHandler} into the database and print
+     * throughput and latency of the recording pipeline.
+     * The latency is measured from the delivery of the locations to the notification of the
+     * {@link RecordingSensor.Observer}, which happens after the database write.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testReplayBenchmark() {
+        final AppDatabase database = Room.inMemoryDatabaseBuilder(mService.getApplication(),
+                AppDatabase.class).allowMainThreadQueries().build();
+        final CalibratedAltitude calibratedAltitude = new CalibratedAltitude(0, 1013.25f, 0);
+        database.getCalibratedPressureDao().setCalibratedPressure(calibratedAltitude);
+        final long recordingId = database.getRecordingDao()
+                .add(new Recording("flight", Recording.Type.FLIGHT, true, START_TIME));
+        final SensorReplay replay = new SensorReplay(createFlight(), calibratedAltitude,
+                SensorReplay.MAX_ACCELERATION, new VirtualClock(0));
+        final SensorHandler handler = new SensorHandler(database,
+                replay.getLocationSensor(),
+                replay.getPressureSensor());
+        handler.setLocationMaxWaitTime(MAX_WAIT_TIME);
+
+        // Registered first, so it is notified before the RecordingSensor.
+        final long[] deliveryTime = new long[1];
+        handler.addObserver(new AbstractSensor.Observer<ExtendedGeoCoordinate>(FIX_INTERVAL,
+                SensorType.LOCATION) {
+            @Override
+            public void onChange(final AbstractSensor.Result<ExtendedGeoCoordinate> result) {
+                deliveryTime[0] = System.nanoTime();
+            }
+
+            @Override
+            public void onBatchChange(
+                    final List<AbstractSensor.Result<ExtendedGeoCoordinate>> results) {
+                deliveryTime[0] = System.nanoTime();
+            }
+        });
+        // Sum, maximum and count of the latencies.
+        final long[] latency = new long[3];
+        handler.addObserver(new AbstractSensor.Observer<RecordingDelta>(0, SensorType.RECORDING) {
+            @Override
+            public void onChange(final AbstractSensor.Result<RecordingDelta> result) {
+                final long time = System.nanoTime() - deliveryTime[0];
+                latency[0] += time;
+                latency[1] = Math.max(latency[1], time);
+                latency[2]++;
+            }
+        });
+        handler.startRecording(recordingId);
+
+        final long start = System.nanoTime();
+        replay.run();
+        handler.stopRecording();
+        final long duration = System.nanoTime() - start;
+
+        final int count = database.getRecordingEntryDao().getTrackEntries(recordingId).size();
+        System.out.println("SensorReplay 10h flight: " + count + " fixes in "
+                + duration / 1000000 + "ms, " + count * 1000000000L / duration
+                + " fixes/s, latency avg " + latency[0] / Math.max(latency[2], 1) / 1000
+                + "us, max " + latency[1] / 1000 + "us");
+        handler.stopSensors();
+        database.close();
+    }
 }
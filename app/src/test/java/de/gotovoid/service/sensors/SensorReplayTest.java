@@ -0,0 +1,240 @@
+package de.gotovoid.service.sensors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gotovoid.database.model.CalibratedAltitude;
+import de.gotovoid.database.model.RecordingEntry;
+import de.gotovoid.domain.model.geodata.ExtendedGeoCoordinate;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link SensorReplay}.
+ * The replayed track climbs one meter per second with a location every second.
+ */
+public class SensorReplayTest {
+    private static final long START_TIME = 1500000000000L;
+    private static final long DURATION = 3600000;
+    private static final long INTERVAL = 1000;
+    private static final int POINTS = (int) (DURATION / INTERVAL) + 1;
+    private static final double LATITUDE = 47.0;
+    private static final double LONGITUDE = 10.0;
+    private static final int ALTITUDE = 500;
+    private static final CalibratedAltitude CALIBRATED_ALTITUDE =
+            new CalibratedAltitude(0, 1013.25f, 0);
+
+    private List<RecordingEntry> mEntries;
+    private VirtualClock mClock;
+
+    /**
+     * Prepare the tests.
+     */
+    @Before
+    public void before() {
+        mEntries = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            mEntries.add(new RecordingEntry(0,
+                    START_TIME + i * INTERVAL,
+                    LONGITUDE + i * 0.00001,
+                    LATITUDE,
+                    ALTITUDE + i));
+        }
+        mClock = new VirtualClock(0);
+    }
+
+    /**
+     * Verify that the replay takes the duration of the track divided by the acceleration.
+     */
+    @Test
+    public void testAcceleration() {
+        for (int acceleration : new int[]{SensorReplay.MIN_ACCELERATION, 10,
+                SensorReplay.MAX_ACCELERATION}) {
+            final VirtualClock clock = new VirtualClock(0);
+            new SensorReplay(mEntries, CALIBRATED_ALTITUDE, acceleration, clock).run();
+            assertThat(clock.currentTimeMillis(), is(DURATION / acceleration));
+        }
+    }
+
+    /**
+     * Verify that accelerations out of range are rejected.
+     */
+    @Test
+    public void testInvalidAcceleration() {
+        for (int acceleration : new int[]{SensorReplay.MIN_ACCELERATION - 1,
+                SensorReplay.MAX_ACCELERATION + 1}) {
+            try {
+                new SensorReplay(mEntries, CALIBRATED_ALTITUDE, acceleration, mClock);
+                fail("acceleration " + acceleration + " accepted");
+            } catch (final IllegalArgumentException exception) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Verify that all locations are delivered with the time stamps of the track.
+     */
+    @Test
+    public void testLocations() {
+        final SensorReplay replay = new SensorReplay(mEntries, CALIBRATED_ALTITUDE,
+                SensorReplay.MAX_ACCELERATION, mClock);
+        final CollectingObserver<ExtendedGeoCoordinate> observer =
+                new CollectingObserver<>(SensorType.LOCATION);
+        replay.getLocationSensor().addObserver(observer);
+        replay.run();
+        assertThat(observer.mResults.size(), is(POINTS));
+        assertThat(observer.mBatches, is(0));
+        for (int i = 0; i < POINTS; i++) {
+            final AbstractSensor.Result<ExtendedGeoCoordinate> result =
+                    observer.mResults.get(i);
+            assertThat(result.getTimeStamp(), is(mEntries.get(i).getTimeStamp()));
+            assertThat(result.getValue().getLongitude(), is(mEntries.get(i).getLongitude()));
+            assertThat(result.getValue().getAltitude(),
+                    is((double) mEntries.get(i).getAltitude()));
+        }
+    }
+
+    /**
+     * Verify that the pressure readings result in the altitude of the track.
+     */
+    @Test
+    public void testPressure() {
+        final SensorReplay replay = new SensorReplay(mEntries, CALIBRATED_ALTITUDE,
+                SensorReplay.MAX_ACCELERATION, mClock);
+        final CollectingObserver<Float> observer = new CollectingObserver<>(SensorType.PRESSURE);
+        replay.getPressureSensor().addObserver(observer);
+        replay.run();
+        assertThat(observer.mResults.size(), is(POINTS));
+        for (AbstractSensor.Result<Float> result : observer.mResults) {
+            final long time = result.getTimeStamp() - START_TIME;
+            final int altitude = CALIBRATED_ALTITUDE.calculateHeight(result.getValue());
+            // The median of the readings of the last second lags behind the climb.
+            assertThat((double) altitude, closeTo(ALTITUDE + time / 1000.0, 2));
+        }
+    }
+
+    /**
+     * Verify that the locations are batched for the maximal wait time.
+     */
+    @Test
+    public void testMaxWaitTime() {
+        final long maxWaitTime = 60000;
+        final SensorReplay replay = new SensorReplay(mEntries, CALIBRATED_ALTITUDE,
+                SensorReplay.MAX_ACCELERATION, mClock);
+        final CollectingObserver<ExtendedGeoCoordinate> observer =
+                new CollectingObserver<>(SensorType.LOCATION);
+        replay.getLocationSensor().setMaxWaitTime(maxWaitTime);
+        replay.getLocationSensor().addObserver(observer);
+        replay.run();
+        assertThat(observer.mResults.size(), is(POINTS));
+        assertThat(observer.mBatches, is((int) (DURATION / (maxWaitTime + INTERVAL)) + 1));
+        for (int i = 1; i < POINTS; i++) {
+            assertThat(observer.mResults.get(i).getTimeStamp(),
+                    greaterThan(observer.mResults.get(i - 1).getTimeStamp()));
+        }
+    }
+
+    /**
+     * Verify that the interval of the {@link SamplingPolicy} is applied.
+     */
+    @Test
+    public void testSamplingPolicy() {
+        final long interval = 5000;
+        final SensorReplay replay = new SensorReplay(mEntries, CALIBRATED_ALTITUDE,
+                SensorReplay.MAX_ACCELERATION, mClock);
+        final SamplingPolicy policy = new MovementSamplingPolicy() {
+            @Override
+            public synchronized long getInterval(final long updateFrequency) {
+                return interval;
+            }
+        };
+        replay.getLocationSensor().setSamplingPolicy(policy);
+        final CollectingObserver<ExtendedGeoCoordinate> observer =
+                new CollectingObserver<>(SensorType.LOCATION);
+        replay.getLocationSensor().addObserver(observer);
+        replay.run();
+        assertThat(observer.mResults.size(), is((int) (DURATION / interval) + 1));
+    }
+
+    /**
+     * Verify that tracks without time stamps, as parsed from gpx files, are replayed with the
+     * default interval.
+     */
+    @Test
+    public void testWithoutTimeStamps() {
+        final List<RecordingEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new RecordingEntry(LONGITUDE + i * 0.00001, LATITUDE, ALTITUDE));
+        }
+        final SensorReplay replay = new SensorReplay(entries, CALIBRATED_ALTITUDE,
+                SensorReplay.MIN_ACCELERATION, mClock);
+        for (int i = 0; i < entries.size(); i++) {
+            assertThat(replay.getTrack().getTimeStamp(i), is(i * SensorReplay.DEFAULT_INTERVAL));
+        }
+        replay.run();
+        assertThat(mClock.currentTimeMillis(), is(9 * SensorReplay.DEFAULT_INTERVAL));
+    }
+
+    /**
+     * Verify that a cancelled replay does not deliver any more samples.
+     */
+    @Test
+    public void testCancel() {
+        final SensorReplay replay = new SensorReplay(mEntries, CALIBRATED_ALTITUDE,
+                SensorReplay.MAX_ACCELERATION, mClock);
+        final CollectingObserver<ExtendedGeoCoordinate> observer =
+                new CollectingObserver<ExtendedGeoCoordinate>(SensorType.LOCATION) {
+                    @Override
+                    public void onChange(
+                            final AbstractSensor.Result<ExtendedGeoCoordinate> result) {
+                        super.onChange(result);
+                        if (mResults.size() == 10) {
+                            replay.cancel();
+                        }
+                    }
+                };
+        replay.getLocationSensor().addObserver(observer);
+        replay.run();
+        assertThat(observer.mResults.size(), is(10));
+    }
+
+    /**
+     * {@link AbstractSensor.Observer} collecting all {@link AbstractSensor.Result}s.
+     *
+     * @param <Type> type of the values
+     */
+    static class CollectingObserver<Type extends Serializable> extends AbstractSensor.Observer<Type> {
+        final List<AbstractSensor.Result<Type>> mResults = new ArrayList<>();
+        int mBatches;
+
+        /**
+         * Constructor taking the {@link SensorType}.
+         *
+         * @param type the {@link SensorType}
+         */
+        CollectingObserver(final SensorType type) {
+            super(INTERVAL, type);
+        }
+
+        @Override
+        public void onChange(final AbstractSensor.Result<Type> result) {
+            mResults.add(result);
+        }
+
+        @Override
+        public void onBatchChange(final List<AbstractSensor.Result<Type>> results) {
+            mBatches++;
+            mResults.addAll(results);
+        }
+    }
+}
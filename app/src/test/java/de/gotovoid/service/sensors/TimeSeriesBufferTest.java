@@ -0,0 +1,124 @@
+package de.gotovoid.service.sensors;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * Verify the functionality of the {@link TimeSeriesBuffer}.
+ */
+public class TimeSeriesBufferTest {
+    private static final long MAX_AGE = 5000;
+    private static final double TOLERANCE = 0.0001;
+
+    /**
+     * Verify that an empty buffer has no values.
+     */
+    @Test
+    public void testEmpty() {
+        final TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        assertThat(Float.isNaN(buffer.get(0, MAX_AGE)), is(true));
+    }
+
+    /**
+     * Verify that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testCapacity() {
+        assertThat(new TimeSeriesBuffer(1).getCapacity(), is(2));
+        assertThat(new TimeSeriesBuffer(4).getCapacity(), is(4));
+        assertThat(new TimeSeriesBuffer(100).getCapacity(), is(128));
+    }
+
+    /**
+     * Verify the interpolation between values and the maximal age outside of the values.
+     */
+    @Test
+    public void testInterpolation() {
+        final TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        assertThat(buffer.add(1000, 10), is(true));
+        assertThat(buffer.add(2000, 20), is(true));
+        assertThat(buffer.add(4000, 0), is(true));
+        assertThat((double) buffer.get(1000, MAX_AGE), closeTo(10, TOLERANCE));
+        assertThat((double) buffer.get(1250, MAX_AGE), closeTo(12.5, TOLERANCE));
+        assertThat((double) buffer.get(3000, MAX_AGE), closeTo(10, TOLERANCE));
+        assertThat((double) buffer.get(4000, MAX_AGE), closeTo(0, TOLERANCE));
+        // Outside of the values the nearest value is used for the maximal age.
+        assertThat((double) buffer.get(4000 + MAX_AGE, MAX_AGE), closeTo(0, TOLERANCE));
+        assertThat(Float.isNaN(buffer.get(4001 + MAX_AGE, MAX_AGE)), is(true));
+        assertThat((double) buffer.get(0, MAX_AGE), closeTo(10, TOLERANCE));
+        assertThat(Float.isNaN(buffer.get(0, 999)), is(true));
+    }
+
+    /**
+     * Verify that values not newer than the newest value are ignored.
+     */
+    @Test
+    public void testOutOfOrder() {
+        final TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        assertThat(buffer.add(2000, 20), is(true));
+        assertThat(buffer.add(2000, 30), is(false));
+        assertThat(buffer.add(1000, 10), is(false));
+        assertThat((double) buffer.get(2000, MAX_AGE), closeTo(20, TOLERANCE));
+    }
+
+    /**
+     * Verify that only the newest values are kept once the buffer is full.
+     */
+    @Test
+    public void testWrap() {
+        final TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i * 1000, i);
+        }
+        assertThat((double) buffer.get(7500, MAX_AGE), closeTo(7.5, TOLERANCE));
+        // Values 0 to 5 are overwritten, the oldest kept value is used.
+        assertThat((double) buffer.get(5500, MAX_AGE), closeTo(6, TOLERANCE));
+        assertThat(Float.isNaN(buffer.get(0, MAX_AGE)), is(true));
+    }
+
+    /**
+     * Verify that a reader never sees incomplete values while the writer wraps the buffer.
+     * The values grow linearly with the time, so every interpolation between two values has to
+     * match the time.
+     */
+    @Test
+    public void testConcurrentReader() throws InterruptedException {
+        final int values = 200000;
+        final TimeSeriesBuffer buffer = new TimeSeriesBuffer(8);
+        final AtomicBoolean isDone = new AtomicBoolean();
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long timeStamp = 0;
+                while (!isDone.get()) {
+                    final float value = buffer.get(timeStamp, 0);
+                    if (!Float.isNaN(value)
+                            && Math.abs(value - timeStamp / 1000f) > 0.01f * timeStamp / 1000f) {
+                        errors.incrementAndGet();
+                    }
+                    reads.incrementAndGet();
+                    timeStamp += 333;
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < values; i++) {
+            buffer.add(i * 1000L, i);
+        }
+        isDone.set(true);
+        reader.join();
+        assertThat(reads.get(), greaterThan(0));
+        assertThat(errors.get(), is(0));
+    }
+}
@@ -0,0 +1,67 @@
+package de.gotovoid.service.sensors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by DJ on 19/10/26.
+ */
+
+/**
+ * {@link Clock} for test purposes. Sleeping advances the time immediately.
+ * The wall clock and the time since boot are the same until the wall clock is set, so time
+ * stamps of the sensors are recorded unchanged.
+ */
+class VirtualClock implements Clock {
+    private long mTime;
+    /**
+     * Offset of the wall clock to the time since boot in milliseconds.
+     */
+    private long mWallClockOffset;
+
+    /**
+     * Constructor taking the start time.
+     *
+     * @param time start time in milliseconds
+     */
+    VirtualClock(final long time) {
+        mTime = time;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return mTime + mWallClockOffset;
+    }
+
+    @Override
+    public synchronized long elapsedRealtime() {
+        return mTime;
+    }
+
+    @Override
+    public synchronized long elapsedRealtimeNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(mTime);
+    }
+
+    @Override
+    public synchronized void sleep(final long millis) {
+        mTime += millis;
+    }
+
+    /**
+     * Advance the time.
+     *
+     * @param millis time to advance in milliseconds
+     */
+    public synchronized void advance(final long millis) {
+        mTime += millis;
+    }
+
+    /**
+     * Set the wall clock without changing the time since boot.
+     *
+     * @param millis the wall clock time in milliseconds
+     */
+    public synchronized void setCurrentTimeMillis(final long millis) {
+        mWallClockOffset = millis - mTime;
+    }
+}